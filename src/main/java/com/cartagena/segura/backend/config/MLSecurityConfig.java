@@ -20,6 +20,9 @@ public class MLSecurityConfig {
                         .allowedOrigins("*")
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH")
                         .allowedHeaders("*")
+                        // Para que el navegador pueda leer las cuotas y cuándo reintentar
+                        .exposedHeaders("RateLimit-Limit", "RateLimit-Remaining", "RateLimit-Reset",
+                                "RateLimit-Policy", "Retry-After")
                         .allowCredentials(false)
                         .maxAge(3600);
 
@@ -0,0 +1,12 @@
+package com.cartagena.segura.backend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Habilita las tareas programadas (reentrenamientos y trabajos periódicos).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -3,8 +3,11 @@ package com.cartagena.segura.backend.config;
 import com.cartagena.segura.backend.security.JwtAuthFilter;
 import com.cartagena.segura.backend.security.JwtUtil;
 import com.cartagena.segura.backend.service.UserService;
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -20,13 +23,15 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class SecurityConfig {
 
     @Bean
-    public JwtAuthFilter jwtAuthFilter(JwtUtil jwtUtil, UserService userService) {
-        return new JwtAuthFilter(jwtUtil, userService);
+    public JwtAuthFilter jwtAuthFilter(JwtUtil jwtUtil, UserService userService,
+                                       @Value("${jwt.stateless-principal:false}") boolean statelessPrincipal) {
+        return new JwtAuthFilter(jwtUtil, userService, statelessPrincipal);
     }
 
+    // Costo configurable: si se sube, los hashes viejos se actualizan en el siguiente login
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${security.bcrypt.strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
 
     @Bean
@@ -42,6 +47,9 @@ public class SecurityConfig {
 
                 // Configurar reglas de acceso
                 .authorizeHttpRequests(auth -> auth
+                        // Despachos async (SSE / streaming): ya se autorizó la petición original
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         // PÁGINAS PÚBLICAS (acceso sin autenticación)
                         .requestMatchers(
                                 "/",
@@ -63,8 +71,7 @@ public class SecurityConfig {
                                 "/favicon.ico",
 
                                 // APIs públicas
-                                "/api/auth/**",         // login/register
-                                "/api/users/register",  // registro público
+                                "/api/auth/**",         // login/register/refresh
                                 "/api/ml/**"           // ML endpoints (públicos por ahora)
                         ).permitAll()
 
@@ -78,6 +85,9 @@ public class SecurityConfig {
 
                         // APIs PROTEGIDAS (requieren autenticación)
                         .requestMatchers("/api/incidents/**").authenticated()
+                        // Cambiar roles y ver la caché de usuarios: solo administradores
+                        .requestMatchers(HttpMethod.PUT, "/api/users/*/role/*").hasRole("ADMIN")
+                        .requestMatchers("/api/users/cache/**").hasRole("ADMIN")
                         .requestMatchers("/api/users/**").authenticated()
 
                         // Cualquier otra cosa requiere autenticación
@@ -3,16 +3,26 @@ package com.cartagena.segura.backend.controller;
 import com.cartagena.segura.backend.model.User;
 import com.cartagena.segura.backend.repository.UserRepository;
 import com.cartagena.segura.backend.security.JwtUtil;
+import com.cartagena.segura.backend.security.LoginRateLimiter;
+import com.cartagena.segura.backend.security.PasswordHashingPool;
+import com.cartagena.segura.backend.service.RefreshTokenService;
+import com.cartagena.segura.backend.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -29,32 +39,109 @@ public class AuthController {
     private UserRepository userRepository;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private UserService userService;
 
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
+    @Autowired
+    private PasswordHashingPool passwordHashingPool;
+
+    // BCrypt corre en el pool acotado PasswordHashingPool, no en el hilo de Tomcat
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody Map<String, String> payload) {
-        try {
-            String username = payload.get("username");
-            String password = payload.get("password");
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody Map<String, String> payload,
+                                                      HttpServletRequest request) {
+        String username = payload.get("username");
+        String password = payload.get("password");
 
-            Authentication authentication = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(username, password)
-            );
+        // getRemoteAddr ya es la IP del cliente detrás de un proxy de confianza (server.forward-headers-strategy)
+        long retryAfter = loginRateLimiter.tryAcquire(username, request.getRemoteAddr());
+        if (retryAfter > 0) {
+            return tooManyAttempts(retryAfter);
+        }
+
+        return submitHashing(() -> {
+            try {
+                Authentication authentication = authenticationManager.authenticate(
+                        new UsernamePasswordAuthenticationToken(username, password)
+                );
+
+                loginRateLimiter.recordSuccess(username);
+                User user = (User) authentication.getPrincipal();
+                return ResponseEntity.ok(tokenResponse(user, refreshTokenService.issue(user)));
+            } catch (AuthenticationException ex) {
+                loginRateLimiter.recordFailure(username);
+                return ResponseEntity.status(401).body(Map.of("error", "Credenciales inválidas"));
+            }
+        });
+    }
 
-            String token = jwtUtil.generateToken(username);
-            return ResponseEntity.ok(Map.of("token", token));
+    // Rota el refresh token: entrega un access token nuevo y un refresh token nuevo
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody Map<String, String> payload) {
+        String refreshToken = payload.get("refreshToken");
+        if (refreshToken == null || refreshToken.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "refreshToken requerido"));
+        }
+        try {
+            RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshToken);
+            return ResponseEntity.ok(tokenResponse(rotation.user(), rotation.refreshToken()));
         } catch (BadCredentialsException ex) {
-            return ResponseEntity.status(401).body(Map.of("error", "Credenciales inválidas"));
+            return ResponseEntity.status(401).body(Map.of("error", ex.getMessage()));
         }
     }
 
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestBody Map<String, String> payload) {
+        String refreshToken = payload.get("refreshToken");
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            refreshTokenService.revoke(refreshToken);
+        }
+        return ResponseEntity.ok(Map.of("message", "Sesión cerrada"));
+    }
+
+    // Único registro público: también calcula BCrypt, así que comparte el límite por IP del login
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody User user) {
+    public CompletableFuture<ResponseEntity<?>> register(@RequestBody User user, HttpServletRequest request) {
+        long retryAfter = loginRateLimiter.tryAcquire(null, request.getRemoteAddr());
+        if (retryAfter > 0) {
+            return tooManyAttempts(retryAfter);
+        }
         if (userRepository.findByUsername(user.getUsername()).isPresent()) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Usuario ya existe"));
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body(Map.of("error", "Usuario ya existe")));
+        }
+        return submitHashing(() -> {
+            userService.registerUser(user);
+            return ResponseEntity.ok(Map.of("message", "Usuario creado"));
+        });
+    }
+
+    private static CompletableFuture<ResponseEntity<?>> tooManyAttempts(long retryAfterSeconds) {
+        return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(Map.of("error", "Demasiados intentos. Intenta más tarde")));
+    }
+
+    // Pool lleno: se responde 503 de inmediato en lugar de encolar sin límite
+    private CompletableFuture<ResponseEntity<?>> submitHashing(Supplier<ResponseEntity<?>> task) {
+        try {
+            return passwordHashingPool.submit(task);
+        } catch (RejectedExecutionException ex) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("error", "Servicio de autenticación saturado. Intenta de nuevo")));
         }
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        userRepository.save(user);
-        return ResponseEntity.ok(Map.of("message", "Usuario creado"));
+    }
+
+    private Map<String, Object> tokenResponse(User user, String refreshToken) {
+        return Map.of(
+                "token", jwtUtil.generateToken(user),
+                "refreshToken", refreshToken,
+                "expiresIn", jwtUtil.getExpirationMs()
+        );
     }
 }
@@ -1,12 +1,20 @@
 package com.cartagena.segura.backend.controller;
 
 import com.cartagena.segura.backend.model.Incident;
+import com.cartagena.segura.backend.service.HotspotService;
+import com.cartagena.segura.backend.service.IncidentDedupService;
+import com.cartagena.segura.backend.service.IncidentSearchService;
 import com.cartagena.segura.backend.service.IncidentService;
+import com.cartagena.segura.backend.service.IncidentStreamService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/incidents")
@@ -16,11 +24,94 @@ public class IncidentController {
     @Autowired
     private IncidentService incidentService;
 
+    @Autowired
+    private IncidentStreamService incidentStreamService;
+
+    @Autowired
+    private HotspotService hotspotService;
+
+    @Autowired
+    private IncidentSearchService incidentSearchService;
+
+    @Autowired
+    private IncidentDedupService incidentDedupService;
+
     @GetMapping
     public List<Incident> getAllIncidents() {
         return incidentService.getAllIncidents();
     }
 
+    /**
+     * Stream de cambios (SSE): eventos created / updated / deleted.
+     * Filtros opcionales: ?status=PENDING&status=IN_PROGRESS y viewport minLat/maxLat/minLng/maxLng.
+     * Reanudación con la cabecera Last-Event-ID (o ?lastEventId=).
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamIncidents(
+            @RequestParam(required = false) List<Incident.Status> status,
+            @RequestParam(required = false) Double minLat,
+            @RequestParam(required = false) Double maxLat,
+            @RequestParam(required = false) Double minLng,
+            @RequestParam(required = false) Double maxLng,
+            @RequestParam(required = false) String lastEventId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader) {
+        IncidentStreamService.StreamFilter filter = new IncidentStreamService.StreamFilter(
+                status == null || status.isEmpty() ? null : EnumSet.copyOf(status),
+                minLat, maxLat, minLng, maxLng);
+        return incidentStreamService.subscribe(filter,
+                lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+    }
+
+    /**
+     * Hotspots (Getis-Ord Gi*) de las últimas "hours" horas, ordenados por z.
+     * Ej: /hotspots?type=Robo&hours=3 devuelve las celdas que concentran robos recientes.
+     */
+    @GetMapping("/hotspots")
+    public ResponseEntity<?> getHotspots(
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "24") int hours,
+            @RequestParam(defaultValue = "1.96") double minZ,
+            @RequestParam(defaultValue = "20") int limit) throws InterruptedException {
+        try {
+            return ResponseEntity.ok(hotspotService.hotspots(type, hours, minZ, limit));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+    }
+
+    @GetMapping("/hotspots/status")
+    public Map<String, Object> getHotspotsStatus() {
+        return hotspotService.getStatus();
+    }
+
+    /**
+     * Búsqueda de texto en descripción y ubicación, ordenada por relevancia, con resaltado.
+     * Ej: /search?q=choque moto&status=PENDING&status=IN_PROGRESS&type=Accidente&page=0&size=20
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchIncidents(
+            @RequestParam String q,
+            @RequestParam(required = false) List<Incident.Status> status,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(incidentSearchService.search(q, status, type, page, size));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+    }
+
+    @GetMapping("/search/status")
+    public Map<String, Object> getSearchStatus() {
+        return incidentSearchService.getStatus();
+    }
+
+    @GetMapping("/dedup/status")
+    public Map<String, Object> getDedupStatus() {
+        return incidentDedupService.getStatus();
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Incident> getIncidentById(@PathVariable String id) {
         return incidentService.getIncidentById(id)
@@ -50,4 +141,11 @@ public class IncidentController {
         incidentService.deleteIncident(id);
         return ResponseEntity.noContent().build();
     }
+
+    private ResponseEntity<Map<String, Object>> badRequest(String message) {
+        return ResponseEntity.badRequest().body(Map.of(
+                "error", true,
+                "message", message,
+                "timestamp", System.currentTimeMillis()));
+    }
 }
@@ -1,18 +1,47 @@
 package com.cartagena.segura.backend.controller;
 
 import com.cartagena.segura.backend.dto.*;
+import com.cartagena.segura.backend.security.BulkheadFilter;
+import com.cartagena.segura.backend.security.MLQuotaFilter;
+import com.cartagena.segura.backend.security.QuotaStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.cartagena.segura.backend.service.AdvancedWekaService;
+import com.cartagena.segura.backend.service.ColumnarBatchService;
+import com.cartagena.segura.backend.service.EnsembleService;
+import com.cartagena.segura.backend.service.ExplanationService;
+import com.cartagena.segura.backend.service.GeoCellFeatureStore;
+import com.cartagena.segura.backend.service.HyperparameterTuningService;
+import com.cartagena.segura.backend.service.IncidentScoringService;
+import com.cartagena.segura.backend.service.IncidentTrainingPipeline;
+import com.cartagena.segura.backend.service.ModelServingService;
+import com.cartagena.segura.backend.service.NdjsonBatchService;
+import com.cartagena.segura.backend.service.OnlineLearningService;
+import com.cartagena.segura.backend.service.StreamingEvaluationService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @RestController
@@ -23,10 +52,56 @@ public class MLController {
     @Autowired
     private AdvancedWekaService wekaService;
 
+    @Autowired
+    private IncidentTrainingPipeline incidentTrainingPipeline;
+
+    @Autowired
+    private IncidentScoringService incidentScoringService;
+
+    @Autowired
+    private OnlineLearningService onlineLearningService;
+
+    @Autowired
+    private StreamingEvaluationService streamingEvaluationService;
+
+    @Autowired
+    private HyperparameterTuningService tuningService;
+
+    @Autowired
+    private ModelServingService servingService;
+
+    @Autowired
+    private ExplanationService explanationService;
+
+    @Autowired
+    private EnsembleService ensembleService;
+
+    @Autowired
+    private GeoCellFeatureStore featureStore;
+
+    @Autowired
+    private ColumnarBatchService columnarBatchService;
+
+    @Autowired
+    private NdjsonBatchService ndjsonBatchService;
+
+    @Autowired
+    private BulkheadFilter bulkheadFilter;
+
+    @Autowired
+    private MLQuotaFilter quotaFilter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Tiempo máximo de las respuestas de lote en streaming (solo esos endpoints)
+    @Value("${ml.batch.stream-timeout-ms:300000}")
+    private long batchStreamTimeoutMs;
+
     // ========== PREDICCIÓN ==========
 
     /**
-     * Realizar predicción individual con modelo activo
+     * Realizar predicción individual con modelo activo (o el canary, según la política de servicio)
      * POST /api/ml/predict
      * Body: {"features": {"age": 25, "income": 30000, ...}}
      */
@@ -34,7 +109,7 @@ public class MLController {
     public ResponseEntity<?> predict(@RequestBody PredictionRequest request) {
         try {
             log.info("Predicción solicitada con features: {}", request.getFeatures().keySet());
-            PredictionResponse response = wekaService.predict(request.getFeatures());
+            PredictionResponse response = servingService.predict(request.getFeatures());
             return ResponseEntity.ok(response);
         } catch (IllegalArgumentException e) {
             log.error("Error de argumento: {}", e.getMessage());
@@ -57,7 +132,7 @@ public class MLController {
             @RequestBody PredictionRequest request) {
         try {
             log.info("Predicción con modelo: {}", modelName);
-            PredictionResponse response = wekaService.predict(request.getFeatures(), modelName);
+            PredictionResponse response = servingService.predict(modelName, request.getFeatures());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             log.error("Error en predicción con modelo {}: {}", modelName, e.getMessage());
@@ -66,14 +141,51 @@ public class MLController {
         }
     }
 
+    /**
+     * Predicción con varios modelos en paralelo (ver EnsembleService)
+     * POST /api/ml/ensemble
+     * Body: {"features": {...}, "models": ["j48", "rf", "nb"], "method": "soft",
+     *        "weights": {"rf": 2}, "deadlineMs": 200}
+     * Si algún modelo no llega al deadline se combina el resto ("partial": true)
+     */
+    @PostMapping("/ensemble")
+    public ResponseEntity<?> predictEnsemble(@RequestBody EnsembleRequest request) {
+        try {
+            return ResponseEntity.ok(ensembleService.predict(request));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ensemble rechazado: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(createErrorResponse("Demasiadas predicciones en curso, intente más tarde"));
+        } catch (Exception e) {
+            log.error("Error en ensemble", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Error en ensemble: " + e.getMessage()));
+        }
+    }
+
     /**
      * Predicción en lote
      * POST /api/ml/predict/batch
      * Body: {"instances": [{"age": 25, ...}, {"age": 30, ...}]}
      */
     @PostMapping("/predict/batch")
-    public ResponseEntity<?> predictBatch(@RequestBody BatchPredictionRequest request) {
+    public ResponseEntity<?> predictBatch(@RequestBody BatchPredictionRequest request,
+                                          HttpServletRequest httpRequest,
+                                          HttpServletResponse httpResponse) {
         try {
+            // El tamaño se conoce antes de predecir: se cobra entero o se rechaza
+            ResponseEntity<?> rejected = chargeRows(httpRequest, httpResponse, request.getInstances().size());
+            if (rejected != null) {
+                return rejected;
+            }
+
             log.info("Predicción en lote: {} instancias", request.getInstances().size());
             List<PredictionResponse> responses = wekaService.predictBatch(request.getInstances());
             return ResponseEntity.ok(Map.of(
@@ -87,17 +199,232 @@ public class MLController {
         }
     }
 
+    /**
+     * Predicción en lote con formato binario columnar (ver ColumnarBatchService)
+     * POST /api/ml/predict/batch?modelName=xxx
+     * Content-Type: application/x-ml-columnar
+     * Columnas en el orden de GET /api/ml/models/{modelName} (sin la clase); la respuesta
+     * se escribe lote a lote en el mismo formato.
+     */
+    @PostMapping(value = "/predict/batch", consumes = ColumnarBatchService.CONTENT_TYPE)
+    public ResponseEntity<?> predictBatchColumnar(
+            @RequestParam(required = false) String modelName,
+            InputStream body,
+            HttpServletRequest httpRequest) {
+        try {
+            ColumnarBatchService.Scoring scoring = columnarBatchService.open(modelName, body);
+            setStreamTimeout(httpRequest);
+            // Las filas se cobran al terminar (con deuda si superan la cuota que queda)
+            String client = quotaFilter.clientOf(httpRequest);
+            StreamingResponseBody stream = out -> {
+                try {
+                    scoring.writeTo(out);
+                } finally {
+                    quotaFilter.chargeBatchRows(client, scoring.getRowsRead(), true);
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(ColumnarBatchService.CONTENT_TYPE))
+                    .body(stream);
+        } catch (IllegalArgumentException e) {
+            log.warn("Lote columnar rechazado: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error en lote columnar", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(createErrorResponse("Error en lote: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Predicción en lote en streaming (memoria constante)
+     * POST /api/ml/predict/batch?modelName=xxx
+     * Content-Type: application/x-ndjson
+     * Body: una fila de features por línea, p. ej. {"age": 25, "income": 30000}
+     * Respuesta: una PredictionResponse por línea en el mismo orden; las filas que fallan
+     * responden {"error": true, "index": n, "message": ...}
+     */
+    @PostMapping(value = "/predict/batch", consumes = NdjsonBatchService.CONTENT_TYPE)
+    public ResponseEntity<?> predictBatchStreaming(
+            @RequestParam(required = false) String modelName,
+            InputStream body,
+            HttpServletRequest httpRequest) {
+        try {
+            NdjsonBatchService.Scoring scoring = ndjsonBatchService.open(modelName, body);
+            setStreamTimeout(httpRequest);
+            // Las filas se cobran al terminar (con deuda si superan la cuota que queda)
+            String client = quotaFilter.clientOf(httpRequest);
+            StreamingResponseBody stream = out -> {
+                try {
+                    scoring.writeTo(out);
+                } finally {
+                    quotaFilter.chargeBatchRows(client, scoring.getRowsRead(), true);
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(NdjsonBatchService.CONTENT_TYPE))
+                    .body(stream);
+        } catch (IllegalArgumentException e) {
+            log.warn("Lote NDJSON rechazado: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    // El StreamingResponseBody se escribe fuera del hilo de la petición con el timeout de esta
+    // petición async: se amplía aquí en lugar de cambiar spring.mvc.async.request-timeout para todos
+    private void setStreamTimeout(HttpServletRequest httpRequest) {
+        AsyncWebRequest asyncRequest = WebAsyncUtils.getAsyncManager(httpRequest).getAsyncWebRequest();
+        if (asyncRequest != null) {
+            asyncRequest.setTimeout(batchStreamTimeoutMs);
+        }
+    }
+
+    // ========== FEATURES POR CELDA ==========
+
+    /**
+     * Features agregadas de la celda que contiene una posición (las mismas que recibe un
+     * modelo entrenado con columnas cell_* cuando la predicción solo trae lat/lng)
+     * GET /api/ml/features/cell?lat=10.39&lng=-75.51
+     */
+    @GetMapping("/features/cell")
+    public ResponseEntity<?> getCellFeatures(@RequestParam double lat, @RequestParam double lng) {
+        return ResponseEntity.ok(Map.of(
+                "cell", featureStore.cellOf(lat, lng),
+                "features", new TreeMap<>(featureStore.features(lat, lng))
+        ));
+    }
+
+    /**
+     * Estado del almacén de features (celdas, tipos, última reconstrucción)
+     * GET /api/ml/features
+     */
+    @GetMapping("/features")
+    public ResponseEntity<?> getFeatureStoreStatus() {
+        return ResponseEntity.ok(featureStore.getStatus());
+    }
+
+    // ========== EXPLICABILIDAD ==========
+
+    /**
+     * Explicar una predicción: camino de decisión (árboles), regla (JRip) o atribución por atributo
+     * POST /api/ml/explain/{modelName}
+     * Body: {"features": {"age": 25, "income": 30000, ...}}
+     */
+    @PostMapping("/explain/{modelName}")
+    public ResponseEntity<?> explain(
+            @PathVariable String modelName,
+            @RequestBody PredictionRequest request) {
+        try {
+            return ResponseEntity.ok(explanationService.explain(modelName, request.getFeatures()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error al explicar predicción con {}", modelName, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Error al explicar: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Relevancia global de atributos (permutation importance) de la versión servida
+     * GET /api/ml/models/{modelName}/importance
+     * 202 mientras se calcula en segundo plano
+     */
+    @GetMapping("/models/{modelName}/importance")
+    public ResponseEntity<?> featureImportance(@PathVariable String modelName) {
+        try {
+            Map<String, Object> importance = explanationService.getFeatureImportance(modelName);
+            HttpStatus status = "COMPUTING".equals(importance.get("state")) ? HttpStatus.ACCEPTED : HttpStatus.OK;
+            return ResponseEntity.status(status).body(importance);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    // ========== POLÍTICA DE SERVICIO (CANARY / SHADOW) ==========
+
+    /**
+     * Política actual, latencia por modelo y acuerdo del shadow
+     * GET /api/ml/serving
+     */
+    @GetMapping("/serving")
+    public ResponseEntity<?> servingStatus() {
+        return ResponseEntity.ok(servingService.getStatus());
+    }
+
+    /**
+     * Configurar canary y/o shadow
+     * PUT /api/ml/serving
+     * Body: {"candidateModel": "risk-v2", "canaryPercent": 10, "shadowModel": "risk-v3", "shadowPercent": 50}
+     */
+    @PutMapping("/serving")
+    public ResponseEntity<?> setServingPolicy(@RequestBody ServingPolicyRequest request) {
+        try {
+            log.info("Nueva política de servicio: {}", request);
+            servingService.setPolicy(request);
+            return ResponseEntity.ok(servingService.getStatus());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    /**
+     * Promover el candidato a modelo activo
+     * POST /api/ml/serving/promote
+     */
+    @PostMapping("/serving/promote")
+    public ResponseEntity<?> promoteCandidate() {
+        try {
+            String promoted = servingService.promote();
+            return ResponseEntity.ok(Map.of(
+                    "message", "Modelo promovido exitosamente",
+                    "activeModel", promoted
+            ));
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    /**
+     * Retirar el canary o deshacer la última promoción
+     * POST /api/ml/serving/rollback
+     */
+    @PostMapping("/serving/rollback")
+    public ResponseEntity<?> rollbackServing() {
+        try {
+            String active = servingService.rollback();
+            return ResponseEntity.ok(Map.of(
+                    "message", "Rollback realizado",
+                    "activeModel", active
+            ));
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(createErrorResponse(e.getMessage()));
+        }
+    }
+
     // ========== ENTRENAMIENTO ==========
 
     /**
      * Entrenar modelo desde archivo ARFF
      * POST /api/ml/train/arff
+     * parameters (opcional): JSON con hiperparámetros, p. ej. {"confidenceFactor": 0.1}
      */
     @PostMapping("/train/arff")
     public ResponseEntity<?> trainFromArff(
             @RequestParam("file") MultipartFile file,
             @RequestParam("algorithm") String algorithm,
-            @RequestParam("modelName") String modelName) {
+            @RequestParam("modelName") String modelName,
+            @RequestParam(value = "parameters", required = false) String parameters) {
         try {
             if (file.isEmpty()) {
                 return ResponseEntity.badRequest()
@@ -111,13 +438,19 @@ public class MLController {
             file.transferTo(tempFile);
 
             // Entrenar
-            TrainingResponse response = wekaService.trainFromArff(
-                    tempFile.getAbsolutePath(), algorithm, modelName);
-
-            tempFile.delete();
+            TrainingResponse response;
+            try {
+                response = wekaService.trainFromArff(
+                        tempFile.getAbsolutePath(), algorithm, modelName, parseParameters(parameters));
+            } finally {
+                tempFile.delete();
+            }
 
             log.info("Entrenamiento completado. Precisión: {}", response.getAccuracy());
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             log.error("Error al entrenar desde ARFF", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -134,7 +467,8 @@ public class MLController {
             @RequestParam("file") MultipartFile file,
             @RequestParam("algorithm") String algorithm,
             @RequestParam("modelName") String modelName,
-            @RequestParam(value = "classIndex", defaultValue = "-1") int classIndex) {
+            @RequestParam(value = "classIndex", defaultValue = "-1") int classIndex,
+            @RequestParam(value = "parameters", required = false) String parameters) {
         try {
             if (file.isEmpty()) {
                 return ResponseEntity.badRequest()
@@ -147,13 +481,19 @@ public class MLController {
             File tempFile = File.createTempFile("train_", ".csv");
             file.transferTo(tempFile);
 
-            TrainingResponse response = wekaService.trainFromCsv(
-                    tempFile.getAbsolutePath(), algorithm, modelName, classIndex);
-
-            tempFile.delete();
+            TrainingResponse response;
+            try {
+                response = wekaService.trainFromCsv(tempFile.getAbsolutePath(), algorithm, modelName,
+                        classIndex, parseParameters(parameters));
+            } finally {
+                tempFile.delete();
+            }
 
             log.info("Entrenamiento CSV completado. Precisión: {}", response.getAccuracy());
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             log.error("Error al entrenar desde CSV", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -161,6 +501,139 @@ public class MLController {
         }
     }
 
+    /**
+     * Entrenar modelo de riesgo desde la colección de incidentes (Mongo)
+     * POST /api/ml/train/incidents?algorithm=J48&modelName=incident-risk&full=false
+     * full=false solo lee los incidentes modificados desde el último entrenamiento
+     */
+    @PostMapping("/train/incidents")
+    public ResponseEntity<?> trainFromIncidents(
+            @RequestParam(value = "algorithm", required = false) String algorithm,
+            @RequestParam(value = "modelName", required = false) String modelName,
+            @RequestParam(value = "full", defaultValue = "false") boolean full) {
+        try {
+            log.info("Entrenamiento desde incidentes: modelo={}, algoritmo={}, full={}",
+                    modelName, algorithm, full);
+            TrainingResponse response = incidentTrainingPipeline.train(algorithm, modelName, full);
+            if (response == null) {
+                return ResponseEntity.ok(Map.of(
+                        "message", "Sin cambios desde el último entrenamiento",
+                        "pipeline", incidentTrainingPipeline.getStatus()
+                ));
+            }
+            return ResponseEntity.ok(response);
+        } catch (IncidentTrainingPipeline.PipelineBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error al entrenar desde incidentes", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Error al entrenar: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Estado del pipeline de incidentes
+     * GET /api/ml/train/incidents/status
+     */
+    @GetMapping("/train/incidents/status")
+    public ResponseEntity<?> incidentPipelineStatus() {
+        return ResponseEntity.ok(incidentTrainingPipeline.getStatus());
+    }
+
+    // ========== SCORING DE INCIDENTES ==========
+
+    /**
+     * Puntuar incidentes en segundo plano (riskScore/riskLabel sobre cada documento)
+     * POST /api/ml/score/incidents?full=false
+     * full=false solo puntúa los incidentes modificados desde la última corrida
+     */
+    @PostMapping("/score/incidents")
+    public ResponseEntity<?> scoreIncidents(@RequestParam(value = "full", defaultValue = "false") boolean full) {
+        try {
+            log.info("Scoring de incidentes solicitado: full={}", full);
+            incidentScoringService.submit(full);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                    "message", "Scoring de incidentes iniciado",
+                    "statusUrl", "/api/ml/score/incidents/status"
+            ));
+        } catch (IncidentScoringService.ScoringBusyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error al iniciar scoring de incidentes", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Error al iniciar scoring: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Estado y checkpoint del scoring de incidentes
+     * GET /api/ml/score/incidents/status
+     */
+    @GetMapping("/score/incidents/status")
+    public ResponseEntity<?> incidentScoringStatus() {
+        try {
+            return ResponseEntity.ok(incidentScoringService.getStatus());
+        } catch (Exception e) {
+            log.error("Error al consultar scoring de incidentes", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Error: " + e.getMessage()));
+        }
+    }
+
+    // ========== BÚSQUEDA DE HIPERPARÁMETROS ==========
+
+    /**
+     * Lanzar búsqueda de hiperparámetros sobre el dataset de un modelo existente
+     * POST /api/ml/tune
+     * Body: {"dataset": "incident-risk", "algorithm": "J48", "strategy": "random", "trials": 20,
+     *        "searchSpace": {"confidenceFactor": {"min": 0.05, "max": 0.5}, "minNumObj": [1, 2, 5, 10]}}
+     */
+    @PostMapping("/tune")
+    public ResponseEntity<?> tune(@RequestBody TuningRequest request) {
+        try {
+            log.info("Búsqueda de hiperparámetros: dataset={}, algoritmo={}, estrategia={}",
+                    request.getDataset(), request.getAlgorithm(), request.getStrategy());
+            String jobId = tuningService.submit(request);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                    "jobId", jobId,
+                    "statusUrl", "/api/ml/tune/jobs/" + jobId
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .body(createErrorResponse("Ya hay una búsqueda en curso, intente más tarde"));
+        } catch (Exception e) {
+            log.error("Error al iniciar búsqueda", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Error al iniciar búsqueda: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Progreso y leaderboard de una búsqueda
+     * GET /api/ml/tune/jobs/{jobId}
+     */
+    @GetMapping("/tune/jobs/{jobId}")
+    public ResponseEntity<?> tuningStatus(@PathVariable String jobId) {
+        Map<String, Object> status = tuningService.getStatus(jobId);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(createErrorResponse("Búsqueda no encontrada: " + jobId));
+        }
+        return ResponseEntity.ok(status);
+    }
+
     // ========== GESTIÓN DE MODELOS ==========
 
     /**
@@ -183,6 +656,15 @@ public class MLController {
         }
     }
 
+    /**
+     * Memoria por modelo (presupuesto, residentes/descargados, cargas y descargas)
+     * GET /api/ml/residency
+     */
+    @GetMapping("/residency")
+    public ResponseEntity<?> getResidency() {
+        return ResponseEntity.ok(wekaService.getResidencyStatus());
+    }
+
     /**
      * Obtener información de un modelo
      * GET /api/ml/models/{modelName}
@@ -204,6 +686,41 @@ public class MLController {
         }
     }
 
+    /**
+     * Declarar el SLO de latencia de un modelo y su fallback
+     * PUT /api/ml/models/{modelName}/slo
+     * Body: {"latencyMs": 50, "fallbackModel": "nb", "maxInFlight": 8}
+     * Mientras el p95 reciente supere latencyMs (o haya maxInFlight en curso) responde el
+     * fallback, con "fallbackFrom" y "fallbackReason" en la respuesta
+     */
+    @PutMapping("/models/{modelName}/slo")
+    public ResponseEntity<?> setLatencySlo(@PathVariable String modelName,
+                                           @RequestBody LatencySloRequest request) {
+        try {
+            wekaService.setLatencySlo(modelName, new AdvancedWekaService.LatencySlo(
+                    request.getLatencyMs() != null ? request.getLatencyMs() : 0,
+                    request.getFallbackModel(),
+                    request.getMaxInFlight() != null ? request.getMaxInFlight() : 0));
+            return ResponseEntity.ok(Map.of(
+                    "modelName", modelName,
+                    "slo", wekaService.getLatencySlo(modelName)
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    /**
+     * Quitar el SLO de un modelo (deja de desviarse al fallback)
+     * DELETE /api/ml/models/{modelName}/slo
+     */
+    @DeleteMapping("/models/{modelName}/slo")
+    public ResponseEntity<?> removeLatencySlo(@PathVariable String modelName) {
+        wekaService.removeLatencySlo(modelName);
+        return ResponseEntity.ok(Map.of("message", "SLO eliminado", "modelName", modelName));
+    }
+
     /**
      * Establecer modelo activo
      * PUT /api/ml/models/{modelName}/activate
@@ -233,6 +750,7 @@ public class MLController {
         try {
             log.info("Eliminando modelo: {}", modelName);
             wekaService.deleteModel(modelName);
+            onlineLearningService.forget(modelName);
             return ResponseEntity.ok(Map.of(
                     "message", "Modelo eliminado exitosamente",
                     "deletedModel", modelName
@@ -248,6 +766,45 @@ public class MLController {
         }
     }
 
+    /**
+     * Aprendizaje en línea (solo modelos NaiveBayesUpdateable / HoeffdingTree)
+     * POST /api/ml/models/{modelName}/update
+     * Body: {"instances": [{"age": 25, ..., "risk": "low"}, ...]}
+     */
+    @PostMapping("/models/{modelName}/update")
+    public ResponseEntity<?> updateModel(
+            @PathVariable String modelName,
+            @RequestBody OnlineUpdateRequest request,
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse) {
+        try {
+            if (request.getInstances() == null || request.getInstances().isEmpty()) {
+                return ResponseEntity.badRequest()
+                        .body(createErrorResponse("Sin instancias para actualizar"));
+            }
+            // Cada instancia es una fila: cuesta lo mismo que una fila de un lote de predicción
+            ResponseEntity<?> rejected = chargeRows(httpRequest, httpResponse, request.getInstances().size());
+            if (rejected != null) {
+                return rejected;
+            }
+            log.info("Actualización en línea de {}: {} instancias", modelName, request.getInstances().size());
+            int updated = onlineLearningService.update(modelName, request.getInstances());
+            return ResponseEntity.ok(Map.of(
+                    "received", request.getInstances().size(),
+                    "updated", updated,
+                    "model", wekaService.getModelInfo(modelName)
+            ));
+        } catch (IllegalArgumentException e) {
+            log.warn("Actualización rechazada para {}: {}", modelName, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error en actualización en línea", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Error al actualizar: " + e.getMessage()));
+        }
+    }
+
     /**
      * Cargar modelo existente
      * POST /api/ml/models/load/{modelName}
@@ -271,39 +828,74 @@ public class MLController {
     // ========== EVALUACIÓN ==========
 
     /**
-     * Evaluar modelo con datos de prueba
-     * POST /api/ml/evaluate/{modelName}
+     * Evaluar modelo con datos de prueba (ARFF o CSV, leído en streaming)
+     * POST /api/ml/evaluate/{modelName}?async=false&prequential=false
+     * async=true retorna 202 con el id del trabajo; prequential=true prueba y luego
+     * aprende cada fila (solo modelos actualizables)
      */
     @PostMapping("/evaluate/{modelName}")
     public ResponseEntity<?> evaluateModel(
             @PathVariable String modelName,
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @RequestParam(value = "prequential", defaultValue = "false") boolean prequential) {
+        File tempFile = null;
         try {
             if (file.isEmpty()) {
                 return ResponseEntity.badRequest()
                         .body(createErrorResponse("Archivo vacío"));
             }
 
-            log.info("Evaluando modelo: {} con archivo: {}", modelName, file.getOriginalFilename());
+            log.info("Evaluando modelo: {} con archivo: {} (async={}, prequential={})",
+                    modelName, file.getOriginalFilename(), async, prequential);
 
             String extension = file.getOriginalFilename().endsWith(".csv") ? ".csv" : ".arff";
-            File tempFile = File.createTempFile("test_", extension);
+            tempFile = File.createTempFile("test_", extension);
             file.transferTo(tempFile);
 
-            EvaluationResponse response = wekaService.evaluateModel(
-                    modelName, tempFile.getAbsolutePath());
+            if (async) {
+                String jobId = streamingEvaluationService.submit(modelName, tempFile, prequential, true);
+                tempFile = null; // el trabajo lo borra al terminar
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                        "jobId", jobId,
+                        "statusUrl", "/api/ml/evaluate/jobs/" + jobId
+                ));
+            }
 
-            tempFile.delete();
+            EvaluationResponse response = streamingEvaluationService.evaluate(modelName, tempFile, prequential);
 
             log.info("Evaluación completada. Precisión: {}", response.getAccuracy());
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(createErrorResponse("Demasiadas evaluaciones en curso, intente más tarde"));
         } catch (Exception e) {
             log.error("Error en evaluación", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(createErrorResponse("Error en evaluación: " + e.getMessage()));
+        } finally {
+            if (tempFile != null) tempFile.delete();
         }
     }
 
+    /**
+     * Progreso y métricas parciales de una evaluación
+     * GET /api/ml/evaluate/jobs/{jobId}
+     */
+    @GetMapping("/evaluate/jobs/{jobId}")
+    public ResponseEntity<?> evaluationStatus(@PathVariable String jobId) {
+        Map<String, Object> status = streamingEvaluationService.getStatus(jobId);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(createErrorResponse("Evaluación no encontrada: " + jobId));
+        }
+        return ResponseEntity.ok(status);
+    }
+
     // ========== INFORMACIÓN DEL SISTEMA ==========
 
     /**
@@ -317,7 +909,8 @@ public class MLController {
         algorithms.put("trees", List.of(
                 Map.of("name", "J48", "description", "Árbol de decisión C4.5", "type", "classification"),
                 Map.of("name", "RandomForest", "description", "Bosque aleatorio", "type", "classification"),
-                Map.of("name", "REPTree", "description", "Árbol con poda reducida", "type", "classification")
+                Map.of("name", "REPTree", "description", "Árbol con poda reducida", "type", "classification"),
+                Map.of("name", "HoeffdingTree", "description", "Árbol incremental (actualizable en línea)", "type", "classification")
         ));
 
         algorithms.put("functions", List.of(
@@ -326,16 +919,19 @@ public class MLController {
         ));
 
         algorithms.put("bayes", List.of(
-                Map.of("name", "NaiveBayes", "description", "Clasificador Naive Bayes", "type", "classification")
+                Map.of("name", "NaiveBayes", "description", "Clasificador Naive Bayes", "type", "classification"),
+                Map.of("name", "NaiveBayesUpdateable", "description", "Naive Bayes actualizable en línea", "type", "classification")
         ));
 
         algorithms.put("rules", List.of(
                 Map.of("name", "JRip", "description", "Reglas de clasificación", "type", "classification")
         ));
 
+        int total = algorithms.values().stream().mapToInt(list -> ((List<?>) list).size()).sum();
+
         log.debug("Retornando algoritmos disponibles");
         return ResponseEntity.ok(Map.of(
-                "total", 7,
+                "total", total,
                 "algorithms", algorithms
         ));
     }
@@ -353,8 +949,58 @@ public class MLController {
         ));
     }
 
+    /**
+     * Estado de los bulkheads ML (límite actual, en vuelo, en cola, rechazos)
+     * GET /api/ml/bulkheads
+     */
+    @GetMapping("/bulkheads")
+    public ResponseEntity<?> getBulkheads() {
+        return ResponseEntity.ok(bulkheadFilter.getStatus());
+    }
+
+    /**
+     * Cuotas por cliente (presupuestos y métricas del almacén)
+     * GET /api/ml/quotas
+     */
+    @GetMapping("/quotas")
+    public ResponseEntity<?> getQuotas() {
+        return ResponseEntity.ok(quotaFilter.getStatus());
+    }
+
     // ========== MÉTODOS AUXILIARES ==========
 
+    /**
+     * Hiperparámetros enviados como JSON en un campo del formulario multipart
+     */
+    private Map<String, Object> parseParameters(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {});
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("parameters debe ser un objeto JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Cobra filas de la cuota BATCH_ROWS (la primera ya la cobró MLQuotaFilter al admitir).
+     * Retorna la respuesta 429 si no alcanza, o null si se puede continuar.
+     */
+    private ResponseEntity<?> chargeRows(HttpServletRequest httpRequest, HttpServletResponse httpResponse, int rows) {
+        QuotaStore.Decision quota = quotaFilter.chargeBatchRows(quotaFilter.clientOf(httpRequest), rows, false);
+        if (quota == null) {
+            return null;
+        }
+        quotaFilter.writeHeaders(httpResponse, MLQuotaFilter.Budget.BATCH_ROWS, quota);
+        if (quota.allowed()) {
+            return null;
+        }
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(createErrorResponse("Cuota de filas en lote agotada, reintente en "
+                        + quota.retryAfterSeconds() + " s"));
+    }
+
     /**
      * Crear respuesta de error estándar
      */
@@ -1,12 +1,16 @@
 package com.cartagena.segura.backend.controller;
 
+import com.cartagena.segura.backend.dto.UserSummary;
 import com.cartagena.segura.backend.model.User;
 import com.cartagena.segura.backend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/users")
@@ -16,9 +20,39 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final Set<String> SORTABLE_FIELDS = Set.of("id", "username", "role");
+
+    /**
+     * Listado paginado de usuarios (id, username, role).
+     * - Keyset (por defecto): GET /api/users?size=50&afterId=120  -> usar nextAfterId para seguir
+     * - Por página:           GET /api/users?page=0&size=50&sort=username,asc[&count=true]
+     */
     @GetMapping
-    public List<User> getAllUsers() {
-        return userService.getAllUsers();
+    public ResponseEntity<?> getUsers(
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(defaultValue = "id,asc") String sort,
+            @RequestParam(defaultValue = "false") boolean count) {
+        String[] sortParts = sort.split(",");
+        String field = sortParts[0].trim();
+        boolean descending = sortParts.length > 1 && sortParts[1].trim().equalsIgnoreCase("desc");
+
+        if (!SORTABLE_FIELDS.contains(field) || size < 1 || (page != null && page < 0)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros de paginación inválidos"));
+        }
+        int pageSize = Math.min(size, MAX_PAGE_SIZE);
+
+        // El keyset solo aplica al orden por id; otros órdenes usan páginas
+        if (page == null && field.equals("id") && !count) {
+            return ResponseEntity.ok(userService.listUsersByCursor(afterId, pageSize, descending));
+        }
+        Sort order = Sort.by(descending ? Sort.Direction.DESC : Sort.Direction.ASC, field);
+        if (!field.equals("id")) {
+            order = order.and(Sort.by("id")); // desempate estable
+        }
+        return ResponseEntity.ok(userService.listUsersByPage(page != null ? page : 0, pageSize, order, count));
     }
 
     @GetMapping("/{id}")
@@ -28,10 +62,20 @@ public class UserController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
-    @PostMapping("/register")
-    public ResponseEntity<User> registerUser(@RequestBody User user) {
-        User newUser = userService.registerUser(user);
-        return ResponseEntity.ok(newUser);
+    // Responde id, username y role (nunca el hash de la contraseña); 400 si el rol no es USER ni ADMIN
+    @PutMapping("/{id}/role/{role}")
+    public ResponseEntity<?> updateUserRole(@PathVariable Long id, @PathVariable String role) {
+        try {
+            Optional<UserSummary> updated = userService.updateUserRole(id, role);
+            return updated.<ResponseEntity<?>>map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Object> getCacheStats() {
+        return userService.getCacheStats();
     }
 
     @DeleteMapping("/{id}")
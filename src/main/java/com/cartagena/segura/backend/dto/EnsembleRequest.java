@@ -0,0 +1,18 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EnsembleRequest {
+    private Map<String, Object> features;
+    private List<String> models;              // Miembros (mismas etiquetas de clase)
+    private String method;                    // soft | hard | stacking (por defecto soft)
+    private Map<String, Double> weights;      // Peso por miembro (por defecto 1)
+    private String metaModel;                 // stacking: modelo con atributos "<miembro>:<etiqueta>"
+    private Long deadlineMs;                  // Tiempo máximo; los miembros que no llegan se omiten
+}
@@ -0,0 +1,22 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EnsembleResponse {
+    private String prediction;
+    private Double confidence;
+    private Map<String, Double> distribution;
+    private String method;
+    private List<PredictionResponse> members;  // Miembros que respondieron a tiempo
+    private Map<String, Long> latencyMs;       // Latencia de cada miembro que respondió
+    private List<String> missed;               // Miembros que no llegaron al deadline
+    private Map<String, String> failed;        // Miembros que fallaron -> error
+    private Boolean partial;                   // true si faltó algún miembro
+    private Long elapsedMs;
+}
@@ -18,4 +18,5 @@ public class EvaluationResponse {
     private String summary;
     private String confusionMatrix;
     private String detailedAccuracyByClass;
+    private long numInstances;
 }
\ No newline at end of file
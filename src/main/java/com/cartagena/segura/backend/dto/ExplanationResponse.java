@@ -0,0 +1,21 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExplanationResponse {
+    private String modelName;
+    private String algorithm;
+    private String prediction;
+    private Double confidence;
+    private String method;                    // decision-path | rule | attribution
+    private List<String> path;                // Condiciones recorridas en el árbol
+    private String rule;                      // Regla JRip que cubre la instancia
+    private Map<String, Double> attributions; // Aporte de cada atributo a la probabilidad de la clase predicha
+    private String baseline;                  // background | missing (referencia de las atribuciones)
+}
@@ -0,0 +1,36 @@
+package com.cartagena.segura.backend.dto;
+
+import com.cartagena.segura.backend.model.Incident;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IncidentChangeEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private Type type;
+    private String incidentId;
+    private Incident incident;               // En DELETED es la última versión conocida (puede ser null)
+    private Incident.Status previousStatus;  // Solo en UPDATED
+    private long timestamp;
+
+    public static IncidentChangeEvent created(Incident incident) {
+        return new IncidentChangeEvent(Type.CREATED, incident.getId(), incident, null, System.currentTimeMillis());
+    }
+
+    public static IncidentChangeEvent updated(Incident incident, Incident.Status previousStatus) {
+        return new IncidentChangeEvent(Type.UPDATED, incident.getId(), incident, previousStatus, System.currentTimeMillis());
+    }
+
+    public static IncidentChangeEvent deleted(String id, Incident lastKnown) {
+        return new IncidentChangeEvent(Type.DELETED, id, lastKnown, null, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,16 @@
+package com.cartagena.segura.backend.dto;
+
+import com.cartagena.segura.backend.model.Incident;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IncidentSearchHit {
+    private Incident incident;
+    private double score;                   // Relevancia BM25 (mayor = mejor)
+    private Map<String, String> highlights; // description / location con <em> en los términos encontrados
+}
@@ -0,0 +1,18 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IncidentSearchPage {
+    private List<IncidentSearchHit> content;
+    private int size;
+    private boolean hasNext;
+    private int page;
+    private long totalElements; // Incidentes que cumplen la consulta y los filtros
+    private long tookMs;
+}
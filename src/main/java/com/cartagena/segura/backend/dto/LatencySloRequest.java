@@ -0,0 +1,14 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LatencySloRequest {
+    private Long latencyMs;          // p95 máximo del modelo
+    private String fallbackModel;    // Modelo más barato con el mismo esquema
+    private Integer maxInFlight;     // Predicciones en curso antes de desviar (por defecto, núcleos)
+}
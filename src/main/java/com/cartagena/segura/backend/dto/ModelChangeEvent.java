@@ -0,0 +1,24 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cambio en el almacén de modelos, difundido a todos los nodos (pub/sub).
+ * nodeId identifica al nodo que hizo el cambio para que no se recargue a sí mismo.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ModelChangeEvent {
+
+    public enum Type {
+        SAVED, DELETED
+    }
+
+    private Type type;
+    private String modelName;
+    private String version;
+    private String nodeId;
+}
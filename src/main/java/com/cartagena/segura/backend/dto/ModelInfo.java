@@ -16,4 +16,9 @@ public class ModelInfo {
     private String classAttribute;
     private Date trainedDate;
     private boolean active;
+    private boolean online;      // Implementa UpdateableClassifier (admite /update)
+    private long updateCount;    // Filas aprendidas en línea desde el último entrenamiento
+    private String version;      // Hash del contenido guardado en el almacén de modelos
+    private boolean resident;    // En memoria (false = descargado por presupuesto, se recarga al usarlo)
+    private long memoryBytes;    // Tamaño estimado en el heap
 }
\ No newline at end of file
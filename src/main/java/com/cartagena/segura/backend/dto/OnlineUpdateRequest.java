@@ -0,0 +1,14 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OnlineUpdateRequest {
+    // Filas etiquetadas: features + valor de clase bajo el nombre del atributo clase
+    private List<Map<String, Object>> instances;
+}
@@ -1,5 +1,6 @@
 package com.cartagena.segura.backend.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -14,4 +15,9 @@ public class PredictionResponse {
     private Map<String, Double> distribution;
     private String modelName;
     private String algorithm;
+    // Solo si respondió el fallback: modelo pedido y motivo (latency | saturated)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String fallbackFrom;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String fallbackReason;
 }
\ No newline at end of file
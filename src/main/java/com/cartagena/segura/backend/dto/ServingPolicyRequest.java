@@ -0,0 +1,15 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ServingPolicyRequest {
+    private String candidateModel;  // Modelo canary (recibe canaryPercent del tráfico)
+    private Double canaryPercent;
+    private String shadowModel;     // Se evalúa fuera del camino de la respuesta
+    private Double shadowPercent;   // Porcentaje de peticiones que se copian al shadow (por defecto 100)
+}
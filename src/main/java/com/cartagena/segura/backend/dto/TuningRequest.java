@@ -0,0 +1,25 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TuningRequest {
+    private String dataset;                   // Modelo cuyo ARFF se usa como datos de entrenamiento
+    private String algorithm;
+    private String modelName;                 // Nombre con el que se registra el mejor modelo
+    private String strategy;                  // grid | random | halving
+    private Map<String, Object> searchSpace;  // parámetro -> [valores] o {"min", "max", "log", "integer", "steps"}
+    private Map<String, Object> parameters;   // Fijos en todos los trials
+    private Integer trials;                   // Configuraciones a probar (random / halving)
+    private Integer folds;
+    private String metric;                    // accuracy | kappa
+    private Integer patience;                 // Trials sin mejora antes de detener (grid / random)
+    private Integer eta;                      // Factor de reducción de successive halving
+    private Long seed;
+    private Boolean register;                 // Registrar el mejor modelo (por defecto true)
+}
@@ -0,0 +1,18 @@
+package com.cartagena.segura.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserPage {
+    private List<UserSummary> content;
+    private int size;
+    private boolean hasNext;
+    private Long nextAfterId;   // Cursor para el modo keyset (null si no hay más)
+    private Integer page;       // Solo en modo offset
+    private Long totalElements; // Solo si se pidió count=true
+}
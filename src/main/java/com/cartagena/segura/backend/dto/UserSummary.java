@@ -0,0 +1,11 @@
+package com.cartagena.segura.backend.dto;
+
+/**
+ * Proyección (cerrada) de usuario para listados: Spring Data solo selecciona
+ * estas columnas, sin hidratar la entidad ni leer la contraseña.
+ */
+public interface UserSummary {
+    Long getId();
+    String getUsername();
+    String getRole();
+}
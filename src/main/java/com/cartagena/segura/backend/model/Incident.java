@@ -1,8 +1,11 @@
 package com.cartagena.segura.backend.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
+
 @Document(collection = "incidents")
 public class Incident {
 
@@ -16,6 +19,23 @@ public class Incident {
     private Double lng;
     private Status status = Status.PENDING;
 
+    // Los asigna IncidentService (no el cliente)
+    private String geohash;          // Celda geográfica (IncidentGeo.STORED_PRECISION)
+    private Instant createdAt;
+    @Indexed
+    private Instant updatedAt;       // Marca de agua para procesos incrementales
+    private Instant statusChangedAt;
+    private String duplicateOf;      // Reporte enlazado a un incidente existente (IncidentDedupService)
+    private Integer reportCount;     // Reportes fusionados en este incidente (incluido el original)
+    private Instant lastReportedAt;
+
+    // Los asigna el scoring offline (IncidentScoringService); no cambian updatedAt
+    private Double riskScore;        // Probabilidad de riskLabel según el modelo
+    private String riskLabel;        // Tipo de incidente más probable
+    private String riskModel;
+    private String riskModelVersion;
+    private Instant riskScoredAt;
+
     public enum Status {
         PENDING,
         IN_PROGRESS,
@@ -55,4 +75,40 @@ public class Incident {
 
     public Status getStatus() { return status; }
     public void setStatus(Status status) { this.status = status; }
+
+    public String getGeohash() { return geohash; }
+    public void setGeohash(String geohash) { this.geohash = geohash; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+
+    public Instant getStatusChangedAt() { return statusChangedAt; }
+    public void setStatusChangedAt(Instant statusChangedAt) { this.statusChangedAt = statusChangedAt; }
+
+    public String getDuplicateOf() { return duplicateOf; }
+    public void setDuplicateOf(String duplicateOf) { this.duplicateOf = duplicateOf; }
+
+    public Integer getReportCount() { return reportCount; }
+    public void setReportCount(Integer reportCount) { this.reportCount = reportCount; }
+
+    public Instant getLastReportedAt() { return lastReportedAt; }
+    public void setLastReportedAt(Instant lastReportedAt) { this.lastReportedAt = lastReportedAt; }
+
+    public Double getRiskScore() { return riskScore; }
+    public void setRiskScore(Double riskScore) { this.riskScore = riskScore; }
+
+    public String getRiskLabel() { return riskLabel; }
+    public void setRiskLabel(String riskLabel) { this.riskLabel = riskLabel; }
+
+    public String getRiskModel() { return riskModel; }
+    public void setRiskModel(String riskModel) { this.riskModel = riskModel; }
+
+    public String getRiskModelVersion() { return riskModelVersion; }
+    public void setRiskModelVersion(String riskModelVersion) { this.riskModelVersion = riskModelVersion; }
+
+    public Instant getRiskScoredAt() { return riskScoredAt; }
+    public void setRiskScoredAt(Instant riskScoredAt) { this.riskScoredAt = riskScoredAt; }
 }
\ No newline at end of file
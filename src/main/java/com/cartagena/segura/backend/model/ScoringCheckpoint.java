@@ -0,0 +1,72 @@
+package com.cartagena.segura.backend.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Progreso del scoring offline de incidentes. Con lastId != null hay una corrida
+ * interrumpida que se retoma desde ese _id.
+ */
+@Document(collection = "ml_scoring_checkpoints")
+public class ScoringCheckpoint {
+
+    @Id
+    private String id;
+
+    private String modelName;
+    private String modelVersion;
+    private Instant watermark;       // Inicio de la última corrida completa: lo anterior ya está puntuado
+    private Instant runStartedAt;    // Inicio de la corrida en curso (será la nueva marca de agua)
+    private boolean runFull;
+    private String lastId;           // Último _id confirmado de la corrida en curso
+    private long scored;
+    private long failed;
+    private Instant completedAt;
+    private String owner;            // Nodo que tiene la corrida (lease)
+    private Instant leaseUntil;
+
+    public ScoringCheckpoint() {}
+
+    public ScoringCheckpoint(String id) {
+        this.id = id;
+    }
+
+    // Getters y Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getModelName() { return modelName; }
+    public void setModelName(String modelName) { this.modelName = modelName; }
+
+    public String getModelVersion() { return modelVersion; }
+    public void setModelVersion(String modelVersion) { this.modelVersion = modelVersion; }
+
+    public Instant getWatermark() { return watermark; }
+    public void setWatermark(Instant watermark) { this.watermark = watermark; }
+
+    public Instant getRunStartedAt() { return runStartedAt; }
+    public void setRunStartedAt(Instant runStartedAt) { this.runStartedAt = runStartedAt; }
+
+    public boolean isRunFull() { return runFull; }
+    public void setRunFull(boolean runFull) { this.runFull = runFull; }
+
+    public String getLastId() { return lastId; }
+    public void setLastId(String lastId) { this.lastId = lastId; }
+
+    public long getScored() { return scored; }
+    public void setScored(long scored) { this.scored = scored; }
+
+    public long getFailed() { return failed; }
+    public void setFailed(long failed) { this.failed = failed; }
+
+    public Instant getCompletedAt() { return completedAt; }
+    public void setCompletedAt(Instant completedAt) { this.completedAt = completedAt; }
+
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+
+    public Instant getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(Instant leaseUntil) { this.leaseUntil = leaseUntil; }
+}
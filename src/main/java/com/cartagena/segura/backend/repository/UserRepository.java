@@ -1,12 +1,31 @@
 package com.cartagena.segura.backend.repository;
 
+import com.cartagena.segura.backend.dto.UserSummary;
 import com.cartagena.segura.backend.model.User;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
+
+    // Keyset sobre id (usa el índice de la PK, sin OFFSET ni COUNT)
+    List<UserSummary> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    List<UserSummary> findByIdLessThanOrderByIdDesc(Long beforeId, Limit limit);
+
+    // Offset ordenable: Slice no ejecuta COUNT(*), Page sí
+    Slice<UserSummary> findSliceBy(Pageable pageable);
+
+    Page<UserSummary> findPageBy(Pageable pageable);
+
+    // Un usuario sin la contraseña (respuestas de la API)
+    Optional<UserSummary> findSummaryById(Long id);
 }
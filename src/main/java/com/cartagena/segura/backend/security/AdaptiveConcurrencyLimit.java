@@ -0,0 +1,117 @@
+package com.cartagena.segura.backend.security;
+
+/**
+ * Límite de concurrencia adaptativo por latencia (estilo TCP Vegas, como en Netflix
+ * concurrency-limits).
+ *
+ * Compara la latencia reciente con la latencia sin carga para estimar cuántas peticiones
+ * están haciendo cola: con poca cola el límite sube, con mucha baja. Los errores 5xx cuentan
+ * como señal de sobrecarga.
+ *
+ * Bajo carga sostenida no hay muestras sin cola, así que la latencia sin carga se re-mide
+ * cada cierto número de muestras fijando un momento el límite al mínimo (como el filtro
+ * adaptive concurrency de Envoy). Así sigue los cambios de régimen (otro modelo activo,
+ * otro hardware) sin ir confundiendo cola con latencia propia.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final int SHORT_WINDOW = 10;
+    // Muestras entre re-mediciones de la latencia sin carga, en múltiplos del límite
+    private static final int PROBE_MULTIPLIER = 30;
+    private static final int PROBE_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private volatile double limit;
+    private double shortRttNanos;
+    private double noLoadRttNanos;
+    private long samples;
+    private long samplesUntilProbe;
+
+    // Re-medición en curso: muestras restantes, mínimo visto y límite a restaurar
+    private int probeRemaining;
+    private long probeMinNanos;
+    private double limitBeforeProbe;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.samplesUntilProbe = nextProbe();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized void onSample(long rttNanos, int inFlight, boolean overloaded) {
+        if (probeRemaining > 0) {
+            probe(rttNanos, inFlight);
+            return;
+        }
+        if (overloaded) {
+            limit = Math.max(minLimit, limit * 0.9);
+            return;
+        }
+
+        samples++;
+        shortRttNanos = shortRttNanos == 0 ? rttNanos
+                : shortRttNanos + (rttNanos - shortRttNanos) / Math.min(samples, SHORT_WINDOW);
+        if (noLoadRttNanos == 0 || rttNanos < noLoadRttNanos) {
+            noLoadRttNanos = rttNanos;
+            return;
+        }
+        if (--samplesUntilProbe <= 0) {
+            limitBeforeProbe = limit;
+            limit = minLimit;
+            probeRemaining = PROBE_SAMPLES;
+            probeMinNanos = Long.MAX_VALUE;
+            return;
+        }
+
+        // Con poca concurrencia la latencia no dice nada sobre el límite
+        if (inFlight * 2 < limit) {
+            return;
+        }
+
+        double log = Math.max(1, Math.log10(limit));
+        double queue = limit * (1 - noLoadRttNanos / shortRttNanos);
+        double newLimit;
+        if (queue <= log) {
+            newLimit = limit + 6 * log;
+        } else if (queue < 3 * log) {
+            newLimit = limit + log;
+        } else if (queue > 6 * log) {
+            newLimit = limit - log;
+        } else {
+            return;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private void probe(long rttNanos, int inFlight) {
+        // Las peticiones admitidas antes de fijar el límite todavía traen cola: no cuentan
+        if (inFlight > minLimit) {
+            return;
+        }
+        probeMinNanos = Math.min(probeMinNanos, rttNanos);
+        if (--probeRemaining == 0) {
+            noLoadRttNanos = probeMinNanos;
+            limit = limitBeforeProbe;
+            samplesUntilProbe = nextProbe();
+        }
+    }
+
+    public synchronized double getShortRttMs() {
+        return shortRttNanos / 1_000_000.0;
+    }
+
+    public synchronized double getNoLoadRttMs() {
+        return noLoadRttNanos / 1_000_000.0;
+    }
+
+    private long nextProbe() {
+        return (long) (PROBE_MULTIPLIER * limit * (1 + Math.random()));
+    }
+}
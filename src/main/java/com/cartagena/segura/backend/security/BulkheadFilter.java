@@ -0,0 +1,301 @@
+package com.cartagena.segura.backend.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bulkheads entre cargas ML y el resto de la API (incidentes, auth, usuarios).
+ *
+ * Las peticiones ML comparten el pool de Tomcat con el CRUD; sin límite, una ráfaga de
+ * entrenamientos o lotes grandes ocupa todos los hilos. Cada grupo tiene su propio tope de
+ * concurrencia y una cola corta (espera acotada): lo que no entra se rechaza de inmediato.
+ *  - "heavy" (entrenar, evaluar, tunear, lotes, scoring): tope fijo, rechaza con 429.
+ *  - "ml" (resto de /api/ml): límite adaptativo por latencia, rechaza con 503.
+ * Lo que no cae en ningún grupo no se limita, así que conserva su capacidad.
+ * Mantener la suma de topes + colas por debajo de server.tomcat.threads.max.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    private final AntPathMatcher matcher = new AntPathMatcher();
+
+    @Value("${ml.bulkhead.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ml.bulkhead.exclude:/api/ml/health,/api/ml/bulkheads,/api/ml/quotas}")
+    private List<String> excluded;
+
+    @Value("${ml.bulkhead.heavy.paths:/api/ml/train/**,/api/ml/evaluate/**,/api/ml/tune,/api/ml/predict/batch,/api/ml/score/**,/api/ml/models/*/update}")
+    private List<String> heavyPaths;
+
+    // Solo métodos que lanzan trabajo: los GET de estado de esos mismos paths son baratos
+    @Value("${ml.bulkhead.heavy.methods:POST,PUT}")
+    private List<String> heavyMethods;
+
+    @Value("${ml.bulkhead.heavy.max-concurrent:4}")
+    private int heavyMaxConcurrent;
+
+    @Value("${ml.bulkhead.heavy.queue-size:4}")
+    private int heavyQueueSize;
+
+    @Value("${ml.bulkhead.heavy.max-wait-ms:1000}")
+    private long heavyMaxWaitMs;
+
+    @Value("${ml.bulkhead.heavy.retry-after-seconds:30}")
+    private long heavyRetryAfter;
+
+    @Value("${ml.bulkhead.ml.paths:/api/ml/**}")
+    private List<String> mlPaths;
+
+    @Value("${ml.bulkhead.ml.initial-limit:20}")
+    private int mlInitialLimit;
+
+    @Value("${ml.bulkhead.ml.min-limit:4}")
+    private int mlMinLimit;
+
+    @Value("${ml.bulkhead.ml.max-limit:64}")
+    private int mlMaxLimit;
+
+    @Value("${ml.bulkhead.ml.queue-size:16}")
+    private int mlQueueSize;
+
+    @Value("${ml.bulkhead.ml.max-wait-ms:200}")
+    private long mlMaxWaitMs;
+
+    @Value("${ml.bulkhead.ml.retry-after-seconds:1}")
+    private long mlRetryAfter;
+
+    private Bulkhead heavy;
+    private Bulkhead ml;
+
+    @PostConstruct
+    public void init() {
+        heavy = new Bulkhead("heavy", null, heavyMaxConcurrent, heavyQueueSize, heavyMaxWaitMs,
+                HttpStatus.TOO_MANY_REQUESTS, heavyRetryAfter);
+        ml = new Bulkhead("ml", new AdaptiveConcurrencyLimit(mlInitialLimit, mlMinLimit, mlMaxLimit),
+                mlMaxLimit, mlQueueSize, mlMaxWaitMs, HttpStatus.SERVICE_UNAVAILABLE, mlRetryAfter);
+        log.info("✓ Bulkheads: heavy={} (+{} en cola), ml={}..{} adaptativo (+{} en cola)",
+                heavyMaxConcurrent, heavyQueueSize, mlMinLimit, mlMaxLimit, mlQueueSize);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || bulkheadFor(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Bulkhead bulkhead = bulkheadFor(request);
+        boolean acquired;
+        try {
+            acquired = bulkhead.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            reject(request, response, bulkhead);
+            return;
+        }
+
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // Streaming / SSE: el permiso se libera cuando termina la respuesta, no el hilo
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        release(bulkhead, released, start, response.getStatus() >= 500);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                        release(bulkhead, released, start, true);
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        release(bulkhead, released, start, true);
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                release(bulkhead, released, start, response.getStatus() >= 500);
+            }
+        }
+    }
+
+    private static void release(Bulkhead bulkhead, AtomicBoolean released, long start, boolean overloaded) {
+        if (released.compareAndSet(false, true)) {
+            bulkhead.release(System.nanoTime() - start, overloaded);
+        }
+    }
+
+    private Bulkhead bulkheadFor(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (matchesAny(excluded, path)) return null;
+        if (heavyMethods.contains(request.getMethod()) && matchesAny(heavyPaths, path)) return heavy;
+        if (matchesAny(mlPaths, path)) return ml;
+        return null;
+    }
+
+    private boolean matchesAny(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (matcher.match(pattern.trim(), path)) return true;
+        }
+        return false;
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, Bulkhead bulkhead)
+            throws IOException {
+        FilterRejection.write(request, response, bulkhead.rejectStatus, bulkhead.retryAfterSeconds,
+                "Servicio ML saturado (" + bulkhead.name + "), reintente en " + bulkhead.retryAfterSeconds + " s");
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("heavy", heavy.toMap());
+        status.put("ml", ml.toMap());
+        return status;
+    }
+
+    /**
+     * Tope de concurrencia (fijo o adaptativo) con una cola de espera acotada.
+     */
+    private static final class Bulkhead {
+        final String name;
+        final AdaptiveConcurrencyLimit adaptive;
+        final int fixedLimit;
+        final int queueSize;
+        final long maxWaitNanos;
+        final HttpStatus rejectStatus;
+        final long retryAfterSeconds;
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger waiting = new AtomicInteger();
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition released = lock.newCondition();
+        final LongAdder accepted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder timedOut = new LongAdder();
+
+        Bulkhead(String name, AdaptiveConcurrencyLimit adaptive, int fixedLimit, int queueSize, long maxWaitMs,
+                 HttpStatus rejectStatus, long retryAfterSeconds) {
+            this.name = name;
+            this.adaptive = adaptive;
+            this.fixedLimit = fixedLimit;
+            this.queueSize = queueSize;
+            this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+            this.rejectStatus = rejectStatus;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        int limit() {
+            return adaptive != null ? adaptive.getLimit() : fixedLimit;
+        }
+
+        boolean acquire() throws InterruptedException {
+            if (tryAcquire()) {
+                accepted.increment();
+                return true;
+            }
+            if (waiting.incrementAndGet() > queueSize) {
+                waiting.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+            try {
+                long deadline = System.nanoTime() + maxWaitNanos;
+                lock.lock();
+                try {
+                    while (!tryAcquire()) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            timedOut.increment();
+                            return false;
+                        }
+                        released.awaitNanos(remaining);
+                    }
+                    accepted.increment();
+                    return true;
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int current = inFlight.get();
+                if (current >= limit()) return false;
+                if (inFlight.compareAndSet(current, current + 1)) return true;
+            }
+        }
+
+        void release(long rttNanos, boolean overloaded) {
+            int current = inFlight.getAndDecrement();
+            if (adaptive != null) {
+                adaptive.onSample(rttNanos, current, overloaded);
+            }
+            if (waiting.get() > 0) {
+                lock.lock();
+                try {
+                    released.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("limit", limit());
+            map.put("adaptive", adaptive != null);
+            map.put("inFlight", inFlight.get());
+            map.put("waiting", waiting.get());
+            map.put("queueSize", queueSize);
+            map.put("accepted", accepted.sum());
+            map.put("rejected", rejected.sum());
+            map.put("timedOut", timedOut.sum());
+            if (adaptive != null) {
+                map.put("shortRttMs", adaptive.getShortRttMs());
+                map.put("noLoadRttMs", adaptive.getNoLoadRttMs());
+            }
+            return map;
+        }
+    }
+}
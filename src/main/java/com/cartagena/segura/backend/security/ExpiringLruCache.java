@@ -0,0 +1,129 @@
+package com.cartagena.segura.backend.security;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Caché acotada en memoria: LRU con vencimiento por entrada.
+ *
+ * Las entradas se reparten en segmentos (LinkedHashMap en orden de acceso, cada uno con su
+ * lock). Al superar el tope se descarta la menos usada del segmento y una entrada vencida se
+ * borra al leerla: insertar y leer son O(1) aunque la caché esté llena, y un pico de claves
+ * nuevas desplaza a las viejas en vez de dejar de cachear.
+ */
+public final class ExpiringLruCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+    // Por debajo de este tamaño un solo segmento: el tope por segmento sería demasiado chico
+    private static final int MIN_SIZE_FOR_SEGMENTS = 4096;
+
+    private final List<Segment<K, V>> segments;
+    private final LongAdder evictions = new LongAdder();
+
+    private record Node<V>(V value, long expiresAtMs) {}
+
+    public ExpiringLruCache(int maxSize) {
+        int count = maxSize >= MIN_SIZE_FOR_SEGMENTS ? SEGMENTS : 1;
+        int perSegment = Math.max(1, (maxSize + count - 1) / count);
+        segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            segments.add(new Segment<>(perSegment, evictions));
+        }
+    }
+
+    /**
+     * Valor vigente de la clave, o null si no está o ya venció.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<V> node = segment.get(key);
+            if (node == null) return null;
+            if (node.expiresAtMs() <= System.currentTimeMillis()) {
+                segment.remove(key);
+                return null;
+            }
+            return node.value();
+        }
+    }
+
+    public void put(K key, V value, long expiresAtMs) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new Node<>(value, expiresAtMs));
+        }
+    }
+
+    /**
+     * Valor vigente de la clave o, si no está o ya venció, el que crea factory (que se guarda
+     * con ese vencimiento). Se ejecuta con el lock del segmento: factory debe ser barata.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> factory, long expiresAtMs) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<V> node = segment.get(key);
+            if (node != null && node.expiresAtMs() > System.currentTimeMillis()) {
+                return node.value();
+            }
+            V value = factory.apply(key);
+            segment.put(key, new Node<>(value, expiresAtMs));
+            return value;
+        }
+    }
+
+    public V remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<V> node = segment.remove(key);
+            return node != null ? node.value() : null;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /** Entradas descartadas por el tope (no cuenta las vencidas ni las borradas). */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        if (segments.size() == 1) return segments.get(0);
+        int h = key.hashCode();
+        return segments.get((h ^ (h >>> 16)) & (segments.size() - 1));
+    }
+
+    private static final class Segment<K, V> extends LinkedHashMap<K, Node<V>> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+        private final LongAdder evictions;
+
+        Segment(int maxSize, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Node<V>> eldest) {
+            if (size() <= maxSize) return false;
+            // Una vencida no es un desalojo real: no se cuenta
+            if (eldest.getValue().expiresAtMs() > System.currentTimeMillis()) evictions.increment();
+            return true;
+        }
+    }
+}
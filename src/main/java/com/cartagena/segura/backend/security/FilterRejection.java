@@ -0,0 +1,37 @@
+package com.cartagena.segura.backend.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+
+/**
+ * Respuesta de rechazo de los filtros (cuotas y bulkheads): mismo cuerpo JSON que
+ * createErrorResponse de los controladores, con Retry-After y la cabecera CORS.
+ */
+final class FilterRejection {
+
+    private FilterRejection() {
+    }
+
+    static void write(HttpServletRequest request, HttpServletResponse response, HttpStatus status,
+                      long retryAfterSeconds, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        // El rechazo ocurre antes de MVC: sin esto el navegador lo vería como error CORS
+        if (request.getHeader(HttpHeaders.ORIGIN) != null) {
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write("{\"error\":true,\"message\":\"" + escape(message) + "\",\"timestamp\":"
+                + System.currentTimeMillis() + "}");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -1,6 +1,7 @@
 package com.cartagena.segura.backend.security;
 
 import com.cartagena.segura.backend.service.UserService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -17,11 +18,18 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserService userService;
+    private final boolean statelessPrincipal;
 
     // ✅ Constructor explícito (inyección por bean, no autowired)
     public JwtAuthFilter(JwtUtil jwtUtil, UserService userService) {
+        this(jwtUtil, userService, false);
+    }
+
+    // statelessPrincipal: el principal se arma con los claims del token (sin base de datos ni caché)
+    public JwtAuthFilter(JwtUtil jwtUtil, UserService userService, boolean statelessPrincipal) {
         this.jwtUtil = jwtUtil;
         this.userService = userService;
+        this.statelessPrincipal = statelessPrincipal;
     }
 
     @Override
@@ -33,10 +41,16 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         String header = request.getHeader("Authorization");
         if (header != null && header.startsWith("Bearer ")) {
             String token = header.substring(7);
-            if (jwtUtil.validateToken(token)) {
-                String username = jwtUtil.getUsernameFromToken(token);
+            // Una sola verificación de firma por petición
+            Claims claims = jwtUtil.parseToken(token);
+            if (claims != null) {
+                String username = claims.getSubject();
                 if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                    UserDetails userDetails = userService.loadUserByUsername(username);
+                    UserDetails userDetails = statelessPrincipal ? jwtUtil.principalFromClaims(claims) : null;
+                    if (userDetails == null) {
+                        // Modo clásico o token sin claims de rol
+                        userDetails = userService.loadPrincipal(username);
+                    }
                     UsernamePasswordAuthenticationToken auth =
                             new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                     auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -1,17 +1,28 @@
 package com.cartagena.segura.backend.security;
 
+import com.cartagena.segura.backend.model.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 
+@Slf4j
 @Component
 public class JwtUtil {
 
+    // Claims del modo "stateless": el filtro arma el principal sin ir a la base de datos
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLE = "role";
+
     //  Valores tomados directamente de application.properties
     @Value("${jwt.secret}")
     private String jwtSecret;
@@ -19,45 +30,112 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private long jwtExpirationMs;
 
-    // Genera la clave de firma
-    private Key getSigningKey() {
+    // Máximo de tokens verificados en caché (0 = sin caché)
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+
+    // Clave y parser se construyen una sola vez (son inmutables y thread-safe)
+    private Key signingKey;
+    private JwtParser parser;
+
+    // hash(token) -> claims ya verificados; cada entrada vence con el "exp" del token
+    private ExpiringLruCache<String, Claims> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
         // Usa UTF-8 para evitar errores con caracteres especiales
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        verifiedTokens = new ExpiringLruCache<>(Math.max(1, cacheMaxSize));
     }
 
-    //  Genera un token JWT válido
-    public String generateToken(String username) {
+    //  Genera un token con id y rol del usuario embebidos
+    public String generateToken(User user) {
         long now = System.currentTimeMillis();
         return Jwts.builder()
-                .setSubject(username)
+                .setSubject(user.getUsername())
+                .claim(CLAIM_USER_ID, user.getId())
+                .claim(CLAIM_ROLE, user.getRole())
                 .setIssuedAt(new Date(now))
                 .setExpiration(new Date(now + jwtExpirationMs))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Principal construido solo con los claims verificados (sin contraseña).
+     * Retorna null si el token no trae los claims de rol (tokens antiguos).
+     */
+    public User principalFromClaims(Claims claims) {
+        String role = claims.get(CLAIM_ROLE, String.class);
+        if (claims.getSubject() == null || role == null) {
+            return null;
+        }
+        User user = new User(claims.getSubject(), null, role);
+        Number id = claims.get(CLAIM_USER_ID, Number.class);
+        user.setId(id != null ? id.longValue() : null);
+        return user;
+    }
+
+    public long getExpirationMs() {
+        return jwtExpirationMs;
+    }
+
+    /**
+     * Verifica firma y vencimiento una sola vez y retorna los claims,
+     * o null si el token no es válido. Los tokens ya verificados se sirven
+     * desde caché hasta su "exp" sin volver a calcular el HMAC.
+     */
+    public Claims parseToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        String key = cacheMaxSize > 0 ? sha256(token) : null;
+        if (key != null) {
+            Claims cached = verifiedTokens.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            if (key != null && claims.getExpiration() != null) {
+                verifiedTokens.put(key, claims, claims.getExpiration().getTime());
+            }
+            return claims;
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("JWT inválido: {}", e.getMessage());
+            return null;
+        }
+    }
+
     //  Extrae el usuario del token
     public String getUsernameFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        Claims claims = parseToken(token);
+        return claims != null ? claims.getSubject() : null;
     }
 
     //  Valida que el token sea correcto y no esté vencido
     public boolean validateToken(String token) {
+        return parseToken(token) != null;
+    }
+
+    public int getCachedTokenCount() {
+        return verifiedTokens.size();
+    }
+
+    // SHA-256 del token: no se retiene el token en memoria y la clave es de tamaño fijo
+    public static String sha256(String value) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            // Puedes imprimir el error si estás en desarrollo
-            System.err.println("JWT inválido: " + e.getMessage());
-            return false;
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
         }
     }
 }
@@ -0,0 +1,96 @@
+package com.cartagena.segura.backend.security;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets en memoria (un solo nodo). Cada bucket es un estado inmutable que se
+ * reemplaza con compareAndSet: los clientes distintos no comparten ningún lock y el mismo
+ * cliente solo reintenta si dos peticiones suyas llegan a la vez.
+ *
+ * Los buckets viven en una ExpiringLruCache: cada uno vence cuando volvería a estar lleno (un
+ * bucket lleno es igual a uno nuevo, así que olvidarlo no cambia ninguna decisión) y con el tope
+ * de claves se descarta el menos usado en O(1).
+ */
+@Component
+@ConditionalOnProperty(name = "ml.quota.store", havingValue = "local", matchIfMissing = true)
+public class LocalQuotaStore implements QuotaStore {
+
+    // Tope de buckets rastreados para no crecer sin límite con muchas IPs distintas
+    @Value("${ml.quota.max-tracked-keys:100000}")
+    private int maxTrackedKeys = 100000;
+
+    private ExpiringLruCache<String, Bucket> buckets;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private record State(double tokens, long updatedNanos) {}
+
+    private record Bucket(Limit limit, AtomicReference<State> state) {}
+
+    @PostConstruct
+    public void init() {
+        buckets = new ExpiringLruCache<>(Math.max(1, maxTrackedKeys));
+    }
+
+    @Override
+    public Decision tryConsume(String key, Limit limit, long tokens, boolean force) {
+        return tryConsume(key, limit, tokens, force, System.nanoTime());
+    }
+
+    Decision tryConsume(String key, Limit limit, long tokens, boolean force, long now) {
+        Bucket bucket = buckets.computeIfAbsent(key,
+                k -> new Bucket(limit, new AtomicReference<>(new State(limit.capacity(), now))),
+                System.currentTimeMillis() + millisUntilFull(limit.capacity(), limit));
+
+        while (true) {
+            State current = bucket.state().get();
+            double available = refill(current, limit, now);
+            boolean allowed = force || available >= tokens;
+            double left = allowed ? available - tokens : available;
+            if (bucket.state().compareAndSet(current, new State(left, Math.max(now, current.updatedNanos())))) {
+                if (left < available) {
+                    // Si dos consumos del mismo cliente se cruzan puede quedar el vencimiento del
+                    // primero: el bucket se olvidaría como mucho un consumo antes de llenarse
+                    buckets.put(key, bucket, System.currentTimeMillis() + millisUntilFull(left, limit));
+                }
+                (allowed ? accepted : rejected).increment();
+                return decision(allowed, left, limit, tokens);
+            }
+        }
+    }
+
+    private static long millisUntilFull(double tokens, Limit limit) {
+        if (limit.refillPerSecond() <= 0) return Long.MAX_VALUE / 2;
+        return (long) Math.ceil(Math.max(0, limit.capacity() - tokens) / limit.refillPerSecond() * 1000);
+    }
+
+    static double refill(State state, Limit limit, long now) {
+        double elapsedSeconds = Math.max(0, now - state.updatedNanos()) / 1_000_000_000.0;
+        return Math.min(limit.capacity(), state.tokens() + elapsedSeconds * limit.refillPerSecond());
+    }
+
+    static Decision decision(boolean allowed, double left, Limit limit, long tokens) {
+        long reset = (long) Math.ceil((limit.capacity() - left) / limit.refillPerSecond());
+        long retry = allowed ? 0 : Math.max(1, (long) Math.ceil((tokens - left) / limit.refillPerSecond()));
+        return new Decision(allowed, (long) Math.floor(left), reset, retry);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "local");
+        stats.put("buckets", buckets.size());
+        stats.put("evictions", buckets.evictions());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,123 @@
+package com.cartagena.segura.backend.security;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Límite de intentos de login por IP (token bucket) y de fallos por usuario (ventana fija).
+ * Se consulta ANTES de calcular BCrypt: un intento rechazado no consume CPU de hashing.
+ *
+ * Cada IP tiene un bucket de "max-attempts-per-ip" intentos que se recarga por completo en
+ * "ip-window-seconds": a diferencia de una ventana fija, no admite el doble de intentos
+ * juntando el final de una ventana con el inicio de la siguiente.
+ *
+ * Buckets y ventanas viven en ExpiringLruCache: un bucket vence cuando volvería a estar lleno
+ * y una ventana cuando termina (en ambos casos olvidarlos no cambia ninguna decisión), y al
+ * llegar al tope se descarta el menos usado en O(1), también bajo un ataque con muchas IPs.
+ */
+@Component
+public class LoginRateLimiter {
+
+    @Value("${security.login.max-attempts-per-ip:30}")
+    private int maxAttemptsPerIp;
+
+    @Value("${security.login.ip-window-seconds:60}")
+    private long ipWindowSeconds;
+
+    @Value("${security.login.max-failures-per-user:5}")
+    private int maxFailuresPerUser;
+
+    @Value("${security.login.user-window-seconds:300}")
+    private long userWindowSeconds;
+
+    // Tope de claves rastreadas (por mapa) para no crecer sin límite bajo ataque
+    @Value("${security.login.max-tracked-keys:100000}")
+    private int maxTrackedKeys;
+
+    private ExpiringLruCache<String, AtomicReference<Bucket>> attemptsByIp;
+    private ExpiringLruCache<String, AtomicReference<Window>> failuresByUser;
+
+    private record Bucket(double tokens, long updatedMs) {}
+
+    private record Window(long startMs, int count) {}
+
+    @PostConstruct
+    public void init() {
+        attemptsByIp = new ExpiringLruCache<>(Math.max(1, maxTrackedKeys));
+        failuresByUser = new ExpiringLruCache<>(Math.max(1, maxTrackedKeys));
+    }
+
+    /**
+     * Registra un intento. Retorna 0 si se permite, o los segundos a esperar (Retry-After).
+     */
+    public long tryAcquire(String username, String ip) {
+        return tryAcquire(username, ip, System.currentTimeMillis());
+    }
+
+    long tryAcquire(String username, String ip, long now) {
+        if (username != null) {
+            AtomicReference<Window> failures = failuresByUser.get(username.toLowerCase());
+            Window window = failures != null ? failures.get() : null;
+            if (window != null && window.count() >= maxFailuresPerUser) {
+                long retry = remainingSeconds(window, userWindowSeconds, now);
+                if (retry > 0) return retry;
+            }
+        }
+
+        AtomicReference<Bucket> state = attemptsByIp.computeIfAbsent(ip,
+                k -> new AtomicReference<>(new Bucket(maxAttemptsPerIp, now)), now + millisUntilFull(0));
+        while (true) {
+            Bucket current = state.get();
+            double available = refill(current, now);
+            boolean allowed = available >= 1;
+            Bucket next = new Bucket(allowed ? available - 1 : available, Math.max(now, current.updatedMs()));
+            if (state.compareAndSet(current, next)) {
+                if (!allowed) {
+                    return Math.max(1, (long) Math.ceil((1 - next.tokens()) / refillPerSecond()));
+                }
+                attemptsByIp.put(ip, state, now + millisUntilFull(next.tokens()));
+                return 0;
+            }
+        }
+    }
+
+    public void recordFailure(String username) {
+        if (username == null) return;
+        String key = username.toLowerCase();
+        long now = System.currentTimeMillis();
+        long windowMs = userWindowSeconds * 1000;
+        AtomicReference<Window> state = failuresByUser.computeIfAbsent(key, k -> new AtomicReference<>(), now + windowMs);
+        Window window = state.updateAndGet(w ->
+                w == null || remainingSeconds(w, userWindowSeconds, now) <= 0
+                        ? new Window(now, 1)
+                        : new Window(w.startMs(), w.count() + 1));
+        failuresByUser.put(key, state, window.startMs() + windowMs);
+    }
+
+    public void recordSuccess(String username) {
+        if (username != null) {
+            failuresByUser.remove(username.toLowerCase());
+        }
+    }
+
+    private double refill(Bucket bucket, long now) {
+        double elapsedSeconds = Math.max(0, now - bucket.updatedMs()) / 1000.0;
+        return Math.min(maxAttemptsPerIp, bucket.tokens() + elapsedSeconds * refillPerSecond());
+    }
+
+    private double refillPerSecond() {
+        return (double) maxAttemptsPerIp / Math.max(1, ipWindowSeconds);
+    }
+
+    private long millisUntilFull(double tokens) {
+        return (long) Math.ceil(Math.max(0, maxAttemptsPerIp - tokens) / refillPerSecond() * 1000);
+    }
+
+    private static long remainingSeconds(Window window, long windowSeconds, long now) {
+        long remainingMs = window.startMs() + windowSeconds * 1000 - now;
+        return remainingMs <= 0 ? 0 : (remainingMs + 999) / 1000;
+    }
+}
@@ -0,0 +1,216 @@
+package com.cartagena.segura.backend.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Cuotas por cliente (token bucket) para los endpoints ML públicos.
+ *
+ * El cliente es la API key (cabecera X-API-Key, solo si está en ml.quota.api-keys) o, si no,
+ * la IP. Cada cliente tiene presupuestos separados para predicciones, filas en lote,
+ * entrenamientos y evaluaciones: agotar uno no bloquea los demás. Las actualizaciones en línea
+ * (/models/{modelo}/update) se cobran por instancia contra las filas en lote. Las consultas (GET) no
+ * consumen cuota.
+ *
+ * Las respuestas llevan RateLimit-Limit / RateLimit-Remaining / RateLimit-Reset /
+ * RateLimit-Policy (draft IETF) y, al rechazar, 429 con Retry-After. Se evalúa antes que los
+ * bulkheads: un cliente sin cuota no ocupa un lugar en la cola.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class MLQuotaFilter extends OncePerRequestFilter {
+
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    public enum Budget {
+        PREDICT, BATCH_ROWS, TRAIN, EVALUATE
+    }
+
+    private final AntPathMatcher matcher = new AntPathMatcher();
+
+    @Autowired
+    private QuotaStore store;
+
+    @Value("${ml.quota.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ml.quota.api-keys:}")
+    private Set<String> apiKeys;
+
+    @Value("${ml.quota.predict.capacity:120}")
+    private long predictCapacity;
+
+    @Value("${ml.quota.predict.refill-per-minute:120}")
+    private double predictRefill;
+
+    @Value("${ml.quota.batch-rows.capacity:200000}")
+    private long batchRowsCapacity;
+
+    @Value("${ml.quota.batch-rows.refill-per-minute:100000}")
+    private double batchRowsRefill;
+
+    @Value("${ml.quota.train.capacity:5}")
+    private long trainCapacity;
+
+    @Value("${ml.quota.train.refill-per-minute:0.1}")
+    private double trainRefill;
+
+    @Value("${ml.quota.evaluate.capacity:10}")
+    private long evaluateCapacity;
+
+    @Value("${ml.quota.evaluate.refill-per-minute:1}")
+    private double evaluateRefill;
+
+    private final Map<Budget, QuotaStore.Limit> limits = new EnumMap<>(Budget.class);
+
+    // Primera regla que coincide (método + patrón); el lote va antes que /predict/*
+    private final List<Rule> rules = List.of(
+            new Rule("/api/ml/predict/batch", Budget.BATCH_ROWS),
+            new Rule("/api/ml/predict", Budget.PREDICT),
+            new Rule("/api/ml/predict/*", Budget.PREDICT),
+            new Rule("/api/ml/explain/*", Budget.PREDICT),
+            new Rule("/api/ml/ensemble", Budget.PREDICT),
+            new Rule("/api/ml/train/**", Budget.TRAIN),
+            new Rule("/api/ml/tune", Budget.TRAIN),
+            new Rule("/api/ml/score/**", Budget.TRAIN),
+            new Rule("/api/ml/models/*/update", Budget.BATCH_ROWS),
+            new Rule("/api/ml/evaluate/*", Budget.EVALUATE));
+
+    private record Rule(String pattern, Budget budget) {}
+
+    @PostConstruct
+    public void init() {
+        limits.put(Budget.PREDICT, limit(predictCapacity, predictRefill));
+        limits.put(Budget.BATCH_ROWS, limit(batchRowsCapacity, batchRowsRefill));
+        limits.put(Budget.TRAIN, limit(trainCapacity, trainRefill));
+        limits.put(Budget.EVALUATE, limit(evaluateCapacity, evaluateRefill));
+        apiKeys = apiKeys.stream().map(String::trim).filter(k -> !k.isEmpty()).collect(Collectors.toSet());
+        log.info("✓ Cuotas ML {}: {} API keys, {}", enabled ? "activas" : "desactivadas", apiKeys.size(), limits);
+    }
+
+    private static QuotaStore.Limit limit(long capacity, double refillPerMinute) {
+        return new QuotaStore.Limit(capacity, refillPerMinute / 60.0);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || budgetFor(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Budget budget = budgetFor(request);
+        // En lotes y actualizaciones en línea la admisión cobra una fila; el resto lo cobra el
+        // controlador al conocer el tamaño
+        QuotaStore.Decision decision = store.tryConsume(key(clientOf(request), budget), limits.get(budget), 1, false);
+        writeHeaders(response, budget, decision);
+        if (!decision.allowed()) {
+            reject(request, response, budget, decision);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Identificador del cliente para cobrar cuota fuera del filtro (hay que resolverlo en el
+     * hilo de la petición: en streaming el cobro ocurre cuando la petición ya terminó).
+     */
+    public String clientOf(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        if (apiKey != null && apiKeys.contains(apiKey)) {
+            // La clave no se guarda en claro (ni en memoria ni en Redis)
+            return "key:" + fingerprint(apiKey);
+        }
+        // Detrás de un proxy de confianza es la IP de X-Forwarded-For (server.forward-headers-strategy)
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    /**
+     * Cobra filas de un lote (menos la fila cobrada al admitir la petición). Con force el cobro
+     * se aplica aunque deje deuda: el lote en streaming ya se procesó y la deuda bloquea las
+     * siguientes peticiones del cliente hasta que se recupere.
+     * Retorna null si no hubo nada que cobrar (cuotas desactivadas o lote de una fila).
+     */
+    public QuotaStore.Decision chargeBatchRows(String client, long rows, boolean force) {
+        if (!enabled || rows <= 1) {
+            return null;
+        }
+        return store.tryConsume(key(client, Budget.BATCH_ROWS), limits.get(Budget.BATCH_ROWS), rows - 1, force);
+    }
+
+    public void writeHeaders(HttpServletResponse response, Budget budget, QuotaStore.Decision decision) {
+        QuotaStore.Limit limit = limits.get(budget);
+        response.setHeader("RateLimit-Limit", String.valueOf(limit.capacity()));
+        response.setHeader("RateLimit-Remaining", String.valueOf(Math.max(0, decision.remaining())));
+        response.setHeader("RateLimit-Reset", String.valueOf(decision.resetSeconds()));
+        response.setHeader("RateLimit-Policy", limit.capacity() + ";w=" + limit.windowSeconds()
+                + ";name=\"" + budget.name().toLowerCase() + "\"");
+        if (!decision.allowed()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()));
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        Map<String, Object> budgets = new LinkedHashMap<>();
+        limits.forEach((budget, limit) -> budgets.put(budget.name().toLowerCase(), Map.of(
+                "capacity", limit.capacity(),
+                "refillPerMinute", limit.refillPerSecond() * 60,
+                "windowSeconds", limit.windowSeconds())));
+        status.put("budgets", budgets);
+        status.put("store", store.stats());
+        return status;
+    }
+
+    private Budget budgetFor(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod()) && !"PUT".equals(request.getMethod())) return null;
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (Rule rule : rules) {
+            if (matcher.match(rule.pattern(), path)) return rule.budget();
+        }
+        return null;
+    }
+
+    private static String key(String client, Budget budget) {
+        return budget.name().toLowerCase() + ":" + client;
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, Budget budget,
+                        QuotaStore.Decision decision) throws IOException {
+        FilterRejection.write(request, response, HttpStatus.TOO_MANY_REQUESTS, decision.retryAfterSeconds(),
+                "Cuota de " + budget.name().toLowerCase() + " agotada, reintente en "
+                        + decision.retryAfterSeconds() + " s");
+    }
+
+    private static String fingerprint(String apiKey) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
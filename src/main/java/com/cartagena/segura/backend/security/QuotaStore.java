@@ -0,0 +1,34 @@
+package com.cartagena.segura.backend.security;
+
+import java.util.Map;
+
+/**
+ * Almacén de token buckets para las cuotas de /api/ml (ver MLQuotaFilter).
+ * "local" guarda los buckets en memoria de cada nodo; "redis" los comparte entre nodos.
+ */
+public interface QuotaStore {
+
+    /** Capacidad del bucket y tokens que recupera por segundo. */
+    record Limit(long capacity, double refillPerSecond) {
+
+        /** Segundos para llenar el bucket vacío (ventana de la política). */
+        public long windowSeconds() {
+            return (long) Math.ceil(capacity / refillPerSecond);
+        }
+    }
+
+    /**
+     * Resultado de un consumo: tokens que quedan (negativo si hay deuda), segundos hasta que el
+     * bucket vuelva a estar lleno y, si se rechazó, segundos hasta poder reintentar.
+     */
+    record Decision(boolean allowed, long remaining, long resetSeconds, long retryAfterSeconds) {}
+
+    /**
+     * Consume tokens del bucket "key". Con force el consumo se aplica aunque no alcancen
+     * (queda deuda): sirve para cobrar trabajo ya hecho, como las filas de un lote en streaming.
+     */
+    Decision tryConsume(String key, Limit limit, long tokens, boolean force);
+
+    /** Métricas: tipo, buckets, aceptados, rechazados. */
+    Map<String, Object> stats();
+}
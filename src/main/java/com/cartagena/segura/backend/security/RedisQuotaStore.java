@@ -0,0 +1,93 @@
+package com.cartagena.segura.backend.security;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets compartidos en Redis: la cuota de un cliente es la misma sin importar a qué
+ * nodo llegue. La recarga y el consumo se hacen en un script Lua (atómico, un solo viaje) con
+ * el reloj de Redis, así que los relojes de los nodos no importan. Cada bucket expira cuando
+ * volvería a estar lleno.
+ * Si Redis falla se usan buckets en memoria de este nodo (la cuota sigue aplicándose, por nodo).
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ml.quota.store", havingValue = "redis")
+public class RedisQuotaStore implements QuotaStore {
+
+    private static final String KEY_PREFIX = "ml:quota:";
+
+    // Devuelve {permitido, tokens restantes}
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<List<Long>> CONSUME = new DefaultRedisScript<>("""
+            local capacity = tonumber(ARGV[1])
+            local perMs = tonumber(ARGV[2])
+            local requested = tonumber(ARGV[3])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1]) or capacity
+            local ts = tonumber(state[2]) or now
+            tokens = math.min(capacity, tokens + math.max(0, now - ts) * perMs)
+            local allowed = 0
+            if ARGV[4] == '1' or tokens >= requested then
+              tokens = tokens - requested
+              allowed = 1
+            end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil((capacity - tokens) / perMs) + 1000)
+            return {allowed, math.floor(tokens)}
+            """, (Class<List<Long>>) (Class<?>) List.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final LocalQuotaStore fallback = new LocalQuotaStore();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        fallback.init();
+    }
+
+    @Override
+    public Decision tryConsume(String key, Limit limit, long tokens, boolean force) {
+        try {
+            List<Long> result = redisTemplate.execute(CONSUME, List.of(KEY_PREFIX + key),
+                    String.valueOf(limit.capacity()), String.valueOf(limit.refillPerSecond() / 1000.0),
+                    String.valueOf(tokens), force ? "1" : "0");
+            boolean allowed = result.get(0) == 1;
+            long left = result.get(1);
+            (allowed ? accepted : rejected).increment();
+            return LocalQuotaStore.decision(allowed, left, limit, tokens);
+        } catch (Exception e) {
+            errors.increment();
+            log.debug("Redis no disponible para cuotas ML: {}", e.getMessage());
+            return fallback.tryConsume(key, limit, tokens, force);
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "redis");
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("errors", errors.sum());
+        stats.put("fallback", fallback.stats());
+        return stats;
+    }
+}
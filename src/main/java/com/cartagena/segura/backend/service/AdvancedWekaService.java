@@ -2,38 +2,93 @@ package com.cartagena.segura.backend.service;
 
 import com.cartagena.segura.backend.dto.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
+import weka.classifiers.UpdateableClassifier;
 import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
 import weka.classifiers.functions.SMO;
 import weka.classifiers.rules.JRip;
+import weka.classifiers.trees.HoeffdingTree;
 import weka.classifiers.trees.J48;
 import weka.classifiers.trees.RandomForest;
 import weka.core.*;
+import weka.core.converters.ArffLoader;
 import weka.core.converters.ArffSaver;
 import weka.core.converters.CSVLoader;
 import weka.core.converters.ConverterUtils.DataSource;
 
 import jakarta.annotation.PostConstruct;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class AdvancedWekaService {
 
-    private static final String MODELS_DIR = "models/";
-    private Map<String, ModelWrapper> loadedModels = new HashMap<>();
-    private String activeModelName = "default";
+    @Autowired
+    private ModelStore modelStore;
+
+    @Autowired
+    private ModelChangeNotifier modelChangeNotifier;
+
+    @Autowired
+    private GeoCellFeatureStore featureStore;
+
+    private Map<String, ModelWrapper> loadedModels = new ConcurrentHashMap<>();
+    private volatile String activeModelName = "default";
+
+    // Versión del almacén que este nodo tiene cargada por modelo (sincronización entre nodos).
+    // Se separa de ModelWrapper porque los snapshots en línea cambian el clasificador sin guardarlo
+    private final Map<String, String> storeVersions = new ConcurrentHashMap<>();
+
+    // Presupuesto de memoria para modelos residentes (0 = la mitad del heap máximo)
+    @Value("${ml.models.memory-budget-mb:0}")
+    private long memoryBudgetMb;
+    private long memoryBudgetBytes;
+
+    // Modelos descargados por presupuesto (siguen en el almacén): su ficha para listarlos
+    private final Map<String, ModelInfo> evictedModels = new ConcurrentHashMap<>();
+    // Cargas en curso: peticiones concurrentes por el mismo modelo esperan la misma
+    private final ConcurrentHashMap<String, CompletableFuture<ModelWrapper>> loading = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ResidencyStats> residencyStats = new ConcurrentHashMap<>();
+    private final Object evictionLock = new Object();
+
+    /**
+     * SLO de latencia de un modelo: si su p95 reciente supera latencyMs o tiene maxInFlight
+     * predicciones en curso, ModelServingService responde con fallbackModel (mismo esquema).
+     */
+    public record LatencySlo(long latencyMs, String fallbackModel, int maxInFlight) {}
+
+    private final Map<String, LatencySlo> latencySlos = new ConcurrentHashMap<>();
+
+    // SLOs declarados al arrancar: "modelo=latenciaMs:fallback[:maxEnCurso]" separados por coma
+    @Value("${ml.serving.slos:}")
+    private String declaredSlos;
 
     static class ModelWrapper {
         Classifier classifier;
         Instances dataStructure;
         String algorithm;
         Date trainedDate;
+        long updateCount; // Filas aprendidas en línea desde el último entrenamiento
+        String version;   // Hash del contenido guardado en el almacén
+        boolean saved = true;    // El clasificador es el del almacén (se puede descargar sin perder nada)
+        long estimatedBytes;     // Tamaño retenido estimado (presupuesto de memoria)
+        volatile long lastUsed;  // System.nanoTime() del último uso (LRU)
 
         ModelWrapper(Classifier classifier, Instances dataStructure, String algorithm) {
             this.classifier = classifier;
@@ -45,10 +100,11 @@ public class AdvancedWekaService {
 
     @PostConstruct
     public void init() {
+        memoryBudgetBytes = memoryBudgetMb > 0
+                ? memoryBudgetMb * 1024 * 1024
+                : Runtime.getRuntime().maxMemory() / 2;
+        parseDeclaredSlos();
         try {
-            Files.createDirectories(Paths.get(MODELS_DIR));
-            log.info("✓ Directorio de modelos creado: {}", MODELS_DIR);
-
             loadAllModels();
 
             if (loadedModels.isEmpty()) {
@@ -56,40 +112,34 @@ public class AdvancedWekaService {
                 createDefaultModel();
             }
 
-            log.info("✓ Servicio WEKA iniciado. Modelos: {}", loadedModels.keySet());
+            log.info("✓ Servicio WEKA iniciado. Modelos: {} (en memoria: {}, presupuesto {} MB)",
+                    getLoadedModelNames(), loadedModels.keySet(), memoryBudgetBytes / (1024 * 1024));
         } catch (Exception e) {
             log.error("✗ Error inicializando WEKA", e);
         }
     }
 
     private void loadAllModels() throws Exception {
-        File modelsDir = new File(MODELS_DIR);
-        File[] modelFiles = modelsDir.listFiles((dir, name) -> name.endsWith(".model"));
-
-        if (modelFiles != null) {
-            for (File modelFile : modelFiles) {
-                String modelName = modelFile.getName().replace(".model", "");
-                try {
-                    loadModel(modelName);
-                    log.info("✓ Modelo cargado: {}", modelName);
-                } catch (Exception e) {
-                    log.error("✗ Error cargando {}: {}", modelName, e.getMessage());
-                }
+        for (String modelName : modelStore.listVersions().keySet()) {
+            try {
+                loadModel(modelName);
+                log.info("✓ Modelo cargado: {}", modelName);
+            } catch (Exception e) {
+                log.error("✗ Error cargando {}: {}", modelName, e.getMessage());
             }
         }
     }
 
     public void loadModel(String modelName) throws Exception {
-        String modelPath = MODELS_DIR + modelName + ".model";
-        String arffPath = MODELS_DIR + modelName + ".arff";
+        long start = System.currentTimeMillis();
+        ModelStore.StoredModel stored = modelStore.load(modelName)
+                .orElseThrow(() -> new FileNotFoundException("Modelo no encontrado: " + modelName));
 
-        if (!new File(modelPath).exists()) {
-            throw new FileNotFoundException("Modelo no encontrado: " + modelPath);
-        }
-
-        Classifier classifier = (Classifier) SerializationHelper.read(modelPath);
-        DataSource source = new DataSource(arffPath);
-        Instances dataStructure = source.getDataSet();
+        Classifier classifier = (Classifier) SerializationHelper.read(new ByteArrayInputStream(stored.model()));
+        // Solo la cabecera del ARFF: las filas no se necesitan para predecir
+        ArffLoader loader = new ArffLoader();
+        loader.setSource(new ByteArrayInputStream(stored.dataset()));
+        Instances dataStructure = loader.getStructure();
 
         if (dataStructure.classIndex() == -1) {
             dataStructure.setClassIndex(dataStructure.numAttributes() - 1);
@@ -97,22 +147,61 @@ public class AdvancedWekaService {
 
         String algorithm = classifier.getClass().getSimpleName();
         ModelWrapper wrapper = new ModelWrapper(classifier, dataStructure, algorithm);
-        loadedModels.put(modelName, wrapper);
-
-        if (loadedModels.size() == 1) {
+        wrapper.version = stored.version();
+        storeVersions.put(modelName, stored.version());
+        if (loadedModels.isEmpty() && evictedModels.isEmpty()) {
             activeModelName = modelName;
         }
+        register(modelName, wrapper);
+
+        ResidencyStats stats = residencyStats(modelName);
+        stats.loads.increment();
+        stats.lastLoadMs = System.currentTimeMillis() - start;
     }
 
     public TrainingResponse trainFromArff(String arffFilePath, String algorithm, String modelName)
             throws Exception {
+        return trainFromArff(arffFilePath, algorithm, modelName, null);
+    }
+
+    /**
+     * parameters: hiperparámetros del algoritmo por nombre de propiedad Weka
+     * (p. ej. {"confidenceFactor": 0.1, "minNumObj": 5} para J48).
+     */
+    public TrainingResponse trainFromArff(String arffFilePath, String algorithm, String modelName,
+                                          Map<String, Object> parameters) throws Exception {
         log.info("Entrenando desde ARFF: {}, algoritmo: {}", arffFilePath, algorithm);
 
         DataSource source = new DataSource(arffFilePath);
         Instances trainData = source.getDataSet();
         trainData.setClassIndex(trainData.numAttributes() - 1);
 
-        Classifier classifier = createClassifier(algorithm);
+        return train(trainData, algorithm, modelName, parameters, Files.readAllBytes(Paths.get(arffFilePath)));
+    }
+
+    /**
+     * Entrenar desde instancias ya construidas en memoria (p. ej. el pipeline de incidentes).
+     * Se guarda el dataset como ARFF junto al modelo, igual que en los demás entrenamientos.
+     */
+    public TrainingResponse trainFromInstances(Instances trainData, String algorithm, String modelName)
+            throws Exception {
+        return trainFromInstances(trainData, algorithm, modelName, null);
+    }
+
+    public TrainingResponse trainFromInstances(Instances trainData, String algorithm, String modelName,
+                                               Map<String, Object> parameters) throws Exception {
+        log.info("Entrenando desde instancias: {} filas, algoritmo: {}", trainData.numInstances(), algorithm);
+
+        if (trainData.classIndex() == -1) {
+            trainData.setClassIndex(trainData.numAttributes() - 1);
+        }
+
+        return train(trainData, algorithm, modelName, parameters, toArff(trainData));
+    }
+
+    private TrainingResponse train(Instances trainData, String algorithm, String modelName,
+                                   Map<String, Object> parameters, byte[] datasetArff) throws Exception {
+        Classifier classifier = createClassifier(algorithm, parameters);
 
         long startTime = System.currentTimeMillis();
         classifier.buildClassifier(trainData);
@@ -121,16 +210,10 @@ public class AdvancedWekaService {
         Evaluation eval = new Evaluation(trainData);
         eval.crossValidateModel(classifier, trainData, 10, new Random(1));
 
-        String modelPath = MODELS_DIR + modelName + ".model";
-        String arffPath = MODELS_DIR + modelName + ".arff";
-
-        SerializationHelper.write(modelPath, classifier);
-        Files.copy(Paths.get(arffFilePath), Paths.get(arffPath),
-                StandardCopyOption.REPLACE_EXISTING);
-
         Instances dataStructure = new Instances(trainData, 0);
         ModelWrapper wrapper = new ModelWrapper(classifier, dataStructure, algorithm);
-        loadedModels.put(modelName, wrapper);
+        wrapper.version = persist(modelName, classifier, datasetArff);
+        register(modelName, wrapper);
 
         TrainingResponse response = new TrainingResponse();
         response.setModelName(modelName);
@@ -149,6 +232,11 @@ public class AdvancedWekaService {
 
     public TrainingResponse trainFromCsv(String csvFilePath, String algorithm,
                                          String modelName, int classIndex) throws Exception {
+        return trainFromCsv(csvFilePath, algorithm, modelName, classIndex, null);
+    }
+
+    public TrainingResponse trainFromCsv(String csvFilePath, String algorithm, String modelName,
+                                         int classIndex, Map<String, Object> parameters) throws Exception {
         log.info("Entrenando desde CSV: {}", csvFilePath);
 
         CSVLoader loader = new CSVLoader();
@@ -160,19 +248,17 @@ public class AdvancedWekaService {
         }
         data.setClassIndex(classIndex);
 
-        String tempArffPath = MODELS_DIR + "temp_" + System.currentTimeMillis() + ".arff";
-        ArffSaver saver = new ArffSaver();
-        saver.setInstances(data);
-        saver.setFile(new File(tempArffPath));
-        saver.writeBatch();
-
-        TrainingResponse response = trainFromArff(tempArffPath, algorithm, modelName);
-
-        Files.move(Paths.get(tempArffPath),
-                Paths.get(MODELS_DIR + modelName + ".arff"),
-                StandardCopyOption.REPLACE_EXISTING);
-
-        return response;
+        File tempArff = File.createTempFile("train_", ".arff");
+        try {
+            ArffSaver saver = new ArffSaver();
+            saver.setInstances(data);
+            saver.setFile(tempArff);
+            saver.writeBatch();
+
+            return trainFromArff(tempArff.getAbsolutePath(), algorithm, modelName, parameters);
+        } finally {
+            tempArff.delete();
+        }
     }
 
     public PredictionResponse predict(Map<String, Object> features) throws Exception {
@@ -181,11 +267,18 @@ public class AdvancedWekaService {
 
     public PredictionResponse predict(Map<String, Object> features, String modelName)
             throws Exception {
-        ModelWrapper model = loadedModels.get(modelName);
+        ModelWrapper model = resident(modelName);
         if (model == null) {
             throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
         }
+        return predict(features, modelName, model);
+    }
 
+    /**
+     * Predicción con un modelo ya resuelto (p. ej. fijado para todo un lote aunque se recargue).
+     */
+    PredictionResponse predict(Map<String, Object> features, String modelName, ModelWrapper model)
+            throws Exception {
         Instance instance = createInstance(features, model.dataStructure);
 
         double predictionIndex = model.classifier.classifyInstance(instance);
@@ -225,7 +318,7 @@ public class AdvancedWekaService {
     }
 
     public List<ModelInfo> getAllModelsInfo() {
-        return loadedModels.entrySet().stream()
+        List<ModelInfo> models = loadedModels.entrySet().stream()
                 .map(entry -> {
                     ModelInfo info = createModelInfo(entry.getValue());
                     info.setModelName(entry.getKey());
@@ -233,12 +326,23 @@ public class AdvancedWekaService {
                     return info;
                 })
                 .collect(Collectors.toList());
+        evictedModels.forEach((name, evicted) -> {
+            if (!loadedModels.containsKey(name)) {
+                models.add(copyOf(evicted, name.equals(activeModelName)));
+            }
+        });
+        return models;
     }
 
+    // No carga el modelo si está descargado: la ficha guardada basta
     public ModelInfo getModelInfo(String modelName) {
         ModelWrapper model = loadedModels.get(modelName);
         if (model == null) {
-            throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+            ModelInfo evicted = evictedModels.get(modelName);
+            if (evicted == null) {
+                throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+            }
+            return copyOf(evicted, modelName.equals(activeModelName));
         }
 
         ModelInfo info = createModelInfo(model);
@@ -247,52 +351,473 @@ public class AdvancedWekaService {
         return info;
     }
 
+    public String getActiveModelName() {
+        return activeModelName;
+    }
+
     public void setActiveModel(String modelName) {
-        if (!loadedModels.containsKey(modelName)) {
+        if (resident(modelName) == null) {
             throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
         }
         this.activeModelName = modelName;
         log.info("✓ Modelo activo: {}", modelName);
     }
 
+    // ========== SLO DE LATENCIA Y FALLBACK ==========
+
+    /**
+     * Declara el SLO de un modelo. El fallback debe existir y tener el mismo esquema (mismos
+     * atributos y etiquetas de clase), para que reciba las mismas features sin traducción.
+     */
+    public void setLatencySlo(String modelName, LatencySlo slo) {
+        if (slo.latencyMs() <= 0) {
+            throw new IllegalArgumentException("latencyMs debe ser mayor que 0");
+        }
+        if (slo.fallbackModel() == null || slo.fallbackModel().equals(modelName)) {
+            throw new IllegalArgumentException("Se requiere un modelo de fallback distinto de " + modelName);
+        }
+        ModelWrapper primary = getModelWrapper(modelName);
+        if (primary == null) {
+            throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+        }
+        ModelWrapper fallback = getModelWrapper(slo.fallbackModel());
+        if (fallback == null) {
+            throw new IllegalArgumentException("Modelo de fallback no encontrado: " + slo.fallbackModel());
+        }
+        String mismatch = schemaMismatch(primary.dataStructure, fallback.dataStructure);
+        if (mismatch != null) {
+            throw new IllegalArgumentException("El fallback " + slo.fallbackModel() + " no tiene el esquema de "
+                    + modelName + ": " + mismatch);
+        }
+        LatencySlo normalized = new LatencySlo(slo.latencyMs(), slo.fallbackModel(),
+                slo.maxInFlight() > 0 ? slo.maxInFlight() : Runtime.getRuntime().availableProcessors());
+        latencySlos.put(modelName, normalized);
+        log.info("✓ SLO de {}: p95 <= {} ms, máx. {} en curso, fallback {}", modelName,
+                normalized.latencyMs(), normalized.maxInFlight(), normalized.fallbackModel());
+    }
+
+    public LatencySlo getLatencySlo(String modelName) {
+        return latencySlos.get(modelName);
+    }
+
+    public Map<String, LatencySlo> getLatencySlos() {
+        return new TreeMap<>(latencySlos);
+    }
+
+    public void removeLatencySlo(String modelName) {
+        if (latencySlos.remove(modelName) != null) {
+            log.info("SLO de {} eliminado", modelName);
+        }
+    }
+
+    // Los modelos aún no existen al arrancar (se validan al usarlos: sin fallback cargado no hay desvío)
+    private void parseDeclaredSlos() {
+        if (declaredSlos == null || declaredSlos.isBlank()) return;
+        for (String entry : declaredSlos.split(",")) {
+            try {
+                String[] nameAndSpec = entry.trim().split("=", 2);
+                String[] spec = nameAndSpec[1].split(":");
+                int maxInFlight = spec.length > 2 ? Integer.parseInt(spec[2].trim())
+                        : Runtime.getRuntime().availableProcessors();
+                latencySlos.put(nameAndSpec[0].trim(),
+                        new LatencySlo(Long.parseLong(spec[0].trim()), spec[1].trim(), maxInFlight));
+            } catch (RuntimeException e) {
+                log.error("✗ SLO mal declarado en ml.serving.slos: '{}' (modelo=latenciaMs:fallback[:maxEnCurso])",
+                        entry.trim());
+            }
+        }
+        log.info("✓ SLOs de latencia declarados: {}", latencySlos);
+    }
+
+    // null si son compatibles; si no, la primera diferencia encontrada
+    private static String schemaMismatch(Instances a, Instances b) {
+        if (a.numAttributes() != b.numAttributes()) {
+            return a.numAttributes() + " vs " + b.numAttributes() + " atributos";
+        }
+        for (int i = 0; i < a.numAttributes(); i++) {
+            Attribute x = a.attribute(i);
+            Attribute y = b.attribute(i);
+            if (!x.name().equals(y.name()) || x.type() != y.type()) {
+                return "atributo " + i + ": " + x.name() + " vs " + y.name();
+            }
+        }
+        if (a.classIndex() != b.classIndex()) {
+            return "distinto atributo de clase";
+        }
+        Attribute classA = a.classAttribute();
+        Attribute classB = b.classAttribute();
+        if (classA.isNominal()) {
+            for (int i = 0; i < classA.numValues(); i++) {
+                if (classB.indexOfValue(classA.value(i)) < 0) {
+                    return "etiqueta de clase " + classA.value(i);
+                }
+            }
+            if (classA.numValues() != classB.numValues()) {
+                return "etiquetas de clase distintas";
+            }
+        }
+        return null;
+    }
+
     public void deleteModel(String modelName) throws IOException {
-        if (modelName.equals(activeModelName) && loadedModels.size() > 1) {
+        if (modelName.equals(activeModelName) && getLoadedModelNames().size() > 1) {
             throw new IllegalStateException("No se puede eliminar el modelo activo");
         }
 
         loadedModels.remove(modelName);
-        Files.deleteIfExists(Paths.get(MODELS_DIR + modelName + ".model"));
-        Files.deleteIfExists(Paths.get(MODELS_DIR + modelName + ".arff"));
+        evictedModels.remove(modelName);
+        residencyStats.remove(modelName);
+        storeVersions.remove(modelName);
+        latencySlos.remove(modelName);
+        modelStore.delete(modelName);
+        modelChangeNotifier.publish(ModelChangeEvent.Type.DELETED, modelName, null);
 
         log.info("✓ Modelo eliminado: {}", modelName);
     }
 
-    public EvaluationResponse evaluateModel(String modelName, String testDataPath)
-            throws Exception {
+    // ========== ALMACÉN Y SINCRONIZACIÓN ENTRE NODOS (uso de ModelSyncService) ==========
+
+    /**
+     * Guarda en el almacén compartido y avisa a los demás nodos. Retorna la versión.
+     */
+    private String persist(String modelName, Classifier classifier, byte[] datasetArff) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SerializationHelper.write(out, classifier);
+        String version = modelStore.save(modelName, out.toByteArray(), datasetArff);
+        storeVersions.put(modelName, version);
+        modelChangeNotifier.publish(ModelChangeEvent.Type.SAVED, modelName, version);
+        return version;
+    }
+
+    private static byte[] toArff(Instances data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArffSaver saver = new ArffSaver();
+        saver.setInstances(data);
+        saver.setDestination(out);
+        saver.writeBatch();
+        return out.toByteArray();
+    }
+
+    String getStoreVersion(String modelName) {
+        return storeVersions.get(modelName);
+    }
+
+    // Modelos disponibles en este nodo, estén en memoria o descargados por presupuesto
+    Set<String> getLoadedModelNames() {
+        Set<String> names = new HashSet<>(loadedModels.keySet());
+        names.addAll(evictedModels.keySet());
+        return names;
+    }
+
+    boolean isEvicted(String modelName) {
+        return !loadedModels.containsKey(modelName) && evictedModels.containsKey(modelName);
+    }
+
+    /**
+     * Quita de memoria un modelo eliminado en otro nodo. El modelo activo se conserva
+     * para no dejar sin servicio /api/ml/predict.
+     */
+    void unloadModel(String modelName) {
+        if (modelName.equals(activeModelName)) {
+            log.warn("El modelo activo {} fue eliminado en otro nodo; se sigue sirviendo hasta activar otro", modelName);
+            return;
+        }
+        loadedModels.remove(modelName);
+        evictedModels.remove(modelName);
+        residencyStats.remove(modelName);
+        storeVersions.remove(modelName);
+        log.info("✓ Modelo descargado (eliminado en otro nodo): {}", modelName);
+    }
+
+    // ========== RESIDENCIA EN MEMORIA ==========
+
+    private static final class ResidencyStats {
+        final LongAdder loads = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder loadWaits = new LongAdder(); // Peticiones que esperaron una carga ya en curso
+        volatile long lastLoadMs;
+    }
+
+    private ResidencyStats residencyStats(String modelName) {
+        return residencyStats.computeIfAbsent(modelName, k -> new ResidencyStats());
+    }
+
+    /**
+     * Modelo en memoria; si fue descargado por presupuesto se recarga del almacén.
+     * Retorna null si el modelo no existe.
+     */
+    private ModelWrapper resident(String modelName) {
         ModelWrapper model = loadedModels.get(modelName);
-        if (model == null) {
-            throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+        if (model != null) {
+            model.lastUsed = System.nanoTime();
+            return model;
+        }
+        if (!evictedModels.containsKey(modelName)) {
+            return null;
         }
+        return reload(modelName);
+    }
 
-        DataSource source = new DataSource(testDataPath);
-        Instances testData = source.getDataSet();
-        testData.setClassIndex(testData.numAttributes() - 1);
+    // Single-flight: una sola deserialización por modelo aunque lleguen muchas peticiones a la vez
+    private ModelWrapper reload(String modelName) {
+        CompletableFuture<ModelWrapper> created = new CompletableFuture<>();
+        CompletableFuture<ModelWrapper> inFlight = loading.putIfAbsent(modelName, created);
+        if (inFlight != null) {
+            residencyStats(modelName).loadWaits.increment();
+            try {
+                return inFlight.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Carga del modelo interrumpida: " + modelName, e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("No se pudo cargar el modelo " + modelName + ": "
+                        + e.getCause().getMessage(), e.getCause());
+            }
+        }
 
-        Evaluation eval = new Evaluation(testData);
-        eval.evaluateModel(model.classifier, testData);
+        try {
+            ModelWrapper model = loadedModels.get(modelName);
+            if (model == null && evictedModels.containsKey(modelName)) {
+                log.info("Recargando modelo descargado: {}", modelName);
+                loadModel(modelName);
+                model = loadedModels.get(modelName);
+            }
+            created.complete(model);
+            return model;
+        } catch (FileNotFoundException e) {
+            // Se eliminó del almacén mientras estaba descargado
+            evictedModels.remove(modelName);
+            created.complete(null);
+            return null;
+        } catch (Exception e) {
+            created.completeExceptionally(e);
+            throw new IllegalStateException("No se pudo cargar el modelo " + modelName + ": " + e.getMessage(), e);
+        } finally {
+            loading.remove(modelName, created);
+        }
+    }
 
-        EvaluationResponse response = new EvaluationResponse();
-        response.setModelName(modelName);
-        response.setAccuracy(eval.pctCorrect());
-        response.setKappa(eval.kappa());
-        response.setPrecision(eval.weightedPrecision());
-        response.setRecall(eval.weightedRecall());
-        response.setF1Score(eval.weightedFMeasure());
-        response.setSummary(eval.toSummaryString());
-        response.setConfusionMatrix(eval.toMatrixString());
-        response.setDetailedAccuracyByClass(eval.toClassDetailsString());
+    private void register(String modelName, ModelWrapper wrapper) {
+        wrapper.estimatedBytes = ModelSizeEstimator.estimate(wrapper.classifier, wrapper.dataStructure);
+        wrapper.lastUsed = System.nanoTime();
+        loadedModels.put(modelName, wrapper);
+        evictedModels.remove(modelName);
+        enforceBudget(modelName);
+    }
 
-        return response;
+    /**
+     * Descarga modelos (del menos usado al más usado) hasta volver al presupuesto. Nunca
+     * descarga el activo, el recién cargado ni uno con cambios en línea sin guardar.
+     */
+    private void enforceBudget(String justLoaded) {
+        synchronized (evictionLock) {
+            long used = loadedModels.values().stream().mapToLong(m -> m.estimatedBytes).sum();
+            while (used > memoryBudgetBytes) {
+                String coldestName = null;
+                ModelWrapper coldest = null;
+                for (Map.Entry<String, ModelWrapper> entry : loadedModels.entrySet()) {
+                    ModelWrapper model = entry.getValue();
+                    if (entry.getKey().equals(justLoaded) || entry.getKey().equals(activeModelName) || !model.saved) {
+                        continue;
+                    }
+                    if (coldest == null || model.lastUsed < coldest.lastUsed) {
+                        coldestName = entry.getKey();
+                        coldest = model;
+                    }
+                }
+                if (coldest == null) {
+                    log.warn("Modelos en memoria ({} MB) sobre el presupuesto ({} MB) y ninguno se puede descargar",
+                            used / (1024 * 1024), memoryBudgetBytes / (1024 * 1024));
+                    return;
+                }
+                if (evict(coldestName, coldest)) {
+                    used -= coldest.estimatedBytes;
+                } else {
+                    // Otro hilo lo reemplazó o quitó entretanto: se vuelve a medir
+                    used = loadedModels.values().stream().mapToLong(m -> m.estimatedBytes).sum();
+                }
+            }
+        }
+    }
+
+    // false si el modelo ya no era ese (reemplazado o quitado por otro hilo): no se descargó nada
+    private boolean evict(String modelName, ModelWrapper model) {
+        ModelInfo info = createModelInfo(model);
+        info.setModelName(modelName);
+        info.setResident(false);
+        // La ficha se publica antes de quitarlo: una petición concurrente lo recarga en vez de no encontrarlo
+        evictedModels.put(modelName, info);
+        if (!loadedModels.remove(modelName, model)) {
+            evictedModels.remove(modelName, info);
+            return false;
+        }
+        residencyStats(modelName).evictions.increment();
+        log.info("Modelo descargado de memoria por presupuesto: {} (~{} KB, sin uso hace {} s)", modelName,
+                model.estimatedBytes / 1024, (System.nanoTime() - model.lastUsed) / 1_000_000_000L);
+        return true;
+    }
+
+    public Map<String, Object> getResidencyStatus() {
+        long used = 0;
+        Map<String, Object> models = new TreeMap<>();
+        for (String name : getLoadedModelNames()) {
+            ModelWrapper model = loadedModels.get(name);
+            ModelInfo evicted = evictedModels.get(name);
+            ResidencyStats stats = residencyStats(name);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("resident", model != null);
+            entry.put("memoryBytes", model != null ? model.estimatedBytes
+                    : evicted != null ? evicted.getMemoryBytes() : 0);
+            entry.put("idleSeconds", model != null ? (System.nanoTime() - model.lastUsed) / 1_000_000_000L : null);
+            entry.put("loads", stats.loads.sum());
+            entry.put("evictions", stats.evictions.sum());
+            entry.put("loadWaits", stats.loadWaits.sum());
+            entry.put("lastLoadMs", stats.lastLoadMs);
+            models.put(name, entry);
+            if (model != null) used += model.estimatedBytes;
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("budgetBytes", memoryBudgetBytes);
+        status.put("usedBytes", used);
+        status.put("residentModels", loadedModels.size());
+        status.put("evictedModels", evictedModels.size());
+        status.put("models", models);
+        return status;
+    }
+
+    private static ModelInfo copyOf(ModelInfo info, boolean active) {
+        return new ModelInfo(info.getModelName(), info.getModelType(), info.getAlgorithm(), info.getAttributes(),
+                info.getClassAttribute(), info.getTrainedDate(), active, info.isOnline(), info.getUpdateCount(),
+                info.getVersion(), info.isResident(), info.getMemoryBytes());
+    }
+
+    // ========== APRENDIZAJE EN LÍNEA (uso de OnlineLearningService) ==========
+
+    ModelWrapper getModelWrapper(String modelName) {
+        return resident(modelName);
+    }
+
+    /**
+     * Publica una nueva versión del clasificador (copy-on-write). Solo reemplaza si el
+     * modelo sigue siendo "expected": si mientras tanto se reentrenó, gana el reentrenamiento.
+     */
+    ModelWrapper publishSnapshot(String modelName, ModelWrapper expected, Classifier snapshot, long updateCount) {
+        ModelWrapper wrapper = new ModelWrapper(snapshot, expected.dataStructure, expected.algorithm);
+        wrapper.trainedDate = expected.trainedDate;
+        wrapper.updateCount = updateCount;
+        wrapper.version = expected.version;
+        wrapper.saved = false;
+        wrapper.estimatedBytes = expected.estimatedBytes;
+        wrapper.lastUsed = System.nanoTime();
+        return loadedModels.replace(modelName, expected, wrapper) ? wrapper : null;
+    }
+
+    /**
+     * Guarda el clasificador (sin cambiar el dataset) y lo marca en el wrapper guardado.
+     */
+    void saveClassifier(String modelName, ModelWrapper wrapper) throws Exception {
+        wrapper.version = persist(modelName, wrapper.classifier, null);
+        wrapper.saved = true;
+    }
+
+    /**
+     * Instancia con valor de clase (tomado de la feature con el nombre del atributo clase).
+     * Valores nominales desconocidos quedan como faltantes en vez de fallar.
+     */
+    Instance createLabelledInstance(Map<String, Object> features, Instances dataStructure) {
+        Map<String, Object> known = new HashMap<>(features);
+        known.values().removeIf(Objects::isNull);
+        for (int i = 0; i < dataStructure.numAttributes(); i++) {
+            Attribute attr = dataStructure.attribute(i);
+            Object value = known.get(attr.name());
+            if (value != null && attr.isNominal() && attr.indexOfValue(value.toString()) < 0) {
+                known.remove(attr.name());
+            }
+        }
+
+        Instance instance = createInstance(known, dataStructure);
+        Attribute classAttr = dataStructure.classAttribute();
+        Object label = known.get(classAttr.name());
+        if (label == null) {
+            instance.setClassMissing();
+        } else if (classAttr.isNominal()) {
+            instance.setClassValue(label.toString());
+        } else {
+            instance.setClassValue(label instanceof Number
+                    ? ((Number) label).doubleValue()
+                    : Double.parseDouble(label.toString()));
+        }
+        return instance;
+    }
+
+    /**
+     * Dataset guardado junto al modelo (el ARFF de su último entrenamiento).
+     */
+    Instances loadDataset(String modelName) throws Exception {
+        byte[] arff = modelStore.loadDataset(modelName).orElseThrow(() ->
+                new IllegalArgumentException("Dataset no encontrado para el modelo: " + modelName));
+        Instances data = new DataSource(new ByteArrayInputStream(arff)).getDataSet();
+        if (data.classIndex() == -1) {
+            data.setClassIndex(data.numAttributes() - 1);
+        }
+        return data;
+    }
+
+    /**
+     * Clasificador con los valores por defecto del algoritmo y, encima, los hiperparámetros
+     * indicados. Cada parámetro es una propiedad JavaBean del clasificador Weka (las mismas
+     * que muestra el Explorer); nombres desconocidos o valores inválidos lanzan IllegalArgumentException.
+     */
+    Classifier createClassifier(String algorithm, Map<String, Object> parameters) {
+        Classifier classifier = createClassifier(algorithm);
+        if (parameters == null || parameters.isEmpty()) {
+            return classifier;
+        }
+
+        Map<String, PropertyDescriptor> properties = new HashMap<>();
+        try {
+            for (PropertyDescriptor pd : Introspector.getBeanInfo(classifier.getClass()).getPropertyDescriptors()) {
+                if (pd.getWriteMethod() != null) {
+                    properties.put(pd.getName().toLowerCase(), pd);
+                }
+            }
+        } catch (IntrospectionException e) {
+            throw new IllegalStateException("No se pudieron leer los parámetros de " + algorithm, e);
+        }
+
+        for (Map.Entry<String, Object> param : parameters.entrySet()) {
+            PropertyDescriptor pd = properties.get(param.getKey().toLowerCase());
+            if (pd == null) {
+                throw new IllegalArgumentException("Parámetro desconocido para " + algorithm + ": " + param.getKey());
+            }
+            try {
+                pd.getWriteMethod().invoke(classifier, convertParameter(param.getValue(), pd.getPropertyType()));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+                throw new IllegalArgumentException("Valor inválido para " + param.getKey() + ": "
+                        + param.getValue() + " (" + cause.getMessage() + ")");
+            }
+        }
+        return classifier;
+    }
+
+    private static Object convertParameter(Object value, Class<?> type) {
+        String text = String.valueOf(value).trim();
+        if (type == int.class || type == Integer.class) {
+            return value instanceof Number ? ((Number) value).intValue() : (int) Double.parseDouble(text);
+        } else if (type == long.class || type == Long.class) {
+            return value instanceof Number ? ((Number) value).longValue() : (long) Double.parseDouble(text);
+        } else if (type == float.class || type == Float.class) {
+            return value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(text);
+        } else if (type == double.class || type == Double.class) {
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(text);
+        } else if (type == boolean.class || type == Boolean.class) {
+            return value instanceof Boolean ? value : Boolean.parseBoolean(text);
+        } else if (type == String.class) {
+            return text;
+        }
+        throw new IllegalArgumentException("tipo no soportado " + type.getSimpleName());
     }
 
     private Classifier createClassifier(String algorithm) {
@@ -311,6 +836,11 @@ public class AdvancedWekaService {
                 return new SMO();
             case "naivebayes":
                 return new NaiveBayes();
+            // Actualizables en línea (UpdateableClassifier)
+            case "naivebayesupdateable":
+                return new NaiveBayesUpdateable();
+            case "hoeffdingtree":
+                return new HoeffdingTree();
             case "jrip":
                 return new JRip();
             default:
@@ -318,14 +848,28 @@ public class AdvancedWekaService {
         }
     }
 
-    private Instance createInstance(Map<String, Object> features, Instances dataStructure) {
+    Instance createInstance(Map<String, Object> features, Instances dataStructure) {
         Instance instance = new DenseInstance(dataStructure.numAttributes());
         instance.setDataset(dataStructure);
+        Map<String, Double> cellFeatures = null;
 
         for (int i = 0; i < dataStructure.numAttributes() - 1; i++) {
             Attribute attr = dataStructure.attribute(i);
 
-            if (features.containsKey(attr.name())) {
+            if (!features.containsKey(attr.name()) && isCellAttribute(attr)) {
+                // Features de la celda a partir de lat/lng (se consultan una vez por instancia)
+                if (cellFeatures == null) {
+                    cellFeatures = cellFeatures(features, dataStructure);
+                }
+                Double value = cellFeatures.get(attr.name());
+                if (value != null && attr.isNumeric()) {
+                    instance.setValue(attr, value);
+                } else if (value != null && attr.isNominal() && value >= 0) {
+                    instance.setValue(attr, value);
+                } else {
+                    instance.setMissing(attr);
+                }
+            } else if (features.containsKey(attr.name())) {
                 Object value = features.get(attr.name());
 
                 if (attr.isNumeric()) {
@@ -345,11 +889,47 @@ public class AdvancedWekaService {
         return instance;
     }
 
+    private static boolean isCellAttribute(Attribute attr) {
+        return attr.name().startsWith(GeoCellFeatureStore.PREFIX)
+                || attr.isNominal() && attr.name().equals(IncidentTrainingPipeline.ATTR_GEOCELL);
+    }
+
+    // Vacío si no hay lat/lng: los atributos de celda quedan como faltantes
+    private Map<String, Double> cellFeatures(Map<String, Object> features, Instances dataStructure) {
+        Double lat = toDouble(features.get(IncidentTrainingPipeline.ATTR_LAT));
+        Double lng = toDouble(features.get(IncidentTrainingPipeline.ATTR_LNG));
+        if (lat == null || lng == null) {
+            return Map.of();
+        }
+        Map<String, Double> cell = new HashMap<>(featureStore.features(lat, lng));
+        Attribute geocell = dataStructure.attribute(IncidentTrainingPipeline.ATTR_GEOCELL);
+        if (geocell != null && geocell.isNominal()) {
+            // Índice del valor nominal (-1 = celda que el modelo no vio al entrenar)
+            cell.put(geocell.name(), (double) geocell.indexOfValue(featureStore.cellOf(lat, lng)));
+        }
+        return cell;
+    }
+
+    private static Double toDouble(Object value) {
+        if (value instanceof Number number) return number.doubleValue();
+        if (value == null) return null;
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     private ModelInfo createModelInfo(ModelWrapper model) {
         ModelInfo info = new ModelInfo();
         info.setModelType(model.classifier.getClass().getSuperclass().getSimpleName());
         info.setAlgorithm(model.algorithm);
         info.setTrainedDate(model.trainedDate);
+        info.setOnline(model.classifier instanceof UpdateableClassifier);
+        info.setUpdateCount(model.updateCount);
+        info.setVersion(model.version);
+        info.setResident(true);
+        info.setMemoryBytes(model.estimatedBytes);
 
         List<AttributeInfo> attributes = new ArrayList<>();
         for (int i = 0; i < model.dataStructure.numAttributes(); i++) {
@@ -406,14 +986,10 @@ public class AdvancedWekaService {
         J48 classifier = new J48();
         classifier.buildClassifier(data);
 
-        SerializationHelper.write(MODELS_DIR + "default.model", classifier);
-        ArffSaver saver = new ArffSaver();
-        saver.setInstances(data);
-        saver.setFile(new File(MODELS_DIR + "default.arff"));
-        saver.writeBatch();
-
         Instances structure = new Instances(data, 0);
-        loadedModels.put("default", new ModelWrapper(classifier, structure, "J48"));
+        ModelWrapper wrapper = new ModelWrapper(classifier, structure, "J48");
+        wrapper.version = persist("default", classifier, toArff(data));
+        register("default", wrapper);
         activeModelName = "default";
 
         log.info("✓ Modelo por defecto creado");
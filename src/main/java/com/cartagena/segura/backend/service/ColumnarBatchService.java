@@ -0,0 +1,290 @@
+package com.cartagena.segura.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Predicción en lote con un formato binario columnar (application/x-ml-columnar), pensado
+ * para cientos de miles de filas sin pasar por mapas JSON ni números en caja.
+ *
+ * Todo en little-endian:
+ * <pre>
+ * cabecera: "MLC1" | int32 columnas | por columna: int32 bytes + nombre UTF-8
+ * lote:     int32 filas (0 = fin) | por columna: filas × float64
+ * </pre>
+ * En la petición las columnas son los atributos del modelo sin la clase, en el orden de
+ * ModelInfo.attributes. Los nominales van como índice en possibleValues y NaN es valor faltante.
+ * La respuesta usa el mismo formato con las columnas "prediction" (índice de la clase),
+ * "confidence" y una por clase con su probabilidad ("p:" + valor), un lote por cada lote recibido.
+ */
+@Slf4j
+@Service
+public class ColumnarBatchService {
+
+    public static final String CONTENT_TYPE = "application/x-ml-columnar";
+
+    private static final byte[] MAGIC = {'M', 'L', 'C', '1'};
+    private static final int MAX_NAME_BYTES = 1024;
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    // Filas máximas por lote: acota la memoria por petición (el cliente parte en varios lotes)
+    @Value("${ml.batch.max-rows-per-batch:65536}")
+    private int maxRowsPerBatch;
+
+    /**
+     * Lee y valida la cabecera. Los lotes se leen después, al escribir la respuesta,
+     * con el modelo fijado aquí aunque mientras tanto se recargue.
+     */
+    public Scoring open(String modelName, InputStream body) throws IOException {
+        String name = modelName != null && !modelName.isBlank() ? modelName : wekaService.getActiveModelName();
+        AdvancedWekaService.ModelWrapper model = wekaService.getModelWrapper(name);
+        if (model == null) {
+            throw new IllegalArgumentException("Modelo no encontrado: " + name);
+        }
+        Instances structure = model.dataStructure;
+        if (!structure.classAttribute().isNominal()) {
+            throw new IllegalArgumentException("El formato columnar solo admite modelos de clasificación");
+        }
+
+        List<Integer> columns = new ArrayList<>();
+        for (int i = 0; i < structure.numAttributes(); i++) {
+            if (i != structure.classIndex()) columns.add(i);
+        }
+
+        ReadableByteChannel in = Channels.newChannel(body);
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, header);
+        byte[] magic = new byte[4];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IllegalArgumentException("Cabecera inválida: se esperaba MLC1");
+        }
+        int columnCount = header.getInt();
+        if (columnCount != columns.size()) {
+            throw new IllegalArgumentException("Se esperaban " + columns.size() + " columnas y llegaron "
+                    + columnCount + ". Orden: " + columnNames(structure, columns));
+        }
+        for (int c = 0; c < columnCount; c++) {
+            String received = readName(in);
+            String expected = structure.attribute(columns.get(c)).name();
+            if (!expected.equals(received)) {
+                throw new IllegalArgumentException("Columna " + c + ": se esperaba '" + expected
+                        + "' y llegó '" + received + "'. Orden: " + columnNames(structure, columns));
+            }
+        }
+        return new Scoring(name, model, columns.stream().mapToInt(Integer::intValue).toArray(), in);
+    }
+
+    public final class Scoring {
+        private final String modelName;
+        private final AdvancedWekaService.ModelWrapper model;
+        private final int[] columns;
+        private final ReadableByteChannel in;
+        private volatile long rowsRead;
+
+        private Scoring(String modelName, AdvancedWekaService.ModelWrapper model, int[] columns,
+                        ReadableByteChannel in) {
+            this.modelName = modelName;
+            this.model = model;
+            this.columns = columns;
+            this.in = in;
+        }
+
+        /** Filas leídas hasta ahora (también si el lote terminó con error). */
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        /**
+         * Lee lote a lote, predice y escribe cada lote de resultados en cuanto está listo.
+         */
+        public void writeTo(OutputStream body) throws IOException {
+            Instances structure = model.dataStructure;
+            Attribute classAttr = structure.classAttribute();
+            int numClasses = classAttr.numValues();
+            int outColumns = 2 + numClasses;
+
+            WritableByteChannel out = Channels.newChannel(body);
+            List<String> names = new ArrayList<>();
+            names.add("prediction");
+            names.add("confidence");
+            for (int k = 0; k < numClasses; k++) names.add("p:" + classAttr.value(k));
+            writeHeader(out, names);
+
+            ByteBuffer rowCount = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer input = ByteBuffer.allocate(0);
+            ByteBuffer output = ByteBuffer.allocate(0);
+            long total = 0;
+            int failed = 0;
+            long start = System.currentTimeMillis();
+
+            while (true) {
+                rowCount.clear();
+                if (!readFullyOrEnd(in, rowCount)) break;
+                int rows = rowCount.getInt();
+                if (rows == 0) break;
+                if (rows < 0 || rows > maxRowsPerBatch) {
+                    throw new IOException("Lote de " + rows + " filas (máximo " + maxRowsPerBatch + ")");
+                }
+                rowsRead += rows;
+
+                long batchBytes = (long) rows * Math.max(columns.length, outColumns) * Double.BYTES;
+                if (batchBytes > Integer.MAX_VALUE - 8) {
+                    throw new IOException("Lote demasiado grande: " + rows + " filas");
+                }
+                int inBytes = rows * columns.length * Double.BYTES;
+                if (input.capacity() < inBytes) {
+                    input = ByteBuffer.allocate(inBytes).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                input.clear().limit(inBytes);
+                readFully(in, input);
+                DoubleBuffer values = input.asDoubleBuffer();
+
+                int outBytes = 4 + rows * outColumns * Double.BYTES;
+                if (output.capacity() < outBytes) {
+                    output = ByteBuffer.allocate(outBytes).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                output.clear().limit(outBytes);
+                output.putInt(rows);
+                DoubleBuffer results = output.asDoubleBuffer();
+
+                for (int r = 0; r < rows; r++) {
+                    double[] distribution = score(values, rows, r);
+                    if (distribution == null) {
+                        failed++;
+                        for (int c = 0; c < outColumns; c++) results.put(c * rows + r, Double.NaN);
+                        continue;
+                    }
+                    int predicted = Utils.maxIndex(distribution);
+                    boolean decided = Utils.sum(distribution) > 0;
+                    results.put(r, decided ? predicted : Double.NaN);
+                    results.put(rows + r, decided ? distribution[predicted] : Double.NaN);
+                    for (int k = 0; k < numClasses; k++) {
+                        results.put((2 + k) * rows + r, distribution[k]);
+                    }
+                }
+
+                output.position(0);
+                writeFully(out, output);
+                body.flush();
+                total += rows;
+            }
+            writeEnd(out);
+            body.flush();
+            log.info("✓ Lote columnar con {}: {} filas ({} con error) en {} ms",
+                    modelName, total, failed, System.currentTimeMillis() - start);
+        }
+
+        // Fila r del lote leída directamente de las columnas, sin mapas intermedios
+        private double[] score(DoubleBuffer values, int rows, int r) {
+            Instances structure = model.dataStructure;
+            double[] attValues = new double[structure.numAttributes()];
+            for (int c = 0; c < columns.length; c++) {
+                int index = columns[c];
+                double value = values.get(c * rows + r);
+                Attribute attr = structure.attribute(index);
+                // Índices nominales fuera de rango se tratan como faltantes
+                if (attr.isNominal() && !Double.isNaN(value)
+                        && (value < 0 || value >= attr.numValues() || value != Math.rint(value))) {
+                    value = Double.NaN;
+                }
+                attValues[index] = value;
+            }
+            attValues[structure.classIndex()] = Utils.missingValue();
+
+            DenseInstance instance = new DenseInstance(1.0, attValues);
+            instance.setDataset(structure);
+            try {
+                return model.classifier.distributionForInstance(instance);
+            } catch (Exception e) {
+                log.debug("Fila {} no se pudo predecir: {}", r, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private static String columnNames(Instances structure, List<Integer> columns) {
+        List<String> names = new ArrayList<>();
+        for (int index : columns) names.add(structure.attribute(index).name());
+        return names.toString();
+    }
+
+    private static String readName(ReadableByteChannel in) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, length);
+        int bytes = length.getInt();
+        if (bytes < 0 || bytes > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Nombre de columna inválido (" + bytes + " bytes)");
+        }
+        ByteBuffer name = ByteBuffer.allocate(bytes);
+        readFully(in, name);
+        return new String(name.array(), StandardCharsets.UTF_8);
+    }
+
+    private static void writeHeader(WritableByteChannel out, List<String> names) throws IOException {
+        List<byte[]> encoded = new ArrayList<>();
+        int size = MAGIC.length + 4;
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += 4 + bytes.length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(names.size());
+        for (byte[] bytes : encoded) header.putInt(bytes.length).put(bytes);
+        header.flip();
+        writeFully(out, header);
+    }
+
+    private static void writeEnd(WritableByteChannel out) throws IOException {
+        ByteBuffer end = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0);
+        end.flip();
+        writeFully(out, end);
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) out.write(buffer);
+    }
+
+    private static void readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        if (!readFullyOrEnd(in, buffer)) {
+            throw new EOFException("Fin inesperado del cuerpo");
+        }
+    }
+
+    // false si el cuerpo terminó antes de leer nada (fin sin lote de cierre); el buffer queda listo para leer
+    private static boolean readFullyOrEnd(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                if (buffer.position() == start) return false;
+                throw new EOFException("Fin inesperado del cuerpo");
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+}
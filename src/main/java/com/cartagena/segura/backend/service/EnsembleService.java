@@ -0,0 +1,263 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.EnsembleRequest;
+import com.cartagena.segura.backend.dto.EnsembleResponse;
+import com.cartagena.segura.backend.dto.PredictionResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import weka.core.Attribute;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Predicción con varios modelos en paralelo combinando sus distribuciones.
+ *
+ * - soft: promedio ponderado de las distribuciones.
+ * - hard: voto ponderado de la clase predicha por cada miembro.
+ * - stacking: las distribuciones de los miembros son las features de un meta-modelo
+ *   registrado, con atributos "<miembro>:<etiqueta>" (se entrena como cualquier otro, p. ej.
+ *   con /api/ml/train/csv). Un miembro que no llega queda como valor faltante.
+ *
+ * Cada miembro corre en un hilo del pool; al vencer el deadline se combina lo que haya
+ * respondido y los demás se reportan como "missed". Todos los miembros deben tener las mismas
+ * etiquetas de clase (el orden puede variar).
+ */
+@Slf4j
+@Service
+public class EnsembleService {
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    // Hilos para predecir miembros (0 = núcleos - 1)
+    @Value("${ml.ensemble.threads:0}")
+    private int threads;
+
+    // Predicciones de miembros en espera; si se llena, el ensemble se rechaza (503)
+    @Value("${ml.ensemble.queue-size:1000}")
+    private int queueSize;
+
+    @Value("${ml.ensemble.default-deadline-ms:250}")
+    private long defaultDeadlineMs;
+
+    @Value("${ml.ensemble.max-deadline-ms:5000}")
+    private long maxDeadlineMs;
+
+    @Value("${ml.ensemble.max-members:10}")
+    private int maxMembers;
+
+    private ThreadPoolExecutor members;
+
+    private record MemberResult(PredictionResponse response, long latencyNanos) {}
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger counter = new AtomicInteger();
+        members = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "ml-ensemble-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        members.shutdownNow();
+    }
+
+    /**
+     * @throws IllegalArgumentException   modelos inexistentes o incompatibles, método o pesos inválidos
+     * @throws RejectedExecutionException  el pool de miembros está saturado
+     * @throws TimeoutException            ningún miembro respondió antes del deadline
+     */
+    public EnsembleResponse predict(EnsembleRequest request) throws Exception {
+        long start = System.nanoTime();
+        Map<String, Object> features = request.getFeatures();
+        if (features == null) {
+            throw new IllegalArgumentException("features es obligatorio");
+        }
+        List<String> names = request.getModels() == null ? List.of()
+                : request.getModels().stream().distinct().toList();
+        if (names.size() < 2 || names.size() > maxMembers) {
+            throw new IllegalArgumentException("Un ensemble necesita entre 2 y " + maxMembers + " modelos");
+        }
+        String method = request.getMethod() == null ? "soft" : request.getMethod().toLowerCase();
+        if (!List.of("soft", "hard", "stacking").contains(method)) {
+            throw new IllegalArgumentException("Método desconocido: " + request.getMethod() + " (soft | hard | stacking)");
+        }
+        Map<String, Double> weights = weights(names, request.getWeights());
+        long deadlineMs = Math.min(maxDeadlineMs,
+                request.getDeadlineMs() != null ? request.getDeadlineMs() : defaultDeadlineMs);
+        if (deadlineMs <= 0) {
+            throw new IllegalArgumentException("deadlineMs debe ser mayor que 0");
+        }
+
+        Map<String, AdvancedWekaService.ModelWrapper> wrappers = new LinkedHashMap<>();
+        for (String name : names) {
+            wrappers.put(name, resolve(name));
+        }
+        List<String> labels = labels(wrappers.get(names.get(0)));
+        for (String name : names) {
+            requireSameLabels(name, wrappers.get(name), labels);
+        }
+        AdvancedWekaService.ModelWrapper meta = null;
+        if ("stacking".equals(method)) {
+            if (request.getMetaModel() == null || request.getMetaModel().isBlank()) {
+                throw new IllegalArgumentException("stacking requiere metaModel");
+            }
+            meta = resolve(request.getMetaModel());
+            requireSameLabels(request.getMetaModel(), meta, labels);
+        }
+
+        Map<String, Future<MemberResult>> futures = submit(features, wrappers);
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+
+        List<PredictionResponse> answered = new ArrayList<>();
+        Map<String, Long> latency = new LinkedHashMap<>();
+        List<String> missed = new ArrayList<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<MemberResult>> entry : futures.entrySet()) {
+            Future<MemberResult> future = entry.getValue();
+            try {
+                MemberResult result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                answered.add(result.response());
+                latency.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(result.latencyNanos()));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                missed.add(entry.getKey());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                failed.put(entry.getKey(), cause.getMessage() != null ? cause.getMessage() : cause.toString());
+            }
+        }
+
+        if (answered.isEmpty()) {
+            if (!missed.isEmpty()) {
+                throw new TimeoutException("Ningún modelo respondió en " + deadlineMs + " ms");
+            }
+            throw new IllegalArgumentException("Ningún modelo pudo predecir: " + failed);
+        }
+
+        EnsembleResponse response = new EnsembleResponse();
+        if (meta != null) {
+            PredictionResponse stacked = wekaService.predict(stackingFeatures(answered), request.getMetaModel(), meta);
+            response.setDistribution(stacked.getDistribution());
+        } else {
+            response.setDistribution(combine(answered, weights, labels, "hard".equals(method)));
+        }
+        String prediction = labels.get(0);
+        for (String label : labels) {
+            if (response.getDistribution().get(label) > response.getDistribution().get(prediction)) {
+                prediction = label;
+            }
+        }
+        response.setPrediction(prediction);
+        response.setConfidence(response.getDistribution().get(prediction));
+        response.setMethod(method);
+        response.setMembers(answered);
+        response.setLatencyMs(latency);
+        response.setMissed(missed);
+        response.setFailed(failed);
+        response.setPartial(!missed.isEmpty() || !failed.isEmpty());
+        response.setElapsedMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (response.getPartial()) {
+            log.debug("Ensemble parcial: {} de {} miembros (faltaron {}, fallaron {})",
+                    answered.size(), names.size(), missed, failed.keySet());
+        }
+        return response;
+    }
+
+    private Map<String, Future<MemberResult>> submit(Map<String, Object> features,
+                                                     Map<String, AdvancedWekaService.ModelWrapper> wrappers) {
+        Map<String, Future<MemberResult>> futures = new LinkedHashMap<>();
+        try {
+            wrappers.forEach((name, model) -> futures.put(name, members.submit(() -> {
+                long memberStart = System.nanoTime();
+                PredictionResponse response = wekaService.predict(features, name, model);
+                return new MemberResult(response, System.nanoTime() - memberStart);
+            })));
+        } catch (RejectedExecutionException e) {
+            futures.values().forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return futures;
+    }
+
+    private Map<String, Double> combine(List<PredictionResponse> answered, Map<String, Double> weights,
+                                        List<String> labels, boolean hard) {
+        Map<String, Double> distribution = new LinkedHashMap<>();
+        labels.forEach(label -> distribution.put(label, 0.0));
+        double total = 0;
+        for (PredictionResponse member : answered) {
+            double weight = weights.get(member.getModelName());
+            total += weight;
+            if (hard) {
+                distribution.merge(member.getPrediction(), weight, Double::sum);
+            } else {
+                member.getDistribution().forEach((label, p) -> distribution.merge(label, weight * p, Double::sum));
+            }
+        }
+        if (total > 0) {
+            for (String label : labels) {
+                distribution.put(label, distribution.get(label) / total);
+            }
+        }
+        return distribution;
+    }
+
+    private static Map<String, Object> stackingFeatures(List<PredictionResponse> answered) {
+        Map<String, Object> features = new HashMap<>();
+        for (PredictionResponse member : answered) {
+            member.getDistribution().forEach((label, p) -> features.put(member.getModelName() + ":" + label, p));
+        }
+        return features;
+    }
+
+    private static Map<String, Double> weights(List<String> names, Map<String, Double> requested) {
+        Map<String, Double> weights = new HashMap<>();
+        for (String name : names) {
+            Double weight = requested != null ? requested.get(name) : null;
+            if (weight != null && (weight < 0 || weight.isNaN() || weight.isInfinite())) {
+                throw new IllegalArgumentException("Peso inválido para " + name + ": " + weight);
+            }
+            weights.put(name, weight != null ? weight : 1.0);
+        }
+        return weights;
+    }
+
+    private AdvancedWekaService.ModelWrapper resolve(String name) {
+        AdvancedWekaService.ModelWrapper model = wekaService.getModelWrapper(name);
+        if (model == null) {
+            throw new IllegalArgumentException("Modelo no encontrado: " + name);
+        }
+        return model;
+    }
+
+    private static List<String> labels(AdvancedWekaService.ModelWrapper model) {
+        Attribute classAttr = model.dataStructure.classAttribute();
+        if (!classAttr.isNominal()) {
+            throw new IllegalArgumentException("El ensemble requiere modelos de clasificación (clase nominal)");
+        }
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < classAttr.numValues(); i++) {
+            labels.add(classAttr.value(i));
+        }
+        return labels;
+    }
+
+    private static void requireSameLabels(String name, AdvancedWekaService.ModelWrapper model, List<String> labels) {
+        List<String> own = labels(model);
+        if (own.size() != labels.size() || !new HashSet<>(own).containsAll(labels)) {
+            throw new IllegalArgumentException("El modelo " + name + " tiene otras etiquetas de clase: "
+                    + own + " (se esperaba " + labels + ")");
+        }
+    }
+}
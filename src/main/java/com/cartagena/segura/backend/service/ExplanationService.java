@@ -0,0 +1,434 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.ExplanationResponse;
+import com.cartagena.segura.backend.dto.ModelChangeEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.rules.JRip;
+import weka.classifiers.rules.Rule;
+import weka.core.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Explicaciones de predicciones y relevancia global de atributos.
+ *
+ * - Árboles (J48, REPTree, HoeffdingTree): camino de decisión, leído del grafo del árbol
+ *   una vez por versión del clasificador.
+ * - JRip: primera regla que cubre la instancia.
+ * - Resto (RandomForest, SMO, ...): atribución por oclusión; cada atributo se reemplaza por
+ *   valores de una muestra de referencia y se mide cuánto cambia la probabilidad de la clase.
+ *
+ * La relevancia global (permutation importance) y la muestra de referencia se calculan en
+ * segundo plano y se guardan por versión del modelo; consultarlas es O(1). Un modelo en línea
+ * publica un snapshot por segundo: sus snapshots comparten el cálculo de su entrenamiento y
+ * este se rehace cada "online-refresh-ms". Un cálculo que al empezar ya fue reemplazado por
+ * otro del mismo modelo se descarta, así la cola no acumula trabajo obsoleto.
+ */
+@Slf4j
+@Service
+public class ExplanationService {
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    @Autowired
+    private ModelChangeNotifier modelChangeNotifier;
+
+    // Filas de referencia por atribución (cada atributo cuesta este número de predicciones)
+    @Value("${ml.explain.background-size:10}")
+    private int backgroundSize;
+
+    @Value("${ml.explain.importance-sample:2000}")
+    private int importanceSample;
+
+    @Value("${ml.explain.importance-repeats:3}")
+    private int importanceRepeats;
+
+    @Value("${ml.explain.online-refresh-ms:600000}")
+    private long onlineRefreshMs;
+
+    private static final Pattern NODE = Pattern.compile("^(\\w+) \\[label=\"([^\"]*)\"(.*)]$");
+    private static final Pattern EDGE = Pattern.compile("^(\\w+)->(\\w+) \\[label=\"([^\"]*)\"]$");
+    private static final Pattern OPERATOR = Pattern.compile("^\\s*(<=|>=|!=|<|>|=)\\s*(.*)$");
+    private static final Pattern NUMBER_PREFIX = Pattern.compile("^\\d+\\s*:\\s*");
+
+    // Árbol interpretado por modelo; se rehace si cambia el clasificador servido
+    private final ConcurrentHashMap<String, ParsedTree> trees = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ModelInsights> insights = new ConcurrentHashMap<>();
+    private ExecutorService background;
+
+    @PostConstruct
+    public void init() {
+        background = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ml-explain");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        background.shutdownNow();
+    }
+
+    // Modelo entrenado en este nodo: calcular la relevancia sin esperar a la primera consulta
+    @EventListener
+    public void onModelChange(ModelChangeEvent event) {
+        if (event.getType() == ModelChangeEvent.Type.DELETED) {
+            trees.remove(event.getModelName());
+            insights.remove(event.getModelName());
+        } else if (modelChangeNotifier.nodeId().equals(event.getNodeId())) {
+            AdvancedWekaService.ModelWrapper model = wekaService.getModelWrapper(event.getModelName());
+            if (model != null) insightsFor(event.getModelName(), model);
+        }
+    }
+
+    // ========== EXPLICACIÓN POR PREDICCIÓN ==========
+
+    public ExplanationResponse explain(String modelName, Map<String, Object> features) throws Exception {
+        AdvancedWekaService.ModelWrapper model = wekaService.getModelWrapper(modelName);
+        if (model == null) {
+            throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+        }
+
+        Instance instance = wekaService.createInstance(features, model.dataStructure);
+        double[] distribution = model.classifier.distributionForInstance(instance);
+        int predicted = Utils.maxIndex(distribution);
+
+        ExplanationResponse response = new ExplanationResponse();
+        response.setModelName(modelName);
+        response.setAlgorithm(model.algorithm);
+        response.setPrediction(model.dataStructure.classAttribute().value(predicted));
+        response.setConfidence(distribution[predicted]);
+
+        if (model.classifier instanceof JRip jrip) {
+            response.setMethod("rule");
+            response.setRule(coveringRule(jrip, instance, response.getPrediction()));
+        } else if (model.classifier instanceof Drawable drawable && drawable.graphType() == Drawable.TREE) {
+            ParsedTree tree = trees.compute(modelName, (k, cached) ->
+                    cached != null && cached.classifier == model.classifier ? cached : parseTree(model.classifier, drawable));
+            // Un árbol de una sola hoja (p. ej. HoeffdingTree recién creado) no explica nada
+            List<String> path = tree.root != null ? tree.path(instance) : List.of();
+            if (path.size() > 1) {
+                response.setMethod("decision-path");
+                response.setPath(path);
+            }
+        }
+        if (response.getMethod() == null) {
+            response.setMethod("attribution");
+            ModelInsights modelInsights = insightsFor(modelName, model);
+            Instances reference = modelInsights.background;
+            if (reference != null && reference.isEmpty()) reference = null;
+            response.setBaseline(reference != null ? "background" : "missing");
+            response.setAttributions(attributions(model, instance, predicted, distribution[predicted], reference));
+        }
+        return response;
+    }
+
+    private String coveringRule(JRip jrip, Instance instance, String prediction) {
+        for (Rule rule : jrip.getRuleset()) {
+            if (rule.covers(instance)) {
+                List<String> antecedents = new ArrayList<>();
+                for (JRip.Antd antd : ((JRip.RipperRule) rule).getAntds()) {
+                    antecedents.add(antd.toString());
+                }
+                // El consecuente de JRip usa el orden interno de clases; se muestra la predicción
+                return (antecedents.isEmpty() ? "(regla por defecto)" : String.join(" and ", antecedents))
+                        + " => " + prediction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * p(clase | x) - promedio de p(clase | x con el atributo tomado de la referencia).
+     * Sin referencia todavía, el atributo se marca como faltante.
+     */
+    private Map<String, Double> attributions(AdvancedWekaService.ModelWrapper model, Instance instance,
+                                             int predicted, double probability, Instances reference) throws Exception {
+        Map<String, Double> result = new HashMap<>();
+        Instance probe = (Instance) instance.copy();
+        for (int i = 0; i < model.dataStructure.numAttributes(); i++) {
+            if (i == model.dataStructure.classIndex() || instance.isMissing(i)) continue;
+
+            double original = instance.value(i);
+            double sum = 0;
+            int count = 0;
+            if (reference != null) {
+                for (int r = 0; r < reference.numInstances(); r++) {
+                    probe.setValue(i, reference.instance(r).value(i));
+                    sum += model.classifier.distributionForInstance(probe)[predicted];
+                    count++;
+                }
+            } else {
+                probe.setMissing(i);
+                sum = model.classifier.distributionForInstance(probe)[predicted];
+                count = 1;
+            }
+            probe.setValue(i, original);
+            result.put(model.dataStructure.attribute(i).name(), probability - sum / count);
+        }
+        return sortByMagnitude(result);
+    }
+
+    // ========== RELEVANCIA GLOBAL ==========
+
+    /**
+     * Relevancia por permutación de la versión servida. Si aún no está calculada, se lanza
+     * el cálculo en segundo plano y se retorna el estado "COMPUTING".
+     */
+    public Map<String, Object> getFeatureImportance(String modelName) {
+        AdvancedWekaService.ModelWrapper model = wekaService.getModelWrapper(modelName);
+        if (model == null) {
+            throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+        }
+        return insightsFor(modelName, model).toMap(modelName);
+    }
+
+    private ModelInsights insightsFor(String modelName, AdvancedWekaService.ModelWrapper model) {
+        ModelInsights current = insights.get(modelName);
+        if (current != null && current.matches(model, onlineRefreshMs)) {
+            return current;
+        }
+        ModelInsights created = new ModelInsights(model);
+        ModelInsights installed = insights.compute(modelName,
+                (k, v) -> v != null && v.matches(model, onlineRefreshMs) ? v : created);
+        if (installed == created) {
+            background.execute(() -> compute(modelName, created));
+        }
+        return installed;
+    }
+
+    private void compute(String modelName, ModelInsights target) {
+        // Reemplazado mientras esperaba en la cola (otro snapshot, reentrenamiento o borrado)
+        if (insights.get(modelName) != target) return;
+        long start = System.currentTimeMillis();
+        try {
+            Instances data = wekaService.loadDataset(modelName);
+            if (!data.equalHeaders(target.model.dataStructure)) {
+                throw new IllegalStateException("El dataset guardado no coincide con la estructura del modelo");
+            }
+            data.randomize(new Random(1));
+            Instances sample = new Instances(data, 0, Math.min(importanceSample, data.numInstances()));
+            target.background = new Instances(sample, 0, Math.min(backgroundSize, sample.numInstances()));
+
+            // Copia propia: el cálculo no compite con las predicciones por el mismo clasificador
+            Classifier classifier = AbstractClassifier.makeCopy(target.model.classifier);
+            double baseline = accuracy(classifier, sample);
+            Random random = new Random(1);
+            Map<String, Double> importance = new HashMap<>();
+            for (int a = 0; a < sample.numAttributes(); a++) {
+                if (a == sample.classIndex()) continue;
+                double drop = 0;
+                for (int r = 0; r < importanceRepeats; r++) {
+                    Instances permuted = new Instances(sample);
+                    shuffleColumn(permuted, a, random);
+                    drop += baseline - accuracy(classifier, permuted);
+                }
+                importance.put(sample.attribute(a).name(), drop / importanceRepeats);
+            }
+
+            target.baselineAccuracy = baseline;
+            target.sampleSize = sample.numInstances();
+            target.importance = sortByMagnitude(importance);
+            target.computedAt = new Date();
+            target.state = "READY";
+            log.info("✓ Relevancia de atributos de {} calculada en {} ms", modelName, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("✗ Error calculando relevancia de {}: {}", modelName, e.getMessage());
+            target.error = e.getMessage();
+            target.state = "FAILED";
+        }
+    }
+
+    private static double accuracy(Classifier classifier, Instances data) throws Exception {
+        int correct = 0;
+        int total = 0;
+        for (Instance instance : data) {
+            if (instance.classIsMissing()) continue;
+            total++;
+            if (classifier.classifyInstance(instance) == instance.classValue()) correct++;
+        }
+        return total == 0 ? 0 : 100.0 * correct / total;
+    }
+
+    private static void shuffleColumn(Instances data, int attribute, Random random) {
+        for (int i = data.numInstances() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double tmp = data.instance(i).value(attribute);
+            data.instance(i).setValue(attribute, data.instance(j).value(attribute));
+            data.instance(j).setValue(attribute, tmp);
+        }
+    }
+
+    private static Map<String, Double> sortByMagnitude(Map<String, Double> values) {
+        Map<String, Double> sorted = new LinkedHashMap<>();
+        values.entrySet().stream()
+                .sorted((x, y) -> Double.compare(Math.abs(y.getValue()), Math.abs(x.getValue())))
+                .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+        return sorted;
+    }
+
+    private static final class ModelInsights {
+        final AdvancedWekaService.ModelWrapper model;
+        final long createdAtMs = System.currentTimeMillis();
+        volatile String state = "COMPUTING";
+        volatile Instances background;
+        volatile Map<String, Double> importance;
+        volatile double baselineAccuracy;
+        volatile int sampleSize;
+        volatile Date computedAt;
+        volatile String error;
+
+        ModelInsights(AdvancedWekaService.ModelWrapper model) {
+            this.model = model;
+        }
+
+        /**
+         * Misma versión guardada y mismo clasificador. Un snapshot en línea (updateCount > 0) del
+         * mismo entrenamiento también vale mientras el cálculo no tenga más de refreshMs: la
+         * versión guardada cambia con cada checkpoint, el entrenamiento (trainedDate) no.
+         */
+        boolean matches(AdvancedWekaService.ModelWrapper other, long refreshMs) {
+            if (other == model || (other.classifier == model.classifier
+                    && Objects.equals(other.version, model.version))) {
+                return true;
+            }
+            return other.updateCount > 0 && Objects.equals(other.trainedDate, model.trainedDate)
+                    && System.currentTimeMillis() - createdAtMs < refreshMs;
+        }
+
+        Map<String, Object> toMap(String modelName) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("modelName", modelName);
+            map.put("version", model.version);
+            map.put("state", state);
+            map.put("method", "permutation");
+            if (importance != null) {
+                map.put("baselineAccuracy", baselineAccuracy);
+                map.put("sampleSize", sampleSize);
+                map.put("importance", importance);
+                map.put("computedAt", computedAt);
+            }
+            if (error != null) map.put("error", error);
+            return map;
+        }
+    }
+
+    // ========== CAMINO DE DECISIÓN ==========
+
+    private record TreeNode(String attribute, String leafLabel, List<Branch> branches) {}
+
+    private record Branch(String operator, String value, String childId) {}
+
+    private static final class ParsedTree {
+        final Classifier classifier;
+        final Map<String, TreeNode> nodes;
+        final String root;
+
+        ParsedTree(Classifier classifier, Map<String, TreeNode> nodes, String root) {
+            this.classifier = classifier;
+            this.nodes = nodes;
+            this.root = root;
+        }
+
+        List<String> path(Instance instance) {
+            List<String> steps = new ArrayList<>();
+            TreeNode node = nodes.get(root);
+            while (node != null && node.leafLabel() == null) {
+                Attribute attr = instance.dataset().attribute(node.attribute());
+                if (attr == null || instance.isMissing(attr)) {
+                    steps.add(node.attribute() + " = ? (valor faltante: la predicción combina varias ramas)");
+                    return steps;
+                }
+                String shown = attr.isNumeric() ? Utils.doubleToString(instance.value(attr), 4) : instance.stringValue(attr);
+                Branch taken = null;
+                for (Branch branch : node.branches()) {
+                    if (matches(branch, attr, instance)) {
+                        taken = branch;
+                        break;
+                    }
+                }
+                if (taken == null) {
+                    steps.add(node.attribute() + " = " + shown + " (sin rama para este valor)");
+                    return steps;
+                }
+                steps.add(node.attribute() + " " + taken.operator() + " " + taken.value() + " (valor: " + shown + ")");
+                node = nodes.get(taken.childId());
+            }
+            if (node != null) steps.add("→ " + node.leafLabel());
+            return steps;
+        }
+
+        private static boolean matches(Branch branch, Attribute attr, Instance instance) {
+            if (attr.isNumeric()) {
+                double value = instance.value(attr);
+                double threshold;
+                try {
+                    threshold = Double.parseDouble(branch.value());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                return switch (branch.operator()) {
+                    case "<=" -> value <= threshold;
+                    case "<" -> value < threshold;
+                    case ">" -> value > threshold;
+                    case ">=" -> value >= threshold;
+                    case "=" -> value == threshold;
+                    default -> value != threshold;
+                };
+            }
+            boolean equal = instance.stringValue(attr).equals(branch.value());
+            return branch.operator().equals("!=") ? !equal : equal;
+        }
+    }
+
+    /**
+     * Interpreta el grafo (formato dot) que exponen los árboles de Weka.
+     */
+    private ParsedTree parseTree(Classifier classifier, Drawable drawable) {
+        Map<String, TreeNode> nodes = new HashMap<>();
+        Set<String> children = new HashSet<>();
+        List<String> order = new ArrayList<>();
+        try {
+            for (String line : drawable.graph().split("\n")) {
+                line = line.trim();
+                Matcher edge = EDGE.matcher(line);
+                if (edge.matches()) {
+                    Matcher op = OPERATOR.matcher(edge.group(3));
+                    if (!op.matches()) continue;
+                    nodes.computeIfAbsent(edge.group(1), k -> new TreeNode(null, null, new ArrayList<>()));
+                    nodes.get(edge.group(1)).branches().add(new Branch(op.group(1), op.group(2).trim(), edge.group(2)));
+                    children.add(edge.group(2));
+                    continue;
+                }
+                Matcher node = NODE.matcher(line);
+                if (node.matches()) {
+                    String label = NUMBER_PREFIX.matcher(node.group(2).trim()).replaceFirst("");
+                    boolean leaf = node.group(3).contains("shape=box");
+                    List<Branch> branches = nodes.containsKey(node.group(1))
+                            ? nodes.get(node.group(1)).branches() : new ArrayList<>();
+                    nodes.put(node.group(1), leaf ? new TreeNode(null, label, branches)
+                            : new TreeNode(label, null, branches));
+                    order.add(node.group(1));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("No se pudo leer el árbol: {}", e.getMessage());
+            return new ParsedTree(classifier, Map.of(), null);
+        }
+        String root = order.stream().filter(id -> !children.contains(id)).findFirst().orElse(null);
+        return new ParsedTree(classifier, nodes, root);
+    }
+}
@@ -0,0 +1,113 @@
+package com.cartagena.segura.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Modelos en un directorio (ml.models.directory). Para varios nodos basta con que el
+ * directorio sea un volumen compartido. Las escrituras van a un temporal y se mueven
+ * de forma atómica: un lector nunca ve un archivo a medio escribir.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "ml.models.store", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemModelStore implements ModelStore {
+
+    @Value("${ml.models.directory:models/}")
+    private String directory;
+
+    private Path root;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(directory);
+        Files.createDirectories(root);
+        log.info("✓ Almacén de modelos en disco: {}", root.toAbsolutePath());
+    }
+
+    @Override
+    public String save(String name, byte[] model, byte[] dataset) throws IOException {
+        String version = ModelStore.versionOf(model);
+        if (dataset != null) {
+            write(root.resolve(name + ".arff"), dataset);
+        }
+        write(root.resolve(name + ".model"), model);
+        // La versión se escribe al final: quien la lea ya encuentra el modelo nuevo
+        write(root.resolve(name + ".version"), version.getBytes(StandardCharsets.UTF_8));
+        return version;
+    }
+
+    @Override
+    public Optional<StoredModel> load(String name) throws IOException {
+        Path modelPath = root.resolve(name + ".model");
+        if (!Files.exists(modelPath)) {
+            return Optional.empty();
+        }
+        byte[] model = Files.readAllBytes(modelPath);
+        byte[] dataset = loadDataset(name).orElseThrow(() ->
+                new NoSuchFileException(root.resolve(name + ".arff").toString()));
+        return Optional.of(new StoredModel(name, ModelStore.versionOf(model), model, dataset));
+    }
+
+    @Override
+    public Optional<byte[]> loadDataset(String name) throws IOException {
+        Path arffPath = root.resolve(name + ".arff");
+        return Files.exists(arffPath) ? Optional.of(Files.readAllBytes(arffPath)) : Optional.empty();
+    }
+
+    @Override
+    public Map<String, String> listVersions() throws IOException {
+        Map<String, String> versions = new TreeMap<>();
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String fileName = path.getFileName().toString();
+                if (!fileName.endsWith(".model")) continue;
+                String name = fileName.substring(0, fileName.length() - ".model".length());
+                versions.put(name, versionOf(name, path));
+            }
+        }
+        return versions;
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        Files.deleteIfExists(root.resolve(name + ".version"));
+        Files.deleteIfExists(root.resolve(name + ".model"));
+        Files.deleteIfExists(root.resolve(name + ".arff"));
+    }
+
+    // Modelos copiados a mano (sin .version) se identifican por el hash del archivo
+    private String versionOf(String name, Path modelPath) throws IOException {
+        Path versionPath = root.resolve(name + ".version");
+        if (Files.exists(versionPath)) {
+            return Files.readString(versionPath, StandardCharsets.UTF_8).trim();
+        }
+        return ModelStore.versionOf(Files.readAllBytes(modelPath));
+    }
+
+    private void write(Path target, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(root, ".tmp-", null);
+        try {
+            Files.write(temp, content);
+            // createTempFile crea 600; otros nodos del volumen compartido deben poder leer
+            try {
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-r--r--"));
+            } catch (UnsupportedOperationException ignored) {
+                // Sistema de archivos sin permisos POSIX
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.model.Incident;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Features agregadas por celda geográfica (geohash) para enriquecer predicciones.
+ *
+ * Los conteos viven en IncidentCellIndex: una capa con celdas del geohash configurado, buckets
+ * de una hora y "retención" horas (la ventana más larga), por tipo y estado. El índice la
+ * actualiza con cada IncidentChangeEvent y la reconstruye periódicamente desde Mongo.
+ *
+ * Features por ventana w (en horas, ml.features.windows-hours):
+ *  - cell_count_{w}h, cell_type_{tipo}_{w}h, cell_status_{ESTADO}_{w}h
+ *  - cell_rate_{w}h: incidentes por hora en la ventana
+ *  - cell_trend: ritmo de la ventana más corta sobre el de la más larga (1 = estable)
+ * Un modelo entrenado con columnas con estos nombres las recibe a partir de lat/lng
+ * (AdvancedWekaService.createInstance). La consulta es O(1): el resultado por celda se
+ * guarda hasta la siguiente escritura o el cambio de hora.
+ */
+@Slf4j
+@Service
+public class GeoCellFeatureStore {
+
+    public static final String PREFIX = "cell_";
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    @Autowired
+    private IncidentCellIndex index;
+
+    @Value("${ml.features.enabled:true}")
+    private boolean enabled;
+
+    // Misma precisión que la columna geocell del pipeline de entrenamiento
+    @Value("${ml.incidents.geohash-precision:6}")
+    private int precision;
+
+    @Value("${ml.features.windows-hours:1,24,168}")
+    private int[] windowsHours;
+
+    private IncidentCellIndex.Layer layer;
+    // Último resultado por celda: vale mientras no cambien la celda ni la hora
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    private record Snapshot(IncidentCellIndex.Cell cell, long hour, long version, Map<String, Double> features) {}
+
+    @PostConstruct
+    public void init() {
+        windowsHours = Arrays.stream(windowsHours).filter(w -> w > 0).sorted().distinct().toArray();
+        if (windowsHours.length == 0) {
+            windowsHours = new int[]{24};
+        }
+        if (enabled) {
+            layer = index.register("features", IncidentCellIndex.Grid.geohash(precision), HOUR_MS,
+                    windowsHours[windowsHours.length - 1], true);
+        }
+    }
+
+    /**
+     * Celda (geohash con la precisión configurada) de una posición.
+     */
+    public String cellOf(double lat, double lng) {
+        return IncidentGeo.geohash(lat, lng, precision);
+    }
+
+    /**
+     * Features de la celda que contiene (lat, lng). Celda sin incidentes: todo en 0.
+     */
+    public Map<String, Double> features(double lat, double lng) {
+        if (layer == null) return emptyFeatures();
+        long key = layer.grid().cellOf(lat, lng);
+        IncidentCellIndex.Cell cell = layer.cells().get(key);
+        if (cell == null) {
+            snapshots.remove(key);
+            return emptyFeatures();
+        }
+        long hour = layer.currentBucket();
+        long version = cell.version();
+        Snapshot cached = snapshots.get(key);
+        if (cached != null && cached.cell() == cell && cached.hour() == hour && cached.version() == version) {
+            return cached.features();
+        }
+        Map<String, Double> features = compute(cell, hour);
+        snapshots.put(key, new Snapshot(cell, hour, version, features));
+        return features;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("precision", precision);
+        status.put("windowsHours", windowsHours);
+        status.put("cells", layer != null ? layer.cells().size() : 0);
+        status.put("types", index.typeNames());
+        status.put("lastRebuild", index.getLastRebuild());
+        return status;
+    }
+
+    private Map<String, Double> compute(IncidentCellIndex.Cell cell, long hour) {
+        List<String> types = index.typeNames();
+        Map<String, Double> features = emptyFeatures(types);
+        double shortestRate = 0;
+        double longestRate = 0;
+        for (int w : windowsHours) {
+            long[] byStatus = new long[Incident.Status.values().length];
+            long[] byType = new long[types.size()];
+            long total = cell.accumulate(hour, w, byType, byStatus);
+            double rate = (double) total / w;
+            features.put(PREFIX + "count_" + w + "h", (double) total);
+            features.put(PREFIX + "rate_" + w + "h", rate);
+            for (Incident.Status s : Incident.Status.values()) {
+                features.put(PREFIX + "status_" + s.name() + "_" + w + "h", (double) byStatus[s.ordinal()]);
+            }
+            for (int t = 0; t < byType.length; t++) {
+                features.put(PREFIX + "type_" + types.get(t) + "_" + w + "h", (double) byType[t]);
+            }
+            if (w == windowsHours[0]) shortestRate = rate;
+            longestRate = rate;
+        }
+        features.put(PREFIX + "trend", longestRate > 0 ? shortestRate / longestRate : 1.0);
+        return Collections.unmodifiableMap(features);
+    }
+
+    private Map<String, Double> emptyFeatures() {
+        return emptyFeatures(index.typeNames());
+    }
+
+    private Map<String, Double> emptyFeatures(List<String> types) {
+        Map<String, Double> features = new HashMap<>();
+        for (int w : windowsHours) {
+            features.put(PREFIX + "count_" + w + "h", 0.0);
+            features.put(PREFIX + "rate_" + w + "h", 0.0);
+            for (Incident.Status s : Incident.Status.values()) {
+                features.put(PREFIX + "status_" + s.name() + "_" + w + "h", 0.0);
+            }
+            for (String type : types) {
+                features.put(PREFIX + "type_" + type + "_" + w + "h", 0.0);
+            }
+        }
+        features.put(PREFIX + "trend", 1.0);
+        return features;
+    }
+}
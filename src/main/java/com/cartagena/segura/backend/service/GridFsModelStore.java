@@ -0,0 +1,102 @@
+package com.cartagena.segura.backend.service;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Modelos en Mongo GridFS: todos los nodos comparten el almacén sin volumen compartido.
+ * Cada archivo se sube completo antes de borrar la versión anterior, así que un lector
+ * siempre encuentra al menos una versión íntegra (se toma la más reciente).
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "ml.models.store", havingValue = "gridfs")
+public class GridFsModelStore implements ModelStore {
+
+    private static final String MODEL_SUFFIX = ".model";
+    private static final String DATASET_SUFFIX = ".arff";
+    private static final String VERSION_KEY = "version";
+
+    @Autowired
+    private GridFsTemplate gridFsTemplate;
+
+    @Override
+    public String save(String name, byte[] model, byte[] dataset) throws IOException {
+        String version = ModelStore.versionOf(model);
+        if (dataset != null) {
+            replace(name + DATASET_SUFFIX, dataset, new Document(VERSION_KEY, version));
+        }
+        replace(name + MODEL_SUFFIX, model, new Document(VERSION_KEY, version));
+        return version;
+    }
+
+    @Override
+    public Optional<StoredModel> load(String name) throws IOException {
+        GridFSFile modelFile = latest(name + MODEL_SUFFIX);
+        if (modelFile == null) {
+            return Optional.empty();
+        }
+        byte[] model = read(modelFile);
+        byte[] dataset = loadDataset(name).orElseThrow(() ->
+                new IOException("Dataset no encontrado en GridFS: " + name + DATASET_SUFFIX));
+        return Optional.of(new StoredModel(name, ModelStore.versionOf(model), model, dataset));
+    }
+
+    @Override
+    public Optional<byte[]> loadDataset(String name) throws IOException {
+        GridFSFile file = latest(name + DATASET_SUFFIX);
+        return file != null ? Optional.of(read(file)) : Optional.empty();
+    }
+
+    @Override
+    public Map<String, String> listVersions() {
+        Map<String, String> versions = new TreeMap<>();
+        Query query = Query.query(Criteria.where("filename").regex("\\" + MODEL_SUFFIX + "$"))
+                .with(Sort.by(Sort.Direction.ASC, "uploadDate"));
+        // Orden ascendente: si hay dos versiones del mismo archivo, queda la más reciente
+        for (GridFSFile file : gridFsTemplate.find(query)) {
+            String filename = file.getFilename();
+            String name = filename.substring(0, filename.length() - MODEL_SUFFIX.length());
+            Document metadata = file.getMetadata();
+            versions.put(name, metadata != null ? metadata.getString(VERSION_KEY) : null);
+        }
+        return versions;
+    }
+
+    @Override
+    public void delete(String name) {
+        gridFsTemplate.delete(Query.query(Criteria.where("filename").in(name + MODEL_SUFFIX, name + DATASET_SUFFIX)));
+    }
+
+    private void replace(String filename, byte[] content, Document metadata) {
+        ObjectId id = gridFsTemplate.store(new ByteArrayInputStream(content), filename, metadata);
+        gridFsTemplate.delete(Query.query(Criteria.where("filename").is(filename).and("_id").ne(id)));
+    }
+
+    private GridFSFile latest(String filename) {
+        Query query = Query.query(Criteria.where("filename").is(filename))
+                .with(Sort.by(Sort.Direction.DESC, "uploadDate"))
+                .limit(1);
+        return gridFsTemplate.find(query).first();
+    }
+
+    private byte[] read(GridFSFile file) throws IOException {
+        try (InputStream in = gridFsTemplate.getResource(file).getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.cartagena.segura.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Detección de hotspots espacio-temporales de incidentes (Getis-Ord Gi*).
+ *
+ * El área se divide en una grilla regular (celdas de "cell-size-m" metros) y cada celda guarda
+ * conteos por bucket de tiempo (anillo que cubre la retención), por tipo: una capa de
+ * IncidentCellIndex, que la mantiene al día con los eventos y la reconstrucción desde Mongo.
+ *
+ * Una consulta suma los buckets de la ventana pedida y calcula Gi* de cada celda con su
+ * vecindario (cuadrado de radio "neighborhood" celdas) contra la media del área de estudio:
+ * las celdas dentro de "bounds" (la ciudad); las de fuera se ignoran. Sin bounds, el
+ * rectángulo que cubre todas las celdas con incidentes. Un z alto indica que la celda y sus
+ * vecinas concentran más incidentes de lo esperable. Ambas fases corren en paralelo por
+ * tramos de celdas, y el resultado se guarda hasta que cambian los datos o el bucket actual.
+ */
+@Slf4j
+@Service
+public class HotspotService {
+
+    @Autowired
+    private IncidentCellIndex index;
+
+    @Value("${incidents.hotspots.enabled:true}")
+    private boolean enabled;
+
+    @Value("${incidents.hotspots.cell-size-m:250}")
+    private double cellSizeM;
+
+    // Latitud de referencia para que las celdas sean cuadradas (Cartagena)
+    @Value("${incidents.hotspots.reference-lat:10.4}")
+    private double referenceLat;
+
+    @Value("${incidents.hotspots.bucket-minutes:15}")
+    private int bucketMinutes;
+
+    @Value("${incidents.hotspots.retention-hours:72}")
+    private int retentionHours;
+
+    // Radio del vecindario en celdas (1 = la celda y sus 8 vecinas)
+    @Value("${incidents.hotspots.neighborhood:1}")
+    private int neighborhood;
+
+    // Área de estudio: minLat,minLng,maxLat,maxLng (vacío = rectángulo de las celdas con incidentes)
+    @Value("${incidents.hotspots.bounds:}")
+    private double[] bounds;
+
+    // Hilos para el cálculo (0 = núcleos - 1)
+    @Value("${incidents.hotspots.threads:0}")
+    private int threads;
+
+    private long bucketMs;
+    private int parallelism;
+    private ExecutorService workers;
+    private IncidentCellIndex.Layer layer;
+    private IncidentCellIndex.Grid grid;
+    // Filas y columnas del área de estudio configurada (null = sin bounds)
+    private int[] studyArea;
+
+    private final ConcurrentHashMap<String, CachedResult> cache = new ConcurrentHashMap<>();
+
+    public record Hotspot(double lat, double lng, double minLat, double minLng, double maxLat, double maxLng,
+                          long count, long neighborhoodCount, long previousCount, double zScore, int confidence) {}
+
+    public record HotspotResult(String type, int hours, int cellSizeM, int studyCells, long incidents,
+                                double mean, List<Hotspot> hotspots, long computedAt, long elapsedMs) {}
+
+    private record CachedResult(long version, long bucket, HotspotResult result) {}
+
+    @PostConstruct
+    public void init() {
+        grid = IncidentCellIndex.Grid.meters(cellSizeM, referenceLat);
+        bucketMs = TimeUnit.MINUTES.toMillis(Math.max(1, bucketMinutes));
+        if (bounds != null && bounds.length > 0) {
+            if (bounds.length != 4) {
+                throw new IllegalStateException("incidents.hotspots.bounds debe ser minLat,minLng,maxLat,maxLng");
+            }
+            studyArea = new int[]{
+                    grid.row(Math.min(bounds[0], bounds[2])), grid.row(Math.max(bounds[0], bounds[2])),
+                    grid.col(Math.min(bounds[1], bounds[3])), grid.col(Math.max(bounds[1], bounds[3]))};
+        }
+        if (enabled) {
+            layer = index.register("hotspots", grid, bucketMs,
+                    (int) (TimeUnit.HOURS.toMillis(retentionHours) / bucketMs), false);
+        }
+        parallelism = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger counter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "hotspots-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    // ========== CONSULTA ==========
+
+    /**
+     * Hotspots de las últimas "hours" horas, opcionalmente de un solo tipo, ordenados por z.
+     * Solo se devuelven celdas con z >= minZ y al menos un incidente propio.
+     */
+    public HotspotResult hotspots(String type, int hours, double minZ, int limit) throws InterruptedException {
+        if (hours <= 0 || hours > retentionHours) {
+            throw new IllegalArgumentException("hours debe estar entre 1 y " + retentionHours);
+        }
+        Integer typeFilter = null;
+        if (type != null && !type.isBlank()) {
+            typeFilter = index.typeIndex(type);
+            if (typeFilter == null) {
+                return new HotspotResult(type, hours, (int) cellSizeM, 0, 0, 0, List.of(),
+                        System.currentTimeMillis(), 0);
+            }
+        }
+
+        if (layer == null) {
+            return new HotspotResult(type, hours, (int) cellSizeM, 0, 0, 0, List.of(), System.currentTimeMillis(), 0);
+        }
+        long bucket = layer.currentBucket();
+        long version = layer.version();
+        String cacheKey = typeFilter + "|" + hours;
+        CachedResult cached = cache.get(cacheKey);
+        HotspotResult full;
+        if (cached != null && cached.version() == version && cached.bucket() == bucket) {
+            full = cached.result();
+        } else {
+            full = compute(type, typeFilter, hours, bucket);
+            cache.put(cacheKey, new CachedResult(version, bucket, full));
+        }
+
+        List<Hotspot> selected = full.hotspots().stream()
+                .filter(h -> h.zScore() >= minZ)
+                .limit(Math.max(1, limit))
+                .toList();
+        return new HotspotResult(full.type(), full.hours(), full.cellSizeM(), full.studyCells(), full.incidents(),
+                full.mean(), selected, full.computedAt(), full.elapsedMs());
+    }
+
+    private HotspotResult compute(String type, Integer typeFilter, int hours, long bucket) throws InterruptedException {
+        long start = System.nanoTime();
+        int windowBuckets = (int) Math.max(1, TimeUnit.HOURS.toMillis(hours) / bucketMs);
+        List<Map.Entry<Long, IncidentCellIndex.Cell>> snapshot = new ArrayList<>(layer.cells().entrySet());
+        if (studyArea != null) {
+            snapshot.removeIf(entry -> !inStudyArea(entry.getKey()));
+        }
+
+        // Fase 1: conteo de cada celda en la ventana actual y en la anterior (para la tendencia)
+        Map<Long, long[]> counts = new ConcurrentHashMap<>();
+        inParallel(snapshot, entry -> {
+            long current = entry.getValue().sum(bucket, windowBuckets, typeFilter);
+            long previous = entry.getValue().sum(bucket - windowBuckets, windowBuckets, typeFilter);
+            if (current > 0 || previous > 0) counts.put(entry.getKey(), new long[]{current, previous});
+        });
+
+        // Área de estudio: la configurada o, sin bounds, el rectángulo de todas las celdas conocidas
+        int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE, minCol = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE;
+        if (studyArea != null) {
+            minRow = studyArea[0];
+            maxRow = studyArea[1];
+            minCol = studyArea[2];
+            maxCol = studyArea[3];
+        } else {
+            for (Map.Entry<Long, IncidentCellIndex.Cell> entry : snapshot) {
+                int r = IncidentCellIndex.Grid.rowOf(entry.getKey());
+                int c = IncidentCellIndex.Grid.colOf(entry.getKey());
+                minRow = Math.min(minRow, r);
+                maxRow = Math.max(maxRow, r);
+                minCol = Math.min(minCol, c);
+                maxCol = Math.max(maxCol, c);
+            }
+        }
+        long n = studyArea == null && snapshot.isEmpty() ? 0 : (long) (maxRow - minRow + 1) * (maxCol - minCol + 1);
+        long total = 0;
+        double sumSquares = 0;
+        for (long[] c : counts.values()) {
+            total += c[0];
+            sumSquares += (double) c[0] * c[0];
+        }
+        double mean = n > 0 ? (double) total / n : 0;
+        double s = n > 0 ? Math.sqrt(Math.max(0, sumSquares / n - mean * mean)) : 0;
+
+        List<Hotspot> hotspots = new ArrayList<>();
+        if (n > 1 && s > 0) {
+            // Fase 2: Gi* de cada celda con incidentes en la ventana
+            List<Map.Entry<Long, long[]>> candidates = counts.entrySet().stream()
+                    .filter(e -> e.getValue()[0] > 0)
+                    .toList();
+            Queue<Hotspot> found = new ConcurrentLinkedQueue<>();
+            final int rMin = minRow, rMax = maxRow, cMin = minCol, cMax = maxCol;
+            inParallel(candidates, entry -> {
+                int r = IncidentCellIndex.Grid.rowOf(entry.getKey());
+                int c = IncidentCellIndex.Grid.colOf(entry.getKey());
+                long neighborhoodCount = 0;
+                int weights = 0;
+                for (int dr = -neighborhood; dr <= neighborhood; dr++) {
+                    for (int dc = -neighborhood; dc <= neighborhood; dc++) {
+                        int nr = r + dr;
+                        int nc = c + dc;
+                        if (nr < rMin || nr > rMax || nc < cMin || nc > cMax) continue;
+                        weights++;
+                        long[] neighbor = counts.get(IncidentCellIndex.Grid.key(nr, nc));
+                        if (neighbor != null) neighborhoodCount += neighbor[0];
+                    }
+                }
+                double denominator = s * Math.sqrt((n * (double) weights - (double) weights * weights) / (n - 1));
+                if (denominator <= 0) return;
+                double z = (neighborhoodCount - mean * weights) / denominator;
+                found.add(hotspot(r, c, entry.getValue()[0], neighborhoodCount, entry.getValue()[1], z));
+            });
+            hotspots.addAll(found);
+            hotspots.sort(Comparator.comparingDouble(Hotspot::zScore).reversed()
+                    .thenComparing(Comparator.comparingLong(Hotspot::count).reversed()));
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.debug("Hotspots {} {}h: {} celdas, {} candidatas, {} ms", type, hours, snapshot.size(), counts.size(), elapsedMs);
+        return new HotspotResult(type, hours, (int) cellSizeM, (int) Math.min(Integer.MAX_VALUE, n), total, mean,
+                hotspots, System.currentTimeMillis(), elapsedMs);
+    }
+
+    // Reparte los elementos en tramos, uno por hilo, y espera a que terminen todos
+    private <T> void inParallel(List<T> items, java.util.function.Consumer<T> action) throws InterruptedException {
+        if (items.isEmpty()) return;
+        int chunks = Math.min(parallelism, Math.max(1, items.size() / 2048));
+        if (chunks == 1) {
+            items.forEach(action);
+            return;
+        }
+        int size = (items.size() + chunks - 1) / chunks;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += size) {
+            List<T> chunk = items.subList(from, Math.min(items.size(), from + size));
+            tasks.add(() -> {
+                chunk.forEach(action);
+                return null;
+            });
+        }
+        for (Future<Void> future : workers.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Error calculando hotspots", e.getCause());
+            }
+        }
+    }
+
+    private Hotspot hotspot(int r, int c, long count, long neighborhoodCount, long previousCount, double z) {
+        double minLat = grid.minLat(r);
+        double minLng = grid.minLng(c);
+        int confidence = z >= 2.58 ? 99 : z >= 1.96 ? 95 : z >= 1.65 ? 90 : 0;
+        return new Hotspot(minLat + grid.cellLat() / 2, minLng + grid.cellLng() / 2, minLat, minLng,
+                minLat + grid.cellLat(), minLng + grid.cellLng(), count, neighborhoodCount, previousCount, z, confidence);
+    }
+
+    private boolean inStudyArea(long key) {
+        int r = IncidentCellIndex.Grid.rowOf(key);
+        int c = IncidentCellIndex.Grid.colOf(key);
+        return r >= studyArea[0] && r <= studyArea[1] && c >= studyArea[2] && c <= studyArea[3];
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("cellSizeM", cellSizeM);
+        status.put("bucketMinutes", bucketMinutes);
+        status.put("retentionHours", retentionHours);
+        status.put("bounds", bounds);
+        status.put("cells", layer != null ? layer.cells().size() : 0);
+        status.put("types", index.typeNames());
+        status.put("lastRebuild", index.getLastRebuild());
+        return status;
+    }
+}
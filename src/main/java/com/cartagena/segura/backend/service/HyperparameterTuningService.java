@@ -0,0 +1,519 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.TrainingResponse;
+import com.cartagena.segura.backend.dto.TuningRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Búsqueda de hiperparámetros (grid, random o successive halving).
+ *
+ * El dataset se carga y se baraja una sola vez por búsqueda; los folds de validación
+ * cruzada se construyen una vez por tamaño de muestra y los trials solo los leen.
+ * Los trials corren en un pool acotado y se detienen antes de tiempo cuando no mejoran
+ * (patience) o cuando, a mitad de los folds, van claramente por debajo del mejor.
+ */
+@Slf4j
+@Service
+public class HyperparameterTuningService {
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    // 0 = núcleos - 1 (deja uno libre para las peticiones)
+    @Value("${ml.tuning.threads:0}")
+    private int threads;
+
+    @Value("${ml.tuning.max-concurrent-jobs:1}")
+    private int maxConcurrentJobs;
+
+    @Value("${ml.tuning.max-trials:200}")
+    private int maxTrials;
+
+    @Value("${ml.tuning.max-retained-jobs:20}")
+    private int maxRetainedJobs;
+
+    // Un trial se poda si a mitad de los folds va más de este margen (en puntos) por debajo del mejor
+    @Value("${ml.tuning.prune-margin:5.0}")
+    private double pruneMargin;
+
+    private static final int LEADERBOARD_SIZE = 20;
+
+    private ThreadPoolExecutor workers;
+    private ThreadPoolExecutor jobRunner;
+    private final ConcurrentHashMap<String, TuningJob> jobs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("ml-tune-"));
+        jobRunner = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxConcurrentJobs), daemonThreads("ml-tune-job-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("✓ Búsqueda de hiperparámetros: {} hilos", poolSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Valida la búsqueda, carga el dataset y la lanza en segundo plano. Retorna el id del trabajo.
+     * Lanza IllegalArgumentException si la petición es inválida y RejectedExecutionException
+     * si ya hay demasiadas búsquedas en curso.
+     */
+    public String submit(TuningRequest request) throws Exception {
+        if (request.getDataset() == null || request.getAlgorithm() == null) {
+            throw new IllegalArgumentException("dataset y algorithm son obligatorios");
+        }
+        if (request.getSearchSpace() == null || request.getSearchSpace().isEmpty()) {
+            throw new IllegalArgumentException("searchSpace no puede estar vacío");
+        }
+
+        String strategy = request.getStrategy() != null ? request.getStrategy().toLowerCase() : "random";
+        long seed = request.getSeed() != null ? request.getSeed() : 1L;
+        List<Dimension> space = parseSpace(request.getSearchSpace());
+        List<Map<String, Object>> configs = switch (strategy) {
+            case "grid" -> gridConfigs(space);
+            case "random" -> randomConfigs(space, valueOr(request.getTrials(), 20), seed);
+            case "halving" -> randomConfigs(space, valueOr(request.getTrials(), 27), seed);
+            default -> throw new IllegalArgumentException("Estrategia desconocida: " + strategy
+                    + " (use grid, random o halving)");
+        };
+
+        // Falla rápido con parámetros inválidos antes de lanzar cientos de trials
+        wekaService.createClassifier(request.getAlgorithm(), merge(request.getParameters(), configs.get(0)));
+
+        Instances data = wekaService.loadDataset(request.getDataset());
+        if (!data.classAttribute().isNominal()) {
+            throw new IllegalArgumentException("La búsqueda solo admite clasificación (clase nominal)");
+        }
+        int folds = Math.max(2, Math.min(valueOr(request.getFolds(), 5), data.numInstances()));
+
+        // Copia barajada una sola vez; los trials solo la leen
+        Instances shuffled = new Instances(data);
+        shuffled.randomize(new Random(seed));
+
+        evictFinishedJobs();
+        TuningJob job = new TuningJob(UUID.randomUUID().toString(), request, strategy, configs, data, shuffled, folds);
+        jobs.put(job.id, job);
+        try {
+            jobRunner.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw e;
+        }
+        return job.id;
+    }
+
+    public Map<String, Object> getStatus(String jobId) {
+        TuningJob job = jobs.get(jobId);
+        return job != null ? job.toStatus() : null;
+    }
+
+    private void evictFinishedJobs() {
+        if (jobs.size() < maxRetainedJobs) return;
+        jobs.values().stream()
+                .filter(j -> j.finishedAt > 0)
+                .sorted(Comparator.comparingLong(j -> j.finishedAt))
+                .limit(jobs.size() - maxRetainedJobs + 1)
+                .forEach(j -> jobs.remove(j.id));
+    }
+
+    private void run(TuningJob job) {
+        log.info("Búsqueda {}: {} {} sobre '{}' ({} configuraciones, {} filas)", job.id, job.strategy,
+                job.algorithm, job.request.getDataset(), job.configs.size(), job.data.numInstances());
+        try {
+            if (job.strategy.equals("halving")) {
+                runHalving(job);
+            } else {
+                runSequence(job);
+            }
+
+            Trial best = job.best();
+            if (best == null) {
+                throw new IllegalStateException("Ningún trial terminó correctamente");
+            }
+            log.info("✓ Búsqueda {}: mejor {} = {} con {}", job.id, job.metric, best.score, best.parameters);
+
+            if (job.register) {
+                job.training = wekaService.trainFromInstances(new Instances(job.data), job.algorithm,
+                        job.modelName, merge(job.request.getParameters(), best.parameters));
+            }
+            job.state = "COMPLETED";
+        } catch (Exception e) {
+            log.error("✗ Error en búsqueda {}", job.id, e);
+            job.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            job.state = "FAILED";
+        } finally {
+            job.finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    // Grid / random: como máximo "parallelism" trials en vuelo para poder cortar por patience
+    private void runSequence(TuningJob job) throws Exception {
+        List<Fold> folds = job.foldsFor(job.shuffled.numInstances());
+        int parallelism = workers.getMaximumPoolSize();
+        int patience = valueOr(job.request.getPatience(), 0);
+        CompletionService<Trial> completion = new ExecutorCompletionService<>(workers);
+
+        Iterator<Map<String, Object>> pending = job.configs.iterator();
+        int running = 0;
+        int sinceImprovement = 0;
+        while (running > 0 || (pending.hasNext() && !job.stoppedEarly)) {
+            while (running < parallelism && pending.hasNext() && !job.stoppedEarly) {
+                Map<String, Object> params = pending.next();
+                completion.submit(() -> evaluate(job, params, folds, 0, true));
+                running++;
+            }
+            Trial trial = completion.take().get();
+            running--;
+
+            if (job.record(trial)) {
+                sinceImprovement = 0;
+            } else if (trial.status.equals("COMPLETED") || trial.status.equals("PRUNED")) {
+                sinceImprovement++;
+            }
+            if (patience > 0 && sinceImprovement >= patience && !job.stoppedEarly) {
+                log.info("Búsqueda {}: sin mejora en {} trials, se detiene", job.id, patience);
+                job.stoppedEarly = true;
+            }
+        }
+    }
+
+    // Successive halving: todas las configuraciones con pocos datos, sobrevive 1/eta en cada ronda
+    private void runHalving(TuningJob job) throws Exception {
+        int eta = Math.max(2, valueOr(job.request.getEta(), 3));
+        int total = job.shuffled.numInstances();
+        int minSize = Math.min(total, Math.max(job.folds * 10, 2 * job.folds * job.data.numClasses()));
+        int rounds = (int) Math.floor(Math.log(job.configs.size()) / Math.log(eta)) + 1;
+
+        List<Map<String, Object>> candidates = job.configs;
+        for (int round = 0; round < rounds && !candidates.isEmpty(); round++) {
+            int size = round == rounds - 1 ? total
+                    : Math.max(minSize, (int) (total / Math.pow(eta, rounds - 1 - round)));
+            List<Fold> folds = job.foldsFor(size);
+
+            List<Future<Trial>> futures = new ArrayList<>();
+            for (Map<String, Object> params : candidates) {
+                final int r = round;
+                futures.add(workers.submit(() -> evaluate(job, params, folds, r, false)));
+            }
+            List<Trial> results = new ArrayList<>();
+            for (Future<Trial> future : futures) {
+                Trial trial = future.get();
+                job.record(trial);
+                if (trial.status.equals("COMPLETED")) results.add(trial);
+            }
+
+            results.sort(Comparator.comparingDouble((Trial t) -> t.score).reversed());
+            int keep = Math.max(1, (int) Math.ceil(results.size() / (double) eta));
+            candidates = results.stream().limit(keep).map(t -> t.parameters).toList();
+            log.info("Búsqueda {}: ronda {} con {} filas, pasan {}", job.id, round, size, candidates.size());
+        }
+    }
+
+    private Trial evaluate(TuningJob job, Map<String, Object> params, List<Fold> folds, int round, boolean prune) {
+        long start = System.currentTimeMillis();
+        Trial trial = new Trial(params, round, folds.get(0).train.numInstances() + folds.get(0).test.numInstances());
+        try {
+            Evaluation eval = new Evaluation(folds.get(0).train);
+            Map<String, Object> merged = merge(job.request.getParameters(), params);
+            for (int i = 0; i < folds.size(); i++) {
+                Classifier classifier = wekaService.createClassifier(job.algorithm, merged);
+                classifier.buildClassifier(folds.get(i).train);
+                eval.evaluateModel(classifier, folds.get(i).test);
+                trial.foldsEvaluated = i + 1;
+
+                double best = job.bestScore;
+                if (prune && i + 1 >= (folds.size() + 1) / 2 && i + 1 < folds.size()
+                        && !Double.isNaN(best) && job.score(eval) < best - pruneMargin) {
+                    trial.status = "PRUNED";
+                    break;
+                }
+            }
+            if (trial.status == null) trial.status = "COMPLETED";
+            trial.score = job.score(eval);
+            trial.accuracy = eval.pctCorrect();
+            trial.kappa = eval.kappa();
+        } catch (Exception e) {
+            trial.status = "FAILED";
+            trial.error = e.getMessage();
+        }
+        trial.timeMs = System.currentTimeMillis() - start;
+        return trial;
+    }
+
+    // ========== ESPACIO DE BÚSQUEDA ==========
+
+    private record Dimension(String name, List<Object> values, double min, double max,
+                             boolean log, boolean integer, int steps) {
+        boolean discrete() {
+            return values != null;
+        }
+
+        List<Object> gridValues() {
+            if (discrete()) return values;
+            List<Object> grid = new ArrayList<>();
+            for (int i = 0; i < steps; i++) {
+                double t = steps == 1 ? 0 : i / (double) (steps - 1);
+                double v = log ? Math.exp(Math.log(min) + t * (Math.log(max) - Math.log(min))) : min + t * (max - min);
+                Object value = integer ? (Object) Math.round(v) : (Object) v;
+                if (!grid.contains(value)) grid.add(value);
+            }
+            return grid;
+        }
+
+        Object sample(Random random) {
+            if (discrete()) return values.get(random.nextInt(values.size()));
+            double t = random.nextDouble();
+            double v = log ? Math.exp(Math.log(min) + t * (Math.log(max) - Math.log(min))) : min + t * (max - min);
+            return integer ? (Object) Math.round(v) : (Object) v;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Dimension> parseSpace(Map<String, Object> searchSpace) {
+        List<Dimension> space = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : searchSpace.entrySet()) {
+            Object spec = entry.getValue();
+            if (spec instanceof List<?> list && !list.isEmpty()) {
+                space.add(new Dimension(entry.getKey(), new ArrayList<>(list), 0, 0, false, false, 0));
+            } else if (spec instanceof Map<?, ?> range && range.get("min") instanceof Number
+                    && range.get("max") instanceof Number) {
+                Map<String, Object> r = (Map<String, Object>) range;
+                double min = ((Number) r.get("min")).doubleValue();
+                double max = ((Number) r.get("max")).doubleValue();
+                boolean log = Boolean.TRUE.equals(r.get("log"));
+                if (max < min || (log && min <= 0)) {
+                    throw new IllegalArgumentException("Rango inválido para " + entry.getKey());
+                }
+                int steps = r.get("steps") instanceof Number n ? Math.max(1, n.intValue()) : 5;
+                space.add(new Dimension(entry.getKey(), null, min, max, log,
+                        Boolean.TRUE.equals(r.get("integer")), steps));
+            } else {
+                throw new IllegalArgumentException("Espacio inválido para " + entry.getKey()
+                        + ": use una lista de valores o {\"min\", \"max\"}");
+            }
+        }
+        return space;
+    }
+
+    private List<Map<String, Object>> gridConfigs(List<Dimension> space) {
+        List<Map<String, Object>> configs = new ArrayList<>();
+        configs.add(new LinkedHashMap<>());
+        for (Dimension dim : space) {
+            List<Map<String, Object>> expanded = new ArrayList<>();
+            for (Map<String, Object> partial : configs) {
+                for (Object value : dim.gridValues()) {
+                    Map<String, Object> config = new LinkedHashMap<>(partial);
+                    config.put(dim.name(), value);
+                    expanded.add(config);
+                }
+            }
+            configs = expanded;
+            if (configs.size() > maxTrials) {
+                throw new IllegalArgumentException("La grilla supera el máximo de " + maxTrials + " trials");
+            }
+        }
+        return configs;
+    }
+
+    private List<Map<String, Object>> randomConfigs(List<Dimension> space, int trials, long seed) {
+        if (trials < 1 || trials > maxTrials) {
+            throw new IllegalArgumentException("trials debe estar entre 1 y " + maxTrials);
+        }
+        Random random = new Random(seed);
+        Set<Map<String, Object>> configs = new LinkedHashSet<>();
+        // Los espacios discretos pequeños pueden tener menos combinaciones que trials
+        for (int attempt = 0; configs.size() < trials && attempt < trials * 10; attempt++) {
+            Map<String, Object> config = new LinkedHashMap<>();
+            for (Dimension dim : space) {
+                config.put(dim.name(), dim.sample(random));
+            }
+            configs.add(config);
+        }
+        return new ArrayList<>(configs);
+    }
+
+    private static Map<String, Object> merge(Map<String, Object> fixed, Map<String, Object> trial) {
+        Map<String, Object> merged = new LinkedHashMap<>();
+        if (fixed != null) merged.putAll(fixed);
+        merged.putAll(trial);
+        return merged;
+    }
+
+    private static int valueOr(Integer value, int fallback) {
+        return value != null ? value : fallback;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // ========== ESTADO ==========
+
+    private record Fold(Instances train, Instances test) {}
+
+    private static final class Trial {
+        final Map<String, Object> parameters;
+        final int round;
+        final int instances;
+        volatile String status;
+        double score = Double.NaN;
+        double accuracy;
+        double kappa;
+        int foldsEvaluated;
+        long timeMs;
+        String error;
+
+        Trial(Map<String, Object> parameters, int round, int instances) {
+            this.parameters = parameters;
+            this.round = round;
+            this.instances = instances;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("parameters", parameters);
+            map.put("status", status);
+            map.put("score", Double.isNaN(score) ? null : score);
+            map.put("accuracy", accuracy);
+            map.put("kappa", kappa);
+            map.put("folds", foldsEvaluated);
+            map.put("round", round);
+            map.put("instances", instances);
+            map.put("timeMs", timeMs);
+            if (error != null) map.put("error", error);
+            return map;
+        }
+    }
+
+    private static final class TuningJob {
+        final String id;
+        final TuningRequest request;
+        final String strategy;
+        final String algorithm;
+        final String modelName;
+        final String metric;
+        final boolean register;
+        final List<Map<String, Object>> configs;
+        final Instances data;
+        final Instances shuffled;
+        final int folds;
+        final long startedAt = System.currentTimeMillis();
+        // Folds por tamaño de muestra; solo el hilo del trabajo los crea
+        private final Map<Integer, List<Fold>> foldsBySize = new HashMap<>();
+        private final List<Trial> trials = new ArrayList<>();
+        volatile double bestScore = Double.NaN;
+        private int bestRound = -1;
+        volatile boolean stoppedEarly;
+        volatile String state = "RUNNING";
+        volatile String error;
+        volatile TrainingResponse training;
+        volatile long finishedAt;
+
+        TuningJob(String id, TuningRequest request, String strategy, List<Map<String, Object>> configs,
+                  Instances data, Instances shuffled, int folds) {
+            this.id = id;
+            this.request = request;
+            this.strategy = strategy;
+            this.algorithm = request.getAlgorithm();
+            this.modelName = request.getModelName() != null ? request.getModelName() : request.getDataset() + "-tuned";
+            this.metric = "kappa".equalsIgnoreCase(request.getMetric()) ? "kappa" : "accuracy";
+            this.register = !Boolean.FALSE.equals(request.getRegister());
+            this.configs = configs;
+            this.data = data;
+            this.shuffled = shuffled;
+            this.folds = folds;
+        }
+
+        // Kappa se expresa en puntos (x100) para compartir el margen de poda con accuracy
+        double score(Evaluation eval) {
+            return metric.equals("kappa") ? eval.kappa() * 100 : eval.pctCorrect();
+        }
+
+        List<Fold> foldsFor(int size) {
+            return foldsBySize.computeIfAbsent(size, n -> {
+                Instances sample = new Instances(shuffled, 0, n);
+                int k = Math.min(folds, n);
+                if (sample.classAttribute().isNominal()) sample.stratify(k);
+                List<Fold> result = new ArrayList<>(k);
+                for (int i = 0; i < k; i++) {
+                    result.add(new Fold(sample.trainCV(k, i), sample.testCV(k, i)));
+                }
+                return result;
+            });
+        }
+
+        /**
+         * Registra el trial; retorna true si es el nuevo mejor. En halving solo compiten
+         * los trials de la ronda más avanzada (más datos).
+         */
+        synchronized boolean record(Trial trial) {
+            trials.add(trial);
+            if (!trial.status.equals("COMPLETED")) return false;
+            if (trial.round > bestRound || (trial.round == bestRound && trial.score > bestScore)) {
+                bestRound = Math.max(bestRound, trial.round);
+                bestScore = trial.score;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized Trial best() {
+            return leaderboard().stream().findFirst().orElse(null);
+        }
+
+        synchronized List<Trial> leaderboard() {
+            return trials.stream()
+                    .filter(t -> t.status.equals("COMPLETED"))
+                    .sorted(Comparator.comparingInt((Trial t) -> t.round).reversed()
+                            .thenComparing(Comparator.comparingDouble((Trial t) -> t.score).reversed()))
+                    .toList();
+        }
+
+        synchronized Map<String, Object> toStatus() {
+            long now = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+            List<Trial> ranked = leaderboard();
+
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("jobId", id);
+            status.put("state", state);
+            status.put("strategy", strategy);
+            status.put("algorithm", algorithm);
+            status.put("dataset", request.getDataset());
+            status.put("metric", metric);
+            status.put("configurations", configs.size());
+            status.put("trials", trials.size());
+            status.put("pruned", trials.stream().filter(t -> t.status.equals("PRUNED")).count());
+            status.put("failed", trials.stream().filter(t -> t.status.equals("FAILED")).count());
+            status.put("stoppedEarly", stoppedEarly);
+            status.put("elapsedMs", now - startedAt);
+            status.put("best", ranked.isEmpty() ? null : ranked.get(0).toMap());
+            status.put("leaderboard", ranked.stream().limit(LEADERBOARD_SIZE).map(Trial::toMap).toList());
+            if (training != null) status.put("registeredModel", training);
+            if (error != null) status.put("error", error);
+            return status;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.model.Incident;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Conteos de incidentes por celda y bucket de tiempo, compartidos por GeoCellFeatureStore
+ * (features por celda) y HotspotService (Gi*).
+ *
+ * Cada servicio registra una capa con su grilla, el tamaño del bucket y cuántos buckets retiene
+ * (un anillo por celda). Todas las capas comparten el diccionario de tipos, el listener de
+ * IncidentChangeEvent y una sola reconstrucción periódica desde Mongo: un escaneo alimenta
+ * todas las capas. Los eventos que llegan durante la reconstrucción se re-aplican sobre las
+ * capas nuevas antes de reemplazarlas.
+ */
+@Slf4j
+@Service
+public class IncidentCellIndex {
+
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${incidents.cells.cursor-batch-size:1000}")
+    private int cursorBatchSize;
+
+    private final List<Layer> layers = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> typeIndex = new ConcurrentHashMap<>();
+    private final List<String> typeNames = Collections.synchronizedList(new ArrayList<>());
+    private volatile Instant lastRebuild;
+
+    // Eventos recibidos mientras se reconstruye: se re-aplican sobre las capas nuevas
+    private final Object rebuildLock = new Object();
+    private List<IncidentChangeEvent> pendingDuringRebuild;
+
+    /**
+     * Grilla regular en grados: celdas de cellLat × cellLng contadas desde (-90, -180).
+     */
+    public record Grid(double cellLat, double cellLng) {
+
+        /** Celdas cuadradas de cellSizeM metros a la latitud de referencia. */
+        public static Grid meters(double cellSizeM, double referenceLat) {
+            return new Grid(cellSizeM / METERS_PER_DEGREE,
+                    cellSizeM / (METERS_PER_DEGREE * Math.cos(Math.toRadians(referenceLat))));
+        }
+
+        /** Las mismas celdas que el geohash de esa precisión (cada carácter suma 5 bits alternando lng/lat). */
+        public static Grid geohash(int precision) {
+            int bits = 5 * precision;
+            return new Grid(180 / Math.pow(2, bits / 2), 360 / Math.pow(2, bits - bits / 2));
+        }
+
+        public int row(double lat) {
+            return (int) Math.floor((lat + 90) / cellLat);
+        }
+
+        public int col(double lng) {
+            return (int) Math.floor((lng + 180) / cellLng);
+        }
+
+        public long cellOf(double lat, double lng) {
+            return key(row(lat), col(lng));
+        }
+
+        public double minLat(int row) {
+            return row * cellLat - 90;
+        }
+
+        public double minLng(int col) {
+            return col * cellLng - 180;
+        }
+
+        public static long key(int row, int col) {
+            return ((long) row << 32) | (col & 0xffffffffL);
+        }
+
+        public static int rowOf(long key) {
+            return (int) (key >> 32);
+        }
+
+        public static int colOf(long key) {
+            return (int) key;
+        }
+    }
+
+    /**
+     * Registra una capa. byStatus: además de por tipo, cuenta por estado (sigue los cambios de estado).
+     * Las capas se registran al arrancar; la primera reconstrucción las llena.
+     */
+    public Layer register(String name, Grid grid, long bucketMs, int buckets, boolean byStatus) {
+        Layer layer = new Layer(name, grid, bucketMs, Math.max(2, buckets), byStatus);
+        layers.add(layer);
+        return layer;
+    }
+
+    public Integer typeIndex(String type) {
+        return type != null ? typeIndex.get(type.trim()) : null;
+    }
+
+    /** Tipos conocidos; la posición de cada uno es su índice en los conteos por tipo. */
+    public List<String> typeNames() {
+        synchronized (typeNames) {
+            return List.copyOf(typeNames);
+        }
+    }
+
+    public Instant getLastRebuild() {
+        return lastRebuild;
+    }
+
+    // ========== ACTUALIZACIÓN ==========
+
+    @EventListener
+    public void onIncidentChange(IncidentChangeEvent event) {
+        if (layers.isEmpty() || event.getIncident() == null) return;
+        List<Map<Long, Cell>> targets = new ArrayList<>(layers.size());
+        synchronized (rebuildLock) {
+            if (pendingDuringRebuild != null) pendingDuringRebuild.add(event);
+            for (Layer layer : layers) targets.add(layer.cells);
+        }
+        Incident incident = event.getIncident();
+        for (int i = 0; i < targets.size(); i++) {
+            Layer layer = layers.get(i);
+            Map<Long, Cell> target = targets.get(i);
+            switch (event.getType()) {
+                case CREATED -> layer.apply(target, incident, incident.getStatus(), 1);
+                case DELETED -> layer.apply(target, incident, incident.getStatus(), -1);
+                case UPDATED -> {
+                    if (layer.byStatus && event.getPreviousStatus() != incident.getStatus()) {
+                        layer.apply(target, incident, event.getPreviousStatus(), -1);
+                        layer.apply(target, incident, incident.getStatus(), 1);
+                    }
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${incidents.cells.rebuild-interval-ms:3600000}",
+            initialDelayString = "${incidents.cells.initial-delay-ms:10000}")
+    public void scheduledRebuild() {
+        if (layers.isEmpty()) return;
+        try {
+            rebuild();
+        } catch (Exception e) {
+            synchronized (rebuildLock) {
+                pendingDuringRebuild = null;
+            }
+            log.error("✗ Error reconstruyendo el índice de celdas: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Relee de Mongo los incidentes dentro de la mayor retención y reemplaza todas las capas.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (rebuildLock) {
+            pendingDuringRebuild = new ArrayList<>();
+        }
+        long since = start;
+        for (Layer layer : layers) {
+            since = Math.min(since, (layer.currentBucket() - layer.ringSize + 1) * layer.bucketMs);
+        }
+        Query query = new Query(Criteria.where("createdAt").gte(Instant.ofEpochMilli(since)));
+        query.fields().include("type", "lat", "lng", "location", "status", "createdAt");
+        query.cursorBatchSize(cursorBatchSize);
+
+        List<Map<Long, Cell>> rebuilt = new ArrayList<>(layers.size());
+        for (int i = 0; i < layers.size(); i++) rebuilt.add(new ConcurrentHashMap<>());
+        // id -> estado con el que el escaneo contó cada incidente
+        Map<String, Incident.Status> scanned = new HashMap<>();
+        try (Stream<Incident> cursor = mongoTemplate.stream(query, Incident.class)) {
+            Iterator<Incident> it = cursor.iterator();
+            while (it.hasNext()) {
+                Incident incident = it.next();
+                boolean counted = false;
+                for (int i = 0; i < rebuilt.size(); i++) {
+                    counted |= layers.get(i).apply(rebuilt.get(i), incident, incident.getStatus(), 1);
+                }
+                if (counted) scanned.put(incident.getId(), incident.getStatus());
+            }
+        }
+        long count = scanned.size();
+        synchronized (rebuildLock) {
+            for (IncidentChangeEvent event : pendingDuringRebuild) {
+                replay(rebuilt, scanned, event);
+            }
+            pendingDuringRebuild = null;
+            for (int i = 0; i < rebuilt.size(); i++) {
+                layers.get(i).swap(rebuilt.get(i));
+            }
+        }
+        lastRebuild = Instant.now();
+        log.info("✓ Índice de celdas reconstruido: {} incidentes en {} capas ({} ms)",
+                count, rebuilt.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Re-aplica un evento recibido durante la reconstrucción. El escaneo pudo leer el incidente
+     * antes o después del evento, así que se compara con el estado que contó ("scanned"):
+     * los conteos no se duplican ni se pierden.
+     */
+    private void replay(List<Map<Long, Cell>> targets, Map<String, Incident.Status> scanned,
+                        IncidentChangeEvent event) {
+        Incident incident = event.getIncident();
+        String id = event.getIncidentId();
+        if (incident == null || id == null) return;
+        boolean counted = scanned.containsKey(id);
+        Incident.Status countedStatus = scanned.get(id);
+        for (int i = 0; i < targets.size(); i++) {
+            Layer layer = layers.get(i);
+            Map<Long, Cell> target = targets.get(i);
+            switch (event.getType()) {
+                case CREATED -> {
+                    if (!counted) layer.apply(target, incident, incident.getStatus(), 1);
+                }
+                case UPDATED -> {
+                    if (counted && layer.byStatus && countedStatus != incident.getStatus()) {
+                        layer.apply(target, incident, countedStatus, -1);
+                        layer.apply(target, incident, incident.getStatus(), 1);
+                    }
+                }
+                case DELETED -> {
+                    if (counted) layer.apply(target, incident, countedStatus, -1);
+                }
+            }
+        }
+        switch (event.getType()) {
+            case CREATED -> scanned.putIfAbsent(id, incident.getStatus());
+            case UPDATED -> {
+                if (counted) scanned.put(id, incident.getStatus());
+            }
+            case DELETED -> scanned.remove(id);
+        }
+    }
+
+    private int typeOf(String type) {
+        return typeIndex.computeIfAbsent(type.trim(), name -> {
+            synchronized (typeNames) {
+                typeNames.add(name);
+                return typeNames.size() - 1;
+            }
+        });
+    }
+
+    /**
+     * Conteos de una grilla: celda -> anillo de buckets. Se lee con cell/cells y sum/accumulate.
+     */
+    public final class Layer {
+        private final String name;
+        private final Grid grid;
+        private final long bucketMs;
+        private final int ringSize;
+        private final boolean byStatus;
+        private volatile Map<Long, Cell> cells = new ConcurrentHashMap<>();
+        // Cambia con cada escritura y reconstrucción: invalida resultados guardados
+        private final AtomicLong version = new AtomicLong();
+
+        private Layer(String name, Grid grid, long bucketMs, int ringSize, boolean byStatus) {
+            this.name = name;
+            this.grid = grid;
+            this.bucketMs = bucketMs;
+            this.ringSize = ringSize;
+            this.byStatus = byStatus;
+        }
+
+        public Grid grid() {
+            return grid;
+        }
+
+        public long currentBucket() {
+            return System.currentTimeMillis() / bucketMs;
+        }
+
+        public Cell cell(double lat, double lng) {
+            return cells.get(grid.cellOf(lat, lng));
+        }
+
+        /** Vista de las celdas actuales (una reconstrucción reemplaza el mapa entero). */
+        public Map<Long, Cell> cells() {
+            return Collections.unmodifiableMap(cells);
+        }
+
+        public long version() {
+            return version.get();
+        }
+
+        private void swap(Map<Long, Cell> rebuilt) {
+            cells = rebuilt;
+            version.incrementAndGet();
+        }
+
+        private boolean apply(Map<Long, Cell> target, Incident incident, Incident.Status status, int delta) {
+            if (incident.getCreatedAt() == null || incident.getType() == null || incident.getType().isBlank()) {
+                return false;
+            }
+            double[] coords = IncidentGeo.coordinates(incident);
+            if (coords == null) return false;
+            long bucket = incident.getCreatedAt().toEpochMilli() / bucketMs;
+            if (bucket <= currentBucket() - ringSize) return false;
+            int type = typeOf(incident.getType());
+            long key = grid.cellOf(coords[0], coords[1]);
+            Cell cell = delta > 0 ? target.computeIfAbsent(key, k -> new Cell(ringSize, byStatus)) : target.get(key);
+            if (cell == null || !cell.add(bucket, type, byStatus ? status : null, delta)) return false;
+            version.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Anillo de buckets de una celda con un contador por tipo y, si la capa lo pide, por estado.
+     * Escrituras y lecturas toman el lock de la celda.
+     */
+    public static final class Cell {
+        private final int ringSize;
+        private final long[] bucketIds;
+        private int[][] byType = new int[0][];
+        private final int[][] byStatus;
+        private volatile long version;
+
+        private Cell(int ringSize, boolean trackStatus) {
+            this.ringSize = ringSize;
+            this.bucketIds = new long[ringSize];
+            this.byStatus = trackStatus ? new int[Incident.Status.values().length][ringSize] : null;
+            Arrays.fill(bucketIds, -1);
+        }
+
+        /** Cambia con cada escritura de la celda. */
+        public long version() {
+            return version;
+        }
+
+        synchronized boolean add(long bucket, int type, Incident.Status status, int delta) {
+            int slot = (int) (bucket % ringSize);
+            if (bucketIds[slot] != bucket) {
+                // Resta sobre un bucket ya reciclado (incidente fuera de la retención): no aplica
+                if (delta < 0 || bucketIds[slot] > bucket) return false;
+                bucketIds[slot] = bucket;
+                for (int[] counts : byType) {
+                    if (counts != null) counts[slot] = 0;
+                }
+                if (byStatus != null) {
+                    for (int[] counts : byStatus) counts[slot] = 0;
+                }
+            }
+            if (type >= byType.length) {
+                byType = Arrays.copyOf(byType, type + 1);
+            }
+            if (byType[type] == null) {
+                byType[type] = new int[ringSize];
+            }
+            byType[type][slot] += delta;
+            if (byStatus != null && status != null) byStatus[status.ordinal()][slot] += delta;
+            version++;
+            return true;
+        }
+
+        /** Suma de los "buckets" buckets que terminan en "last" (todos los tipos si type es null). */
+        public synchronized long sum(long last, int buckets, Integer type) {
+            long total = 0;
+            for (long b = last - buckets + 1; b <= last; b++) {
+                int slot = (int) Math.floorMod(b, (long) ringSize);
+                if (b < 0 || bucketIds[slot] != b) continue;
+                if (type != null) {
+                    if (type < byType.length && byType[type] != null) total += byType[type][slot];
+                } else {
+                    for (int[] counts : byType) {
+                        if (counts != null) total += counts[slot];
+                    }
+                }
+            }
+            return total;
+        }
+
+        /**
+         * Suma los "buckets" buckets que terminan en "last" en perType (por índice de tipo) y
+         * perStatus (por ordinal; solo en capas con estado). Retorna el total.
+         */
+        public synchronized long accumulate(long last, int buckets, long[] perType, long[] perStatus) {
+            long total = 0;
+            for (long b = last - buckets + 1; b <= last; b++) {
+                int slot = (int) Math.floorMod(b, (long) ringSize);
+                if (b < 0 || bucketIds[slot] != b) continue;
+                for (int t = 0; t < byType.length && t < perType.length; t++) {
+                    if (byType[t] == null) continue;
+                    perType[t] += byType[t][slot];
+                    total += byType[t][slot];
+                }
+                if (byStatus != null) {
+                    for (int s = 0; s < byStatus.length && s < perStatus.length; s++) perStatus[s] += byStatus[s][slot];
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.model.Incident;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Detección de reportes casi duplicados al crear incidentes.
+ *
+ * Guarda en memoria los incidentes abiertos de la última ventana ("window-minutes") en una
+ * grilla por tipo con celdas del tamaño del radio, así un reporte nuevo solo se compara con
+ * los de su tipo en las celdas vecinas. Cada candidato dentro del radio recibe un puntaje:
+ *  - 50% similitud de la descripción (términos de SpanishText en común sobre la más corta)
+ *  - 30% cercanía (1 en el mismo punto, 0 en el borde del radio)
+ *  - 20% recencia (1 recién reportado, 0 al final de la ventana)
+ * Si el mejor supera "min-score" el reporte es duplicado; IncidentService lo fusiona o lo
+ * enlaza según "mode". Se alimenta de IncidentChangeEvent y se sincroniza con Mongo cada
+ * cierto tiempo (incidentes creados en otros nodos).
+ */
+@Slf4j
+@Service
+public class IncidentDedupService {
+
+    private static final double METERS_PER_DEGREE = 111_320;
+    // Similitud asumida cuando alguno de los reportes no trae descripción
+    private static final double NEUTRAL_SIMILARITY = 0.5;
+
+    public enum Mode { MERGE, LINK }
+
+    public record Match(String incidentId, double score, double similarity, double distanceM, long ageSeconds) {}
+
+    // reportedAt: último reporte fusionado (o la creación); la ventana cuenta desde ahí
+    private record Entry(String id, String type, double lat, double lng, long reportedAt, Set<String> terms,
+                         boolean resolved) {}
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${incidents.dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${incidents.dedup.mode:MERGE}")
+    private Mode mode;
+
+    @Value("${incidents.dedup.radius-m:150}")
+    private double radiusM;
+
+    @Value("${incidents.dedup.window-minutes:60}")
+    private int windowMinutes;
+
+    @Value("${incidents.dedup.min-score:0.6}")
+    private double minScore;
+
+    private double cellDegrees;
+    private long windowMs;
+
+    // tipo -> celda -> entradas (listas sincronizadas por celda)
+    private final Map<String, Map<Long, List<Entry>>> cells = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder lookupNanos = new LongAdder();
+    private volatile Instant lastSync;
+
+    @PostConstruct
+    public void init() {
+        cellDegrees = radiusM / METERS_PER_DEGREE;
+        windowMs = TimeUnit.MINUTES.toMillis(windowMinutes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Incidente abierto más parecido al reporte (mismo tipo, dentro del radio y de la ventana),
+     * o null si ninguno alcanza el puntaje mínimo.
+     */
+    public Match findDuplicate(Incident report) {
+        if (!enabled || report.getType() == null || report.getType().isBlank()) return null;
+        double[] coords = IncidentGeo.coordinates(report);
+        if (coords == null) return null;
+        long start = System.nanoTime();
+        long now = report.getCreatedAt() != null ? report.getCreatedAt().toEpochMilli() : System.currentTimeMillis();
+        Map<Long, List<Entry>> grid = cells.get(report.getType().trim());
+        Match best = null;
+        if (grid != null) {
+            Set<String> terms = new HashSet<>(SpanishText.terms(report.getDescription()));
+            int row = row(coords[0]);
+            int col = col(coords[1]);
+            // Las celdas miden lo mismo en grados: en longitud el radio puede abarcar más de una
+            double radiusLng = radiusM / (METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(coords[0]))));
+            int spanCols = (int) Math.ceil(radiusLng / cellDegrees);
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -spanCols; dc <= spanCols; dc++) {
+                    List<Entry> entries = grid.get(key(row + dr, col + dc));
+                    if (entries == null) continue;
+                    synchronized (entries) {
+                        for (Entry entry : entries) {
+                            Match match = score(entry, coords, terms, now);
+                            if (match != null && (best == null || match.score() > best.score())) best = match;
+                        }
+                    }
+                }
+            }
+        }
+        lookups.increment();
+        lookupNanos.add(System.nanoTime() - start);
+        if (best != null && best.score() >= minScore) {
+            duplicates.increment();
+            return best;
+        }
+        return null;
+    }
+
+    private Match score(Entry entry, double[] coords, Set<String> terms, long now) {
+        long age = now - entry.reportedAt();
+        if (entry.resolved() || age < 0 || age > windowMs) return null;
+        double distance = distanceM(coords[0], coords[1], entry.lat(), entry.lng());
+        if (distance > radiusM) return null;
+        double similarity = similarity(terms, entry.terms());
+        double score = 0.5 * similarity + 0.3 * (1 - distance / radiusM) + 0.2 * (1 - (double) age / windowMs);
+        return new Match(entry.id(), score, similarity, distance, TimeUnit.MILLISECONDS.toSeconds(age));
+    }
+
+    // Coeficiente de solapamiento: los reportes cortos no se penalizan frente a los largos
+    static double similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) return NEUTRAL_SIMILARITY;
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int common = 0;
+        for (String term : smaller) {
+            if (larger.contains(term)) common++;
+        }
+        return (double) common / smaller.size();
+    }
+
+    // ========== ACTUALIZACIÓN ==========
+
+    @EventListener
+    public void onIncidentChange(IncidentChangeEvent event) {
+        if (!enabled) return;
+        switch (event.getType()) {
+            case CREATED, UPDATED -> {
+                if (event.getIncident() != null) register(event.getIncident());
+            }
+            case DELETED -> remove(event.getIncidentId());
+        }
+    }
+
+    /**
+     * Quita un incidente del índice (p. ej. borrado en otro nodo y detectado al fusionar).
+     */
+    public void remove(String id) {
+        if (id == null) return;
+        Entry entry = byId.remove(id);
+        if (entry == null) return;
+        Map<Long, List<Entry>> grid = cells.get(entry.type());
+        if (grid == null) return;
+        grid.computeIfPresent(key(row(entry.lat()), col(entry.lng())), (k, entries) -> {
+            synchronized (entries) {
+                entries.removeIf(e -> e.id().equals(id));
+                return entries.isEmpty() ? null : entries;
+            }
+        });
+    }
+
+    private void register(Incident incident) {
+        // Los reportes enlazados no son candidatos: se compara siempre contra el original
+        if (incident.getId() == null || incident.getDuplicateOf() != null || incident.getCreatedAt() == null
+                || incident.getType() == null || incident.getType().isBlank()) {
+            return;
+        }
+        Instant reportedAt = incident.getLastReportedAt() != null ? incident.getLastReportedAt() : incident.getCreatedAt();
+        long cutoff = System.currentTimeMillis() - windowMs;
+        double[] coords = IncidentGeo.coordinates(incident);
+        remove(incident.getId());
+        if (coords == null || reportedAt.toEpochMilli() < cutoff) return;
+
+        Entry entry = new Entry(incident.getId(), incident.getType().trim(), coords[0], coords[1],
+                reportedAt.toEpochMilli(), Set.copyOf(SpanishText.terms(incident.getDescription())),
+                incident.getStatus() == Incident.Status.RESOLVED);
+        cells.computeIfAbsent(entry.type(), t -> new ConcurrentHashMap<>())
+                .compute(key(row(entry.lat()), col(entry.lng())), (k, entries) -> {
+                    List<Entry> list = entries != null ? entries : new ArrayList<>();
+                    synchronized (list) {
+                        list.removeIf(e -> e.reportedAt() < cutoff);
+                        list.add(entry);
+                    }
+                    return list;
+                });
+        byId.put(entry.id(), entry);
+    }
+
+    @Scheduled(fixedDelayString = "${incidents.dedup.sync-interval-ms:300000}",
+            initialDelayString = "${incidents.dedup.initial-delay-ms:10000}")
+    public void scheduledSync() {
+        if (!enabled) return;
+        try {
+            sync();
+        } catch (Exception e) {
+            log.error("✗ Error sincronizando el índice de duplicados: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Descarta lo que salió de la ventana, añade los incidentes recientes que falten (creados
+     * en otros nodos o antes de arrancar) y actualiza los que otro nodo fusionó o resolvió.
+     */
+    public void sync() {
+        long start = System.currentTimeMillis();
+        long cutoff = start - windowMs;
+        for (Map<Long, List<Entry>> grid : cells.values()) {
+            for (Long key : grid.keySet()) {
+                grid.computeIfPresent(key, (k, entries) -> {
+                    synchronized (entries) {
+                        entries.removeIf(e -> e.reportedAt() < cutoff);
+                        return entries.isEmpty() ? null : entries;
+                    }
+                });
+            }
+        }
+        byId.values().removeIf(e -> e.reportedAt() < cutoff);
+
+        Instant since = Instant.ofEpochMilli(cutoff);
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("createdAt").gte(since), Criteria.where("lastReportedAt").gte(since))
+                .and("duplicateOf").is(null));
+        query.fields().include("type", "description", "lat", "lng", "location", "status", "createdAt",
+                "lastReportedAt");
+        long added = 0;
+        long refreshed = 0;
+        try (Stream<Incident> cursor = mongoTemplate.stream(query, Incident.class)) {
+            Iterator<Incident> it = cursor.iterator();
+            while (it.hasNext()) {
+                Incident incident = it.next();
+                Entry cached = byId.get(incident.getId());
+                if (cached == null) {
+                    register(incident);
+                    added++;
+                } else if (isNewer(incident, cached)) {
+                    register(incident);
+                    refreshed++;
+                }
+            }
+        }
+        lastSync = Instant.now();
+        log.debug("Índice de duplicados sincronizado: {} incidentes (+{}, {} actualizados) en {} ms",
+                byId.size(), added, refreshed, System.currentTimeMillis() - start);
+    }
+
+    // Otro nodo fusionó un reporte (lastReportedAt posterior) o cambió si está resuelto
+    private static boolean isNewer(Incident incident, Entry cached) {
+        Instant reportedAt = incident.getLastReportedAt() != null ? incident.getLastReportedAt() : incident.getCreatedAt();
+        return (reportedAt != null && reportedAt.toEpochMilli() > cached.reportedAt())
+                || (incident.getStatus() == Incident.Status.RESOLVED) != cached.resolved();
+    }
+
+    public Map<String, Object> getStatus() {
+        long count = lookups.sum();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("mode", mode);
+        status.put("radiusM", radiusM);
+        status.put("windowMinutes", windowMinutes);
+        status.put("minScore", minScore);
+        status.put("tracked", byId.size());
+        status.put("lookups", count);
+        status.put("duplicates", duplicates.sum());
+        status.put("avgLookupMicros", count > 0 ? lookupNanos.sum() / 1000.0 / count : 0);
+        status.put("lastSync", lastSync);
+        return status;
+    }
+
+    private static double distanceM(double lat1, double lng1, double lat2, double lng2) {
+        double x = Math.toRadians(lng2 - lng1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * 6_371_000;
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor((lat + 90) / cellDegrees);
+    }
+
+    private int col(double lng) {
+        return (int) Math.floor((lng + 180) / cellDegrees);
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+}
@@ -0,0 +1,90 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.model.Incident;
+
+/**
+ * Utilidades geográficas sobre incidentes.
+ */
+public final class IncidentGeo {
+
+    // Precisión del geohash guardado en cada incidente (~150 m); las celdas más gruesas se obtienen truncando
+    public static final int STORED_PRECISION = 7;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private IncidentGeo() {}
+
+    /**
+     * Coordenadas {lat, lng} del incidente: usa lat/lng si existen y, si no,
+     * interpreta "location" como "lat,lng" (igual que el mapa del frontend).
+     * Retorna null si no hay coordenadas válidas.
+     */
+    public static double[] coordinates(Incident incident) {
+        if (incident == null) return null;
+        if (incident.getLat() != null && incident.getLng() != null) {
+            return new double[]{incident.getLat(), incident.getLng()};
+        }
+        String location = incident.getLocation();
+        if (location == null) return null;
+
+        String[] parts = location.split(",");
+        if (parts.length != 2) return null;
+        try {
+            double lat = Double.parseDouble(parts[0].trim());
+            double lng = Double.parseDouble(parts[1].trim());
+            if (Double.isNaN(lat) || Double.isNaN(lng)) return null;
+            return new double[]{lat, lng};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Geohash estándar (base32) de la posición con la precisión indicada.
+     */
+    public static String geohash(double lat, double lng, int precision) {
+        double minLat = -90, maxLat = 90, minLng = -180, maxLng = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (lng >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLng = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Geohash del incidente con la precisión guardada, o null si no tiene coordenadas.
+     */
+    public static String geohash(Incident incident) {
+        double[] coords = coordinates(incident);
+        return coords != null ? geohash(coords[0], coords[1], STORED_PRECISION) : null;
+    }
+}
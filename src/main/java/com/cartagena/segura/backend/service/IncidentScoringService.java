@@ -0,0 +1,411 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.model.Incident;
+import com.cartagena.segura.backend.model.ScoringCheckpoint;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Utils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Scoring offline de riesgo: recorre "incidents" con un cursor, predice con el modelo de
+ * incidentes (features de IncidentTrainingPipeline.featuresOf) y escribe riskScore,
+ * riskLabel y la versión del modelo con bulk updates no ordenados.
+ *
+ * Los tramos se predicen en paralelo y el checkpoint (en Mongo) solo avanza cuando todos
+ * los tramos anteriores están escritos, así que una corrida interrumpida se retoma sin
+ * huecos. Las corridas siguientes solo leen incidentes con updatedAt >= marca de agua,
+ * salvo que cambie el modelo (entonces se puntúa todo de nuevo). Un lease en el checkpoint
+ * evita que dos nodos corran a la vez.
+ */
+@Slf4j
+@Service
+public class IncidentScoringService {
+
+    private static final String CHECKPOINT_ID = "incident-risk";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    @Autowired
+    private IncidentTrainingPipeline incidentTrainingPipeline;
+
+    @Autowired
+    private ModelChangeNotifier modelChangeNotifier;
+
+    @Value("${ml.scoring.enabled:false}")
+    private boolean enabled;
+
+    // Vacío = modelo activo
+    @Value("${ml.scoring.model-name:}")
+    private String configuredModelName;
+
+    // Hilos para predecir tramos (0 = núcleos - 1)
+    @Value("${ml.scoring.threads:0}")
+    private int threads;
+
+    @Value("${ml.scoring.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${ml.incidents.cursor-batch-size:1000}")
+    private int cursorBatchSize;
+
+    // Si el nodo que corre se cae, otro puede tomar la corrida pasado este tiempo
+    @Value("${ml.scoring.lease-ms:600000}")
+    private long leaseMs;
+
+    private final ReentrantLock running = new ReentrantLock();
+    private ThreadPoolExecutor scorers;
+    private ExecutorService onDemand;
+
+    // Progreso de la corrida en curso en este nodo
+    private final AtomicLong runScored = new AtomicLong();
+    private final AtomicLong runFailed = new AtomicLong();
+    private volatile String lastError;
+
+    public static class ScoringBusyException extends IllegalStateException {
+        public ScoringBusyException(String message) {
+            super(message);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger counter = new AtomicInteger();
+        scorers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "ml-scoring-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        onDemand = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ml-scoring-run");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        onDemand.shutdownNow();
+        scorers.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${ml.scoring.interval-ms:900000}",
+            initialDelayString = "${ml.scoring.interval-ms:900000}")
+    public void scheduledScoring() {
+        if (!enabled) return;
+        try {
+            score(false);
+        } catch (ScoringBusyException e) {
+            log.debug("Scoring programado omitido: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error("✗ Error en scoring programado", e);
+        }
+    }
+
+    /**
+     * Lanza una corrida en segundo plano. Falla con ScoringBusyException si ya hay una en este nodo.
+     */
+    public void submit(boolean full) {
+        resolveModel();
+        if (running.isLocked()) {
+            throw new ScoringBusyException("Ya hay un scoring de incidentes en curso");
+        }
+        onDemand.execute(() -> {
+            try {
+                score(full);
+            } catch (ScoringBusyException e) {
+                log.info("Scoring omitido: {}", e.getMessage());
+            } catch (Exception e) {
+                log.error("✗ Error en scoring de incidentes", e);
+            }
+        });
+    }
+
+    /**
+     * Corrida completa o incremental. Si hay una corrida interrumpida con el mismo modelo, la retoma.
+     */
+    public void score(boolean full) throws Exception {
+        if (!running.tryLock()) {
+            throw new ScoringBusyException("Ya hay un scoring de incidentes en curso");
+        }
+        try {
+            String modelName = resolveModel();
+            AdvancedWekaService.ModelWrapper model = wekaService.getModelWrapper(modelName);
+            ScoringCheckpoint checkpoint = acquire();
+
+            boolean sameModel = modelName.equals(checkpoint.getModelName())
+                    && Objects.equals(model.version, checkpoint.getModelVersion());
+            if (checkpoint.getLastId() == null || !sameModel || (full && !checkpoint.isRunFull())) {
+                checkpoint.setRunFull(full || !sameModel || checkpoint.getWatermark() == null);
+                checkpoint.setRunStartedAt(Instant.now());
+                checkpoint.setLastId(null);
+                checkpoint.setScored(0);
+                checkpoint.setFailed(0);
+                checkpoint.setModelName(modelName);
+                checkpoint.setModelVersion(model.version);
+            } else {
+                log.info("Retomando scoring desde {} ({} ya puntuados)", checkpoint.getLastId(), checkpoint.getScored());
+            }
+            runScored.set(checkpoint.getScored());
+            runFailed.set(checkpoint.getFailed());
+            lastError = null;
+            saveProgress(checkpoint);
+
+            long start = System.currentTimeMillis();
+            try {
+                run(checkpoint, modelName, model);
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                release();
+                throw e;
+            }
+
+            checkpoint.setWatermark(checkpoint.getRunStartedAt());
+            checkpoint.setRunStartedAt(null);
+            checkpoint.setLastId(null);
+            checkpoint.setCompletedAt(Instant.now());
+            checkpoint.setLeaseUntil(null);
+            saveProgress(checkpoint);
+            log.info("✓ Scoring de incidentes con {} ({}): {} puntuados, {} sin predicción, {} ms",
+                    modelName, checkpoint.isRunFull() ? "completo" : "incremental",
+                    checkpoint.getScored(), checkpoint.getFailed(), System.currentTimeMillis() - start);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private void run(ScoringCheckpoint checkpoint, String modelName, AdvancedWekaService.ModelWrapper model)
+            throws Exception {
+        Query query = new Query();
+        if (!checkpoint.isRunFull()) {
+            // >= como en el pipeline: reprocesar el mismo instante es idempotente
+            query.addCriteria(Criteria.where("updatedAt").gte(checkpoint.getWatermark()));
+        }
+        if (checkpoint.getLastId() != null) {
+            query.addCriteria(Criteria.where("_id").gt(toId(checkpoint.getLastId())));
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.fields().include("lat", "lng", "location", "status", "createdAt", "statusChangedAt");
+        query.cursorBatchSize(cursorBatchSize);
+
+        // Una copia del clasificador por hilo: Weka no garantiza predicción concurrente
+        Map<Thread, Classifier> copies = new ConcurrentHashMap<>();
+        Deque<Chunk> inFlight = new ArrayDeque<>();
+        int maxInFlight = scorers.getMaximumPoolSize() * 2;
+        Instant scoredAt = Instant.now();
+
+        try (Stream<Incident> cursor = mongoTemplate.stream(query, Incident.class)) {
+            Iterator<Incident> it = cursor.iterator();
+            while (it.hasNext()) {
+                List<Incident> incidents = new ArrayList<>(chunkSize);
+                while (incidents.size() < chunkSize && it.hasNext()) {
+                    incidents.add(it.next());
+                }
+                String lastId = incidents.get(incidents.size() - 1).getId();
+                inFlight.add(new Chunk(lastId, scorers.submit(() ->
+                        scoreChunk(incidents, modelName, model, copies, scoredAt))));
+
+                // El checkpoint avanza en orden: solo cuando el tramo más antiguo está escrito
+                while (!inFlight.isEmpty() && (inFlight.size() >= maxInFlight || inFlight.peek().result.isDone())) {
+                    commit(checkpoint, inFlight.poll());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                commit(checkpoint, inFlight.poll());
+            }
+        } finally {
+            inFlight.forEach(chunk -> chunk.result.cancel(true));
+        }
+    }
+
+    private record Chunk(String lastId, Future<long[]> result) {}
+
+    private void commit(ScoringCheckpoint checkpoint, Chunk chunk) throws Exception {
+        long[] counts;
+        try {
+            counts = chunk.result().get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+        checkpoint.setLastId(chunk.lastId());
+        checkpoint.setScored(runScored.addAndGet(counts[0]));
+        checkpoint.setFailed(runFailed.addAndGet(counts[1]));
+        saveProgress(checkpoint);
+    }
+
+    // Retorna {puntuados, sin predicción}
+    private long[] scoreChunk(List<Incident> incidents, String modelName, AdvancedWekaService.ModelWrapper model,
+                              Map<Thread, Classifier> copies, Instant scoredAt) throws Exception {
+        Classifier classifier = copies.get(Thread.currentThread());
+        if (classifier == null) {
+            classifier = AbstractClassifier.makeCopy(model.classifier);
+            copies.put(Thread.currentThread(), classifier);
+        }
+        Attribute classAttr = model.dataStructure.classAttribute();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Incident.class);
+        long scored = 0;
+        long failed = 0;
+
+        for (Incident incident : incidents) {
+            try {
+                // Descarta valores nominales que el modelo no conoce (p. ej. celdas nuevas)
+                Instance instance = wekaService.createLabelledInstance(
+                        incidentTrainingPipeline.featuresOf(incident), model.dataStructure);
+                double[] distribution = classifier.distributionForInstance(instance);
+                if (Utils.sum(distribution) <= 0) {
+                    failed++;
+                    continue;
+                }
+                int predicted = Utils.maxIndex(distribution);
+                // Sin tocar updatedAt: el scoring no debe disparar reentrenamientos ni re-scoring
+                bulk.updateOne(Query.query(Criteria.where("_id").is(toId(incident.getId()))), new Update()
+                        .set("riskScore", distribution[predicted])
+                        .set("riskLabel", classAttr.value(predicted))
+                        .set("riskModel", modelName)
+                        .set("riskModelVersion", model.version)
+                        .set("riskScoredAt", scoredAt));
+                scored++;
+            } catch (Exception e) {
+                log.debug("Incidente {} no se pudo puntuar: {}", incident.getId(), e.getMessage());
+                failed++;
+            }
+        }
+        if (scored > 0) {
+            BulkWriteResult result = bulk.execute();
+            log.debug("Tramo de scoring: {} actualizados", result.getModifiedCount());
+        }
+        return new long[]{scored, failed};
+    }
+
+    private String resolveModel() {
+        String modelName = configuredModelName != null && !configuredModelName.isBlank()
+                ? configuredModelName : wekaService.getActiveModelName();
+        AdvancedWekaService.ModelWrapper model = wekaService.getModelWrapper(modelName);
+        if (model == null) {
+            throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+        }
+        if (!IncidentTrainingPipeline.ATTR_TYPE.equals(model.dataStructure.classAttribute().name())) {
+            throw new IllegalArgumentException("El modelo " + modelName
+                    + " no es un modelo de incidentes (entrénelo con /api/ml/train/incidents)");
+        }
+        return modelName;
+    }
+
+    // ========== CHECKPOINT Y LEASE ==========
+
+    /**
+     * Toma el lease del checkpoint (creándolo si no existe). Otro nodo con lease vigente gana.
+     */
+    private ScoringCheckpoint acquire() {
+        Instant now = Instant.now();
+        Query free = Query.query(Criteria.where("_id").is(CHECKPOINT_ID).orOperator(
+                Criteria.where("leaseUntil").is(null),
+                Criteria.where("leaseUntil").lt(now),
+                Criteria.where("owner").is(modelChangeNotifier.nodeId())));
+        Update take = new Update()
+                .set("owner", modelChangeNotifier.nodeId())
+                .set("leaseUntil", now.plusMillis(leaseMs));
+        try {
+            return mongoTemplate.findAndModify(free, take,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), ScoringCheckpoint.class);
+        } catch (DuplicateKeyException e) {
+            // Existe y otro nodo tiene el lease: el upsert intentó insertarlo de nuevo
+            throw new ScoringBusyException("Otro nodo está puntuando incidentes");
+        }
+    }
+
+    private void saveProgress(ScoringCheckpoint checkpoint) {
+        if (checkpoint.getRunStartedAt() != null) {
+            checkpoint.setLeaseUntil(Instant.now().plusMillis(leaseMs));
+        }
+        Query mine = Query.query(Criteria.where("_id").is(CHECKPOINT_ID)
+                .and("owner").is(modelChangeNotifier.nodeId()));
+        Update update = new Update()
+                .set("modelName", checkpoint.getModelName())
+                .set("modelVersion", checkpoint.getModelVersion())
+                .set("watermark", checkpoint.getWatermark())
+                .set("runStartedAt", checkpoint.getRunStartedAt())
+                .set("runFull", checkpoint.isRunFull())
+                .set("lastId", checkpoint.getLastId())
+                .set("scored", checkpoint.getScored())
+                .set("failed", checkpoint.getFailed())
+                .set("completedAt", checkpoint.getCompletedAt())
+                .set("leaseUntil", checkpoint.getLeaseUntil());
+        if (mongoTemplate.updateFirst(mine, update, ScoringCheckpoint.class).getMatchedCount() == 0) {
+            throw new ScoringBusyException("Se perdió el lease del scoring (otro nodo tomó la corrida)");
+        }
+    }
+
+    // Tras un error el checkpoint se conserva (se retoma) pero cualquier nodo puede continuarlo
+    private void release() {
+        try {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(CHECKPOINT_ID)
+                            .and("owner").is(modelChangeNotifier.nodeId())),
+                    new Update().set("leaseUntil", null), ScoringCheckpoint.class);
+        } catch (Exception e) {
+            log.warn("No se pudo liberar el lease del scoring: {}", e.getMessage());
+        }
+    }
+
+    private static Object toId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.isLocked());
+        status.put("enabled", enabled);
+        ScoringCheckpoint checkpoint = mongoTemplate.findById(CHECKPOINT_ID, ScoringCheckpoint.class);
+        if (checkpoint != null) {
+            status.put("modelName", checkpoint.getModelName());
+            status.put("modelVersion", checkpoint.getModelVersion());
+            status.put("watermark", checkpoint.getWatermark());
+            status.put("inProgress", checkpoint.getLastId() != null || checkpoint.getRunStartedAt() != null);
+            status.put("runFull", checkpoint.isRunFull());
+            status.put("runStartedAt", checkpoint.getRunStartedAt());
+            status.put("lastId", checkpoint.getLastId());
+            status.put("scored", checkpoint.getScored());
+            status.put("failed", checkpoint.getFailed());
+            status.put("completedAt", checkpoint.getCompletedAt());
+            status.put("owner", checkpoint.getOwner());
+            if (checkpoint.getRunStartedAt() != null) {
+                status.put("elapsedMs", Duration.between(checkpoint.getRunStartedAt(), Instant.now()).toMillis());
+            }
+        }
+        status.put("lastError", lastError);
+        return status;
+    }
+}
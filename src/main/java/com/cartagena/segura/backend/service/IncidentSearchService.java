@@ -0,0 +1,454 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.dto.IncidentSearchHit;
+import com.cartagena.segura.backend.dto.IncidentSearchPage;
+import com.cartagena.segura.backend.model.Incident;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Búsqueda de texto completo sobre description y location de los incidentes.
+ *
+ * Índice invertido en memoria (término → incidentes ordenados, con frecuencia) construido con
+ * SpanishText (sin tildes, sin stopwords, plurales reducidos). Se actualiza con cada
+ * IncidentChangeEvent y se reconstruye periódicamente desde Mongo, lo que además compacta los
+ * borrados. Estado y tipo se guardan por documento, así que los filtros no tocan Mongo.
+ *
+ * La consulta exige todos sus términos: intersecta las listas empezando por la más corta
+ * (saltos con búsqueda exponencial), ordena por BM25 con un heap de tamaño página y solo
+ * entonces lee de Mongo los incidentes de la página para devolverlos con resaltado.
+ */
+@Slf4j
+@Service
+public class IncidentSearchService {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${incidents.search.enabled:true}")
+    private boolean enabled;
+
+    // Un término en location pesa como varias apariciones en description
+    @Value("${incidents.search.location-boost:2}")
+    private int locationBoost;
+
+    @Value("${incidents.search.max-page-size:100}")
+    private int maxPageSize;
+
+    // Paginación profunda: page * size + size no puede superar este valor
+    @Value("${incidents.search.max-result-window:1000}")
+    private int maxResultWindow;
+
+    @Value("${incidents.search.snippet-length:160}")
+    private int snippetLength;
+
+    @Value("${incidents.search.cursor-batch-size:1000}")
+    private int cursorBatchSize;
+
+    private volatile Index index = new Index();
+    private volatile Instant lastRebuild;
+
+    // Eventos recibidos mientras se reconstruye: se re-aplican sobre el índice nuevo
+    private final Object rebuildLock = new Object();
+    private List<IncidentChangeEvent> pendingDuringRebuild;
+
+    // ========== ACTUALIZACIÓN ==========
+
+    @EventListener
+    public void onIncidentChange(IncidentChangeEvent event) {
+        if (!enabled) return;
+        Index target;
+        synchronized (rebuildLock) {
+            if (pendingDuringRebuild != null) pendingDuringRebuild.add(event);
+            target = index;
+        }
+        apply(target, event);
+    }
+
+    private void apply(Index target, IncidentChangeEvent event) {
+        Incident incident = event.getIncident();
+        switch (event.getType()) {
+            case CREATED -> {
+                if (incident != null) target.add(incident, locationBoost);
+            }
+            case UPDATED -> {
+                if (incident != null) target.updateStatus(incident.getId(), incident.getStatus());
+            }
+            case DELETED -> target.remove(event.getIncidentId());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${incidents.search.rebuild-interval-ms:21600000}",
+            initialDelayString = "${incidents.search.initial-delay-ms:10000}")
+    public void scheduledRebuild() {
+        if (!enabled) return;
+        try {
+            rebuild();
+        } catch (Exception e) {
+            synchronized (rebuildLock) {
+                pendingDuringRebuild = null;
+            }
+            log.error("✗ Error reconstruyendo el índice de búsqueda: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Relee de Mongo todos los incidentes y reemplaza el índice (descarta los borrados).
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (rebuildLock) {
+            pendingDuringRebuild = new ArrayList<>();
+        }
+        Query query = new Query();
+        query.fields().include("type", "description", "location", "status");
+        query.cursorBatchSize(cursorBatchSize);
+
+        Index rebuilt = new Index();
+        try (Stream<Incident> cursor = mongoTemplate.stream(query, Incident.class)) {
+            Iterator<Incident> it = cursor.iterator();
+            while (it.hasNext()) {
+                rebuilt.add(it.next(), locationBoost);
+            }
+        }
+        synchronized (rebuildLock) {
+            for (IncidentChangeEvent event : pendingDuringRebuild) {
+                apply(rebuilt, event);
+            }
+            pendingDuringRebuild = null;
+            index = rebuilt;
+        }
+        lastRebuild = Instant.now();
+        log.info("✓ Índice de búsqueda reconstruido: {} incidentes, {} términos ({} ms)",
+                rebuilt.live, rebuilt.postings.size(), System.currentTimeMillis() - start);
+    }
+
+    // ========== CONSULTA ==========
+
+    /**
+     * Incidentes que contienen todos los términos de la consulta, ordenados por relevancia.
+     * Filtros opcionales por estados (cualquiera de ellos) y por tipo exacto.
+     */
+    public IncidentSearchPage search(String q, Collection<Incident.Status> statuses, String type, int page, int size) {
+        long start = System.currentTimeMillis();
+        if (q == null || q.isBlank()) {
+            throw new IllegalArgumentException("La consulta q es obligatoria");
+        }
+        if (page < 0 || size < 1 || size > maxPageSize) {
+            throw new IllegalArgumentException("page debe ser >= 0 y size entre 1 y " + maxPageSize);
+        }
+        if ((long) page * size + size > maxResultWindow) {
+            throw new IllegalArgumentException("Solo se pueden recorrer los primeros " + maxResultWindow
+                    + " resultados; refine la búsqueda");
+        }
+
+        Set<String> terms = new LinkedHashSet<>(SpanishText.terms(q));
+        int statusMask = 0;
+        if (statuses != null) {
+            for (Incident.Status status : statuses) statusMask |= 1 << status.ordinal();
+        }
+        Index current = index;
+        Index.Result result = terms.isEmpty()
+                ? new Index.Result(0, List.of())
+                : current.search(List.copyOf(terms), statusMask, type, page * size, size);
+
+        List<IncidentSearchHit> hits = new ArrayList<>();
+        if (!result.hits().isEmpty()) {
+            List<String> ids = result.hits().stream().map(Index.Scored::id).toList();
+            Map<String, Incident> incidents = new HashMap<>();
+            for (Incident incident : mongoTemplate.find(new Query(Criteria.where("_id").in(ids)), Incident.class)) {
+                incidents.put(incident.getId(), incident);
+            }
+            for (Index.Scored scored : result.hits()) {
+                // Borrado en otro nodo y aún no reflejado en el índice
+                Incident incident = incidents.get(scored.id());
+                if (incident == null) continue;
+                Map<String, String> highlights = new LinkedHashMap<>();
+                String description = highlight(incident.getDescription(), terms);
+                if (description != null) highlights.put("description", description);
+                String location = highlight(incident.getLocation(), terms);
+                if (location != null) highlights.put("location", location);
+                hits.add(new IncidentSearchHit(incident, scored.score(), highlights));
+            }
+        }
+        boolean hasNext = (long) page * size + result.hits().size() < result.total();
+        return new IncidentSearchPage(hits, hits.size(), hasNext, page, result.total(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Fragmento del texto alrededor del primer término encontrado, con cada término entre
+     * &lt;em&gt;...&lt;/em&gt; (el resto va escapado). Null si el texto no contiene ninguno.
+     */
+    String highlight(String text, Set<String> terms) {
+        if (text == null) return null;
+        List<int[]> matches = new ArrayList<>();
+        SpanishText.forEachTerm(text, (s, e, term) -> {
+            if (terms.contains(term)) matches.add(new int[]{s, e});
+        });
+        if (matches.isEmpty()) return null;
+
+        int from = 0;
+        int to = text.length();
+        if (to > snippetLength) {
+            from = Math.max(0, matches.get(0)[0] - snippetLength / 4);
+            while (from > 0 && Character.isLetterOrDigit(text.charAt(from - 1))) from--;
+            to = Math.min(text.length(), from + snippetLength);
+            while (to < text.length() && Character.isLetterOrDigit(text.charAt(to))) to++;
+        }
+        StringBuilder out = new StringBuilder();
+        if (from > 0) out.append('…');
+        int pos = from;
+        for (int[] match : matches) {
+            if (match[0] < from) continue;
+            if (match[1] > to) break;
+            escape(out, text, pos, match[0]);
+            out.append("<em>");
+            escape(out, text, match[0], match[1]);
+            out.append("</em>");
+            pos = match[1];
+        }
+        escape(out, text, pos, to);
+        if (to < text.length()) out.append('…');
+        return out.toString();
+    }
+
+    private static void escape(StringBuilder out, String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Index current = index;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("ready", lastRebuild != null);
+        current.lock.readLock().lock();
+        try {
+            status.put("documents", current.live);
+            status.put("deleted", current.deleted.cardinality());
+            status.put("terms", current.postings.size());
+        } finally {
+            current.lock.readLock().unlock();
+        }
+        status.put("lastRebuild", lastRebuild);
+        return status;
+    }
+
+    /**
+     * Índice invertido. Los documentos se numeran en orden de llegada, así las listas de cada
+     * término quedan ordenadas solo con añadir al final. Escrituras y consultas se coordinan
+     * con un lock de lectura/escritura.
+     */
+    private static final class Index {
+
+        record Scored(int doc, String id, double score) {}
+
+        record Result(long total, List<Scored> hits) {}
+
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final Map<String, Integer> docOf = new HashMap<>();
+        final List<String> ids = new ArrayList<>();
+        final Map<String, Integer> typeIds = new HashMap<>();
+        final Map<String, Postings> postings = new HashMap<>();
+        final BitSet deleted = new BitSet();
+        byte[] statuses = new byte[1024];
+        int[] types = new int[1024];
+        short[] lengths = new short[1024];
+        int live;
+        long totalLength;
+
+        void add(Incident incident, int locationBoost) {
+            if (incident.getId() == null) return;
+            Map<String, Integer> frequencies = new HashMap<>();
+            int length = 0;
+            for (String term : SpanishText.terms(incident.getDescription())) {
+                frequencies.merge(term, 1, Integer::sum);
+                length++;
+            }
+            for (String term : SpanishText.terms(incident.getLocation())) {
+                frequencies.merge(term, locationBoost, Integer::sum);
+                length++;
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (docOf.containsKey(incident.getId())) return;
+                int doc = ids.size();
+                ids.add(incident.getId());
+                docOf.put(incident.getId(), doc);
+                if (doc == statuses.length) {
+                    int capacity = doc + (doc >> 1);
+                    statuses = Arrays.copyOf(statuses, capacity);
+                    types = Arrays.copyOf(types, capacity);
+                    lengths = Arrays.copyOf(lengths, capacity);
+                }
+                statuses[doc] = statusCode(incident.getStatus());
+                String type = incident.getType() != null ? incident.getType().trim() : "";
+                types[doc] = typeIds.computeIfAbsent(type, t -> typeIds.size());
+                lengths[doc] = (short) Math.min(Short.MAX_VALUE, length);
+                for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                    postings.computeIfAbsent(entry.getKey(), t -> new Postings()).add(doc, entry.getValue());
+                }
+                totalLength += lengths[doc];
+                live++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(String id) {
+            if (id == null) return;
+            lock.writeLock().lock();
+            try {
+                Integer doc = docOf.remove(id);
+                if (doc == null) return;
+                deleted.set(doc);
+                totalLength -= lengths[doc];
+                live--;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void updateStatus(String id, Incident.Status status) {
+            if (id == null) return;
+            lock.writeLock().lock();
+            try {
+                Integer doc = docOf.get(id);
+                if (doc != null) statuses[doc] = statusCode(status);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Result search(List<String> terms, int statusMask, String type, int offset, int size) {
+            lock.readLock().lock();
+            try {
+                int typeFilter = -1;
+                if (type != null && !type.isBlank()) {
+                    Integer id = typeIds.get(type.trim());
+                    if (id == null) return new Result(0, List.of());
+                    typeFilter = id;
+                }
+                Postings[] lists = new Postings[terms.size()];
+                for (int i = 0; i < lists.length; i++) {
+                    lists[i] = postings.get(terms.get(i));
+                    if (lists[i] == null) return new Result(0, List.of());
+                }
+                Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+
+                double avgLength = live > 0 ? Math.max(1, (double) totalLength / live) : 1;
+                double[] idf = new double[lists.length];
+                for (int i = 0; i < lists.length; i++) {
+                    // Las listas conservan los borrados hasta la próxima reconstrucción
+                    int df = Math.min(lists[i].size, live);
+                    idf[i] = Math.log(1 + (live - df + 0.5) / (df + 0.5));
+                }
+
+                int keep = offset + size;
+                PriorityQueue<Scored> top = new PriorityQueue<>(keep + 1, Comparator.comparingDouble(Scored::score)
+                        .thenComparing(Comparator.comparingInt(Scored::doc).reversed()));
+                int[] cursors = new int[lists.length];
+                long total = 0;
+                Postings shortest = lists[0];
+                candidates:
+                for (int i = 0; i < shortest.size; i++) {
+                    int doc = shortest.docs[i];
+                    if (deleted.get(doc)) continue;
+                    if (statusMask != 0 && (statuses[doc] < 0 || (statusMask & (1 << statuses[doc])) == 0)) continue;
+                    if (typeFilter >= 0 && types[doc] != typeFilter) continue;
+
+                    double norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+                    double score = idf[0] * bm25(shortest.frequencies[i], norm);
+                    for (int t = 1; t < lists.length; t++) {
+                        Postings other = lists[t];
+                        int at = advance(other, cursors[t], doc);
+                        cursors[t] = at;
+                        if (at >= other.size) break candidates;
+                        if (other.docs[at] != doc) continue candidates;
+                        score += idf[t] * bm25(other.frequencies[at], norm);
+                    }
+                    total++;
+                    if (top.size() < keep || score > top.peek().score()) {
+                        top.add(new Scored(doc, ids.get(doc), score));
+                        if (top.size() > keep) top.poll();
+                    }
+                }
+
+                List<Scored> ranked = new ArrayList<>(top);
+                ranked.sort(Comparator.comparingDouble(Scored::score).reversed()
+                        .thenComparingInt(Scored::doc));
+                List<Scored> hits = offset < ranked.size() ? ranked.subList(offset, ranked.size()) : List.of();
+                return new Result(total, hits);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private static double bm25(int frequency, double norm) {
+            return frequency * (K1 + 1) / (frequency + norm);
+        }
+
+        // Primera posición >= from con doc >= target (búsqueda exponencial y luego binaria)
+        private static int advance(Postings list, int from, int target) {
+            int bound = 1;
+            int low = from;
+            while (from + bound < list.size && list.docs[from + bound] < target) {
+                low = from + bound;
+                bound <<= 1;
+            }
+            int high = Math.min(list.size, from + bound + 1);
+            int index = Arrays.binarySearch(list.docs, low, high, target);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private static byte statusCode(Incident.Status status) {
+            return status != null ? (byte) status.ordinal() : -1;
+        }
+    }
+
+    /**
+     * Documentos de un término (ascendentes) con su frecuencia, en arreglos que crecen.
+     */
+    private static final class Postings {
+        int[] docs = new int[2];
+        byte[] frequencies = new byte[2];
+        int size;
+
+        void add(int doc, int frequency) {
+            if (size == docs.length) {
+                int capacity = size + (size >> 1) + 1;
+                docs = Arrays.copyOf(docs, capacity);
+                frequencies = Arrays.copyOf(frequencies, capacity);
+            }
+            docs[size] = doc;
+            frequencies[size] = (byte) Math.min(Byte.MAX_VALUE, frequency);
+            size++;
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package com.cartagena.segura.backend.service;
 
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
 import com.cartagena.segura.backend.model.Incident;
 import com.cartagena.segura.backend.repository.IncidentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,30 +21,90 @@ public class IncidentService {
     @Autowired
     private IncidentRepository incidentRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Autowired
     private LogService logService; // 👈 añadimos el servicio de logs
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher; // 👈 notifica cambios (stream en tiempo real, etc.)
+
+    @Autowired
+    private IncidentDedupService dedupService; // 👈 detecta reportes repetidos del mismo incidente
+
     public List<Incident> getAllIncidents() {
         return incidentRepository.findAll();
     }
 
     public Incident createIncident(Incident incident) {
+        Instant now = Instant.now();
+        incident.setCreatedAt(now);
+        incident.setUpdatedAt(now);
+        incident.setStatusChangedAt(now);
+        incident.setGeohash(IncidentGeo.geohash(incident));
+        // El riesgo lo calcula el scoring offline, nunca el cliente
+        incident.setRiskScore(null);
+        incident.setRiskLabel(null);
+        incident.setRiskModel(null);
+        incident.setRiskModelVersion(null);
+        incident.setRiskScoredAt(null);
+        incident.setDuplicateOf(null);
+        incident.setReportCount(1);
+        incident.setLastReportedAt(now);
+
+        IncidentDedupService.Match duplicate = dedupService.findDuplicate(incident);
+        if (duplicate != null) {
+            if (dedupService.getMode() == IncidentDedupService.Mode.MERGE) {
+                Optional<Incident> merged = mergeReport(duplicate, incident, now);
+                if (merged.isPresent()) return merged.get();
+            } else {
+                incident.setDuplicateOf(duplicate.incidentId());
+            }
+        }
+
         Incident saved = incidentRepository.save(incident);
         // 👇 Log automático
         logService.createLog("CREAR_INCIDENTE", "sistema",
                 "Se creó un incidente tipo '" + incident.getType() + "' en '" + incident.getLocation() + "'");
+        eventPublisher.publishEvent(IncidentChangeEvent.created(saved));
         return saved;
     }
 
+    /**
+     * Suma el reporte al incidente existente en lugar de crear uno nuevo. Es una sola
+     * actualización atómica en Mongo: reportes simultáneos no se pisan el contador.
+     * Vacío si el existente ya no está (borrado en otro nodo): se crea normalmente.
+     */
+    private Optional<Incident> mergeReport(IncidentDedupService.Match duplicate, Incident report, Instant now) {
+        Incident updated = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(duplicate.incidentId())),
+                new Update().inc("reportCount", 1).set("lastReportedAt", now).set("updatedAt", now),
+                FindAndModifyOptions.options().returnNew(true), Incident.class);
+        if (updated == null) {
+            dedupService.remove(duplicate.incidentId());
+            return Optional.empty();
+        }
+        // 👇 Log automático
+        logService.createLog("FUSIONAR_INCIDENTE", "sistema",
+                "Reporte tipo '" + report.getType() + "' en '" + report.getLocation()
+                        + "' fusionado con el incidente ID: " + updated.getId()
+                        + " (puntaje " + String.format("%.2f", duplicate.score()) + ")");
+        eventPublisher.publishEvent(IncidentChangeEvent.updated(updated, updated.getStatus()));
+        return Optional.of(updated);
+    }
+
     public Optional<Incident> getIncidentById(String id) {
         return incidentRepository.findById(id);
     }
 
     public void deleteIncident(String id) {
+        Incident lastKnown = incidentRepository.findById(id).orElse(null);
         incidentRepository.deleteById(id);
         // 👇 Log automático
         logService.createLog("ELIMINAR_INCIDENTE", "sistema",
                 "Se eliminó el incidente con ID: " + id);
+        eventPublisher.publishEvent(IncidentChangeEvent.deleted(id, lastKnown));
     }
 
     public List<Incident> getIncidentsByStatus(Incident.Status status) {
@@ -44,17 +112,31 @@ public class IncidentService {
     }
 
     public Incident updateIncidentStatus(String id, Incident.Status newStatus) {
-        Optional<Incident> optionalIncident = incidentRepository.findById(id);
-        if (optionalIncident.isPresent()) {
-            Incident incident = optionalIncident.get();
-            incident.setStatus(newStatus);
-            Incident updated = incidentRepository.save(incident);
-            // 👇 Log automático
-            logService.createLog("ACTUALIZAR_ESTADO", "sistema",
-                    "Incidente ID: " + id + " cambiado a estado: " + newStatus);
-            return updated;
-        } else {
-            return null;
+        // Solo toca estado y fechas (no save del documento): un merge de duplicados (reportCount) o el
+        // scoring (risk*) concurrentes no se pierden. El filtro por el estado leído hace el cambio
+        // compare-and-set, así el evento lleva el estado anterior exacto (los conteos por celda restan
+        // de ahí); si otro nodo lo cambió entre medio se vuelve a leer
+        while (true) {
+            Optional<Incident> current = incidentRepository.findById(id);
+            if (current.isEmpty()) {
+                return null;
+            }
+            Incident.Status previousStatus = current.get().getStatus();
+            Instant now = Instant.now();
+            Update update = new Update().set("status", newStatus).set("updatedAt", now);
+            if (previousStatus != newStatus) {
+                update.set("statusChangedAt", now);
+            }
+            Incident updated = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(id).and("status").is(previousStatus)),
+                    update, FindAndModifyOptions.options().returnNew(true), Incident.class);
+            if (updated != null) {
+                // 👇 Log automático
+                logService.createLog("ACTUALIZAR_ESTADO", "sistema",
+                        "Incidente ID: " + id + " cambiado a estado: " + newStatus);
+                eventPublisher.publishEvent(IncidentChangeEvent.updated(updated, previousStatus));
+                return updated;
+            }
         }
     }
 }
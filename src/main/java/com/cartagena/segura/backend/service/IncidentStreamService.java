@@ -0,0 +1,307 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.model.Incident;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Canal push (Server-Sent Events) con los cambios de incidentes.
+ *
+ * La secuencia, el buffer de reanudación y el alta de suscriptores ocurren en un
+ * único hilo dispatcher: así no necesitan locks y un cliente que se reconecta
+ * nunca pierde ni duplica eventos entre el replay y el alta.
+ *
+ * El dispatcher no escribe en los sockets: deja cada evento en la cola acotada
+ * del suscriptor y un pool de envío la vacía (un solo envío a la vez por
+ * cliente, en orden). Un cliente lento o medio caído solo ocupa su cola; si se
+ * llena se le desconecta y al reconectar recibe el replay o un "reset".
+ */
+@Slf4j
+@Service
+public class IncidentStreamService {
+
+    @Value("${incidents.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${incidents.stream.buffer-size:1000}")
+    private int bufferSize;
+
+    @Value("${incidents.stream.heartbeat-ms:20000}")
+    private long heartbeatMs;
+
+    // Eventos pendientes por cliente antes de desconectarlo por lento
+    @Value("${incidents.stream.subscriber-queue-size:256}")
+    private int subscriberQueueSize;
+
+    @Value("${incidents.stream.sender-threads:4}")
+    private int senderThreads;
+
+    // Identifica esta ejecución del servidor: un token de otra época fuerza "reset"
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    // Solo se accede desde el hilo dispatcher
+    private final Deque<StreamEntry> buffer = new ArrayDeque<>();
+    private long sequence = 0;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService dispatcher;
+    private ExecutorService senders;
+
+    record StreamEntry(long sequence, IncidentChangeEvent event) {}
+
+    /**
+     * Cliente conectado con su cola de eventos pendientes de enviar.
+     */
+    static final class Subscriber {
+        final SseEmitter emitter;
+        final StreamFilter filter;
+        final BlockingQueue<SseEmitter.SseEventBuilder> pending;
+        // true mientras hay una tarea de envío en curso para este cliente
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, StreamFilter filter, int queueSize) {
+            this.emitter = emitter;
+            this.filter = filter;
+            this.pending = new ArrayBlockingQueue<>(queueSize);
+        }
+    }
+
+    /**
+     * Filtro por cliente: estados y/o viewport (bounding box). Campos null = sin filtro.
+     */
+    public record StreamFilter(Set<Incident.Status> statuses,
+                               Double minLat, Double maxLat,
+                               Double minLng, Double maxLng) {
+
+        public static StreamFilter all() {
+            return new StreamFilter(null, null, null, null, null);
+        }
+
+        boolean matches(IncidentChangeEvent event) {
+            Incident incident = event.getIncident();
+            // Sin snapshot (borrado de algo desconocido): se envía a todos
+            if (incident == null) return true;
+
+            if (statuses != null && !statuses.isEmpty()) {
+                boolean current = statuses.contains(incident.getStatus());
+                // Si sale del filtro el cliente debe enterarse para quitarlo
+                boolean previous = event.getPreviousStatus() != null
+                        && statuses.contains(event.getPreviousStatus());
+                if (!current && !previous) return false;
+            }
+
+            if (minLat != null || maxLat != null || minLng != null || maxLng != null) {
+                double[] coords = IncidentGeo.coordinates(incident);
+                if (coords == null) return false;
+                if (minLat != null && coords[0] < minLat) return false;
+                if (maxLat != null && coords[0] > maxLat) return false;
+                if (minLng != null && coords[1] < minLng) return false;
+                if (maxLng != null && coords[1] > maxLng) return false;
+            }
+            return true;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "incident-stream");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger counter = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "incident-stream-send-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcher.scheduleAtFixedRate(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        log.info("✓ Stream de incidentes listo (buffer={}, heartbeat={}ms, cola por cliente={})",
+                bufferSize, heartbeatMs, subscriberQueueSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(s -> s.emitter.complete());
+        subscribers.clear();
+    }
+
+    /**
+     * Registra un cliente. Si trae un token de reanudación (Last-Event-ID) se
+     * reenvían los eventos posteriores; si ya no están en el buffer se envía
+     * "reset" para que el cliente recargue la lista completa una sola vez.
+     */
+    public SseEmitter subscribe(StreamFilter filter, String lastEventId) {
+        return subscribe(new SseEmitter(timeoutMs), filter, lastEventId);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, StreamFilter filter, String lastEventId) {
+        Subscriber subscriber = new Subscriber(emitter, filter != null ? filter : StreamFilter.all(),
+                Math.max(1, subscriberQueueSize));
+
+        emitter.onCompletion(() -> close(subscriber));
+        emitter.onTimeout(() -> {
+            close(subscriber);
+            emitter.complete();
+        });
+        emitter.onError(e -> close(subscriber));
+
+        dispatcher.execute(() -> {
+            replay(subscriber, lastEventId);
+            if (!subscriber.closed) subscribers.add(subscriber);
+        });
+        return emitter;
+    }
+
+    @EventListener
+    public void onIncidentChange(IncidentChangeEvent event) {
+        // No bloquear el hilo que escribió en Mongo
+        dispatcher.execute(() -> publish(event));
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private void publish(IncidentChangeEvent event) {
+        StreamEntry entry = new StreamEntry(++sequence, event);
+        buffer.addLast(entry);
+        while (buffer.size() > bufferSize) {
+            buffer.removeFirst();
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.filter.matches(event)) {
+                enqueue(subscriber, toSse(entry));
+            }
+        }
+    }
+
+    private void replay(Subscriber subscriber, String lastEventId) {
+        Long resumeFrom = parseToken(lastEventId);
+
+        if (lastEventId == null) {
+            enqueue(subscriber, control("ready"));
+            return;
+        }
+
+        long oldest = buffer.isEmpty() ? sequence + 1 : buffer.peekFirst().sequence();
+        List<StreamEntry> missed = new ArrayList<>();
+        if (resumeFrom != null && resumeFrom <= sequence && resumeFrom >= oldest - 1) {
+            for (StreamEntry entry : buffer) {
+                if (entry.sequence() > resumeFrom && subscriber.filter.matches(entry.event())) {
+                    missed.add(entry);
+                }
+            }
+        }
+        // Token desconocido o replay más grande que la cola: que recargue la lista completa
+        if (resumeFrom == null || resumeFrom > sequence || resumeFrom < oldest - 1
+                || missed.size() >= subscriber.pending.remainingCapacity()) {
+            enqueue(subscriber, control("reset"));
+            return;
+        }
+        for (StreamEntry entry : missed) {
+            enqueue(subscriber, toSse(entry));
+        }
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, SseEmitter.event().comment("ping"));
+        }
+    }
+
+    /**
+     * Deja el evento en la cola del cliente y programa su envío. Cola llena = el cliente no
+     * consume al ritmo del resto: se le desconecta en vez de frenar a los demás.
+     */
+    private void enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        if (subscriber.closed) return;
+        if (!subscriber.pending.offer(event)) {
+            log.warn("✗ Cliente SSE desconectado: {} eventos sin enviar", subscriber.pending.size());
+            close(subscriber);
+            subscriber.emitter.complete();
+            return;
+        }
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException e) {
+                subscriber.draining.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while (!subscriber.closed && (event = subscriber.pending.poll()) != null) {
+                subscriber.emitter.send(event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            close(subscriber);
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // Lo encolado mientras terminaba este envío
+        if (!subscriber.closed && !subscriber.pending.isEmpty()) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    private void close(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+        subscriber.pending.clear();
+    }
+
+    private SseEmitter.SseEventBuilder control(String name) {
+        return SseEmitter.event()
+                .id(token(sequence))
+                .name(name)
+                .data(Map.of("sequence", sequence), MediaType.APPLICATION_JSON);
+    }
+
+    private SseEmitter.SseEventBuilder toSse(StreamEntry entry) {
+        return SseEmitter.event()
+                .id(token(entry.sequence()))
+                .name(entry.event().getType().name().toLowerCase())
+                .data(entry.event(), MediaType.APPLICATION_JSON);
+    }
+
+    private String token(long seq) {
+        return epoch + ":" + seq;
+    }
+
+    private Long parseToken(String lastEventId) {
+        if (lastEventId == null) return null;
+        int sep = lastEventId.indexOf(':');
+        if (sep < 0 || !lastEventId.substring(0, sep).equals(epoch)) return null;
+        try {
+            return Long.parseLong(lastEventId.substring(sep + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
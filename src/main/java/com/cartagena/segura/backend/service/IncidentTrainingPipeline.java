@@ -0,0 +1,346 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.dto.TrainingResponse;
+import com.cartagena.segura.backend.model.Incident;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Pipeline de entrenamiento de riesgo a partir de la colección "incidents".
+ *
+ * Lee Mongo con un cursor (sin cargar la colección en memoria), convierte cada
+ * incidente en una fila numérica compacta y entrena con AdvancedWekaService.
+ * Clase a predecir: el tipo de incidente esperado para un lugar y momento.
+ *
+ * Las corridas incrementales solo leen documentos con updatedAt >= marca de agua
+ * y reemplazan sus filas; los borrados llegan por IncidentChangeEvent. El estado
+ * vive en memoria, así que la primera corrida tras reiniciar siempre es completa.
+ */
+@Slf4j
+@Service
+public class IncidentTrainingPipeline {
+
+    public static final String ATTR_GEOCELL = "geocell";
+    public static final String ATTR_HOUR = "hour";
+    public static final String ATTR_DAY_OF_WEEK = "dayOfWeek";
+    public static final String ATTR_LAT = "lat";
+    public static final String ATTR_LNG = "lng";
+    public static final String ATTR_STATUS = "status";
+    public static final String ATTR_STATUS_HOURS = "statusHours";
+    public static final String ATTR_TYPE = "type";
+
+    // Índices de columna dentro de cada fila
+    private static final int COL_GEOCELL = 0;
+    private static final int COL_HOUR = 1;
+    private static final int COL_DAY_OF_WEEK = 2;
+    private static final int COL_LAT = 3;
+    private static final int COL_LNG = 4;
+    private static final int COL_STATUS = 5;
+    private static final int COL_STATUS_HOURS = 6;
+    private static final int COL_TYPE = 7;
+    private static final int NUM_COLUMNS = 8;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    @Value("${ml.incidents.model-name:incident-risk}")
+    private String defaultModelName;
+
+    @Value("${ml.incidents.algorithm:J48}")
+    private String defaultAlgorithm;
+
+    @Value("${ml.incidents.geohash-precision:6}")
+    private int geohashPrecision;
+
+    @Value("${ml.incidents.zone:America/Bogota}")
+    private String zone;
+
+    @Value("${ml.incidents.min-instances:20}")
+    private int minInstances;
+
+    @Value("${ml.incidents.cursor-batch-size:1000}")
+    private int cursorBatchSize;
+
+    @Value("${ml.incidents.retrain-enabled:false}")
+    private boolean retrainEnabled;
+
+    private final ReentrantLock running = new ReentrantLock();
+
+    // Estado incremental: solo se modifica con "running" tomado
+    private final Map<String, double[]> rowsById = new HashMap<>();
+    private final NominalDictionary geocells = new NominalDictionary();
+    private final NominalDictionary types = new NominalDictionary();
+    private Instant watermark;
+
+    // Borrados ocurridos desde la última corrida
+    private final Set<String> pendingDeletes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Diccionario de valores nominales que solo crece: los índices de las filas ya
+     * calculadas siguen siendo válidos cuando aparecen valores nuevos.
+     */
+    private static final class NominalDictionary {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> index = new HashMap<>();
+
+        int indexOf(String value) {
+            return index.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+
+        List<String> values() {
+            return values;
+        }
+
+        void clear() {
+            values.clear();
+            index.clear();
+        }
+    }
+
+    public static class PipelineBusyException extends IllegalStateException {
+        public PipelineBusyException() {
+            super("Ya hay un entrenamiento de incidentes en curso");
+        }
+    }
+
+    @EventListener
+    public void onIncidentChange(IncidentChangeEvent event) {
+        if (event.getType() == IncidentChangeEvent.Type.DELETED) {
+            pendingDeletes.add(event.getIncidentId());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ml.incidents.retrain-interval-ms:3600000}",
+            initialDelayString = "${ml.incidents.retrain-interval-ms:3600000}")
+    public void scheduledRetrain() {
+        if (!retrainEnabled) return;
+        try {
+            TrainingResponse response = train(defaultAlgorithm, defaultModelName, false);
+            if (response != null) {
+                log.info("✓ Reentrenamiento programado de '{}' ({} filas)", defaultModelName, response.getNumInstances());
+            }
+        } catch (PipelineBusyException e) {
+            log.debug("Reentrenamiento programado omitido: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error("✗ Error en reentrenamiento programado", e);
+        }
+    }
+
+    /**
+     * Entrena desde Mongo. full=false reutiliza las filas previas y solo lee lo
+     * modificado desde la marca de agua. Retorna null si no hubo cambios.
+     */
+    public TrainingResponse train(String algorithm, String modelName, boolean full) throws Exception {
+        if (!running.tryLock()) {
+            throw new PipelineBusyException();
+        }
+        try {
+            String algo = algorithm != null && !algorithm.isBlank() ? algorithm : defaultAlgorithm;
+            String name = modelName != null && !modelName.isBlank() ? modelName : defaultModelName;
+
+            boolean incremental = !full && watermark != null;
+            int changed = incremental ? readChanges() : readAll();
+
+            if (incremental && changed == 0) {
+                log.info("Sin cambios en incidentes desde {}", watermark);
+                return null;
+            }
+            if (rowsById.size() < minInstances) {
+                throw new IllegalStateException("Se necesitan al menos " + minInstances
+                        + " incidentes con tipo para entrenar (hay " + rowsById.size() + ")");
+            }
+
+            Instances data = buildInstances();
+            log.info("Dataset de incidentes: {} filas ({} {}), {} celdas, {} tipos",
+                    data.numInstances(), incremental ? "incremental," : "completo,",
+                    changed, geocells.values().size(), types.values().size());
+            return wekaService.trainFromInstances(data, algo, name);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.isLocked());
+        status.put("rows", rowsById.size());
+        status.put("watermark", watermark);
+        status.put("pendingDeletes", pendingDeletes.size());
+        status.put("retrainEnabled", retrainEnabled);
+        return status;
+    }
+
+    /**
+     * Fila de features (sin la clase) para predecir sobre un incidente nuevo con
+     * un modelo entrenado por este pipeline.
+     */
+    public Map<String, Object> featuresOf(Incident incident) {
+        Map<String, Object> features = new LinkedHashMap<>();
+        double[] coords = IncidentGeo.coordinates(incident);
+        if (coords != null) {
+            features.put(ATTR_GEOCELL, IncidentGeo.geohash(coords[0], coords[1], geohashPrecision));
+            features.put(ATTR_LAT, coords[0]);
+            features.put(ATTR_LNG, coords[1]);
+        }
+        if (incident.getCreatedAt() != null) {
+            ZonedDateTime created = incident.getCreatedAt().atZone(ZoneId.of(zone));
+            features.put(ATTR_HOUR, created.getHour());
+            features.put(ATTR_DAY_OF_WEEK, created.getDayOfWeek().getValue());
+        }
+        if (incident.getStatus() != null) {
+            features.put(ATTR_STATUS, incident.getStatus().name());
+        }
+        Double statusHours = statusHours(incident);
+        if (statusHours != null) {
+            features.put(ATTR_STATUS_HOURS, statusHours);
+        }
+        return features;
+    }
+
+    private int readAll() {
+        rowsById.clear();
+        geocells.clear();
+        types.clear();
+        pendingDeletes.clear();
+        watermark = null;
+        return stream(new Query());
+    }
+
+    private int readChanges() {
+        int deleted = 0;
+        for (String id : pendingDeletes) {
+            if (rowsById.remove(id) != null) deleted++;
+            pendingDeletes.remove(id);
+        }
+        // >= para no perder escrituras con el mismo instante; reprocesarlas es idempotente
+        return deleted + stream(new Query(Criteria.where("updatedAt").gte(watermark)));
+    }
+
+    // Retorna cuántas filas cambiaron realmente (nuevas, modificadas o descartadas)
+    private int stream(Query query) {
+        query.fields().include("type", "lat", "lng", "location", "status", "geohash",
+                "createdAt", "updatedAt", "statusChangedAt");
+        query.cursorBatchSize(cursorBatchSize);
+
+        int count = 0;
+        ZoneId zoneId = ZoneId.of(zone);
+        try (Stream<Incident> cursor = mongoTemplate.stream(query, Incident.class)) {
+            Iterator<Incident> it = cursor.iterator();
+            while (it.hasNext()) {
+                Incident incident = it.next();
+                double[] row = toRow(incident, zoneId);
+                double[] previous = row != null
+                        ? rowsById.put(incident.getId(), row)
+                        : rowsById.remove(incident.getId());
+                if (!Arrays.equals(row, previous)) {
+                    count++;
+                }
+                if (incident.getUpdatedAt() != null
+                        && (watermark == null || incident.getUpdatedAt().isAfter(watermark))) {
+                    watermark = incident.getUpdatedAt();
+                }
+            }
+        }
+        if (watermark == null) {
+            // Colección sin updatedAt (datos previos): la próxima corrida toma solo lo nuevo
+            watermark = Instant.now();
+        }
+        return count;
+    }
+
+    private double[] toRow(Incident incident, ZoneId zoneId) {
+        if (incident.getType() == null || incident.getType().isBlank()) {
+            return null;
+        }
+
+        double[] row = new double[NUM_COLUMNS];
+        Arrays.fill(row, Utils.missingValue());
+
+        double[] coords = IncidentGeo.coordinates(incident);
+        if (coords != null) {
+            String cell = incident.getGeohash() != null && incident.getGeohash().length() >= geohashPrecision
+                    ? incident.getGeohash().substring(0, geohashPrecision)
+                    : IncidentGeo.geohash(coords[0], coords[1], geohashPrecision);
+            row[COL_GEOCELL] = geocells.indexOf(cell);
+            row[COL_LAT] = coords[0];
+            row[COL_LNG] = coords[1];
+        }
+
+        if (incident.getCreatedAt() != null) {
+            ZonedDateTime created = incident.getCreatedAt().atZone(zoneId);
+            row[COL_HOUR] = created.getHour();
+            row[COL_DAY_OF_WEEK] = created.getDayOfWeek().getValue();
+        }
+
+        if (incident.getStatus() != null) {
+            row[COL_STATUS] = incident.getStatus().ordinal();
+        }
+
+        Double statusHours = statusHours(incident);
+        if (statusHours != null) {
+            row[COL_STATUS_HOURS] = statusHours;
+        }
+
+        row[COL_TYPE] = types.indexOf(incident.getType().trim());
+        return row;
+    }
+
+    // Horas desde la creación hasta el último cambio de estado (0 si nunca cambió)
+    private static Double statusHours(Incident incident) {
+        if (incident.getCreatedAt() == null || incident.getStatusChangedAt() == null) {
+            return null;
+        }
+        return Duration.between(incident.getCreatedAt(), incident.getStatusChangedAt()).toMinutes() / 60.0;
+    }
+
+    private Instances buildInstances() {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute(ATTR_GEOCELL, new ArrayList<>(geocells.values())));
+        attributes.add(new Attribute(ATTR_HOUR));
+        attributes.add(new Attribute(ATTR_DAY_OF_WEEK));
+        attributes.add(new Attribute(ATTR_LAT));
+        attributes.add(new Attribute(ATTR_LNG));
+        List<String> statuses = new ArrayList<>();
+        for (Incident.Status status : Incident.Status.values()) {
+            statuses.add(status.name());
+        }
+        attributes.add(new Attribute(ATTR_STATUS, statuses));
+        attributes.add(new Attribute(ATTR_STATUS_HOURS));
+        attributes.add(new Attribute(ATTR_TYPE, new ArrayList<>(types.values())));
+
+        Instances data = new Instances("incident-risk", attributes, rowsById.size());
+        data.setClassIndex(COL_TYPE);
+        for (double[] row : rowsById.values()) {
+            // Instances.add copia la instancia: las filas cacheadas no se modifican
+            data.add(new DenseInstance(1.0, row));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,33 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.ModelChangeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * Notificación en proceso para despliegues de un solo nodo (o sin Redis): los cambios
+ * solo llegan a este nodo. Los demás nodos se sincronizan con la reconciliación periódica.
+ */
+@Service
+@ConditionalOnProperty(name = "ml.models.notifier", havingValue = "local", matchIfMissing = true)
+public class LocalModelChangeNotifier implements ModelChangeNotifier {
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ModelChangeEvent.Type type, String modelName, String version) {
+        eventPublisher.publishEvent(new ModelChangeEvent(type, modelName, version, nodeId));
+    }
+}
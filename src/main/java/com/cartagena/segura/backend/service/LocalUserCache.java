@@ -0,0 +1,77 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.model.User;
+import com.cartagena.segura.backend.security.ExpiringLruCache;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché en memoria (un solo nodo) con tamaño máximo (LRU) y TTL.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "users.cache.type", havingValue = "local", matchIfMissing = true)
+public class LocalUserCache implements UserCache {
+
+    @Value("${users.cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${users.cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private ExpiringLruCache<String, User> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        entries = new ExpiringLruCache<>(Math.max(1, maxSize));
+    }
+
+    @Override
+    public Optional<User> get(String username) {
+        User user = entries.get(username);
+        if (user != null) {
+            hits.increment();
+            return Optional.of(user);
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    @Override
+    public void put(User user) {
+        if (maxSize <= 0 || ttlSeconds <= 0) return;
+        entries.put(user.getUsername(), UserCache.principalOf(user), System.currentTimeMillis() + ttlSeconds * 1000);
+    }
+
+    @Override
+    public void evict(String username) {
+        if (username != null && entries.remove(username) != null) {
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "local");
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("size", entries.size());
+        stats.put("evictions", evictions.sum() + entries.evictions());
+        return stats;
+    }
+}
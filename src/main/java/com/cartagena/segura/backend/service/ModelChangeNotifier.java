@@ -0,0 +1,16 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.ModelChangeEvent;
+
+/**
+ * Difunde cambios del almacén de modelos a los demás nodos. Los cambios recibidos
+ * (incluidos los propios) se publican como ModelChangeEvent de Spring en cada nodo.
+ *
+ * Implementaciones: local (un solo nodo) y redis (pub/sub).
+ */
+public interface ModelChangeNotifier {
+
+    String nodeId();
+
+    void publish(ModelChangeEvent.Type type, String modelName, String version);
+}
@@ -0,0 +1,442 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.PredictionResponse;
+import com.cartagena.segura.backend.dto.ServingPolicyRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Políticas de servicio para /api/ml/predict: canary (un porcentaje del tráfico va a un
+ * modelo candidato) y shadow (un modelo se evalúa en segundo plano con las mismas features,
+ * sin afectar la respuesta ni su latencia).
+ *
+ * Registra latencia por modelo y la tasa de acuerdo del shadow con el modelo que respondió.
+ * Promover cambia el modelo activo del registro en un solo paso; rollback deshace el canary
+ * o la última promoción.
+ *
+ * Los modelos con SLO de latencia (AdvancedWekaService.LatencySlo) se desvían a su fallback
+ * mientras su p95 en la ventana reciente supere el SLO o tengan demasiadas predicciones en
+ * curso. Un pequeño porcentaje sigue yendo al primario para detectar cuándo se recupera.
+ */
+@Slf4j
+@Service
+public class ModelServingService {
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    @Value("${ml.serving.shadow-threads:2}")
+    private int shadowThreads;
+
+    // Si la cola del shadow se llena, las copias se descartan (nunca se frena la respuesta)
+    @Value("${ml.serving.shadow-queue-size:1000}")
+    private int shadowQueueSize;
+
+    // Ventana del p95 para los SLO, dividida en 6 tramos que se van reciclando
+    @Value("${ml.serving.slo-window-ms:30000}")
+    private long sloWindowMs;
+
+    @Value("${ml.serving.slo-percentile:0.95}")
+    private double sloPercentile;
+
+    // Por debajo de estas muestras en la ventana no se juzga el SLO
+    @Value("${ml.serving.slo-min-samples:20}")
+    private long sloMinSamples;
+
+    // Tráfico que sigue yendo al primario fuera de SLO, para medir si se recuperó
+    @Value("${ml.serving.slo-probe-percent:5}")
+    private double sloProbePercent;
+
+    private static final int SLO_SLOTS = 6;
+
+    // Límites superiores (ms) de los buckets del histograma de latencia
+    private static final long[] LATENCY_BUCKETS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, Long.MAX_VALUE};
+
+    public record Policy(String candidateModel, double canaryPercent, String shadowModel,
+                         double shadowPercent, long since) {
+        static final Policy NONE = new Policy(null, 0, null, 0, 0);
+    }
+
+    private final AtomicReference<Policy> policy = new AtomicReference<>(Policy.NONE);
+    // Modelo activo antes de la última promoción (para rollback)
+    private volatile String previousActive;
+    private final ConcurrentHashMap<String, ModelStats> stats = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Agreement> agreement = new ConcurrentHashMap<>();
+    private final LongAdder shadowDropped = new LongAdder();
+    private final ConcurrentHashMap<String, SloWindow> sloWindows = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor shadowExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        shadowExecutor = new ThreadPoolExecutor(shadowThreads, shadowThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(shadowQueueSize),
+                r -> {
+                    Thread t = new Thread(r, "ml-shadow-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                (r, executor) -> shadowDropped.increment());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shadowExecutor.shutdownNow();
+    }
+
+    /**
+     * Predicción con el modelo activo o, según la política, con el candidato.
+     * Si el candidato falla se responde con el activo.
+     */
+    public PredictionResponse predict(Map<String, Object> features) throws Exception {
+        Policy current = policy.get();
+        String primary = wekaService.getActiveModelName();
+
+        PredictionResponse response = null;
+        if (current.candidateModel() != null && !current.candidateModel().equals(primary)
+                && ThreadLocalRandom.current().nextDouble(100) < current.canaryPercent()) {
+            try {
+                response = serve(current.candidateModel(), features);
+            } catch (Exception e) {
+                log.warn("Canary {} falló, se responde con {}: {}", current.candidateModel(), primary, e.getMessage());
+            }
+        }
+        if (response == null) {
+            response = serve(primary, features);
+        }
+
+        if (current.shadowModel() != null && !current.shadowModel().equals(response.getModelName())
+                && ThreadLocalRandom.current().nextDouble(100) < current.shadowPercent()) {
+            shadow(current.shadowModel(), features, response);
+        }
+        return response;
+    }
+
+    /**
+     * Predicción con un modelo concreto, respetando su SLO de latencia.
+     */
+    public PredictionResponse predict(String modelName, Map<String, Object> features) throws Exception {
+        return serve(modelName, features);
+    }
+
+    private PredictionResponse serve(String modelName, Map<String, Object> features) throws Exception {
+        AdvancedWekaService.LatencySlo slo = wekaService.getLatencySlo(modelName);
+        if (slo == null) {
+            return timedPredict(modelName, features);
+        }
+        SloWindow window = sloWindows.compute(modelName, (k, w) ->
+                w != null && w.slo.equals(slo) ? w : new SloWindow(slo));
+
+        String reason = null;
+        if (window.inFlight.get() >= slo.maxInFlight()) {
+            reason = "saturated";
+        } else if (window.overBudget() && ThreadLocalRandom.current().nextDouble(100) >= sloProbePercent) {
+            reason = "latency";
+        }
+        if (reason != null && wekaService.getLoadedModelNames().contains(slo.fallbackModel())) {
+            try {
+                PredictionResponse response = timedPredict(slo.fallbackModel(), features);
+                response.setFallbackFrom(modelName);
+                response.setFallbackReason(reason);
+                ("saturated".equals(reason) ? window.fallbackSaturated : window.fallbackLatency).increment();
+                return response;
+            } catch (Exception e) {
+                log.warn("Fallback {} falló, se responde con {}: {}", slo.fallbackModel(), modelName, e.getMessage());
+            }
+        }
+
+        window.inFlight.incrementAndGet();
+        try {
+            return timedPredict(modelName, features);
+        } finally {
+            window.inFlight.decrementAndGet();
+        }
+    }
+
+    private void shadow(String shadowModel, Map<String, Object> features, PredictionResponse served) {
+        Map<String, Object> copy = new HashMap<>(features);
+        String servedPrediction = served.getPrediction();
+        shadowExecutor.execute(() -> {
+            try {
+                PredictionResponse shadowResponse = timedPredict(shadowModel, copy);
+                agreement.computeIfAbsent(shadowModel, k -> new Agreement())
+                        .record(Objects.equals(servedPrediction, shadowResponse.getPrediction()));
+            } catch (Exception e) {
+                // Ya contado como error en las estadísticas del modelo
+                log.debug("Shadow {} falló: {}", shadowModel, e.getMessage());
+            }
+        });
+    }
+
+    private PredictionResponse timedPredict(String modelName, Map<String, Object> features) throws Exception {
+        ModelStats modelStats = stats.computeIfAbsent(modelName, k -> new ModelStats());
+        long start = System.nanoTime();
+        try {
+            PredictionResponse response = wekaService.predict(features, modelName);
+            long nanos = System.nanoTime() - start;
+            modelStats.record(nanos);
+            SloWindow window = sloWindows.get(modelName);
+            if (window != null) window.record(nanos);
+            return response;
+        } catch (Exception e) {
+            modelStats.errors.increment();
+            throw e;
+        }
+    }
+
+    // ========== GESTIÓN DE LA POLÍTICA ==========
+
+    /**
+     * Reemplaza la política y reinicia las estadísticas (las comparaciones son por política).
+     */
+    public Policy setPolicy(ServingPolicyRequest request) {
+        String candidate = blankToNull(request.getCandidateModel());
+        String shadowModel = blankToNull(request.getShadowModel());
+        double canaryPercent = request.getCanaryPercent() != null ? request.getCanaryPercent() : 0;
+        double shadowPercent = request.getShadowPercent() != null ? request.getShadowPercent() : 100;
+
+        if (canaryPercent < 0 || canaryPercent > 100 || shadowPercent < 0 || shadowPercent > 100) {
+            throw new IllegalArgumentException("Los porcentajes deben estar entre 0 y 100");
+        }
+        if (candidate != null) wekaService.getModelInfo(candidate);
+        if (shadowModel != null) wekaService.getModelInfo(shadowModel);
+
+        Policy updated = new Policy(candidate, candidate != null ? canaryPercent : 0,
+                shadowModel, shadowModel != null ? shadowPercent : 0, System.currentTimeMillis());
+        policy.set(updated);
+        stats.clear();
+        agreement.clear();
+        shadowDropped.reset();
+        log.info("✓ Política de servicio: canary={} ({}%), shadow={} ({}%)",
+                candidate, updated.canaryPercent(), shadowModel, updated.shadowPercent());
+        return updated;
+    }
+
+    /**
+     * El candidato pasa a ser el modelo activo (todo el tráfico) y se retira el canary.
+     */
+    public String promote() {
+        Policy current = policy.get();
+        if (current.candidateModel() == null) {
+            throw new IllegalStateException("No hay modelo candidato para promover");
+        }
+        String previous = wekaService.getActiveModelName();
+        wekaService.setActiveModel(current.candidateModel());
+        previousActive = previous;
+
+        String shadowModel = current.candidateModel().equals(current.shadowModel()) ? null : current.shadowModel();
+        policy.set(new Policy(null, 0, shadowModel, shadowModel != null ? current.shadowPercent() : 0,
+                System.currentTimeMillis()));
+        log.info("✓ Modelo promovido: {} (antes {})", current.candidateModel(), previous);
+        return current.candidateModel();
+    }
+
+    /**
+     * Con canary activo: lo retira (todo el tráfico al activo). Sin canary: deshace la última promoción.
+     */
+    public String rollback() {
+        Policy current = policy.get();
+        if (current.candidateModel() != null) {
+            policy.set(new Policy(null, 0, current.shadowModel(), current.shadowPercent(), System.currentTimeMillis()));
+            log.info("✓ Canary {} retirado", current.candidateModel());
+            return wekaService.getActiveModelName();
+        }
+        String previous = previousActive;
+        if (previous == null) {
+            throw new IllegalStateException("No hay canary activo ni promoción que deshacer");
+        }
+        wekaService.setActiveModel(previous);
+        previousActive = null;
+        log.info("✓ Promoción deshecha, modelo activo: {}", previous);
+        return previous;
+    }
+
+    public Map<String, Object> getStatus() {
+        Policy current = policy.get();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("activeModel", wekaService.getActiveModelName());
+        status.put("candidateModel", current.candidateModel());
+        status.put("canaryPercent", current.canaryPercent());
+        status.put("shadowModel", current.shadowModel());
+        status.put("shadowPercent", current.shadowPercent());
+        status.put("since", current.since());
+        status.put("previousActive", previousActive);
+
+        Map<String, Object> models = new TreeMap<>();
+        stats.forEach((name, s) -> models.put(name, s.toMap()));
+        status.put("models", models);
+
+        Map<String, Object> shadow = new TreeMap<>();
+        agreement.forEach((name, a) -> shadow.put(name, a.toMap()));
+        status.put("agreement", shadow);
+        status.put("shadowDropped", shadowDropped.sum());
+
+        Map<String, Object> slos = new TreeMap<>();
+        wekaService.getLatencySlos().forEach((name, slo) -> {
+            SloWindow window = sloWindows.get(name);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("latencyMs", slo.latencyMs());
+            entry.put("fallbackModel", slo.fallbackModel());
+            entry.put("maxInFlight", slo.maxInFlight());
+            if (window != null) entry.putAll(window.toMap());
+            slos.put(name, entry);
+        });
+        status.put("slos", slos);
+        return status;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    private static final class ModelStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLongArray histogram = new AtomicLongArray(LATENCY_BUCKETS_MS.length);
+
+        void record(long nanos) {
+            requests.increment();
+            totalNanos.add(nanos);
+            long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (ms > LATENCY_BUCKETS_MS[bucket]) bucket++;
+            histogram.incrementAndGet(bucket);
+        }
+
+        // Cota superior del bucket que contiene el percentil (null si cae en el último)
+        Long percentileMs(double p) {
+            long total = 0;
+            for (int i = 0; i < histogram.length(); i++) total += histogram.get(i);
+            if (total == 0) return null;
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < histogram.length(); i++) {
+                seen += histogram.get(i);
+                if (seen >= rank) {
+                    return LATENCY_BUCKETS_MS[i] == Long.MAX_VALUE ? null : LATENCY_BUCKETS_MS[i];
+                }
+            }
+            return null;
+        }
+
+        Map<String, Object> toMap() {
+            long count = requests.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("requests", count);
+            map.put("errors", errors.sum());
+            map.put("avgMs", count == 0 ? 0.0 : totalNanos.sum() / 1_000_000.0 / count);
+            map.put("p50Ms", percentileMs(0.50));
+            map.put("p95Ms", percentileMs(0.95));
+            map.put("p99Ms", percentileMs(0.99));
+            return map;
+        }
+    }
+
+    /**
+     * Predicciones del primario en la ventana reciente y cuántas superaron el SLO: el p95 está
+     * dentro del SLO mientras las lentas no pasen del 5 %. Cada tramo se reinicia al reutilizarlo;
+     * reiniciar y contar van bajo el mismo lock para que ninguna muestra caiga en un tramo viejo.
+     */
+    final class SloWindow {
+        final AdvancedWekaService.LatencySlo slo;
+        final long sloNanos;
+        final long slotMs = Math.max(1, sloWindowMs / SLO_SLOTS);
+        private final long[] slotEpochs = new long[SLO_SLOTS];
+        private final long[] total = new long[SLO_SLOTS];
+        private final long[] slow = new long[SLO_SLOTS];
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder fallbackLatency = new LongAdder();
+        final LongAdder fallbackSaturated = new LongAdder();
+
+        SloWindow(AdvancedWekaService.LatencySlo slo) {
+            this.slo = slo;
+            this.sloNanos = TimeUnit.MILLISECONDS.toNanos(slo.latencyMs());
+        }
+
+        void record(long nanos) {
+            record(nanos, System.currentTimeMillis());
+        }
+
+        synchronized void record(long nanos, long nowMs) {
+            long epoch = nowMs / slotMs;
+            int slot = (int) (epoch % SLO_SLOTS);
+            // Muestra de una vuelta anterior que llegó tarde al lock: ya está fuera de la ventana
+            if (epoch < slotEpochs[slot]) return;
+            if (slotEpochs[slot] != epoch) {
+                total[slot] = 0;
+                slow[slot] = 0;
+                slotEpochs[slot] = epoch;
+            }
+            total[slot]++;
+            if (nanos > sloNanos) slow[slot]++;
+        }
+
+        long[] counts() {
+            return counts(System.currentTimeMillis());
+        }
+
+        synchronized long[] counts(long nowMs) {
+            long epoch = nowMs / slotMs;
+            long requests = 0;
+            long overSlo = 0;
+            for (int i = 0; i < SLO_SLOTS; i++) {
+                if (epoch - slotEpochs[i] < SLO_SLOTS) {
+                    requests += total[i];
+                    overSlo += slow[i];
+                }
+            }
+            return new long[]{requests, overSlo};
+        }
+
+        boolean overBudget() {
+            return overBudget(counts());
+        }
+
+        boolean overBudget(long[] counts) {
+            return counts[0] >= sloMinSamples && counts[1] > (1 - sloPercentile) * counts[0];
+        }
+
+        Map<String, Object> toMap() {
+            long[] counts = counts();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("inFlight", inFlight.get());
+            map.put("windowRequests", counts[0]);
+            map.put("windowOverSlo", counts[1]);
+            map.put("overBudget", overBudget(counts));
+            map.put("fallbackLatency", fallbackLatency.sum());
+            map.put("fallbackSaturated", fallbackSaturated.sum());
+            return map;
+        }
+    }
+
+    private static final class Agreement {
+        final LongAdder compared = new LongAdder();
+        final LongAdder agreed = new LongAdder();
+
+        void record(boolean same) {
+            compared.increment();
+            if (same) agreed.increment();
+        }
+
+        Map<String, Object> toMap() {
+            long total = compared.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("compared", total);
+            map.put("agreed", agreed.sum());
+            map.put("rate", total == 0 ? null : (double) agreed.sum() / total);
+            return map;
+        }
+    }
+}
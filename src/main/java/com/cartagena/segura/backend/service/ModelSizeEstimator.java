@@ -0,0 +1,150 @@
+package com.cartagena.segura.backend.service;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimación del tamaño retenido en el heap por un modelo (clasificador + cabecera).
+ *
+ * Recorre el grafo de objetos contando cada uno una sola vez, con el layout típico de una
+ * JVM de 64 bits con oops comprimidos. Las clases del JDK no se abren por reflexión (los
+ * módulos lo impiden): colecciones, mapas y strings se estiman por su API pública.
+ * Es una aproximación para el presupuesto de memoria, no una medición exacta.
+ */
+final class ModelSizeEstimator {
+
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    // Entrada de HashMap/TreeMap (nodo con clave, valor, hash y enlaces)
+    private static final int MAP_ENTRY = 32;
+
+    private static final Map<Class<?>, ClassLayout> LAYOUTS = new ConcurrentHashMap<>();
+
+    private record ClassLayout(long shallowSize, Field[] references) {}
+
+    private ModelSizeEstimator() {}
+
+    static long estimate(Object... roots) {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        for (Object root : roots) {
+            if (root != null) pending.push(root);
+        }
+
+        long total = 0;
+        while (!pending.isEmpty()) {
+            Object object = pending.pop();
+            if (!visited.add(object)) continue;
+            Class<?> type = object.getClass();
+
+            if (type.isArray()) {
+                total += arraySize(object, pending);
+            } else if (isJdk(type)) {
+                total += jdkSize(object, pending);
+            } else {
+                ClassLayout layout = LAYOUTS.computeIfAbsent(type, ModelSizeEstimator::layoutOf);
+                total += layout.shallowSize();
+                for (Field field : layout.references()) {
+                    try {
+                        Object value = field.get(object);
+                        if (value != null && !skip(value)) pending.push(value);
+                    } catch (IllegalAccessException e) {
+                        // Campo inaccesible: se cuenta solo la referencia
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    private static long arraySize(Object array, Deque<Object> pending) {
+        Class<?> component = array.getClass().getComponentType();
+        int length = Array.getLength(array);
+        if (component.isPrimitive()) {
+            return align(ARRAY_HEADER + (long) length * primitiveSize(component));
+        }
+        Object[] elements = (Object[]) array;
+        for (Object element : elements) {
+            if (element != null && !skip(element)) pending.push(element);
+        }
+        return align(ARRAY_HEADER + (long) length * REFERENCE);
+    }
+
+    private static long jdkSize(Object object, Deque<Object> pending) {
+        if (object instanceof String s) {
+            return align(HEADER + 12) + align(ARRAY_HEADER + s.length());
+        }
+        if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+            return 16;
+        }
+        if (object instanceof Collection<?> collection) {
+            for (Object element : collection) {
+                if (element != null && !skip(element)) pending.push(element);
+            }
+            // Objeto + arreglo/nodos de respaldo (~1 referencia y media por elemento)
+            return 32 + align(ARRAY_HEADER + (long) collection.size() * REFERENCE * 3 / 2);
+        }
+        if (object instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getKey() != null && !skip(entry.getKey())) pending.push(entry.getKey());
+                if (entry.getValue() != null && !skip(entry.getValue())) pending.push(entry.getValue());
+            }
+            return 48 + align(ARRAY_HEADER + (long) map.size() * 2 * REFERENCE) + (long) map.size() * MAP_ENTRY;
+        }
+        if (object instanceof BitSet bits) {
+            return 24 + align(ARRAY_HEADER + (long) (bits.size() / 8));
+        }
+        // Otros objetos del JDK (Random, locks, ...): tamaño pequeño y fijo
+        return 32;
+    }
+
+    private static ClassLayout layoutOf(Class<?> type) {
+        long size = HEADER;
+        List<Field> references = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) continue;
+                Class<?> fieldType = field.getType();
+                if (fieldType.isPrimitive()) {
+                    size += primitiveSize(fieldType);
+                } else {
+                    size += REFERENCE;
+                    try {
+                        field.setAccessible(true);
+                        references.add(field);
+                    } catch (RuntimeException e) {
+                        // Clase de un módulo cerrado: se cuenta solo la referencia
+                    }
+                }
+            }
+        }
+        return new ClassLayout(align(size), references.toArray(new Field[0]));
+    }
+
+    // Objetos compartidos por toda la JVM: no pertenecen al modelo
+    private static boolean skip(Object value) {
+        return value instanceof Class<?> || value instanceof ClassLoader || value instanceof Thread
+                || value instanceof Enum<?>;
+    }
+
+    private static boolean isJdk(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.")
+                || name.startsWith("sun.");
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,48 @@
+package com.cartagena.segura.backend.service;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Almacenamiento compartido de modelos (clasificador serializado + dataset ARFF).
+ * Cada modelo guardado tiene una versión derivada de su contenido, así que dos nodos
+ * con la misma versión sirven exactamente el mismo clasificador.
+ *
+ * Implementaciones: filesystem (ml.models.directory, local o volumen compartido) y gridfs (Mongo).
+ */
+public interface ModelStore {
+
+    record StoredModel(String name, String version, byte[] model, byte[] dataset) {}
+
+    /**
+     * Guarda el modelo y retorna su versión. Si dataset es null se conserva el dataset anterior.
+     */
+    String save(String name, byte[] model, byte[] dataset) throws IOException;
+
+    Optional<StoredModel> load(String name) throws IOException;
+
+    /**
+     * Solo el dataset (para reentrenar o ajustar hiperparámetros sin deserializar el modelo).
+     */
+    Optional<byte[]> loadDataset(String name) throws IOException;
+
+    /**
+     * Nombre -> versión de todos los modelos guardados.
+     */
+    Map<String, String> listVersions() throws IOException;
+
+    void delete(String name) throws IOException;
+
+    static String versionOf(byte[] model) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(model);
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.ModelChangeEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Mantiene los modelos de este nodo al día con el almacén compartido.
+ *
+ * Los avisos de otros nodos se aplican en un hilo propio (recarga en caliente: el modelo
+ * anterior sigue sirviendo hasta que el nuevo está listo). Como pub/sub puede perder
+ * mensajes, una reconciliación periódica compara las versiones con el almacén.
+ */
+@Slf4j
+@Service
+public class ModelSyncService {
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    @Autowired
+    private ModelStore modelStore;
+
+    @Autowired
+    private ModelChangeNotifier modelChangeNotifier;
+
+    private ExecutorService reloader;
+    // Modelos con recarga pendiente: varios avisos seguidos se aplican una sola vez
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        reloader = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ml-model-sync");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdownNow();
+    }
+
+    @EventListener
+    public void onModelChange(ModelChangeEvent event) {
+        if (modelChangeNotifier.nodeId().equals(event.getNodeId())) {
+            return;
+        }
+        log.info("Cambio de modelo en otro nodo: {} {} ({})", event.getType(), event.getModelName(), event.getVersion());
+        if (event.getType() == ModelChangeEvent.Type.DELETED) {
+            reloader.execute(() -> wekaService.unloadModel(event.getModelName()));
+        } else {
+            scheduleReload(event.getModelName(), event.getVersion());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ml.models.sync-interval-ms:30000}",
+            initialDelayString = "${ml.models.sync-interval-ms:30000}")
+    public void reconcile() {
+        try {
+            Map<String, String> stored = modelStore.listVersions();
+            stored.forEach(this::scheduleReload);
+            for (String loaded : wekaService.getLoadedModelNames()) {
+                if (!stored.containsKey(loaded)) {
+                    reloader.execute(() -> unloadIfDeleted(loaded));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("No se pudo reconciliar con el almacén de modelos: {}", e.getMessage());
+        }
+    }
+
+    // Se vuelve a consultar: el modelo pudo guardarse después de listar el almacén
+    private void unloadIfDeleted(String modelName) {
+        try {
+            if (!modelStore.listVersions().containsKey(modelName)) {
+                wekaService.unloadModel(modelName);
+            }
+        } catch (Exception e) {
+            log.warn("No se pudo verificar {} en el almacén: {}", modelName, e.getMessage());
+        }
+    }
+
+    private void scheduleReload(String modelName, String version) {
+        if (version != null && version.equals(wekaService.getStoreVersion(modelName))) {
+            return;
+        }
+        // Descargado por presupuesto: al volver a usarlo se carga la última versión del almacén
+        if (wekaService.isEvicted(modelName)) {
+            return;
+        }
+        if (!pending.add(modelName)) {
+            return;
+        }
+        reloader.execute(() -> {
+            pending.remove(modelName);
+            try {
+                wekaService.loadModel(modelName);
+                log.info("✓ Modelo recargado desde el almacén: {} ({})", modelName,
+                        wekaService.getStoreVersion(modelName));
+            } catch (Exception e) {
+                log.error("✗ Error recargando {} (se reintenta en la próxima reconciliación): {}",
+                        modelName, e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,200 @@
+package com.cartagena.segura.backend.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Predicción en lote en streaming con NDJSON: una fila de features por línea en la petición
+ * y una PredictionResponse por línea en la respuesta, en el mismo orden.
+ *
+ * Las filas se leen por tramos; cada tramo se predice y serializa en un hilo del pool mientras
+ * se lee el siguiente, y se escribe en cuanto está listo. Como hay a lo sumo
+ * "pipeline-depth" tramos en vuelo, la memoria no crece con el tamaño del lote.
+ */
+@Slf4j
+@Service
+public class NdjsonBatchService {
+
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private static final TypeReference<Map<String, Object>> ROW = new TypeReference<>() {};
+    private static final byte NEWLINE = '\n';
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Hilos para predecir tramos (0 = núcleos - 1)
+    @Value("${ml.batch.stream-threads:0}")
+    private int threads;
+
+    @Value("${ml.batch.stream-chunk-size:500}")
+    private int chunkSize;
+
+    // Tramos en vuelo por petición (leídos y aún no escritos)
+    @Value("${ml.batch.stream-pipeline-depth:4}")
+    private int pipelineDepth;
+
+    private ThreadPoolExecutor scorers;
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger counter = new AtomicInteger();
+        scorers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "ml-ndjson-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scorers.shutdownNow();
+    }
+
+    /**
+     * Resuelve el modelo antes de empezar a responder (un modelo inexistente sigue siendo un 400).
+     * El modelo queda fijado para todo el lote aunque mientras tanto se recargue.
+     */
+    public Scoring open(String modelName, InputStream body) {
+        String name = modelName != null && !modelName.isBlank() ? modelName : wekaService.getActiveModelName();
+        AdvancedWekaService.ModelWrapper model = wekaService.getModelWrapper(name);
+        if (model == null) {
+            throw new IllegalArgumentException("Modelo no encontrado: " + name);
+        }
+        return new Scoring(name, model, body);
+    }
+
+    public final class Scoring {
+        private final String modelName;
+        private final AdvancedWekaService.ModelWrapper model;
+        private final InputStream in;
+        private volatile long rowsRead;
+
+        private Scoring(String modelName, AdvancedWekaService.ModelWrapper model, InputStream in) {
+            this.modelName = modelName;
+            this.model = model;
+            this.in = in;
+        }
+
+        /** Filas leídas hasta ahora (también si el lote terminó con error). */
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            long start = System.currentTimeMillis();
+
+            try (JsonParser parser = objectMapper.getFactory().createParser(in);
+                 MappingIterator<Map<String, Object>> rows = objectMapper.readerFor(ROW).readValues(parser)) {
+                boolean more = true;
+                while (more) {
+                    List<Map<String, Object>> chunk = new ArrayList<>(chunkSize);
+                    String parseError = null;
+                    try {
+                        while (chunk.size() < chunkSize && rows.hasNextValue()) {
+                            try {
+                                chunk.add(rows.nextValue());
+                            } catch (JsonMappingException e) {
+                                // JSON válido pero no es un objeto: falla solo esa fila
+                                chunk.add(null);
+                            }
+                        }
+                    } catch (JsonProcessingException e) {
+                        parseError = "JSON inválido en la fila " + (rowsRead + chunk.size()) + ": "
+                                + e.getOriginalMessage();
+                    }
+                    more = parseError == null && chunk.size() == chunkSize;
+
+                    if (!chunk.isEmpty()) {
+                        long first = rowsRead;
+                        rowsRead += chunk.size();
+                        inFlight.add(scorers.submit(() -> score(chunk, first)));
+                    }
+                    // Escribe lo que ya esté listo; solo espera si la tubería está llena
+                    while (!inFlight.isEmpty()
+                            && (inFlight.size() >= pipelineDepth || inFlight.peek().isDone())) {
+                        out.write(take(inFlight.poll()));
+                        out.flush();
+                    }
+                    if (parseError != null) {
+                        while (!inFlight.isEmpty()) out.write(take(inFlight.poll()));
+                        out.write(errorLine(rowsRead, parseError));
+                        log.warn("Lote NDJSON interrumpido: {}", parseError);
+                    }
+                }
+                while (!inFlight.isEmpty()) {
+                    out.write(take(inFlight.poll()));
+                }
+                out.flush();
+                log.info("✓ Lote NDJSON con {}: {} filas en {} ms", modelName, rowsRead,
+                        System.currentTimeMillis() - start);
+            } finally {
+                // Cliente desconectado o error: no seguir prediciendo tramos que nadie va a leer
+                inFlight.forEach(future -> future.cancel(true));
+            }
+        }
+
+        private byte[] score(List<Map<String, Object>> chunk, long first) throws IOException {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream(chunk.size() * 160);
+            for (int i = 0; i < chunk.size(); i++) {
+                Map<String, Object> features = chunk.get(i);
+                try {
+                    if (features == null) {
+                        throw new IllegalArgumentException("La fila no es un objeto JSON");
+                    }
+                    lines.write(objectMapper.writeValueAsBytes(wekaService.predict(features, modelName, model)));
+                    lines.write(NEWLINE);
+                } catch (Exception e) {
+                    lines.write(errorLine(first + i, e.getMessage() != null ? e.getMessage() : e.toString()));
+                }
+            }
+            return lines.toByteArray();
+        }
+    }
+
+    private byte[] take(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Lote NDJSON interrumpido", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error prediciendo un tramo del lote", e.getCause());
+        }
+    }
+
+    private byte[] errorLine(long index, String message) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", true);
+        error.put("index", index);
+        error.put("message", message);
+        byte[] json = objectMapper.writeValueAsBytes(error);
+        byte[] line = Arrays.copyOf(json, json.length + 1);
+        line[json.length] = NEWLINE;
+        return line;
+    }
+}
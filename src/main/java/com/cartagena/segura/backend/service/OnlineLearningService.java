@@ -0,0 +1,217 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Instance;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Aprendizaje en línea para modelos que implementan UpdateableClassifier
+ * (NaiveBayesUpdateable, HoeffdingTree).
+ *
+ * Cada modelo tiene una copia de trabajo ("learner") que se actualiza bajo lock;
+ * las predicciones usan siempre un snapshot inmutable publicado en
+ * AdvancedWekaService (copy-on-write), así que nunca leen un modelo a medio actualizar.
+ */
+@Slf4j
+@Service
+public class OnlineLearningService {
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    @Autowired
+    private IncidentTrainingPipeline incidentTrainingPipeline;
+
+    // Modelo que aprende automáticamente de cada incidente creado (vacío = desactivado)
+    @Value("${ml.online.incident-model:}")
+    private String incidentModel;
+
+    private final ConcurrentHashMap<String, Learner> learners = new ConcurrentHashMap<>();
+
+    private static final class Learner {
+        final ReentrantLock lock = new ReentrantLock();
+        // Serializa las publicaciones: copia, reemplazo del modelo servido y "published" van juntos
+        final ReentrantLock publishLock = new ReentrantLock();
+        final Classifier working;
+        // Última versión publicada por este learner; si el modelo servido es otro
+        // (reentrenado, recargado o descargado) el learner está obsoleto
+        volatile AdvancedWekaService.ModelWrapper published;
+        long updateCount;
+        volatile boolean pendingSnapshot;
+        volatile boolean pendingCheckpoint;
+
+        Learner(Classifier working, AdvancedWekaService.ModelWrapper published) {
+            this.working = working;
+            this.published = published;
+            this.updateCount = published.updateCount;
+        }
+    }
+
+    /**
+     * Aprende de filas etiquetadas (la clase va con el nombre del atributo clase)
+     * y publica el nuevo snapshot. Retorna el número de filas usadas.
+     */
+    public int update(String modelName, List<Map<String, Object>> rows) throws Exception {
+        Learner learner = learnerFor(modelName);
+        int used = learn(learner, rows);
+        if (used > 0) {
+            publish(modelName, learner);
+        }
+        return used;
+    }
+
+    @EventListener
+    public void onIncidentChange(IncidentChangeEvent event) {
+        if (incidentModel.isBlank() || event.getType() != IncidentChangeEvent.Type.CREATED
+                || event.getIncident() == null || event.getIncident().getType() == null) {
+            return;
+        }
+        try {
+            Map<String, Object> row = incidentTrainingPipeline.featuresOf(event.getIncident());
+            row.put(IncidentTrainingPipeline.ATTR_TYPE, event.getIncident().getType().trim());
+
+            // El snapshot se publica en el próximo flush para no copiar el modelo por cada incidente
+            Learner learner = learnerFor(incidentModel);
+            learn(learner, List.of(row));
+        } catch (Exception e) {
+            // Nunca romper la creación del incidente
+            log.warn("No se pudo actualizar en línea '{}': {}", incidentModel, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ml.online.publish-interval-ms:1000}")
+    public void flushSnapshots() {
+        learners.forEach((name, learner) -> {
+            if (learner.pendingSnapshot) {
+                try {
+                    publish(name, learner);
+                } catch (Exception e) {
+                    log.error("✗ Error publicando snapshot de {}", name, e);
+                }
+            }
+        });
+    }
+
+    // Checkpoint a disco del último snapshot publicado (inmutable: no requiere lock)
+    @Scheduled(fixedDelayString = "${ml.online.checkpoint-interval-ms:60000}")
+    public void checkpoint() {
+        learners.forEach((name, learner) -> {
+            if (!learner.pendingCheckpoint || learner.pendingSnapshot) return;
+            learner.pendingCheckpoint = false;
+            try {
+                wekaService.saveClassifier(name, learner.published);
+                log.info("✓ Checkpoint en línea de {} ({} actualizaciones)", name, learner.updateCount);
+            } catch (Exception e) {
+                learner.pendingCheckpoint = true;
+                log.error("✗ Error en checkpoint de {}", name, e);
+            }
+        });
+    }
+
+    public void forget(String modelName) {
+        learners.remove(modelName);
+    }
+
+    private Learner learnerFor(String modelName) throws Exception {
+        AdvancedWekaService.ModelWrapper current = wekaService.getModelWrapper(modelName);
+        if (current == null) {
+            throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+        }
+        if (!(current.classifier instanceof UpdateableClassifier)) {
+            throw new IllegalArgumentException("El modelo " + modelName + " (" + current.algorithm
+                    + ") no admite aprendizaje en línea. Use NaiveBayesUpdateable o HoeffdingTree");
+        }
+
+        Learner learner = learners.get(modelName);
+        if (learner != null && learner.published == current) {
+            return learner;
+        }
+        synchronized (learners) {
+            learner = learners.get(modelName);
+            if (learner != null) {
+                // Con el lock de publicación el modelo servido y "published" no están a medio cambiar
+                learner.publishLock.lock();
+                try {
+                    current = wekaService.getModelWrapper(modelName);
+                    if (learner.published == current) return learner;
+                } finally {
+                    learner.publishLock.unlock();
+                }
+            } else {
+                current = wekaService.getModelWrapper(modelName);
+            }
+            if (current == null) {
+                throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+            }
+            // Copia de trabajo: el clasificador servido no se toca nunca
+            learner = new Learner(AbstractClassifier.makeCopy(current.classifier), current);
+            learners.put(modelName, learner);
+            return learner;
+        }
+    }
+
+    private int learn(Learner learner, List<Map<String, Object>> rows) throws Exception {
+        int used = 0;
+        learner.lock.lock();
+        try {
+            UpdateableClassifier updateable = (UpdateableClassifier) learner.working;
+            for (Map<String, Object> row : rows) {
+                Instance instance = wekaService.createLabelledInstance(row, learner.published.dataStructure);
+                if (instance.classIsMissing()) continue;
+                updateable.updateClassifier(instance);
+                used++;
+            }
+            learner.updateCount += used;
+            if (used > 0) {
+                learner.pendingSnapshot = true;
+                learner.pendingCheckpoint = true;
+            }
+        } finally {
+            learner.lock.unlock();
+        }
+        return used;
+    }
+
+    /**
+     * Publica una copia del learner. Dos publicaciones del mismo learner (update y flush) no
+     * se cruzan: si el reemplazo falla es porque el modelo servido no es uno que este learner
+     * publicó (reentrenado, recargado o descargado), y solo entonces el learner se descarta.
+     */
+    private void publish(String modelName, Learner learner) throws Exception {
+        learner.publishLock.lock();
+        try {
+            Classifier snapshot;
+            long updates;
+            learner.lock.lock();
+            try {
+                snapshot = AbstractClassifier.makeCopy(learner.working);
+                updates = learner.updateCount;
+                learner.pendingSnapshot = false;
+            } finally {
+                learner.lock.unlock();
+            }
+
+            AdvancedWekaService.ModelWrapper published =
+                    wekaService.publishSnapshot(modelName, learner.published, snapshot, updates);
+            if (published != null) {
+                learner.published = published;
+            } else {
+                learners.remove(modelName, learner);
+            }
+        } finally {
+            learner.publishLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.ModelChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Notificación entre nodos con Redis pub/sub. Pub/sub no guarda mensajes: un nodo caído
+ * o desconectado se pone al día con la reconciliación periódica de ModelSyncService.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "ml.models.notifier", havingValue = "redis")
+public class RedisModelChangeNotifier implements ModelChangeNotifier {
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${ml.models.channel:ml:models}")
+    private String channel;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private RedisMessageListenerContainer container;
+
+    @PostConstruct
+    public void init() {
+        // Contenedor propio (no bean) para no interferir con otras configuraciones de Redis
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((message, pattern) -> {
+            try {
+                ModelChangeEvent event = objectMapper.readValue(
+                        new String(message.getBody(), StandardCharsets.UTF_8), ModelChangeEvent.class);
+                eventPublisher.publishEvent(event);
+            } catch (Exception e) {
+                log.warn("Mensaje de modelos inválido: {}", e.getMessage());
+            }
+        }, new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        container.start();
+        log.info("✓ Notificación de modelos por Redis: canal {} (nodo {})", channel, nodeId);
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        container.destroy();
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ModelChangeEvent.Type type, String modelName, String version) {
+        try {
+            redisTemplate.convertAndSend(channel,
+                    objectMapper.writeValueAsString(new ModelChangeEvent(type, modelName, version, nodeId)));
+        } catch (Exception e) {
+            // El resto de nodos lo verá en la próxima reconciliación
+            log.warn("No se pudo notificar el cambio de {}: {}", modelName, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché compartida en Redis para despliegues con varios nodos: una invalidación
+ * (registro, borrado o cambio de rol) se ve en todos los nodos a la vez.
+ * Si Redis falla se cae a la base de datos (se cuenta como miss).
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "users.cache.type", havingValue = "redis")
+public class RedisUserCache implements UserCache {
+
+    private static final String KEY_PREFIX = "users:principal:";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${users.cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    @Override
+    public Optional<User> get(String username) {
+        try {
+            String value = redisTemplate.opsForValue().get(KEY_PREFIX + username);
+            if (value != null) {
+                hits.increment();
+                return Optional.of(decode(username, value));
+            }
+        } catch (Exception e) {
+            errors.increment();
+            log.debug("Redis no disponible para caché de usuarios: {}", e.getMessage());
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    @Override
+    public void put(User user) {
+        if (ttlSeconds <= 0) return;
+        try {
+            redisTemplate.opsForValue().set(KEY_PREFIX + user.getUsername(), encode(user),
+                    Duration.ofSeconds(ttlSeconds));
+        } catch (Exception e) {
+            errors.increment();
+            log.debug("No se pudo cachear usuario en Redis: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void evict(String username) {
+        if (username == null) return;
+        try {
+            redisTemplate.delete(KEY_PREFIX + username);
+        } catch (Exception e) {
+            errors.increment();
+            log.warn("No se pudo invalidar usuario {} en Redis: {}", username, e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "redis");
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("errors", errors.sum());
+        return stats;
+    }
+
+    // Formato compacto "id|role": el username va en la clave
+    private static String encode(User user) {
+        return user.getId() + "|" + user.getRole();
+    }
+
+    private static User decode(String username, String value) {
+        int sep = value.indexOf('|');
+        User user = new User(username, null, value.substring(sep + 1));
+        String id = value.substring(0, sep);
+        user.setId("null".equals(id) ? null : Long.parseLong(id));
+        return user;
+    }
+}
@@ -0,0 +1,92 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.model.RefreshToken;
+import com.cartagena.segura.backend.model.User;
+import com.cartagena.segura.backend.repository.RefreshTokenRepository;
+import com.cartagena.segura.backend.repository.UserRepository;
+import com.cartagena.segura.backend.security.JwtUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Refresh tokens opacos con rotación: cada uso entrega uno nuevo y revoca el
+ * anterior. Si un token ya rotado se vuelve a presentar (robo/reuso) se revoca
+ * toda la familia y el usuario debe hacer login otra vez.
+ */
+@Slf4j
+@Service
+public class RefreshTokenService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${jwt.refresh-expiration:604800000}")
+    private long refreshExpirationMs;
+
+    public record Rotation(User user, String refreshToken) {}
+
+    @Transactional
+    public String issue(User user) {
+        return issue(user, UUID.randomUUID().toString());
+    }
+
+    // noRollbackFor: la revocación de la familia debe persistir aunque se rechace la petición
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public Rotation rotate(String rawToken) {
+        RefreshToken current = refreshTokenRepository.findByTokenHash(JwtUtil.sha256(rawToken))
+                .orElseThrow(() -> new BadCredentialsException("Refresh token inválido"));
+
+        if (current.getExpiresAt().isBefore(Instant.now())) {
+            throw new BadCredentialsException("Refresh token vencido");
+        }
+
+        if (refreshTokenRepository.revokeIfActive(current.getId()) == 0) {
+            refreshTokenRepository.revokeFamily(current.getFamilyId());
+            log.warn("Reuso de refresh token detectado (usuario {}): familia revocada", current.getUserId());
+            throw new BadCredentialsException("Refresh token reutilizado");
+        }
+
+        // Se relee el usuario: un cambio de rol o un borrado se refleja en la rotación
+        User user = userRepository.findById(current.getUserId())
+                .orElseThrow(() -> new BadCredentialsException("Usuario no encontrado"));
+
+        return new Rotation(user, issue(user, current.getFamilyId()));
+    }
+
+    @Transactional
+    public void revoke(String rawToken) {
+        refreshTokenRepository.findByTokenHash(JwtUtil.sha256(rawToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId()));
+    }
+
+    @Transactional
+    public void revokeAllForUser(Long userId) {
+        refreshTokenRepository.revokeAllForUser(userId);
+    }
+
+    private String issue(User user, String familyId) {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String rawToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        Instant now = Instant.now();
+        refreshTokenRepository.deleteExpiredForUser(user.getId(), now);
+        refreshTokenRepository.save(new RefreshToken(JwtUtil.sha256(rawToken), user.getId(), familyId,
+                now.plusMillis(refreshExpirationMs)));
+        return rawToken;
+    }
+}
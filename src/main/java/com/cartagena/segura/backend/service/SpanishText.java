@@ -0,0 +1,107 @@
+package com.cartagena.segura.backend.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Análisis de texto en español para búsqueda: tokeniza, pasa a minúsculas, quita tildes
+ * (á→a, ñ→n, ü→u), descarta stopwords y reduce plurales y género con un stemmer ligero
+ * (reglas del SpanishLightStemmer de Lucene: "choques"→"choqu", "motos"→"mot", "luces"→"luz").
+ * Índice y consultas pasan por aquí, así que "Colisión" encuentra "colisiones".
+ */
+final class SpanishText {
+
+    private static final Set<String> STOPWORDS = Set.of(
+            "de", "la", "que", "el", "en", "y", "a", "los", "del", "se", "las", "por", "un", "para",
+            "con", "no", "una", "su", "al", "lo", "como", "mas", "pero", "sus", "le", "ya", "o", "u",
+            "e", "este", "esta", "estos", "estas", "ese", "esa", "eso", "esto", "si", "porque",
+            "entre", "cuando", "muy", "sin", "sobre", "tambien", "me", "hasta", "hay", "donde",
+            "quien", "desde", "nos", "durante", "les", "ni", "contra", "ante", "ellos", "ella",
+            "mi", "antes", "unos", "unas", "yo", "otro", "otra", "otros", "otras", "es",
+            "son", "fue", "era", "estan", "ha", "han", "tan");
+
+    // Callback por token con su posición en el texto original (para resaltar)
+    interface TokenConsumer {
+        void accept(int start, int end, String term);
+    }
+
+    private SpanishText() {}
+
+    /**
+     * Términos indexables del texto, en orden y con repeticiones.
+     */
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        forEachTerm(text, (start, end, term) -> terms.add(term));
+        return terms;
+    }
+
+    /**
+     * Recorre los tokens del texto que producen término (no stopwords).
+     */
+    static void forEachTerm(String text, TokenConsumer consumer) {
+        if (text == null) return;
+        int length = text.length();
+        int i = 0;
+        StringBuilder token = new StringBuilder();
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            int start = i;
+            token.setLength(0);
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                token.append(fold(text.charAt(i)));
+                i++;
+            }
+            if (token.isEmpty()) continue;
+            String term = normalize(token);
+            if (term != null) consumer.accept(start, i, term);
+        }
+    }
+
+    private static String normalize(StringBuilder token) {
+        if (token.length() == 1 && !Character.isDigit(token.charAt(0))) return null;
+        String folded = token.toString();
+        if (STOPWORDS.contains(folded)) return null;
+        return stem(folded);
+    }
+
+    // Reglas del SpanishLightStemmer de Lucene sobre el texto ya sin tildes. Lucene no toca
+    // palabras de 4 letras, pero entonces "moto" y "motos" no coinciden: aquí sí se reducen
+    static String stem(String word) {
+        int len = word.length();
+        if (len < 4) return word;
+        char last = word.charAt(len - 1);
+        if (last == 'o' || last == 'a' || last == 'e') {
+            return word.substring(0, len - 1);
+        }
+        if (last == 's') {
+            char c2 = word.charAt(len - 2);
+            char c3 = word.charAt(len - 3);
+            if (c2 == 'e' && c3 == 's' && word.charAt(len - 4) == 'e') {
+                return word.substring(0, len - 2);
+            }
+            if (c2 == 'e' && c3 == 'c') {
+                return word.substring(0, len - 3) + 'z';
+            }
+            if (c2 == 'o' || c2 == 'a' || c2 == 'e') {
+                return word.substring(0, len - 2);
+            }
+        }
+        return word;
+    }
+
+    static char fold(char c) {
+        c = Character.toLowerCase(c);
+        return switch (c) {
+            case 'á', 'à', 'ä', 'â' -> 'a';
+            case 'é', 'è', 'ë', 'ê' -> 'e';
+            case 'í', 'ì', 'ï', 'î' -> 'i';
+            case 'ó', 'ò', 'ö', 'ô' -> 'o';
+            case 'ú', 'ù', 'ü', 'û' -> 'u';
+            case 'ñ' -> 'n';
+            case 'ç' -> 'c';
+            default -> c;
+        };
+    }
+}
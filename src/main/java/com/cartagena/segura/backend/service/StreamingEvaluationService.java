@@ -0,0 +1,580 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.EvaluationResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.*;
+import weka.core.converters.AbstractFileLoader;
+import weka.core.converters.ArffLoader;
+import weka.core.converters.CSVLoader;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluación de modelos leyendo el archivo de prueba (ARFF o CSV) fila a fila,
+ * sin cargarlo completo en memoria.
+ *
+ * Las filas se agrupan en bloques que se evalúan en paralelo; cada bloque produce una
+ * matriz de confusión parcial que se suma al total, así que el progreso y las métricas
+ * parciales se pueden consultar mientras corre. Con prequential=true (solo modelos
+ * UpdateableClassifier) cada fila se evalúa y luego se aprende, en orden, sobre una copia.
+ */
+@Slf4j
+@Service
+public class StreamingEvaluationService {
+
+    @Autowired
+    private AdvancedWekaService wekaService;
+
+    // 0 = número de núcleos
+    @Value("${ml.evaluation.threads:0}")
+    private int threads;
+
+    @Value("${ml.evaluation.chunk-size:5000}")
+    private int chunkSize;
+
+    @Value("${ml.evaluation.max-concurrent-jobs:2}")
+    private int maxConcurrentJobs;
+
+    @Value("${ml.evaluation.max-retained-jobs:50}")
+    private int maxRetainedJobs;
+
+    private ThreadPoolExecutor workers;
+    private ThreadPoolExecutor jobRunner;
+    private final ConcurrentHashMap<String, EvaluationJob> jobs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        // Cola sin límite: cada trabajo limita sus bloques en vuelo con un semáforo
+        workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("ml-eval-"));
+        jobRunner = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxConcurrentJobs), daemonThreads("ml-eval-job-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("✓ Evaluación en streaming: {} hilos, bloques de {}", poolSize, chunkSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Evalúa de forma síncrona (el hilo actual lee el archivo).
+     */
+    public EvaluationResponse evaluate(String modelName, File testFile, boolean prequential) throws Exception {
+        EvaluationJob job = register(modelName, testFile, prequential);
+        run(job, testFile);
+        if (job.error != null) {
+            throw new IllegalStateException(job.error);
+        }
+        return job.result;
+    }
+
+    /**
+     * Lanza la evaluación en segundo plano y retorna el id del trabajo.
+     * Si deleteWhenDone, el archivo se borra al terminar.
+     * Lanza RejectedExecutionException si ya hay demasiados trabajos en curso.
+     */
+    public String submit(String modelName, File testFile, boolean prequential, boolean deleteWhenDone) {
+        EvaluationJob job = register(modelName, testFile, prequential);
+        try {
+            jobRunner.execute(() -> {
+                try {
+                    run(job, testFile);
+                } finally {
+                    if (deleteWhenDone) testFile.delete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw e;
+        }
+        return job.id;
+    }
+
+    /**
+     * Progreso y métricas (parciales o finales) del trabajo, o null si no existe.
+     */
+    public Map<String, Object> getStatus(String jobId) {
+        EvaluationJob job = jobs.get(jobId);
+        return job != null ? job.toStatus() : null;
+    }
+
+    private EvaluationJob register(String modelName, File testFile, boolean prequential) {
+        AdvancedWekaService.ModelWrapper model = wekaService.getModelWrapper(modelName);
+        if (model == null) {
+            throw new IllegalArgumentException("Modelo no encontrado: " + modelName);
+        }
+        if (!model.dataStructure.classAttribute().isNominal()) {
+            throw new IllegalArgumentException("Solo se pueden evaluar modelos de clasificación (clase nominal)");
+        }
+        if (prequential && !(model.classifier instanceof UpdateableClassifier)) {
+            throw new IllegalArgumentException("La evaluación prequential requiere un modelo actualizable "
+                    + "(NaiveBayesUpdateable o HoeffdingTree)");
+        }
+
+        evictFinishedJobs();
+        EvaluationJob job = new EvaluationJob(UUID.randomUUID().toString(), modelName, model,
+                testFile.length(), prequential);
+        jobs.put(job.id, job);
+        return job;
+    }
+
+    private void evictFinishedJobs() {
+        if (jobs.size() < maxRetainedJobs) return;
+        jobs.values().stream()
+                .filter(j -> j.finishedAt > 0)
+                .sorted(Comparator.comparingLong(j -> j.finishedAt))
+                .limit(jobs.size() - maxRetainedJobs + 1)
+                .forEach(j -> jobs.remove(j.id));
+    }
+
+    private void run(EvaluationJob job, File testFile) {
+        log.info("Evaluación en streaming {}: modelo={}, archivo={} ({} bytes)",
+                job.id, job.modelName, testFile.getName(), job.totalBytes);
+        try (InputStream in = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(testFile.toPath())), job.bytesRead)) {
+            AbstractFileLoader loader;
+            if (testFile.getName().toLowerCase().endsWith(".csv")) {
+                // Todo como string: los nominales del CSV no se conocen de antemano y se
+                // convierten a los valores del modelo en RowMapper
+                CSVLoader csv = new CSVLoader();
+                csv.setStringAttributes("first-last");
+                loader = csv;
+            } else {
+                loader = new ArffLoader();
+            }
+            loader.setSource(in);
+            Instances structure = loader.getStructure();
+            RowMapper mapper = new RowMapper(structure, job.model.dataStructure);
+
+            if (job.prequential) {
+                runPrequential(job, loader, structure, mapper);
+            } else {
+                runParallel(job, loader, structure, mapper);
+            }
+
+            if (job.error == null) {
+                job.result = job.snapshot().toResponse(job.modelName, job.model.dataStructure.classAttribute());
+                log.info("✓ Evaluación {} completada: {} instancias en {} ms",
+                        job.id, job.result.getNumInstances(), System.currentTimeMillis() - job.startedAt);
+            }
+        } catch (Exception e) {
+            log.error("✗ Error en evaluación {}", job.id, e);
+            job.fail(e);
+        } finally {
+            job.finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    private void runParallel(EvaluationJob job, AbstractFileLoader loader, Instances structure,
+                             RowMapper mapper) throws Exception {
+        int parallelism = workers.getMaximumPoolSize();
+        Semaphore inFlight = new Semaphore(parallelism);
+        // Copias del clasificador: no todos los clasificadores de Weka son seguros entre hilos
+        BlockingQueue<Classifier> copies = new LinkedBlockingQueue<>();
+        AtomicInteger created = new AtomicInteger();
+
+        List<double[]> chunk = new ArrayList<>(chunkSize);
+        try {
+            Instance row;
+            while (job.error == null && (row = loader.getNextInstance(structure)) != null) {
+                double[] values = mapper.map(row);
+                if (values == null) {
+                    job.skipped.incrementAndGet();
+                    continue;
+                }
+                chunk.add(values);
+                if (chunk.size() >= chunkSize) {
+                    dispatch(job, chunk, inFlight, copies, created, parallelism);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty() && job.error == null) {
+                dispatch(job, chunk, inFlight, copies, created, parallelism);
+            }
+        } finally {
+            // Esperar a que terminen los bloques en vuelo
+            inFlight.acquire(parallelism);
+        }
+    }
+
+    private void dispatch(EvaluationJob job, List<double[]> chunk, Semaphore inFlight,
+                          BlockingQueue<Classifier> copies, AtomicInteger created, int parallelism)
+            throws InterruptedException {
+        inFlight.acquire();
+        try {
+            workers.execute(() -> {
+                Classifier classifier = null;
+                try {
+                    classifier = copies.poll();
+                    if (classifier == null && created.incrementAndGet() <= parallelism) {
+                        classifier = AbstractClassifier.makeCopy(job.model.classifier);
+                    }
+                    ConfusionStats partial = new ConfusionStats(job.model.dataStructure.numClasses());
+                    for (double[] values : chunk) {
+                        partial.record(classifier, toInstance(values, job.model.dataStructure));
+                    }
+                    job.merge(partial);
+                } catch (Throwable t) {
+                    job.fail(t);
+                } finally {
+                    if (classifier != null) copies.offer(classifier);
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    // Prueba-luego-entrena, en orden; el modelo servido no se modifica
+    private void runPrequential(EvaluationJob job, AbstractFileLoader loader, Instances structure,
+                                RowMapper mapper) throws Exception {
+        Classifier classifier = AbstractClassifier.makeCopy(job.model.classifier);
+        UpdateableClassifier updateable = (UpdateableClassifier) classifier;
+        int numClasses = job.model.dataStructure.numClasses();
+
+        ConfusionStats partial = new ConfusionStats(numClasses);
+        Instance row;
+        while ((row = loader.getNextInstance(structure)) != null) {
+            double[] values = mapper.map(row);
+            if (values == null) {
+                job.skipped.incrementAndGet();
+                continue;
+            }
+            Instance instance = toInstance(values, job.model.dataStructure);
+            partial.record(classifier, instance);
+            updateable.updateClassifier(instance);
+
+            if (partial.total() >= chunkSize) {
+                job.merge(partial);
+                partial = new ConfusionStats(numClasses);
+            }
+        }
+        job.merge(partial);
+    }
+
+    private static Instance toInstance(double[] values, Instances header) {
+        Instance instance = new DenseInstance(1.0, values);
+        instance.setDataset(header);
+        return instance;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Convierte filas del archivo de prueba al esquema del modelo por nombre de atributo.
+     * Valores nominales desconocidos quedan como faltantes; filas sin clase se descartan (null).
+     */
+    private static final class RowMapper {
+        private final Instances target;
+        private final int[] sourceIndex;
+
+        RowMapper(Instances source, Instances target) {
+            this.target = target;
+            this.sourceIndex = new int[target.numAttributes()];
+            for (int i = 0; i < target.numAttributes(); i++) {
+                Attribute attr = source.attribute(target.attribute(i).name());
+                sourceIndex[i] = attr != null ? attr.index() : -1;
+            }
+            // Igual que evaluateModel original: si la clase no aparece por nombre, es la última columna
+            int classIndex = target.classIndex();
+            if (sourceIndex[classIndex] < 0) {
+                sourceIndex[classIndex] = source.numAttributes() - 1;
+            }
+        }
+
+        double[] map(Instance row) {
+            double[] values = new double[target.numAttributes()];
+            for (int i = 0; i < values.length; i++) {
+                int s = sourceIndex[i];
+                values[i] = s < 0 || row.isMissing(s) ? Utils.missingValue() : convert(row, s, target.attribute(i));
+            }
+            return Utils.isMissingValue(values[target.classIndex()]) ? null : values;
+        }
+
+        private static double convert(Instance row, int s, Attribute attr) {
+            Attribute sourceAttr = row.attribute(s);
+            if (attr.isNumeric()) {
+                if (sourceAttr.isNumeric()) return row.value(s);
+                try {
+                    return Double.parseDouble(row.stringValue(s).trim());
+                } catch (NumberFormatException e) {
+                    return Utils.missingValue();
+                }
+            }
+
+            String text;
+            if (sourceAttr.isNumeric()) {
+                double v = row.value(s);
+                text = v == Math.rint(v) ? String.valueOf((long) v) : String.valueOf(v);
+            } else {
+                text = row.stringValue(s).trim();
+            }
+            int index = attr.indexOfValue(text);
+            return index < 0 ? Utils.missingValue() : index;
+        }
+    }
+
+    /**
+     * Matriz de confusión combinable: los parciales de cada bloque se suman al total.
+     */
+    static final class ConfusionStats {
+        final long[][] matrix;
+        long unclassified;
+
+        ConfusionStats(int numClasses) {
+            this.matrix = new long[numClasses][numClasses];
+        }
+
+        void record(Classifier classifier, Instance instance) throws Exception {
+            double predicted = classifier.classifyInstance(instance);
+            if (Utils.isMissingValue(predicted)) {
+                unclassified++;
+            } else {
+                matrix[(int) instance.classValue()][(int) predicted]++;
+            }
+        }
+
+        void merge(ConfusionStats other) {
+            for (int i = 0; i < matrix.length; i++) {
+                for (int j = 0; j < matrix.length; j++) {
+                    matrix[i][j] += other.matrix[i][j];
+                }
+            }
+            unclassified += other.unclassified;
+        }
+
+        ConfusionStats copy() {
+            ConfusionStats copy = new ConfusionStats(matrix.length);
+            copy.merge(this);
+            return copy;
+        }
+
+        long classified() {
+            long sum = 0;
+            for (long[] row : matrix) for (long v : row) sum += v;
+            return sum;
+        }
+
+        long total() {
+            return classified() + unclassified;
+        }
+
+        double accuracy() {
+            long total = total();
+            if (total == 0) return 0;
+            long correct = 0;
+            for (int i = 0; i < matrix.length; i++) correct += matrix[i][i];
+            return 100.0 * correct / total;
+        }
+
+        // Misma fórmula que weka.classifiers.Evaluation#kappa
+        double kappa() {
+            int n = matrix.length;
+            double[] rows = new double[n];
+            double[] cols = new double[n];
+            double sum = 0;
+            double correct = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    rows[i] += matrix[i][j];
+                    cols[j] += matrix[i][j];
+                    sum += matrix[i][j];
+                }
+                correct += matrix[i][i];
+            }
+            if (sum == 0) return 0;
+            double chance = 0;
+            for (int i = 0; i < n; i++) chance += rows[i] * cols[i];
+            chance /= sum * sum;
+            correct /= sum;
+            return chance < 1 ? (correct - chance) / (1 - chance) : 1;
+        }
+
+        EvaluationResponse toResponse(String modelName, Attribute classAttr) {
+            int n = matrix.length;
+            long classified = classified();
+            long correct = 0;
+            double[] precision = new double[n];
+            double[] recall = new double[n];
+            double[] f1 = new double[n];
+            double weightedPrecision = 0, weightedRecall = 0, weightedF1 = 0;
+
+            for (int i = 0; i < n; i++) {
+                long actual = 0, predicted = 0;
+                for (int j = 0; j < n; j++) {
+                    actual += matrix[i][j];
+                    predicted += matrix[j][i];
+                }
+                correct += matrix[i][i];
+                precision[i] = predicted == 0 ? 0 : (double) matrix[i][i] / predicted;
+                recall[i] = actual == 0 ? 0 : (double) matrix[i][i] / actual;
+                f1[i] = precision[i] + recall[i] == 0 ? 0
+                        : 2 * precision[i] * recall[i] / (precision[i] + recall[i]);
+                if (classified > 0) {
+                    double weight = (double) actual / classified;
+                    weightedPrecision += weight * precision[i];
+                    weightedRecall += weight * recall[i];
+                    weightedF1 += weight * f1[i];
+                }
+            }
+
+            long total = total();
+            double accuracy = accuracy();
+            StringBuilder summary = new StringBuilder()
+                    .append(String.format("Correctly Classified Instances     %10d     %8.4f %%%n", correct, accuracy))
+                    .append(String.format("Incorrectly Classified Instances   %10d     %8.4f %%%n", classified - correct,
+                            total == 0 ? 0 : 100.0 * (classified - correct) / total))
+                    .append(String.format("Kappa statistic                    %10.4f%n", kappa()))
+                    .append(String.format("UnClassified Instances             %10d%n", unclassified))
+                    .append(String.format("Total Number of Instances          %10d%n", total));
+
+            StringBuilder confusion = new StringBuilder("=== Confusion Matrix ===\n\n");
+            for (int j = 0; j < n; j++) confusion.append(String.format("%8s", "c" + j));
+            confusion.append("   <-- classified as\n");
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) confusion.append(String.format("%8d", matrix[i][j]));
+                confusion.append(" | c").append(i).append(" = ").append(classAttr.value(i)).append('\n');
+            }
+
+            StringBuilder byClass = new StringBuilder("=== Detailed Accuracy By Class ===\n\n")
+                    .append(String.format("%10s %10s %10s  %s%n", "Precision", "Recall", "F-Measure", "Class"));
+            for (int i = 0; i < n; i++) {
+                byClass.append(String.format("%10.4f %10.4f %10.4f  %s%n",
+                        precision[i], recall[i], f1[i], classAttr.value(i)));
+            }
+            byClass.append(String.format("%10.4f %10.4f %10.4f  %s%n",
+                    weightedPrecision, weightedRecall, weightedF1, "Weighted Avg."));
+
+            EvaluationResponse response = new EvaluationResponse();
+            response.setModelName(modelName);
+            response.setAccuracy(accuracy);
+            response.setKappa(kappa());
+            response.setPrecision(weightedPrecision);
+            response.setRecall(weightedRecall);
+            response.setF1Score(weightedF1);
+            response.setSummary(summary.toString());
+            response.setConfusionMatrix(confusion.toString());
+            response.setDetailedAccuracyByClass(byClass.toString());
+            response.setNumInstances(total);
+            return response;
+        }
+    }
+
+    private static final class EvaluationJob {
+        final String id;
+        final String modelName;
+        // Versión del modelo fijada al inicio: un reentrenamiento no afecta la evaluación en curso
+        final AdvancedWekaService.ModelWrapper model;
+        final long totalBytes;
+        final boolean prequential;
+        final long startedAt = System.currentTimeMillis();
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        private final ConfusionStats totals;
+        volatile String error;
+        volatile EvaluationResponse result;
+        volatile long finishedAt;
+
+        EvaluationJob(String id, String modelName, AdvancedWekaService.ModelWrapper model,
+                      long totalBytes, boolean prequential) {
+            this.id = id;
+            this.modelName = modelName;
+            this.model = model;
+            this.totalBytes = totalBytes;
+            this.prequential = prequential;
+            this.totals = new ConfusionStats(model.dataStructure.numClasses());
+        }
+
+        synchronized void merge(ConfusionStats partial) {
+            totals.merge(partial);
+        }
+
+        synchronized ConfusionStats snapshot() {
+            return totals.copy();
+        }
+
+        void fail(Throwable t) {
+            if (error == null) {
+                error = t.getMessage() != null ? t.getMessage() : t.getClass().getSimpleName();
+            }
+        }
+
+        Map<String, Object> toStatus() {
+            ConfusionStats current = snapshot();
+            long now = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("jobId", id);
+            status.put("modelName", modelName);
+            status.put("prequential", prequential);
+            status.put("state", error != null ? "FAILED" : result != null ? "COMPLETED" : "RUNNING");
+            status.put("bytesRead", bytesRead.get());
+            status.put("totalBytes", totalBytes);
+            status.put("progress", totalBytes > 0 ? Math.min(100.0, 100.0 * bytesRead.get() / totalBytes) : 0.0);
+            status.put("instances", current.total());
+            status.put("skipped", skipped.get());
+            status.put("accuracy", current.accuracy());
+            status.put("kappa", current.kappa());
+            status.put("elapsedMs", now - startedAt);
+            if (error != null) status.put("error", error);
+            if (result != null) status.put("result", result);
+            return status;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong count;
+
+        CountingInputStream(InputStream in, AtomicLong count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count.addAndGet(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.model.User;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Caché de principals (usuarios ya resueltos) para el filtro JWT.
+ * Los usuarios se guardan sin el hash de contraseña: el login siempre va a la base de datos.
+ */
+public interface UserCache {
+
+    Optional<User> get(String username);
+
+    void put(User user);
+
+    void evict(String username);
+
+    /** Métricas: hits, misses, hitRate, size, evictions. */
+    Map<String, Object> stats();
+
+    /** Copia del usuario apta para cachear (sin contraseña). */
+    static User principalOf(User user) {
+        User principal = new User(user.getUsername(), null, user.getRole());
+        principal.setId(user.getId());
+        return principal;
+    }
+}
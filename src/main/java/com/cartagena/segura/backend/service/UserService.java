@@ -1,19 +1,25 @@
 package com.cartagena.segura.backend.service;
 
+import com.cartagena.segura.backend.dto.UserPage;
+import com.cartagena.segura.backend.dto.UserSummary;
 import com.cartagena.segura.backend.model.User;
 import com.cartagena.segura.backend.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.*;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
 
     @Autowired
     private UserRepository userRepository;
@@ -21,28 +27,113 @@ public class UserService implements UserDetailsService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
-    // ✅ Requerido por Spring Security
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    private static final Set<String> ROLES = Set.of("USER", "ADMIN");
+
+    // ✅ Requerido por Spring Security (login: siempre contra la base de datos)
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         return userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado: " + username));
     }
 
+    // ✅ Rehash transparente: Spring Security lo llama tras un login exitoso cuando el
+    //    hash guardado usa un costo BCrypt menor al configurado (security.bcrypt.strength)
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newEncodedPassword) {
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado: " + userDetails.getUsername()));
+        user.setPassword(newEncodedPassword);
+        User saved = userRepository.save(user);
+        userCache.evict(saved.getUsername());
+        return saved;
+    }
+
+    // ✅ Usado por el filtro JWT: evita la consulta a MySQL en cada petición
+    public UserDetails loadPrincipal(String username) throws UsernameNotFoundException {
+        Optional<User> cached = userCache.get(username);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado: " + username));
+        userCache.put(user);
+        return UserCache.principalOf(user);
+    }
+
     // ✅ Métodos CRUD usados por el UserController
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+
+    // Listado keyset sobre id: pide size + 1 filas para saber si hay más sin COUNT(*)
+    public UserPage listUsersByCursor(Long afterId, int size, boolean descending) {
+        Limit limit = Limit.of(size + 1);
+        List<UserSummary> rows = descending
+                ? userRepository.findByIdLessThanOrderByIdDesc(afterId != null ? afterId : Long.MAX_VALUE, limit)
+                : userRepository.findByIdGreaterThanOrderByIdAsc(afterId != null ? afterId : 0L, limit);
+
+        boolean hasNext = rows.size() > size;
+        List<UserSummary> content = hasNext ? rows.subList(0, size) : rows;
+        Long nextAfterId = hasNext ? content.get(content.size() - 1).getId() : null;
+        return new UserPage(content, content.size(), hasNext, nextAfterId, null, null);
+    }
+
+    // Listado por página con orden arbitrario; el total solo se calcula si se pide
+    public UserPage listUsersByPage(int page, int size, Sort sort, boolean withCount) {
+        PageRequest pageRequest = PageRequest.of(page, size, sort);
+        if (withCount) {
+            Page<UserSummary> result = userRepository.findPageBy(pageRequest);
+            return new UserPage(result.getContent(), result.getNumberOfElements(), result.hasNext(),
+                    null, page, result.getTotalElements());
+        }
+        Slice<UserSummary> result = userRepository.findSliceBy(pageRequest);
+        return new UserPage(result.getContent(), result.getNumberOfElements(), result.hasNext(),
+                null, page, null);
     }
 
     public Optional<User> getUserById(Long id) {
         return userRepository.findById(id);
     }
 
+    // ✅ Registro público (/api/auth/register, en PasswordHashingPool): el rol y el id del cliente
+    //    se ignoran (todo registro es USER y nuevo); los roles solo se cambian con updateUserRole (ADMIN)
     public User registerUser(User user) {
+        user.setId(null);
+        user.setRole("USER");
         user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userCache.evict(saved.getUsername());
+        return saved;
+    }
+
+    // ✅ Solo USER o ADMIN: otro valor quedaría como una autoridad ROLE_* que nadie revisa.
+    //    Retorna el resumen (sin la contraseña); vacío si el usuario no existe
+    public Optional<UserSummary> updateUserRole(Long id, String role) {
+        String normalized = role != null ? role.trim().toUpperCase() : "";
+        if (!ROLES.contains(normalized)) {
+            throw new IllegalArgumentException("Rol inválido: debe ser USER o ADMIN");
+        }
+        Optional<User> optionalUser = userRepository.findById(id);
+        if (optionalUser.isEmpty()) {
+            return Optional.empty();
+        }
+        User user = optionalUser.get();
+        user.setRole(normalized);
+        User updated = userRepository.save(user);
+        userCache.evict(updated.getUsername());
+        return userRepository.findSummaryById(updated.getId());
     }
 
     public void deleteUser(Long id) {
+        userRepository.findById(id).ifPresent(user -> userCache.evict(user.getUsername()));
+        refreshTokenService.revokeAllForUser(id);
         userRepository.deleteById(id);
     }
+
+    public Map<String, Object> getCacheStats() {
+        return userCache.stats();
+    }
 }
@@ -52,23 +52,64 @@ class AuthService {
         return localStorage.getItem('username') || 'Usuario';
     }
 
-    static setToken(token, username) {
+    static getRefreshToken() {
+        return localStorage.getItem('refreshToken');
+    }
+
+    static setToken(token, username, refreshToken = null) {
         localStorage.setItem('jwtToken', token);
         localStorage.setItem('username', username);
+        if (refreshToken) {
+            localStorage.setItem('refreshToken', refreshToken);
+        }
         Logger.success(`Token guardado para ${username}`);
     }
 
     static clear() {
         localStorage.removeItem('jwtToken');
+        localStorage.removeItem('refreshToken');
         localStorage.removeItem('username');
         Logger.success('Token y usuario eliminados');
     }
 
+    // Renueva el access token con el refresh token (una sola petición aunque fallen varias a la vez)
+    static refreshPromise = null;
+
+    static refresh() {
+        const refreshToken = this.getRefreshToken();
+        if (!refreshToken) return Promise.resolve(false);
+
+        if (!this.refreshPromise) {
+            this.refreshPromise = fetch(`${CONFIG.ENDPOINTS.AUTH}/refresh`, {
+                method: 'POST',
+                headers: { 'Content-Type': 'application/json' },
+                body: JSON.stringify({ refreshToken })
+            })
+                .then(res => res.ok ? res.json() : null)
+                .then(data => {
+                    if (!data?.token) return false;
+                    this.setToken(data.token, this.getUsername(), data.refreshToken);
+                    return true;
+                })
+                .catch(() => false)
+                .finally(() => { this.refreshPromise = null; });
+        }
+        return this.refreshPromise;
+    }
+
     static isAuthenticated() {
         return !!this.getToken();
     }
 
     static logout() {
+        const refreshToken = this.getRefreshToken();
+        if (refreshToken) {
+            fetch(`${CONFIG.ENDPOINTS.AUTH}/logout`, {
+                method: 'POST',
+                headers: { 'Content-Type': 'application/json' },
+                body: JSON.stringify({ refreshToken })
+            }).catch(() => {});
+        }
         this.clear();
         setTimeout(() => {
             window.location.href = 'home.html';
@@ -81,7 +122,7 @@ class AuthService {
 // ====================================================================
 
 class APIClient {
-    static async request(url, options = {}) {
+    static async request(url, options = {}, retried = false) {
         const token = AuthService.getToken();
 
         if (!token && !url.includes('/auth/') && !url.includes('/api/ml/')) {
@@ -121,6 +162,12 @@ class APIClient {
                 signal: controller.signal
             });
 
+            // Access token vencido: intentar renovarlo una vez
+            if ((response.status === 401 || response.status === 403) && !retried
+                && await AuthService.refresh()) {
+                return this.request(url, options, true);
+            }
+
             // Manejo de errores HTTP
             if (response.status === 401 || response.status === 403) {
                 Logger.warn('Token inválido, cerrando sesión');
@@ -189,6 +236,124 @@ class APIClient {
     }
 }
 
+// ====================================================================
+// STREAM DE INCIDENTES (SSE) - CAMBIOS EN TIEMPO REAL
+// ====================================================================
+
+class IncidentStream {
+    static controller = null;
+    static connected = false;
+    static lastEventId = null;
+    static listeners = new Map();
+    static RETRY_MS = 3000;
+
+    // listener(eventName, data) - eventName: ready | reset | created | updated | deleted
+    static subscribe(name, listener) {
+        this.listeners.set(name, listener);
+        this.connect();
+    }
+
+    static isConnected() {
+        return this.connected;
+    }
+
+    // Se usa fetch (y no EventSource) para poder enviar la cabecera Authorization
+    static async connect() {
+        if (this.controller) return;
+
+        const token = AuthService.getToken();
+        if (!token) return;
+
+        this.controller = new AbortController();
+        const headers = {
+            'Authorization': `Bearer ${token}`,
+            'Accept': 'text/event-stream'
+        };
+        if (this.lastEventId) {
+            headers['Last-Event-ID'] = this.lastEventId;
+        }
+
+        try {
+            const response = await fetch(`${CONFIG.ENDPOINTS.INCIDENTS}/stream`, {
+                headers,
+                signal: this.controller.signal
+            });
+
+            if (response.status === 401 || response.status === 403) {
+                if (!(await AuthService.refresh())) {
+                    Logger.warn('Stream no autorizado');
+                    return;
+                }
+                throw new Error('Token renovado');
+            }
+            if (!response.ok || !response.body) {
+                throw new Error(`Error HTTP ${response.status}`);
+            }
+
+            this.connected = true;
+            Logger.success('Stream de incidentes conectado');
+
+            const reader = response.body.getReader();
+            const decoder = new TextDecoder();
+            let buffer = '';
+
+            while (true) {
+                const { done, value } = await reader.read();
+                if (done) break;
+
+                buffer += decoder.decode(value, { stream: true });
+                let index;
+                while ((index = buffer.indexOf('\n\n')) >= 0) {
+                    this.dispatch(buffer.slice(0, index));
+                    buffer = buffer.slice(index + 2);
+                }
+            }
+        } catch (error) {
+            if (error.name === 'AbortError') return;
+            Logger.warn(`Stream de incidentes interrumpido: ${error.message}`);
+        } finally {
+            this.connected = false;
+            this.controller = null;
+        }
+
+        // Reconectar (con Last-Event-ID para no perder cambios)
+        setTimeout(() => this.connect(), this.RETRY_MS);
+    }
+
+    static dispatch(rawEvent) {
+        let eventName = 'message';
+        let data = '';
+
+        rawEvent.split('\n').forEach(line => {
+            if (line.startsWith('id:')) {
+                this.lastEventId = line.slice(3).trim();
+            } else if (line.startsWith('event:')) {
+                eventName = line.slice(6).trim();
+            } else if (line.startsWith('data:')) {
+                data += line.slice(5).trim();
+            }
+        });
+
+        if (!data) return; // heartbeat
+
+        let payload = null;
+        try {
+            payload = JSON.parse(data);
+        } catch (e) {
+            Logger.warn('Evento de stream inválido');
+            return;
+        }
+
+        this.listeners.forEach(listener => listener(eventName, payload));
+    }
+
+    static close() {
+        this.controller?.abort();
+        this.controller = null;
+        this.connected = false;
+    }
+}
+
 // ====================================================================
 // UI HELPERS
 // ====================================================================
@@ -481,9 +646,12 @@ class NavigationManager {
 
 class IncidentManager {
     static currentIncidentId = null;
+    static currentStatus = 'ALL';
+    static incidents = new Map();
 
     static async loadIncidents(status = 'ALL') {
         try {
+            this.currentStatus = status;
             const url = status === 'ALL'
                 ? CONFIG.ENDPOINTS.INCIDENTS
                 : `${CONFIG.ENDPOINTS.INCIDENTS}/status/${status}`;
@@ -491,6 +659,7 @@ class IncidentManager {
             Logger.info(`Cargando incidentes - Status: ${status}`);
             const incidents = await APIClient.get(url);
 
+            this.incidents = new Map(incidents.map(incident => [incident.id, incident]));
             this.renderIncidents(incidents);
             Logger.success(`${incidents.length} incidentes cargados`);
         } catch (error) {
@@ -510,6 +679,33 @@ class IncidentManager {
         }
     }
 
+    // Aplica un cambio recibido por el stream sin recargar la lista completa
+    static applyChange(eventName, change) {
+        if (eventName === 'reset') {
+            this.loadIncidents(this.currentStatus);
+            return;
+        }
+        if (!['created', 'updated', 'deleted'].includes(eventName)) return;
+
+        const incident = change.incident;
+        const matches = incident
+            && (this.currentStatus === 'ALL' || incident.status === this.currentStatus);
+
+        if (eventName === 'deleted' || !matches) {
+            this.incidents.delete(change.incidentId);
+        } else {
+            this.incidents.set(change.incidentId, incident);
+        }
+
+        this.renderIncidents(Array.from(this.incidents.values()));
+    }
+
+    static refreshIfDisconnected() {
+        if (!IncidentStream.isConnected()) {
+            this.loadIncidents(this.currentStatus);
+        }
+    }
+
     static renderIncidents(incidents) {
         const tableBody = document.getElementById('incidentTableBody');
         if (!tableBody) return;
@@ -578,8 +774,8 @@ class IncidentManager {
             // Cambiar a tab de listado
             document.querySelector('[data-bs-target="#list-pane"]')?.click();
 
-            // Recargar tabla
-            this.loadIncidents();
+            // Recargar tabla (si el stream está activo el cambio llega solo)
+            this.refreshIfDisconnected();
         } catch (error) {
             Logger.error('Error al crear incidente', error);
             UIHelper.showToast(`❌ ${error.message}`, 'error');
@@ -597,7 +793,7 @@ class IncidentManager {
             await APIClient.delete(`${CONFIG.ENDPOINTS.INCIDENTS}/${id}`);
             Logger.success(`Incidente ${id} eliminado`);
             UIHelper.showToast('✅ Incidente eliminado', 'success');
-            this.loadIncidents();
+            this.refreshIfDisconnected();
         } catch (error) {
             Logger.error('Error al eliminar incidente', error);
             UIHelper.showToast(`❌ ${error.message}`, 'error');
@@ -638,7 +834,7 @@ class IncidentManager {
             bootstrap.Modal.getInstance(document.getElementById('statusModal'))?.hide();
 
             // Recargar
-            this.loadIncidents();
+            this.refreshIfDisconnected();
         } catch (error) {
             Logger.error('Error al actualizar estado', error);
             UIHelper.showToast(`❌ ${error.message}`, 'error');
@@ -652,11 +848,14 @@ class IncidentManager {
 
 class MapManager {
     static map = null;
+    static markers = new Map();
+    static incidents = new Map();
 
     static async loadIncidentsForMap() {
         try {
             Logger.info('Cargando incidentes para mapa');
             const incidents = await APIClient.get(CONFIG.ENDPOINTS.INCIDENTS);
+            this.incidents = new Map(incidents.map(incident => [incident.id, incident]));
             this.initializeMap(incidents);
         } catch (error) {
             Logger.error('Error al cargar mapa', error);
@@ -686,30 +885,61 @@ class MapManager {
         }).addTo(this.map);
 
         // Agregar marcadores
+        this.markers = new Map();
         let markersAdded = 0;
         incidents.forEach(incident => {
-            if (!incident.location) return;
+            if (this.addMarker(incident)) markersAdded++;
+        });
 
-            const coords = incident.location.split(',');
-            if (coords.length !== 2) return;
+        Logger.success(`${markersAdded} marcadores añadidos al mapa`);
+    }
 
-            const lat = parseFloat(coords[0]);
-            const lon = parseFloat(coords[1]);
+    static addMarker(incident) {
+        if (!incident.location) return false;
 
-            if (isNaN(lat) || isNaN(lon)) return;
+        const coords = incident.location.split(',');
+        if (coords.length !== 2) return false;
 
-            L.marker([lat, lon])
-                .addTo(this.map)
-                .bindPopup(`
-                    <strong>Incidente #${incident.id}</strong><br>
-                    <small>Tipo: ${incident.type}</small><br>
-                    <small>Estado: ${incident.status}</small>
-                `);
+        const lat = parseFloat(coords[0]);
+        const lon = parseFloat(coords[1]);
 
-            markersAdded++;
-        });
+        if (isNaN(lat) || isNaN(lon)) return false;
 
-        Logger.success(`${markersAdded} marcadores añadidos al mapa`);
+        const marker = L.marker([lat, lon])
+            .addTo(this.map)
+            .bindPopup(`
+                <strong>Incidente #${incident.id}</strong><br>
+                <small>Tipo: ${incident.type}</small><br>
+                <small>Estado: ${incident.status}</small>
+            `);
+
+        this.markers.set(incident.id, marker);
+        return true;
+    }
+
+    static removeMarker(id) {
+        this.markers.get(id)?.remove();
+        this.markers.delete(id);
+    }
+
+    // Aplica un cambio recibido por el stream sin recargar el mapa
+    static applyChange(eventName, change) {
+        if (eventName === 'reset') {
+            this.loadIncidentsForMap();
+            return;
+        }
+        if (!this.map || !['created', 'updated', 'deleted'].includes(eventName)) return;
+
+        this.removeMarker(change.incidentId);
+        this.incidents.delete(change.incidentId);
+        if (eventName !== 'deleted' && change.incident) {
+            this.incidents.set(change.incidentId, change.incident);
+            this.addMarker(change.incident);
+        }
+
+        if (typeof this.updateStats === 'function') {
+            this.updateStats(Array.from(this.incidents.values()));
+        }
     }
 }
 
@@ -1074,9 +1304,11 @@ class PageInitializer {
         switch (currentPage) {
             case 'incidents.html':
                 IncidentManager.loadIncidents();
+                IncidentStream.subscribe('incidents', (name, data) => IncidentManager.applyChange(name, data));
                 break;
             case 'map.html':
                 MapManager.loadIncidentsForMap();
+                IncidentStream.subscribe('map', (name, data) => MapManager.applyChange(name, data));
                 break;
             case 'ml.html':
                 MLManager.initialize();
@@ -1149,7 +1381,7 @@ document.addEventListener('DOMContentLoaded', () => {
                 .then(res => res.json())
                 .then(data => {
                     if (data.token) {
-                        AuthService.setToken(data.token, username);
+                        AuthService.setToken(data.token, username, data.refreshToken);
                         Logger.success('Login exitoso');
                         UIHelper.showToast('✅ ¡Bienvenido!', 'success');
                         setTimeout(() => {
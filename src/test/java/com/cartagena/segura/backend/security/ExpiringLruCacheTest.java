@@ -0,0 +1,69 @@
+package com.cartagena.segura.backend.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpiringLruCacheTest {
+
+    private static final long FUTURE = Long.MAX_VALUE;
+
+    @Test
+    void evictsLeastRecentlyUsedWhenFull() {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(3);
+        cache.put("a", 1, FUTURE);
+        cache.put("b", 2, FUTURE);
+        cache.put("c", 3, FUTURE);
+        cache.get("a");
+
+        cache.put("d", 4, FUTURE);
+
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isEqualTo(1);
+        assertThat(cache.get("d")).isEqualTo(4);
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.evictions()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsCachingNewKeysWhenFullOfLiveEntries() {
+        ExpiringLruCache<Integer, Integer> cache = new ExpiringLruCache<>(10_000);
+        for (int i = 0; i < 50_000; i++) {
+            cache.put(i, i, FUTURE);
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(10_000);
+        assertThat(cache.get(49_999)).isEqualTo(49_999);
+        assertThat(cache.get(0)).isNull();
+    }
+
+    @Test
+    void expiredEntriesAreNotReturned() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10);
+        cache.put("old", "x", System.currentTimeMillis() - 1);
+        cache.put("live", "y", System.currentTimeMillis() + 60_000);
+
+        assertThat(cache.get("old")).isNull();
+        assertThat(cache.get("live")).isEqualTo("y");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void removeDropsTheEntry() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10);
+        cache.put("k", "v", FUTURE);
+        assertThat(cache.remove("k")).isEqualTo("v");
+        assertThat(cache.get("k")).isNull();
+        assertThat(cache.evictions()).isZero();
+    }
+
+    @Test
+    void computeIfAbsentKeepsLiveValueAndReplacesExpiredOne() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10);
+        cache.put("old", "x", System.currentTimeMillis() - 1);
+
+        assertThat(cache.computeIfAbsent("k", key -> "v1", FUTURE)).isEqualTo("v1");
+        assertThat(cache.computeIfAbsent("k", key -> "v2", FUTURE)).isEqualTo("v1");
+        assertThat(cache.computeIfAbsent("old", key -> "nuevo", FUTURE)).isEqualTo("nuevo");
+        assertThat(cache.get("old")).isEqualTo("nuevo");
+    }
+}
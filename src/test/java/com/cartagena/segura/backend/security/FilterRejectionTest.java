@@ -0,0 +1,39 @@
+package com.cartagena.segura.backend.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilterRejectionTest {
+
+    @Test
+    void writesStatusRetryAfterAndJsonBody() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        FilterRejection.write(new MockHttpServletRequest(), response, HttpStatus.SERVICE_UNAVAILABLE, 3,
+                "Servicio \"ml\" saturado");
+
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("3");
+        // Sin Origin no hace falta la cabecera CORS
+        assertThat(response.getHeader("Access-Control-Allow-Origin")).isNull();
+        assertThat(response.getContentType()).startsWith("application/json");
+        assertThat(response.getContentAsString())
+                .startsWith("{\"error\":true,\"message\":\"Servicio \\\"ml\\\" saturado\",\"timestamp\":");
+    }
+
+    @Test
+    void allowsAnyOriginWhenTheBrowserSendsOne() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Origin", "http://localhost:3000");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        FilterRejection.write(request, response, HttpStatus.TOO_MANY_REQUESTS, 30, "Cuota agotada");
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("Access-Control-Allow-Origin")).isEqualTo("*");
+    }
+}
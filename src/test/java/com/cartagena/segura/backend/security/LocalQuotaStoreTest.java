@@ -0,0 +1,105 @@
+package com.cartagena.segura.backend.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalQuotaStoreTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    // 10 de ráfaga, 2 tokens por segundo
+    private static final QuotaStore.Limit LIMIT = new QuotaStore.Limit(10, 2);
+
+    private static LocalQuotaStore store(int maxTrackedKeys) {
+        LocalQuotaStore store = new LocalQuotaStore();
+        ReflectionTestUtils.setField(store, "maxTrackedKeys", maxTrackedKeys);
+        store.init();
+        return store;
+    }
+
+    @Test
+    void newBucketStartsFullAndRejectsPastCapacity() {
+        LocalQuotaStore store = store(100);
+        long now = System.nanoTime();
+
+        QuotaStore.Decision first = store.tryConsume("ip:a", LIMIT, 4, false, now);
+        assertThat(first.allowed()).isTrue();
+        assertThat(first.remaining()).isEqualTo(6);
+        assertThat(first.resetSeconds()).isEqualTo(2);
+
+        assertThat(store.tryConsume("ip:a", LIMIT, 6, false, now).remaining()).isZero();
+
+        QuotaStore.Decision rejected = store.tryConsume("ip:a", LIMIT, 3, false, now);
+        assertThat(rejected.allowed()).isFalse();
+        assertThat(rejected.remaining()).isZero();
+        assertThat(rejected.retryAfterSeconds()).isEqualTo(2);
+        assertThat(rejected.resetSeconds()).isEqualTo(5);
+    }
+
+    @Test
+    void refillsAtRateAndNeverAboveCapacity() {
+        LocalQuotaStore store = store(100);
+        long now = System.nanoTime();
+        store.tryConsume("ip:a", LIMIT, 10, false, now);
+
+        assertThat(store.tryConsume("ip:a", LIMIT, 1, false, now + SECOND / 4).allowed()).isFalse();
+        // Medio segundo = 1 token
+        assertThat(store.tryConsume("ip:a", LIMIT, 1, false, now + SECOND / 2).allowed()).isTrue();
+
+        QuotaStore.Decision later = store.tryConsume("ip:a", LIMIT, 1, false, now + 60 * SECOND);
+        assertThat(later.remaining()).isEqualTo(9);
+    }
+
+    @Test
+    void forcedConsumptionLeavesDebtThatBlocksUntilRepaid() {
+        LocalQuotaStore store = store(100);
+        long now = System.nanoTime();
+
+        QuotaStore.Decision charged = store.tryConsume("ip:a", LIMIT, 16, true, now);
+        assertThat(charged.allowed()).isTrue();
+        assertThat(charged.remaining()).isEqualTo(-6);
+        assertThat(charged.resetSeconds()).isEqualTo(8);
+
+        QuotaStore.Decision blocked = store.tryConsume("ip:a", LIMIT, 1, false, now + SECOND);
+        assertThat(blocked.allowed()).isFalse();
+        assertThat(blocked.retryAfterSeconds()).isEqualTo(3);
+
+        assertThat(store.tryConsume("ip:a", LIMIT, 1, false, now + (7 * SECOND) / 2).allowed()).isTrue();
+    }
+
+    @Test
+    void clientsHaveIndependentBuckets() {
+        LocalQuotaStore store = store(100);
+        long now = System.nanoTime();
+        store.tryConsume("ip:a", LIMIT, 10, false, now);
+
+        assertThat(store.tryConsume("ip:b", LIMIT, 10, false, now).allowed()).isTrue();
+    }
+
+    @Test
+    void trackedKeysStayBoundedUnderManyClients() {
+        LocalQuotaStore store = store(1000);
+        long now = System.nanoTime();
+        for (int i = 0; i < 20_000; i++) {
+            store.tryConsume("ip:" + i, LIMIT, 1, false, now);
+        }
+
+        assertThat((Integer) store.stats().get("buckets")).isLessThanOrEqualTo(1000);
+        assertThat((Long) store.stats().get("evictions")).isPositive();
+        // El más reciente sigue con su consumo
+        assertThat(store.tryConsume("ip:19999", LIMIT, 1, false, now).remaining()).isEqualTo(8);
+    }
+
+    @Test
+    void decisionRoundsTowardsTheClient() {
+        QuotaStore.Decision allowed = LocalQuotaStore.decision(true, 2.5, LIMIT, 1);
+        assertThat(allowed.remaining()).isEqualTo(2);
+        assertThat(allowed.retryAfterSeconds()).isZero();
+        assertThat(allowed.resetSeconds()).isEqualTo(4);
+
+        QuotaStore.Decision rejected = LocalQuotaStore.decision(false, 0.5, new QuotaStore.Limit(5, 0.1), 1);
+        assertThat(rejected.retryAfterSeconds()).isEqualTo(5);
+        assertThat(rejected.resetSeconds()).isEqualTo(45);
+    }
+}
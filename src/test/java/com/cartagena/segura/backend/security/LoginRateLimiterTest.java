@@ -0,0 +1,112 @@
+package com.cartagena.segura.backend.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoginRateLimiterTest {
+
+    private static final String IP = "10.0.0.1";
+
+    private static LoginRateLimiter limiter() {
+        LoginRateLimiter limiter = new LoginRateLimiter();
+        ReflectionTestUtils.setField(limiter, "maxAttemptsPerIp", 30);
+        ReflectionTestUtils.setField(limiter, "ipWindowSeconds", 60L);
+        ReflectionTestUtils.setField(limiter, "maxFailuresPerUser", 5);
+        ReflectionTestUtils.setField(limiter, "userWindowSeconds", 300L);
+        ReflectionTestUtils.setField(limiter, "maxTrackedKeys", 100_000);
+        limiter.init();
+        return limiter;
+    }
+
+    @Test
+    void allowsBurstUpToCapacityThenAsksToWaitForOneToken() {
+        LoginRateLimiter limiter = limiter();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 30; i++) {
+            assertThat(limiter.tryAcquire("ana", IP, now)).isZero();
+        }
+        // 30 intentos por minuto = un token cada 2 s
+        assertThat(limiter.tryAcquire("ana", IP, now)).isEqualTo(2);
+    }
+
+    @Test
+    void refillsAtSustainedRate() {
+        LoginRateLimiter limiter = limiter();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 30; i++) {
+            limiter.tryAcquire(null, IP, now);
+        }
+
+        assertThat(limiter.tryAcquire(null, IP, now + 1_000)).isEqualTo(1);
+        assertThat(limiter.tryAcquire(null, IP, now + 2_000)).isZero();
+        assertThat(limiter.tryAcquire(null, IP, now + 2_000)).isPositive();
+    }
+
+    @Test
+    void doesNotDoubleTheBurstAcrossAWindowBoundary() {
+        LoginRateLimiter limiter = limiter();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 30; i++) {
+            limiter.tryAcquire(null, IP, now + 59_000);
+        }
+
+        // Con ventanas fijas aquí empezaría una ventana nueva con 30 intentos más
+        int allowed = 0;
+        for (int i = 0; i < 30; i++) {
+            if (limiter.tryAcquire(null, IP, now + 60_000) == 0) allowed++;
+        }
+        assertThat(allowed).isZero();
+
+        // Tras un periodo completo el bucket vuelve a estar lleno, y nunca por encima de la capacidad
+        for (int i = 0; i < 30; i++) {
+            assertThat(limiter.tryAcquire(null, IP, now + 600_000)).isZero();
+        }
+        assertThat(limiter.tryAcquire(null, IP, now + 600_000)).isPositive();
+    }
+
+    @Test
+    void ipsHaveIndependentBuckets() {
+        LoginRateLimiter limiter = limiter();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 31; i++) {
+            limiter.tryAcquire(null, IP, now);
+        }
+        assertThat(limiter.tryAcquire(null, "10.0.0.2", now)).isZero();
+    }
+
+    @Test
+    void locksUserAfterFailuresFromAnyIpUntilSuccess() {
+        LoginRateLimiter limiter = limiter();
+        for (int i = 0; i < 5; i++) {
+            limiter.recordFailure("Ana");
+        }
+        long now = System.currentTimeMillis();
+
+        assertThat(limiter.tryAcquire("ana", "10.0.0.9", now)).isBetween(1L, 300L);
+
+        limiter.recordSuccess("ana");
+        assertThat(limiter.tryAcquire("ana", "10.0.0.9", now)).isZero();
+    }
+
+    @Test
+    void tracksAtMostMaxKeysDroppingTheLeastRecent() {
+        LoginRateLimiter limiter = limiter();
+        ReflectionTestUtils.setField(limiter, "maxTrackedKeys", 100);
+        limiter.init();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 31; i++) {
+            limiter.tryAcquire(null, IP, now);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            limiter.tryAcquire(null, "10.1." + (i / 256) + "." + (i % 256), now);
+            limiter.recordFailure("user" + i);
+        }
+
+        assertThat(((ExpiringLruCache<?, ?>) ReflectionTestUtils.getField(limiter, "attemptsByIp")).size()).isEqualTo(100);
+        assertThat(((ExpiringLruCache<?, ?>) ReflectionTestUtils.getField(limiter, "failuresByUser")).size()).isEqualTo(100);
+        // La IP agotada salió por LRU: vuelve con el bucket lleno, igual que una IP nueva
+        assertThat(limiter.tryAcquire(null, IP, now)).isZero();
+    }
+}
@@ -0,0 +1,74 @@
+package com.cartagena.segura.backend.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MLQuotaFilterTest {
+
+    private MLQuotaFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        LocalQuotaStore store = new LocalQuotaStore();
+        ReflectionTestUtils.setField(store, "maxTrackedKeys", 100);
+        store.init();
+
+        filter = new MLQuotaFilter();
+        ReflectionTestUtils.setField(filter, "store", store);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "apiKeys", Set.of());
+        ReflectionTestUtils.setField(filter, "predictCapacity", 120L);
+        ReflectionTestUtils.setField(filter, "predictRefill", 120.0);
+        ReflectionTestUtils.setField(filter, "batchRowsCapacity", 100L);
+        ReflectionTestUtils.setField(filter, "batchRowsRefill", 1.0);
+        ReflectionTestUtils.setField(filter, "trainCapacity", 1L);
+        ReflectionTestUtils.setField(filter, "trainRefill", 0.1);
+        ReflectionTestUtils.setField(filter, "evaluateCapacity", 10L);
+        ReflectionTestUtils.setField(filter, "evaluateRefill", 1.0);
+        filter.init();
+    }
+
+    private MockHttpServletResponse post(String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("Origin", "http://localhost:3000");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    @Test
+    void onlineUpdatesAreChargedAgainstBatchRowsNotTraining() throws Exception {
+        // Con una ráfaga de entrenamiento de 1, antes la segunda actualización ya se rechazaba
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletResponse response = post("/api/ml/models/incident-risk/update");
+            assertThat(response.getStatus()).isEqualTo(200);
+            assertThat(response.getHeader("RateLimit-Policy")).contains("name=\"batch_rows\"");
+        }
+        assertThat(post("/api/ml/train/incidents").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void rowsChargedByTheControllerExhaustTheUpdateBudget() throws Exception {
+        MockHttpServletRequest admitted = new MockHttpServletRequest("POST", "/api/ml/models/incident-risk/update");
+        admitted.setRemoteAddr("10.0.0.1");
+        String client = filter.clientOf(admitted);
+        assertThat(filter.chargeBatchRows(client, 101, false).allowed()).isTrue();
+
+        MockHttpServletResponse response = post("/api/ml/models/incident-risk/update");
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("Retry-After")).isNotNull();
+        assertThat(response.getHeader("Access-Control-Allow-Origin")).isEqualTo("*");
+        assertThat(response.getContentType()).startsWith("application/json");
+        assertThat(response.getContentAsString()).contains("\"error\":true", "Cuota de batch_rows agotada");
+    }
+}
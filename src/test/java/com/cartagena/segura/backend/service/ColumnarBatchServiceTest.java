@@ -0,0 +1,148 @@
+package com.cartagena.segura.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ColumnarBatchServiceTest {
+
+    private ColumnarBatchService service;
+    private NaiveBayes classifier;
+    private Instances structure;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("x"));
+        attributes.add(new Attribute("color", List.of("rojo", "azul")));
+        attributes.add(new Attribute("clase", List.of("a", "b")));
+        Instances data = new Instances("prueba", attributes, 0);
+        data.setClassIndex(2);
+        for (int i = 0; i < 40; i++) {
+            boolean b = i % 2 == 0;
+            data.add(new DenseInstance(1.0, new double[]{b ? 10 + i % 5 : i % 5, b ? 1 : 0, b ? 1 : 0}));
+        }
+        classifier = new NaiveBayes();
+        classifier.buildClassifier(data);
+        structure = new Instances(data, 0);
+
+        AdvancedWekaService wekaService = mock(AdvancedWekaService.class);
+        when(wekaService.getModelWrapper("nb"))
+                .thenReturn(new AdvancedWekaService.ModelWrapper(classifier, structure, "NaiveBayes"));
+        service = new ColumnarBatchService();
+        ReflectionTestUtils.setField(service, "wekaService", wekaService);
+        ReflectionTestUtils.setField(service, "maxRowsPerBatch", 65536);
+    }
+
+    @Test
+    void roundTripMatchesRowByRowPrediction() throws Exception {
+        double[][] first = {{12, 1}, {1, 0}, {3, Double.NaN}};
+        double[][] second = {{Double.NaN, 1}, {13, 7}};
+        byte[] request = request(List.of("x", "color"), first, second);
+
+        ColumnarBatchService.Scoring scoring = service.open("nb", new ByteArrayInputStream(request));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scoring.writeTo(out);
+
+        ByteBuffer response = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(readHeader(response)).containsExactly("prediction", "confidence", "p:a", "p:b");
+        assertBatch(response, first);
+        assertBatch(response, second);
+        assertThat(response.getInt()).isZero();
+        assertThat(response.hasRemaining()).isFalse();
+        assertThat(scoring.getRowsRead()).isEqualTo(5);
+    }
+
+    @Test
+    void rejectsColumnsOutOfModelOrder() {
+        byte[] request = request(List.of("color", "x"), new double[][]{{1, 12}});
+
+        assertThatThrownBy(() -> service.open("nb", new ByteArrayInputStream(request)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("se esperaba 'x'");
+    }
+
+    @Test
+    void rejectsUnknownModel() {
+        assertThatThrownBy(() -> service.open("otro", new ByteArrayInputStream(new byte[0])))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Modelo no encontrado");
+    }
+
+    private void assertBatch(ByteBuffer response, double[][] rows) throws Exception {
+        int count = response.getInt();
+        assertThat(count).isEqualTo(rows.length);
+        double[][] columns = new double[4][count];
+        for (int c = 0; c < 4; c++) {
+            for (int r = 0; r < count; r++) columns[c][r] = response.getDouble();
+        }
+        for (int r = 0; r < count; r++) {
+            double[] expected = expectedDistribution(rows[r]);
+            int predicted = Utils.maxIndex(expected);
+            assertThat(columns[0][r]).isEqualTo(predicted);
+            assertThat(columns[1][r]).isCloseTo(expected[predicted], within(1e-12));
+            assertThat(columns[2][r]).isCloseTo(expected[0], within(1e-12));
+            assertThat(columns[3][r]).isCloseTo(expected[1], within(1e-12));
+        }
+    }
+
+    // Misma fila armada a mano (nominal fuera de rango = faltante)
+    private double[] expectedDistribution(double[] row) throws Exception {
+        double color = row[1] >= 0 && row[1] < 2 ? row[1] : Utils.missingValue();
+        DenseInstance instance = new DenseInstance(1.0, new double[]{row[0], color, Utils.missingValue()});
+        instance.setDataset(structure);
+        return classifier.distributionForInstance(instance);
+    }
+
+    private static byte[] request(List<String> names, double[][]... batches) {
+        ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[]{'M', 'L', 'C', '1'}).putInt(names.size());
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        for (double[][] rows : batches) {
+            buffer.putInt(rows.length);
+            for (int c = 0; c < names.size(); c++) {
+                for (double[] row : rows) buffer.putDouble(row[c]);
+            }
+        }
+        buffer.putInt(0);
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip().get(bytes);
+        return bytes;
+    }
+
+    private static List<String> readHeader(ByteBuffer response) {
+        byte[] magic = new byte[4];
+        response.get(magic);
+        assertThat(new String(magic, StandardCharsets.US_ASCII)).isEqualTo("MLC1");
+        int columns = response.getInt();
+        List<String> names = new ArrayList<>();
+        for (int c = 0; c < columns; c++) {
+            byte[] name = new byte[response.getInt()];
+            response.get(name);
+            names.add(new String(name, StandardCharsets.UTF_8));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,122 @@
+package com.cartagena.segura.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExplanationServiceTest {
+
+    private ExplanationService service;
+    private AdvancedWekaService wekaService;
+    private Instances data;
+    private final Date trainedDate = new Date();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("x"));
+        attributes.add(new Attribute("clase", List.of("a", "b")));
+        data = new Instances("prueba", attributes, 0);
+        data.setClassIndex(1);
+        for (int i = 0; i < 40; i++) {
+            data.add(new DenseInstance(1.0, new double[]{i % 2 == 0 ? 1 + i % 3 : 8 + i % 3, i % 2}));
+        }
+        wekaService = mock(AdvancedWekaService.class);
+        when(wekaService.loadDataset("nb")).thenAnswer(invocation -> new Instances(data));
+
+        service = new ExplanationService();
+        ReflectionTestUtils.setField(service, "wekaService", wekaService);
+        ReflectionTestUtils.setField(service, "backgroundSize", 5);
+        ReflectionTestUtils.setField(service, "importanceSample", 40);
+        ReflectionTestUtils.setField(service, "importanceRepeats", 1);
+        ReflectionTestUtils.setField(service, "onlineRefreshMs", 600_000L);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void onlineSnapshotsShareImportanceUntilRefresh() throws Exception {
+        serve(snapshot(0, "v1"));
+        service.getFeatureImportance("nb");
+        for (int i = 1; i <= 20; i++) {
+            serve(snapshot(i, "v" + (i / 5 + 1)));
+            assertThat(service.getFeatureImportance("nb")).containsEntry("version", "v1");
+        }
+        awaitBackground();
+
+        verify(wekaService, times(1)).loadDataset("nb");
+        assertThat(service.getFeatureImportance("nb")).containsEntry("state", "READY");
+    }
+
+    @Test
+    void queuedJobsSupersededBeforeStartingAreSkipped() throws Exception {
+        ReflectionTestUtils.setField(service, "onlineRefreshMs", 0L);
+        // Ocupa el hilo de fondo mientras llegan los snapshots
+        CountDownLatch release = new CountDownLatch(1);
+        background().execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            serve(snapshot(i, "v1"));
+            service.getFeatureImportance("nb");
+        }
+        release.countDown();
+        awaitBackground();
+
+        // Solo el último snapshot se calcula
+        verify(wekaService, times(1)).loadDataset("nb");
+        assertThat(service.getFeatureImportance("nb")).containsEntry("state", "READY");
+    }
+
+    private AdvancedWekaService.ModelWrapper snapshot(long updateCount, String version) throws Exception {
+        NaiveBayesUpdateable classifier = new NaiveBayesUpdateable();
+        classifier.buildClassifier(data);
+        AdvancedWekaService.ModelWrapper wrapper =
+                new AdvancedWekaService.ModelWrapper(classifier, new Instances(data, 0), "NaiveBayesUpdateable");
+        wrapper.trainedDate = trainedDate;
+        wrapper.updateCount = updateCount;
+        wrapper.version = version;
+        return wrapper;
+    }
+
+    private void serve(AdvancedWekaService.ModelWrapper wrapper) {
+        when(wekaService.getModelWrapper("nb")).thenReturn(wrapper);
+    }
+
+    private ExecutorService background() {
+        return (ExecutorService) ReflectionTestUtils.getField(service, "background");
+    }
+
+    // El hilo de fondo es uno solo: una tarea al final espera a todas las anteriores
+    private void awaitBackground() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        background().execute(done::countDown);
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+    }
+}
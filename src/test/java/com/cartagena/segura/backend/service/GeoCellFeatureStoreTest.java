@@ -0,0 +1,122 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.model.Incident;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GeoCellFeatureStoreTest {
+
+    private static final double LAT = 10.4236;
+    private static final double LNG = -75.5478;
+
+    private GeoCellFeatureStore store;
+    private IncidentCellIndex index;
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        index = new IncidentCellIndex();
+        ReflectionTestUtils.setField(index, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(index, "cursorBatchSize", 100);
+        store = new GeoCellFeatureStore();
+        ReflectionTestUtils.setField(store, "index", index);
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "precision", 6);
+        ReflectionTestUtils.setField(store, "windowsHours", new int[]{1, 24});
+        store.init();
+    }
+
+    @Test
+    void eventsDuringRebuildAreReplayedWithoutDoubleCounting() {
+        Incident a = incident("a", Incident.Status.PENDING);
+        Incident b = incident("b", Incident.Status.PENDING);
+        Incident d = incident("d", Incident.Status.PENDING);
+        Incident c = incident("c", Incident.Status.PENDING);
+
+        // El escaneo lee a; llegan eventos (a se resuelve, se crean c y d); luego lee b y d; b se borra
+        Iterator<Incident> scan = List.of(a, b, d).iterator();
+        Iterator<Incident> cursor = new Iterator<>() {
+            int read;
+
+            @Override
+            public boolean hasNext() {
+                return scan.hasNext();
+            }
+
+            @Override
+            public Incident next() {
+                if (read == 1) {
+                    a.setStatus(Incident.Status.RESOLVED);
+                    index.onIncidentChange(IncidentChangeEvent.updated(a, Incident.Status.PENDING));
+                    index.onIncidentChange(IncidentChangeEvent.created(c));
+                    index.onIncidentChange(IncidentChangeEvent.created(d));
+                }
+                Incident next = scan.next();
+                read++;
+                if (read == 3) {
+                    index.onIncidentChange(IncidentChangeEvent.deleted("b", b));
+                }
+                return next;
+            }
+        };
+        when(mongoTemplate.stream(any(Query.class), eq(Incident.class)))
+                .thenReturn(StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, 0), false));
+
+        index.rebuild();
+
+        Map<String, Double> features = store.features(LAT, LNG);
+        assertThat(features.get("cell_count_1h")).isEqualTo(3.0);
+        assertThat(features.get("cell_status_PENDING_1h")).isEqualTo(2.0);
+        assertThat(features.get("cell_status_RESOLVED_1h")).isEqualTo(1.0);
+        assertThat(features.get("cell_type_robo_24h")).isEqualTo(3.0);
+    }
+
+    @Test
+    void liveEventsUpdateFeatures() {
+        Incident a = incident("a", Incident.Status.PENDING);
+        index.onIncidentChange(IncidentChangeEvent.created(a));
+        index.onIncidentChange(IncidentChangeEvent.created(incident("b", Incident.Status.PENDING)));
+        a.setStatus(Incident.Status.IN_PROGRESS);
+        index.onIncidentChange(IncidentChangeEvent.updated(a, Incident.Status.PENDING));
+
+        Map<String, Double> features = store.features(LAT, LNG);
+        assertThat(features.get("cell_count_1h")).isEqualTo(2.0);
+        assertThat(features.get("cell_status_IN_PROGRESS_24h")).isEqualTo(1.0);
+        assertThat(features.get("cell_rate_24h")).isEqualTo(2.0 / 24);
+        assertThat(store.features(LAT + 1, LNG).get("cell_count_1h")).isZero();
+    }
+
+    @Test
+    void cachedFeaturesFollowWrites() {
+        index.onIncidentChange(IncidentChangeEvent.created(incident("a", Incident.Status.PENDING)));
+        assertThat(store.features(LAT, LNG).get("cell_count_1h")).isEqualTo(1.0);
+
+        index.onIncidentChange(IncidentChangeEvent.created(incident("b", Incident.Status.PENDING)));
+        assertThat(store.features(LAT, LNG).get("cell_count_1h")).isEqualTo(2.0);
+    }
+
+    private static Incident incident(String id, Incident.Status status) {
+        Incident incident = new Incident("robo", "celular", null, LAT, LNG, status);
+        incident.setId(id);
+        incident.setCreatedAt(Instant.now());
+        return incident;
+    }
+}
@@ -0,0 +1,163 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.model.Incident;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HotspotServiceTest {
+
+    private static final IncidentCellIndex.Grid GRID = IncidentCellIndex.Grid.meters(250, 10.4);
+    // Celda central del área de estudio de 5 x 5 celdas
+    private static final int ROW = GRID.row(10.40);
+    private static final int COL = GRID.col(-75.50);
+
+    private IncidentCellIndex index;
+    private HotspotService service;
+    private int ids;
+
+    @BeforeEach
+    void setUp() {
+        index = new IncidentCellIndex();
+        service = new HotspotService();
+        ReflectionTestUtils.setField(service, "index", index);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "cellSizeM", 250.0);
+        ReflectionTestUtils.setField(service, "referenceLat", 10.4);
+        ReflectionTestUtils.setField(service, "bucketMinutes", 15);
+        ReflectionTestUtils.setField(service, "retentionHours", 72);
+        ReflectionTestUtils.setField(service, "neighborhood", 1);
+        ReflectionTestUtils.setField(service, "threads", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void giStarMatchesHandComputedValues() throws InterruptedException {
+        startWithFiveByFiveArea();
+        report(ROW, COL, "robo", 4);
+        report(ROW, COL + 1, "robo", 1);
+        report(ROW + 2, COL + 2, "robo", 1);
+
+        HotspotService.HotspotResult result = service.hotspots(null, 1, Double.NEGATIVE_INFINITY, 10);
+
+        // n = 25 celdas, conteos 4, 1, 1
+        double mean = 6 / 25.0;
+        double s = Math.sqrt(18 / 25.0 - mean * mean);
+        assertThat(result.studyCells()).isEqualTo(25);
+        assertThat(result.incidents()).isEqualTo(6);
+        assertThat(result.mean()).isCloseTo(mean, within(1e-9));
+        assertThat(result.hotspots()).hasSize(3);
+
+        HotspotService.Hotspot center = result.hotspots().get(0);
+        assertThat(center.count()).isEqualTo(4);
+        assertThat(center.neighborhoodCount()).isEqualTo(5);
+        assertThat(center.zScore()).isCloseTo((5 - mean * 9) / (s * Math.sqrt((25 * 9 - 81) / 24.0)), within(1e-9));
+
+        // La esquina solo tiene 4 celdas del vecindario dentro del área de estudio
+        HotspotService.Hotspot corner = result.hotspots().stream()
+                .filter(h -> h.minLat() > centerLat(ROW + 1)).findFirst().orElseThrow();
+        assertThat(corner.neighborhoodCount()).isEqualTo(1);
+        assertThat(corner.zScore()).isCloseTo((1 - mean * 4) / (s * Math.sqrt((25 * 4 - 16) / 24.0)), within(1e-9));
+    }
+
+    @Test
+    void clusterIsTopHotspotWithHighConfidence() throws InterruptedException {
+        start(new double[]{10.30, -75.60, 10.50, -75.40});
+        report(ROW, COL, "robo", 20);
+        report(ROW + 1, COL, "robo", 5);
+        report(ROW - 20, COL + 30, "robo", 1);
+        report(ROW + 25, COL - 15, "robo", 1);
+
+        HotspotService.HotspotResult result = service.hotspots(null, 1, 1.65, 5);
+
+        assertThat(result.hotspots()).isNotEmpty();
+        HotspotService.Hotspot top = result.hotspots().get(0);
+        assertThat(top.count()).isEqualTo(20);
+        assertThat(top.confidence()).isEqualTo(99);
+        assertThat(result.hotspots()).allMatch(h -> h.zScore() >= 1.65);
+    }
+
+    @Test
+    void uniformCountsHaveNoHotspots() throws InterruptedException {
+        startWithFiveByFiveArea();
+        for (int r = ROW - 2; r <= ROW + 2; r++) {
+            for (int c = COL - 2; c <= COL + 2; c++) {
+                report(r, c, "robo", 2);
+            }
+        }
+
+        HotspotService.HotspotResult result = service.hotspots(null, 1, Double.NEGATIVE_INFINITY, 10);
+
+        assertThat(result.incidents()).isEqualTo(50);
+        assertThat(result.hotspots()).isEmpty();
+    }
+
+    @Test
+    void incidentsOutsideBoundsAreIgnored() throws InterruptedException {
+        startWithFiveByFiveArea();
+        report(ROW, COL, "robo", 4);
+        report(ROW, COL + 1, "robo", 1);
+        HotspotService.HotspotResult inside = service.hotspots(null, 1, Double.NEGATIVE_INFINITY, 10);
+
+        report(ROW + 40, COL + 40, "robo", 30);
+        HotspotService.HotspotResult clipped = service.hotspots(null, 1, Double.NEGATIVE_INFINITY, 10);
+
+        assertThat(clipped.studyCells()).isEqualTo(25);
+        assertThat(clipped.incidents()).isEqualTo(5);
+        assertThat(clipped.mean()).isEqualTo(inside.mean());
+        assertThat(clipped.hotspots()).extracting(HotspotService.Hotspot::zScore)
+                .containsExactlyElementsOf(inside.hotspots().stream().map(HotspotService.Hotspot::zScore).toList());
+    }
+
+    @Test
+    void typeFilterCountsOnlyThatType() throws InterruptedException {
+        startWithFiveByFiveArea();
+        report(ROW, COL, "robo", 6);
+        report(ROW - 2, COL - 2, "hurto", 3);
+        report(ROW + 2, COL + 2, "hurto", 1);
+
+        HotspotService.HotspotResult hurto = service.hotspots("hurto", 1, Double.NEGATIVE_INFINITY, 10);
+
+        assertThat(hurto.incidents()).isEqualTo(4);
+        assertThat(hurto.hotspots()).extracting(HotspotService.Hotspot::count).containsExactlyInAnyOrder(3L, 1L);
+        assertThat(service.hotspots("vandalismo", 1, 0, 10).hotspots()).isEmpty();
+    }
+
+    private void startWithFiveByFiveArea() {
+        start(new double[]{centerLat(ROW - 2), centerLng(COL - 2), centerLat(ROW + 2), centerLng(COL + 2)});
+    }
+
+    private void start(double[] bounds) {
+        ReflectionTestUtils.setField(service, "bounds", bounds);
+        service.init();
+    }
+
+    private void report(int row, int col, String type, int count) {
+        for (int i = 0; i < count; i++) {
+            Incident incident = new Incident(type, "reporte", null, centerLat(row), centerLng(col),
+                    Incident.Status.PENDING);
+            incident.setId("i" + ids++);
+            incident.setCreatedAt(Instant.now());
+            index.onIncidentChange(IncidentChangeEvent.created(incident));
+        }
+    }
+
+    private static double centerLat(int row) {
+        return GRID.minLat(row) + GRID.cellLat() / 2;
+    }
+
+    private static double centerLng(int col) {
+        return GRID.minLng(col) + GRID.cellLng() / 2;
+    }
+}
@@ -0,0 +1,116 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.model.Incident;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IncidentCellIndexTest {
+
+    private static final double LAT = 10.4236;
+    private static final double LNG = -75.5478;
+
+    private IncidentCellIndex index;
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        index = new IncidentCellIndex();
+        ReflectionTestUtils.setField(index, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(index, "cursorBatchSize", 100);
+    }
+
+    @Test
+    void geohashGridMatchesGeohashCells() {
+        IncidentCellIndex.Grid grid = IncidentCellIndex.Grid.geohash(6);
+        Map<Long, String> byKey = new HashMap<>();
+        Map<String, Long> byHash = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            double lat = 10.3 + random.nextDouble() * 0.2;
+            double lng = -75.6 + random.nextDouble() * 0.2;
+            long key = grid.cellOf(lat, lng);
+            String hash = IncidentGeo.geohash(lat, lng, 6);
+            assertThat(byKey.computeIfAbsent(key, k -> hash)).isEqualTo(hash);
+            assertThat(byHash.computeIfAbsent(hash, h -> key)).isEqualTo(key);
+        }
+    }
+
+    @Test
+    void oneScanFeedsEveryLayerAndReplaysEvents() {
+        IncidentCellIndex.Layer grid = index.register("grid", IncidentCellIndex.Grid.meters(250, 10.4),
+                TimeUnit.MINUTES.toMillis(15), 288, false);
+        IncidentCellIndex.Layer geohash = index.register("geohash", IncidentCellIndex.Grid.geohash(6),
+                TimeUnit.HOURS.toMillis(1), 24, true);
+        Incident a = incident("a", "robo");
+        Incident b = incident("b", "robo");
+        Incident c = incident("c", "hurto");
+
+        // El escaneo lee a; a se resuelve y se crea c; luego lee b, que se borra
+        Iterator<Incident> scan = List.of(a, b).iterator();
+        Iterator<Incident> cursor = new Iterator<>() {
+            int read;
+
+            @Override
+            public boolean hasNext() {
+                return scan.hasNext();
+            }
+
+            @Override
+            public Incident next() {
+                if (read == 1) {
+                    a.setStatus(Incident.Status.RESOLVED);
+                    index.onIncidentChange(IncidentChangeEvent.updated(a, Incident.Status.PENDING));
+                    index.onIncidentChange(IncidentChangeEvent.created(c));
+                }
+                read++;
+                Incident next = scan.next();
+                if (read == 2) {
+                    index.onIncidentChange(IncidentChangeEvent.deleted("b", b));
+                }
+                return next;
+            }
+        };
+        when(mongoTemplate.stream(any(Query.class), eq(Incident.class)))
+                .thenReturn(StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, 0), false));
+
+        index.rebuild();
+
+        verify(mongoTemplate, times(1)).stream(any(Query.class), eq(Incident.class));
+        IncidentCellIndex.Cell gridCell = grid.cell(LAT, LNG);
+        assertThat(gridCell.sum(grid.currentBucket(), 4, null)).isEqualTo(2);
+        assertThat(gridCell.sum(grid.currentBucket(), 4, index.typeIndex("hurto"))).isEqualTo(1);
+
+        long[] byType = new long[index.typeNames().size()];
+        long[] byStatus = new long[Incident.Status.values().length];
+        long total = geohash.cell(LAT, LNG).accumulate(geohash.currentBucket(), 1, byType, byStatus);
+        assertThat(total).isEqualTo(2);
+        assertThat(byStatus[Incident.Status.PENDING.ordinal()]).isEqualTo(1);
+        assertThat(byStatus[Incident.Status.RESOLVED.ordinal()]).isEqualTo(1);
+        assertThat(index.typeNames()).containsExactly("robo", "hurto");
+    }
+
+    private static Incident incident(String id, String type) {
+        Incident incident = new Incident(type, "celular", null, LAT, LNG, Incident.Status.PENDING);
+        incident.setId(id);
+        incident.setCreatedAt(Instant.now());
+        return incident;
+    }
+}
@@ -0,0 +1,146 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.model.Incident;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IncidentDedupServiceTest {
+
+    private static final double LAT = 10.4236;
+    private static final double LNG = -75.5478;
+    // Metros por grado de latitud con el radio terrestre que usa el servicio
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6_371_000;
+
+    private IncidentDedupService service;
+    private MongoTemplate mongoTemplate;
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        service = new IncidentDedupService();
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "mode", IncidentDedupService.Mode.MERGE);
+        ReflectionTestUtils.setField(service, "radiusM", 150.0);
+        ReflectionTestUtils.setField(service, "windowMinutes", 60);
+        ReflectionTestUtils.setField(service, "minScore", 0.6);
+        service.init();
+        now = Instant.now();
+    }
+
+    @Test
+    void similarityIsOverlapOverTheShorterReport() {
+        assertThat(IncidentDedupService.similarity(Set.of("rob", "celular"), Set.of("rob", "celular", "mot", "call")))
+                .isEqualTo(1.0);
+        assertThat(IncidentDedupService.similarity(Set.of("rob", "mot"), Set.of("rob", "celular", "call")))
+                .isEqualTo(0.5);
+        assertThat(IncidentDedupService.similarity(Set.of(), Set.of("rob"))).isEqualTo(0.5);
+    }
+
+    @Test
+    void scoreWeighsSimilarityDistanceAndRecency() {
+        register(incident("a", "robo", "Robo de celular a mano armada", LAT, LNG, now.minus(Duration.ofMinutes(30))));
+
+        // 75 m al norte, 30 minutos después, 3 de 4 términos en común
+        IncidentDedupService.Match match = service.findDuplicate(
+                incident(null, "robo", "Robo celular moto armada", LAT + 75 / METERS_PER_DEGREE, LNG, now));
+
+        assertThat(match).isNotNull();
+        assertThat(match.incidentId()).isEqualTo("a");
+        assertThat(match.similarity()).isCloseTo(0.75, within(1e-9));
+        assertThat(match.distanceM()).isCloseTo(75, within(0.01));
+        assertThat(match.ageSeconds()).isEqualTo(1800);
+        assertThat(match.score()).isCloseTo(0.5 * 0.75 + 0.3 * 0.5 + 0.2 * 0.5, within(1e-4));
+    }
+
+    @Test
+    void picksTheBestCandidateAboveMinScore() {
+        register(incident("near", "robo", "Robo de celular", LAT, LNG, now.minus(Duration.ofMinutes(5))));
+        register(incident("far", "robo", "Robo de celular", LAT + 120 / METERS_PER_DEGREE, LNG,
+                now.minus(Duration.ofMinutes(5))));
+
+        IncidentDedupService.Match match = service.findDuplicate(incident(null, "robo", "Me robaron el celular", LAT, LNG, now));
+
+        assertThat(match.incidentId()).isEqualTo("near");
+        // Descripción distinta, en el borde del radio y casi al final de la ventana: no alcanza
+        assertThat(service.findDuplicate(incident(null, "robo", "Pelea en la tienda",
+                LAT + 120 / METERS_PER_DEGREE, LNG, now.plus(Duration.ofMinutes(50))))).isNull();
+    }
+
+    @Test
+    void ignoresOtherTypesFarReportsResolvedAndExpired() {
+        Incident original = incident("a", "robo", "Robo de celular", LAT, LNG, now.minus(Duration.ofMinutes(10)));
+        register(original);
+
+        assertThat(service.findDuplicate(incident(null, "choque", "Robo de celular", LAT, LNG, now))).isNull();
+        assertThat(service.findDuplicate(incident(null, "robo", "Robo de celular",
+                LAT + 200 / METERS_PER_DEGREE, LNG, now))).isNull();
+        assertThat(service.findDuplicate(incident(null, "robo", "Robo de celular", LAT, LNG,
+                now.plus(Duration.ofMinutes(55))))).isNull();
+
+        original.setStatus(Incident.Status.RESOLVED);
+        service.onIncidentChange(IncidentChangeEvent.updated(original, Incident.Status.PENDING));
+        assertThat(service.findDuplicate(incident(null, "robo", "Robo de celular", LAT, LNG, now))).isNull();
+    }
+
+    @Test
+    void linkedReportsAreNotCandidates() {
+        Incident linked = incident("b", "robo", "Robo de celular", LAT, LNG, now);
+        linked.setDuplicateOf("a");
+        register(linked);
+
+        assertThat(service.findDuplicate(incident(null, "robo", "Robo de celular", LAT, LNG, now))).isNull();
+    }
+
+    @Test
+    void syncRefreshesEntriesMergedOrResolvedElsewhere() {
+        register(incident("a", "robo", "Robo de celular", LAT, LNG, now.minus(Duration.ofMinutes(50))));
+        Incident late = incident(null, "robo", "Robo de celular", LAT, LNG, now.plus(Duration.ofMinutes(15)));
+        assertThat(service.findDuplicate(late)).isNull();
+
+        // Otro nodo fusionó un reporte hace un minuto: la ventana cuenta desde ahí
+        Incident merged = incident("a", "robo", "Robo de celular", LAT, LNG, now.minus(Duration.ofMinutes(50)));
+        merged.setLastReportedAt(now.minus(Duration.ofMinutes(1)));
+        merged.setReportCount(2);
+        when(mongoTemplate.stream(any(Query.class), eq(Incident.class))).thenReturn(Stream.of(merged));
+        service.sync();
+        assertThat(service.findDuplicate(late)).isNotNull();
+
+        // Otro nodo lo resolvió
+        Incident resolved = incident("a", "robo", "Robo de celular", LAT, LNG, now.minus(Duration.ofMinutes(50)));
+        resolved.setLastReportedAt(merged.getLastReportedAt());
+        resolved.setStatus(Incident.Status.RESOLVED);
+        when(mongoTemplate.stream(any(Query.class), eq(Incident.class))).thenReturn(Stream.of(resolved));
+        service.sync();
+        assertThat(service.findDuplicate(late)).isNull();
+    }
+
+    private void register(Incident incident) {
+        service.onIncidentChange(IncidentChangeEvent.created(incident));
+    }
+
+    private static Incident incident(String id, String type, String description, double lat, double lng, Instant at) {
+        Incident incident = new Incident(type, description, null, lat, lng, Incident.Status.PENDING);
+        incident.setId(id);
+        incident.setCreatedAt(at);
+        incident.setLastReportedAt(at);
+        return incident;
+    }
+}
@@ -0,0 +1,136 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.dto.IncidentSearchHit;
+import com.cartagena.segura.backend.dto.IncidentSearchPage;
+import com.cartagena.segura.backend.model.Incident;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IncidentSearchServiceTest {
+
+    private IncidentSearchService service;
+    private final Map<String, Incident> stored = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.find(any(Query.class), eq(Incident.class)))
+                .thenAnswer(invocation -> new ArrayList<>(stored.values()));
+        service = new IncidentSearchService();
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "locationBoost", 2);
+        ReflectionTestUtils.setField(service, "maxPageSize", 100);
+        ReflectionTestUtils.setField(service, "maxResultWindow", 1000);
+        ReflectionTestUtils.setField(service, "snippetLength", 160);
+    }
+
+    @Test
+    void ranksByTermFrequencyWithBm25() {
+        add("a", "robo", "Robo de celular", "Centro", Incident.Status.PENDING);
+        add("b", "robo", "Robo, robo y otro robo en la calle", "Manga", Incident.Status.PENDING);
+        add("c", "choque", "Choque de motos", "Bocagrande", Incident.Status.PENDING);
+
+        IncidentSearchPage page = service.search("robos", null, null, 0, 10);
+
+        assertThat(ids(page)).containsExactly("b", "a");
+        assertThat(page.getContent().get(0).getScore()).isGreaterThan(page.getContent().get(1).getScore());
+        assertThat(page.getTotalElements()).isEqualTo(2);
+    }
+
+    @Test
+    void locationTermsWeighMoreThanDescriptionTerms() {
+        add("desc", "robo", "Parque hurto", "Getsemani", Incident.Status.PENDING);
+        add("loc", "robo", "Hurto", "Parque", Incident.Status.PENDING);
+
+        assertThat(ids(service.search("parque", null, null, 0, 10))).containsExactly("loc", "desc");
+    }
+
+    @Test
+    void requiresEveryTermAndMatchesAccentsAndPlurals() {
+        add("a", "choque", "Colisiones entre motos", "Avenida Pedro de Heredia", Incident.Status.PENDING);
+        add("b", "choque", "Colisión de bus", "Crespo", Incident.Status.PENDING);
+
+        assertThat(ids(service.search("colisión moto", null, null, 0, 10))).containsExactly("a");
+        assertThat(ids(service.search("COLISION", null, null, 0, 10))).containsExactlyInAnyOrder("a", "b");
+        assertThat(service.search("colisión tren", null, null, 0, 10).getTotalElements()).isZero();
+    }
+
+    @Test
+    void filtersByStatusAndTypeAndFollowsUpdates() {
+        add("a", "robo", "Robo de moto", "Centro", Incident.Status.PENDING);
+        add("b", "hurto", "Robo de moto", "Centro", Incident.Status.RESOLVED);
+
+        assertThat(ids(service.search("moto", List.of(Incident.Status.RESOLVED), null, 0, 10))).containsExactly("b");
+        assertThat(ids(service.search("moto", null, "robo", 0, 10))).containsExactly("a");
+
+        Incident a = stored.get("a");
+        a.setStatus(Incident.Status.RESOLVED);
+        service.onIncidentChange(IncidentChangeEvent.updated(a, Incident.Status.PENDING));
+        service.onIncidentChange(IncidentChangeEvent.deleted("b", stored.remove("b")));
+        assertThat(ids(service.search("moto", List.of(Incident.Status.RESOLVED), null, 0, 10))).containsExactly("a");
+    }
+
+    @Test
+    void paginatesWithinResultWindow() {
+        for (int i = 0; i < 5; i++) {
+            add("i" + i, "robo", "Robo de celular", "Centro", Incident.Status.PENDING);
+        }
+
+        IncidentSearchPage first = service.search("celular", null, null, 0, 2);
+        IncidentSearchPage last = service.search("celular", null, null, 2, 2);
+
+        assertThat(first.isHasNext()).isTrue();
+        assertThat(ids(first)).containsExactly("i0", "i1");
+        assertThat(last.isHasNext()).isFalse();
+        assertThat(ids(last)).containsExactly("i4");
+        assertThatThrownBy(() -> service.search("celular", null, null, 10, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void highlightEscapesHtmlAroundMatches() {
+        String highlighted = service.highlight("<b>Robo</b> & \"motos\"", Set.of("rob", "mot"));
+
+        assertThat(highlighted).isEqualTo("&lt;b&gt;<em>Robo</em>&lt;/b&gt; &amp; &quot;<em>motos</em>&quot;");
+        assertThat(service.highlight("Choque en Crespo", Set.of("rob"))).isNull();
+        assertThat(service.highlight(null, Set.of("rob"))).isNull();
+    }
+
+    @Test
+    void highlightCutsLongTextsAtWordBoundaries() {
+        ReflectionTestUtils.setField(service, "snippetLength", 40);
+        String text = "Reportan ruido constante durante toda la noche y luego un robo a mano armada "
+                + "frente a la tienda de la esquina según varios vecinos del barrio";
+
+        String highlighted = service.highlight(text, Set.of("rob"));
+
+        assertThat(highlighted).startsWith("…").endsWith("…").contains("<em>robo</em>");
+        String plain = highlighted.replace("<em>", "").replace("</em>", "");
+        assertThat(text).contains(plain.substring(1, plain.length() - 1));
+    }
+
+    private void add(String id, String type, String description, String location, Incident.Status status) {
+        Incident incident = new Incident(type, description, location, 10.4, -75.5, status);
+        incident.setId(id);
+        stored.put(id, incident);
+        service.onIncidentChange(IncidentChangeEvent.created(incident));
+    }
+
+    private static List<String> ids(IncidentSearchPage page) {
+        return page.getContent().stream().map(IncidentSearchHit::getIncident).map(Incident::getId).toList();
+    }
+}
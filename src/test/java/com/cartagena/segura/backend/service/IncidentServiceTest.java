@@ -0,0 +1,178 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.model.Incident;
+import com.cartagena.segura.backend.repository.IncidentRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IncidentServiceTest {
+
+    private IncidentService service;
+    private IncidentRepository repository;
+    private MongoTemplate mongoTemplate;
+    private IncidentDedupService dedupService;
+    private ApplicationEventPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(IncidentRepository.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        dedupService = mock(IncidentDedupService.class);
+        publisher = mock(ApplicationEventPublisher.class);
+        when(repository.save(any(Incident.class))).thenAnswer(invocation -> {
+            Incident incident = invocation.getArgument(0);
+            incident.setId("nuevo");
+            return incident;
+        });
+        when(dedupService.findDuplicate(any(Incident.class)))
+                .thenReturn(new IncidentDedupService.Match("original", 0.9, 1.0, 10, 60));
+        when(dedupService.getMode()).thenReturn(IncidentDedupService.Mode.MERGE);
+
+        service = new IncidentService();
+        ReflectionTestUtils.setField(service, "incidentRepository", repository);
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "logService", mock(LogService.class));
+        ReflectionTestUtils.setField(service, "eventPublisher", publisher);
+        ReflectionTestUtils.setField(service, "dedupService", dedupService);
+    }
+
+    @Test
+    void mergeIncrementsReportCountAtomically() {
+        Incident original = report();
+        original.setId("original");
+        original.setReportCount(3);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Incident.class))).thenReturn(original);
+
+        Incident result = service.createIncident(report());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), options.capture(), eq(Incident.class));
+        assertThat(query.getValue().getQueryObject().get("_id")).isEqualTo("original");
+        Document changes = update.getValue().getUpdateObject();
+        assertThat(changes.get("$inc", Document.class)).containsEntry("reportCount", 1);
+        assertThat(changes.get("$set", Document.class)).containsKeys("lastReportedAt", "updatedAt");
+        assertThat(options.getValue().isReturnNew()).isTrue();
+
+        assertThat(result).isSameAs(original);
+        verify(repository, never()).save(any(Incident.class));
+        ArgumentCaptor<IncidentChangeEvent> event = ArgumentCaptor.forClass(IncidentChangeEvent.class);
+        verify(publisher).publishEvent(event.capture());
+        assertThat(event.getValue().getType()).isEqualTo(IncidentChangeEvent.Type.UPDATED);
+    }
+
+    @Test
+    void mergeIntoIncidentDeletedElsewhereCreatesANewOne() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Incident.class))).thenReturn(null);
+
+        Incident result = service.createIncident(report());
+
+        verify(dedupService).remove("original");
+        assertThat(result.getId()).isEqualTo("nuevo");
+        assertThat(result.getReportCount()).isEqualTo(1);
+        assertThat(result.getDuplicateOf()).isNull();
+        ArgumentCaptor<IncidentChangeEvent> event = ArgumentCaptor.forClass(IncidentChangeEvent.class);
+        verify(publisher).publishEvent(event.capture());
+        assertThat(event.getValue().getType()).isEqualTo(IncidentChangeEvent.Type.CREATED);
+    }
+
+    @Test
+    void linkModeSavesReportPointingToOriginal() {
+        when(dedupService.getMode()).thenReturn(IncidentDedupService.Mode.LINK);
+
+        Incident result = service.createIncident(report());
+
+        assertThat(result.getDuplicateOf()).isEqualTo("original");
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(Incident.class));
+    }
+
+    @Test
+    void statusUpdateSetsOnlyStatusAndDatesConditionedOnTheReadStatus() {
+        Incident stored = report();
+        stored.setId("inc-1");
+        Incident afterUpdate = report();
+        afterUpdate.setId("inc-1");
+        afterUpdate.setStatus(Incident.Status.IN_PROGRESS);
+        when(repository.findById("inc-1")).thenReturn(Optional.of(stored));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Incident.class))).thenReturn(afterUpdate);
+
+        Incident result = service.updateIncidentStatus("inc-1", Incident.Status.IN_PROGRESS);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), options.capture(), eq(Incident.class));
+        assertThat(query.getValue().getQueryObject())
+                .containsEntry("_id", "inc-1")
+                .containsEntry("status", Incident.Status.PENDING);
+        Document changes = update.getValue().getUpdateObject();
+        assertThat(changes.keySet()).containsExactly("$set");
+        assertThat(changes.get("$set", Document.class).keySet())
+                .containsExactlyInAnyOrder("status", "updatedAt", "statusChangedAt");
+        assertThat(options.getValue().isReturnNew()).isTrue();
+        verify(repository, never()).save(any(Incident.class));
+
+        assertThat(result).isSameAs(afterUpdate);
+        ArgumentCaptor<IncidentChangeEvent> event = ArgumentCaptor.forClass(IncidentChangeEvent.class);
+        verify(publisher).publishEvent(event.capture());
+        assertThat(event.getValue().getPreviousStatus()).isEqualTo(Incident.Status.PENDING);
+    }
+
+    @Test
+    void statusUpdateRereadsWhenAnotherRequestChangedTheStatusFirst() {
+        Incident pending = report();
+        pending.setId("inc-1");
+        Incident inProgress = report();
+        inProgress.setId("inc-1");
+        inProgress.setStatus(Incident.Status.IN_PROGRESS);
+        Incident resolved = report();
+        resolved.setId("inc-1");
+        resolved.setStatus(Incident.Status.RESOLVED);
+        when(repository.findById("inc-1")).thenReturn(Optional.of(pending), Optional.of(inProgress));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Incident.class))).thenReturn(null, resolved);
+
+        Incident result = service.updateIncidentStatus("inc-1", Incident.Status.RESOLVED);
+
+        assertThat(result).isSameAs(resolved);
+        ArgumentCaptor<IncidentChangeEvent> event = ArgumentCaptor.forClass(IncidentChangeEvent.class);
+        verify(publisher).publishEvent(event.capture());
+        assertThat(event.getValue().getPreviousStatus()).isEqualTo(Incident.Status.IN_PROGRESS);
+    }
+
+    @Test
+    void statusUpdateOfMissingIncidentReturnsNull() {
+        when(repository.findById("inc-1")).thenReturn(Optional.empty());
+
+        assertThat(service.updateIncidentStatus("inc-1", Incident.Status.RESOLVED)).isNull();
+        verify(publisher, never()).publishEvent(any());
+    }
+
+    private static Incident report() {
+        return new Incident("robo", "Robo de celular", "Centro", 10.4236, -75.5478, Incident.Status.PENDING);
+    }
+}
@@ -0,0 +1,121 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.IncidentChangeEvent;
+import com.cartagena.segura.backend.model.Incident;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncidentStreamServiceTest {
+
+    private IncidentStreamService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new IncidentStreamService();
+        ReflectionTestUtils.setField(service, "timeoutMs", 60_000L);
+        ReflectionTestUtils.setField(service, "bufferSize", 100);
+        ReflectionTestUtils.setField(service, "heartbeatMs", 60_000L);
+        ReflectionTestUtils.setField(service, "subscriberQueueSize", 4);
+        ReflectionTestUtils.setField(service, "senderThreads", 2);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void slowSubscriberDoesNotDelayOthersAndIsDisconnected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(release);
+        RecordingEmitter fast = new RecordingEmitter(null);
+        service.subscribe(slow, IncidentStreamService.StreamFilter.all(), null);
+        service.subscribe(fast, IncidentStreamService.StreamFilter.all(), null);
+
+        // Cada evento llega al cliente rápido aunque el lento esté bloqueado en su primer envío
+        for (int i = 0; i < 10; i++) {
+            service.onIncidentChange(IncidentChangeEvent.created(incident("i" + i)));
+            int expected = i + 2;
+            waitUntil(() -> fast.sent.size() == expected);
+        }
+        waitUntil(() -> slow.completed);
+        assertThat(service.getSubscriberCount()).isEqualTo(1);
+        release.countDown();
+    }
+
+    @Test
+    void resumeReplaysMissedEventsOrResetsWhenTheyDoNotFitTheQueue() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            service.onIncidentChange(IncidentChangeEvent.created(incident("i" + i)));
+        }
+        String epoch = (String) ReflectionTestUtils.getField(service, "epoch");
+
+        RecordingEmitter recent = new RecordingEmitter(null);
+        service.subscribe(recent, IncidentStreamService.StreamFilter.all(), epoch + ":8");
+        waitUntil(() -> recent.sent.size() == 2);
+        assertThat(recent.sent.get(0)).contains("id:" + epoch + ":9").contains("event:created");
+
+        RecordingEmitter old = new RecordingEmitter(null);
+        service.subscribe(old, IncidentStreamService.StreamFilter.all(), epoch + ":1");
+        waitUntil(() -> old.sent.size() == 1);
+        assertThat(old.sent.get(0)).contains("event:reset");
+    }
+
+    private static Incident incident(String id) {
+        Incident incident = new Incident("Robo", "d", "", 10.4, -75.5, Incident.Status.PENDING);
+        incident.setId(id);
+        return incident;
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condición no alcanzada a tiempo").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Emisor sin conexión HTTP: registra lo enviado y, si tiene latch, bloquea como un socket lleno.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        final CountDownLatch block;
+        volatile boolean completed;
+
+        RecordingEmitter(CountDownLatch block) {
+            this.block = block;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (block != null) {
+                try {
+                    block.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            StringBuilder text = new StringBuilder();
+            builder.build().forEach(part -> text.append(part.getData()));
+            sent.add(text.toString());
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalUserCacheTest {
+
+    private static LocalUserCache cache(int maxSize) {
+        LocalUserCache cache = new LocalUserCache();
+        ReflectionTestUtils.setField(cache, "maxSize", maxSize);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        cache.init();
+        return cache;
+    }
+
+    @Test
+    void cachesPrincipalWithoutPassword() {
+        LocalUserCache cache = cache(10);
+        User user = new User("ana", "$2a$10$hash", "USER");
+        user.setId(7L);
+
+        cache.put(user);
+
+        User cached = cache.get("ana").orElseThrow();
+        assertThat(cached.getId()).isEqualTo(7L);
+        assertThat(cached.getRole()).isEqualTo("USER");
+        assertThat(cached.getPassword()).isNull();
+    }
+
+    @Test
+    void fullCacheDropsLeastRecentlyUsedUser() {
+        LocalUserCache cache = cache(2);
+        cache.put(new User("a", null, "USER"));
+        cache.put(new User("b", null, "USER"));
+        cache.get("a");
+
+        cache.put(new User("c", null, "USER"));
+
+        assertThat(cache.get("b")).isEmpty();
+        assertThat(cache.get("a")).isPresent();
+        assertThat(cache.get("c")).isPresent();
+        assertThat(cache.stats()).containsEntry("size", 2).containsEntry("evictions", 1L);
+    }
+
+    @Test
+    void evictRemovesUser() {
+        LocalUserCache cache = cache(10);
+        cache.put(new User("a", null, "USER"));
+
+        cache.evict("a");
+
+        assertThat(cache.get("a")).isEmpty();
+        assertThat(cache.stats()).containsEntry("misses", 1L);
+    }
+}
@@ -0,0 +1,86 @@
+package com.cartagena.segura.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModelServingServiceTest {
+
+    // Ventana de 6 s: tramos de 1 s
+    private static final long T0 = 1_700_000_000_000L;
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(80);
+
+    private ModelServingService.SloWindow window;
+
+    @BeforeEach
+    void setUp() {
+        ModelServingService service = new ModelServingService();
+        ReflectionTestUtils.setField(service, "sloWindowMs", 6000L);
+        ReflectionTestUtils.setField(service, "sloPercentile", 0.95);
+        ReflectionTestUtils.setField(service, "sloMinSamples", 20L);
+        window = service.new SloWindow(new AdvancedWekaService.LatencySlo(50, "nb", 8));
+    }
+
+    @Test
+    void judgesP95OnlyWithEnoughSamples() {
+        for (int i = 0; i < 10; i++) window.record(SLOW, T0);
+        assertThat(window.overBudget(window.counts(T0))).isFalse();
+
+        for (int i = 0; i < 90; i++) window.record(FAST, T0);
+        assertThat(window.counts(T0)).containsExactly(100, 10);
+        assertThat(window.overBudget(window.counts(T0))).isTrue();
+
+        for (int i = 0; i < 100; i++) window.record(FAST, T0 + 1000);
+        // 10 lentas de 200 = 5 %: el p95 está dentro del SLO
+        assertThat(window.overBudget(window.counts(T0 + 1000))).isFalse();
+    }
+
+    @Test
+    void slotsLeaveTheWindowOneByOne() {
+        for (int i = 0; i < 30; i++) window.record(SLOW, T0);
+        for (int i = 0; i < 5; i++) window.record(FAST, T0 + 3000);
+
+        assertThat(window.counts(T0 + 5999)).containsExactly(35, 30);
+        assertThat(window.counts(T0 + 6000)).containsExactly(5, 0);
+        assertThat(window.counts(T0 + 9000)).containsExactly(0, 0);
+    }
+
+    @Test
+    void reusedSlotStartsFromZero() {
+        for (int i = 0; i < 30; i++) window.record(SLOW, T0);
+
+        // Mismo tramo del arreglo una vuelta después: no arrastra las lentas de la vuelta anterior
+        window.record(FAST, T0 + 6000);
+
+        assertThat(window.counts(T0 + 6000)).containsExactly(1, 0);
+        assertThat(window.overBudget(window.counts(T0 + 6000))).isFalse();
+    }
+
+    @Test
+    void concurrentRecordsAcrossRolloverAreNotLost() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    // Todas pasan del tramo 0 al tramo 6 (mismo índice) a mitad de camino
+                    window.record(SLOW, i < perThread / 2 ? T0 : T0 + 6000);
+                }
+            });
+            workers.add(worker);
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) worker.join();
+
+        // Las de la vuelta nueva están todas y ninguna tardía de la anterior reinicia el tramo
+        assertThat(window.counts(T0 + 6000)).containsExactly((long) threads * perThread / 2, (long) threads * perThread / 2);
+    }
+}
@@ -0,0 +1,99 @@
+package com.cartagena.segura.backend.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara la estimación con el aumento real del heap al cargar varias copias del mismo modelo
+ * (deserializadas, como las carga el almacén).
+ */
+class ModelSizeEstimatorTest {
+
+    // Se cargan copias hasta sumar al menos esto, para que el ruido del GC no pese en la medición
+    private static final long MIN_MEASURED_BYTES = 8L * 1024 * 1024;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"trees.RandomForest", "trees.J48", "functions.SMO", "lazy.IBk", "bayes.NaiveBayes"})
+    void estimateIsCloseToMeasuredHeap(String algorithm) throws Exception {
+        Instances data = dataset();
+        Classifier classifier = AbstractClassifier.forName("weka.classifiers." + algorithm, new String[0]);
+        classifier.buildClassifier(data);
+        byte[] serialized = serialize(classifier, new Instances(data, 0));
+
+        Object[] model = deserialize(serialized);
+        long estimated = ModelSizeEstimator.estimate(model);
+        int copies = (int) Math.max(10, MIN_MEASURED_BYTES / estimated);
+
+        Object[][] retained = new Object[copies][];
+        long before = usedHeap();
+        for (int i = 0; i < copies; i++) {
+            retained[i] = deserialize(serialized);
+        }
+        long after = usedHeap();
+        double measured = (after - before) / (double) copies;
+
+        assertThat(retained[copies - 1]).hasSize(2);
+        assertThat(Math.abs(estimated - measured) / measured)
+                .as("%s: estimado %d bytes, medido %.0f bytes", algorithm, estimated, measured)
+                .isLessThan(0.10);
+    }
+
+    private static Instances dataset() {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) attributes.add(new Attribute("n" + i));
+        attributes.add(new Attribute("tipo", List.of("robo", "hurto", "rina", "accidente")));
+        attributes.add(new Attribute("riesgo", List.of("bajo", "medio", "alto")));
+        Instances data = new Instances("incidentes", attributes, 0);
+        data.setClassIndex(9);
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            double[] values = new double[10];
+            for (int j = 0; j < 8; j++) values[j] = random.nextGaussian() * 10;
+            values[8] = random.nextInt(4);
+            values[9] = values[0] + values[1] > 5 ? 2 : values[2] > 0 ? 1 : 0;
+            if (random.nextDouble() < 0.1) values[9] = random.nextInt(3);
+            data.add(new DenseInstance(1.0, values));
+        }
+        return data;
+    }
+
+    private static byte[] serialize(Object... objects) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (Object object : objects) out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object[] deserialize(byte[] serialized) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return new Object[]{in.readObject(), in.readObject()};
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
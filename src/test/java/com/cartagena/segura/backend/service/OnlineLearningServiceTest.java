@@ -0,0 +1,112 @@
+package com.cartagena.segura.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OnlineLearningServiceTest {
+
+    private OnlineLearningService service;
+    // Modelo servido: publishSnapshot lo reemplaza solo si sigue siendo el esperado
+    private final AtomicReference<AdvancedWekaService.ModelWrapper> served = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("x"));
+        attributes.add(new Attribute("clase", List.of("a", "b")));
+        Instances data = new Instances("prueba", attributes, 0);
+        data.setClassIndex(1);
+        data.add(new DenseInstance(1.0, new double[]{1, 0}));
+        data.add(new DenseInstance(1.0, new double[]{9, 1}));
+        NaiveBayesUpdateable classifier = new NaiveBayesUpdateable();
+        classifier.buildClassifier(data);
+        Instances structure = new Instances(data, 0);
+        served.set(new AdvancedWekaService.ModelWrapper(classifier, structure, "NaiveBayesUpdateable"));
+
+        AdvancedWekaService wekaService = mock(AdvancedWekaService.class);
+        when(wekaService.getModelWrapper("nb")).thenAnswer(invocation -> served.get());
+        when(wekaService.createLabelledInstance(any(), any())).thenAnswer(invocation -> {
+            Map<String, Object> row = invocation.getArgument(0);
+            Instance instance = new DenseInstance(2);
+            instance.setDataset(structure);
+            instance.setValue(0, ((Number) row.get("x")).doubleValue());
+            instance.setValue(1, (String) row.get("clase"));
+            return instance;
+        });
+        when(wekaService.publishSnapshot(eq("nb"), any(), any(), anyLong())).thenAnswer(invocation -> {
+            AdvancedWekaService.ModelWrapper expected = invocation.getArgument(1);
+            Classifier snapshot = invocation.getArgument(2);
+            AdvancedWekaService.ModelWrapper wrapper =
+                    new AdvancedWekaService.ModelWrapper(snapshot, expected.dataStructure, expected.algorithm);
+            wrapper.updateCount = invocation.getArgument(3);
+            return served.compareAndSet(expected, wrapper) ? wrapper : null;
+        });
+
+        service = new OnlineLearningService();
+        ReflectionTestUtils.setField(service, "wekaService", wekaService);
+        ReflectionTestUtils.setField(service, "incidentModel", "");
+    }
+
+    @Test
+    void concurrentUpdatesAndFlushesKeepEveryRow() throws Exception {
+        int threads = 8;
+        int updatesPerThread = 100;
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < updatesPerThread; i++) {
+                    service.update("nb", List.of(Map.of("x", (double) (i % 10), "clase", i % 2 == 0 ? "a" : "b")));
+                }
+                return null;
+            }));
+        }
+        Future<?> flusher = pool.submit(() -> {
+            start.await();
+            while (futures.stream().anyMatch(f -> !f.isDone())) {
+                service.flushSnapshots();
+            }
+            return null;
+        });
+        start.countDown();
+        for (Future<?> future : futures) future.get(60, TimeUnit.SECONDS);
+        flusher.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+        service.flushSnapshots();
+
+        assertThat(served.get().updateCount).isEqualTo((long) threads * updatesPerThread);
+    }
+
+    @Test
+    void retrainedModelReplacesTheLearner() throws Exception {
+        service.update("nb", List.of(Map.of("x", 1.0, "clase", "a")));
+        AdvancedWekaService.ModelWrapper retrained = new AdvancedWekaService.ModelWrapper(
+                served.get().classifier, served.get().dataStructure, "NaiveBayesUpdateable");
+        served.set(retrained);
+
+        service.update("nb", List.of(Map.of("x", 2.0, "clase", "b")));
+
+        // El learner nuevo parte del modelo reentrenado (0 actualizaciones) y no del anterior
+        assertThat(served.get().updateCount).isEqualTo(1);
+    }
+}
@@ -0,0 +1,59 @@
+package com.cartagena.segura.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpanishTextTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "choques, choqu",
+            "choque, choqu",
+            "motos, mot",
+            "moto, mot",
+            "luces, luz",
+            "luz, luz",
+            "colisiones, colision",
+            "colision, colision",
+            "meses, mes",
+            "calle, call",
+            "bus, bus"
+    })
+    void stemsPluralsAndGender(String word, String stem) {
+        assertThat(SpanishText.stem(word)).isEqualTo(stem);
+    }
+
+    @Test
+    void foldsCaseAndAccents() {
+        assertThat(SpanishText.fold('Á')).isEqualTo('a');
+        assertThat(SpanishText.fold('é')).isEqualTo('e');
+        assertThat(SpanishText.fold('Ñ')).isEqualTo('n');
+        assertThat(SpanishText.fold('ü')).isEqualTo('u');
+        assertThat(SpanishText.fold('Z')).isEqualTo('z');
+        assertThat(SpanishText.fold('7')).isEqualTo('7');
+    }
+
+    @Test
+    void termsDropStopwordsAndSingleLetters() {
+        assertThat(SpanishText.terms("El ROBO de la moto en Bocagrande, y 5 heridos"))
+                .containsExactly("rob", "mot", "bocagrand", "5", "herid");
+        assertThat(SpanishText.terms("Colisión")).isEqualTo(SpanishText.terms("colisiones"));
+        assertThat(SpanishText.terms("Peña")).isEqualTo(SpanishText.terms("pena"));
+        assertThat(SpanishText.terms(null)).isEmpty();
+    }
+
+    @Test
+    void reportsTokenOffsetsInOriginalText() {
+        String text = "¡Choque! en Crespo";
+        List<String> tokens = new ArrayList<>();
+        SpanishText.forEachTerm(text, (start, end, term) -> tokens.add(text.substring(start, end) + "=" + term));
+
+        assertThat(tokens).containsExactly("Choque=choqu", "Crespo=cresp");
+    }
+}
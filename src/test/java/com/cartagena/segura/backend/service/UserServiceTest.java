@@ -0,0 +1,65 @@
+package com.cartagena.segura.backend.service;
+
+import com.cartagena.segura.backend.dto.UserSummary;
+import com.cartagena.segura.backend.model.User;
+import com.cartagena.segura.backend.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceTest {
+
+    @Test
+    void registerIgnoresClientSuppliedRoleAndId() {
+        UserRepository repository = mock(UserRepository.class);
+        PasswordEncoder encoder = mock(PasswordEncoder.class);
+        when(encoder.encode("secreto")).thenReturn("hash");
+        when(repository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        UserService service = new UserService();
+        ReflectionTestUtils.setField(service, "userRepository", repository);
+        ReflectionTestUtils.setField(service, "passwordEncoder", encoder);
+        ReflectionTestUtils.setField(service, "userCache", mock(UserCache.class));
+
+        User request = new User("mallory", "secreto", "ADMIN");
+        request.setId(1L);
+        User saved = service.registerUser(request);
+
+        assertThat(saved.getRole()).isEqualTo("USER");
+        assertThat(saved.getId()).isNull();
+        assertThat(saved.getPassword()).isEqualTo("hash");
+        assertThat(saved.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void roleUpdateAcceptsOnlyUserOrAdminAndReturnsSummary() {
+        UserRepository repository = mock(UserRepository.class);
+        User user = new User("ana", "hash", "USER");
+        user.setId(7L);
+        UserSummary summary = mock(UserSummary.class);
+        when(repository.findById(7L)).thenReturn(Optional.of(user));
+        when(repository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(repository.findSummaryById(7L)).thenReturn(Optional.of(summary));
+
+        UserService service = new UserService();
+        ReflectionTestUtils.setField(service, "userRepository", repository);
+        ReflectionTestUtils.setField(service, "userCache", mock(UserCache.class));
+
+        assertThatThrownBy(() -> service.updateUserRole(7L, "foo")).isInstanceOf(IllegalArgumentException.class);
+        verify(repository, never()).save(any(User.class));
+
+        assertThat(service.updateUserRole(7L, " admin ")).containsSame(summary);
+        assertThat(user.getRole()).isEqualTo("ADMIN");
+        assertThat(service.updateUserRole(8L, "USER")).isEmpty();
+    }
+}